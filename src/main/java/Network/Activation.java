@@ -3,7 +3,6 @@ package Network;
 import java.util.Arrays;
 import java.util.Random;
 import java.util.function.BiFunction;
-import java.util.function.Function;
 import java.util.function.Supplier;
 
 /**
@@ -20,74 +19,51 @@ public enum Activation {
     /**
      * No activation applied. Acts as a passthrough (identity function).
      */
-    none(input -> {
-        double[] output = new double[input.length];
-        System.arraycopy(input, 0, output, 0, input.length);
-        return output;
-    }, (input, gradient) -> {
-        double[] output = new double[input.length];
-        //input will always be 1 with respect to output
-        System.arraycopy(gradient, 0, output, 0, input.length);
-        return output;
-    }),
+    none((input, output, from, to) -> System.arraycopy(input, from, output, from, to - from),
+            //input will always be 1 with respect to output
+            (input, gradient, output, from, to) -> System.arraycopy(gradient, from, output, from, to - from)),
 
     /**
      * Rectified Linear Unit: f(x) = max(0, x)
      */
-    ReLU(input -> {
-        double[] output = new double[input.length];
-        for (int i = 0; i < input.length; i++) output[i] = (input[i] > 0 ? input[i] : 0);
-        return output;
-    }, (input, gradient) -> {
-        double[] output = new double[input.length];
-        for (int i = 0; i < input.length; i++) output[i] = gradient[i] * (input[i] > 0 ? 1.0 : 0);
-        return output;
+    ReLU((input, output, from, to) -> {
+        for (int i = from; i < to; i++) output[i] = (input[i] > 0 ? input[i] : 0);
+    }, (input, gradient, output, from, to) -> {
+        for (int i = from; i < to; i++) output[i] = gradient[i] * (input[i] > 0 ? 1.0 : 0);
     }),
 
     /**
      * Sigmoid activation: f(x) = 1 / (1 + e^-x)
      */
-    sigmoid(input -> {
-        double[] output = new double[input.length];
-        for (int i = 0; i < input.length; i++) output[i] = 1 / (1 + Math.exp(-input[i]));
-        return output;
-    }, (input, gradient) -> {
-        double[] output = new double[input.length];
-        for (int i = 0; i < input.length; i++) {
+    sigmoid((input, output, from, to) -> {
+        for (int i = from; i < to; i++) output[i] = 1 / (1 + Math.exp(-input[i]));
+    }, (input, gradient, output, from, to) -> {
+        for (int i = from; i < to; i++) {
             double a = 1 / (1 + Math.exp(-input[i]));
             output[i] = gradient[i] * a * (1 - a);
         }
-        return output;
     }),
 
     /**
      * Hyperbolic Tangent: f(x) = tanh(x)
      */
-    tanh(input -> {
-        double[] output = new double[input.length];
-        for (int i = 0; i < input.length; i++)
+    tanh((input, output, from, to) -> {
+        for (int i = from; i < to; i++)
             output[i] = Math.tanh(input[i]);
-        return output;
-    }, (input, gradient) -> {
-        double[] output = new double[input.length];
-        for (int i = 0; i < input.length; i++) {
+    }, (input, gradient, output, from, to) -> {
+        for (int i = from; i < to; i++) {
             double tanhValue = Math.tanh(input[i]);
             output[i] = gradient[i] * (1 - tanhValue * tanhValue);
         }
-        return output;
     }),
 
     /**
      * Leaky ReLU: f(x) = x if x > 0 else 0.1 * x
      */
-    LeakyReLU(input -> {
-        double[] output = new double[input.length];
-        for (int i = 0; i < input.length; i++) output[i] = input[i] > 0 ? input[i] : 0.1 * input[i];
-        return output;
-    }, (input, gradient) -> {
-        double[] output = new double[input.length];
-        for (int i = 0; i < input.length; i++) output[i] = gradient[i] * (input[i] > 0 ? 1.0 : 0.1);
-        return output;
+    LeakyReLU((input, output, from, to) -> {
+        for (int i = from; i < to; i++) output[i] = input[i] > 0 ? input[i] : 0.1 * input[i];
+    }, (input, gradient, output, from, to) -> {
+        for (int i = from; i < to; i++) output[i] = gradient[i] * (input[i] > 0 ? 1.0 : 0.1);
     }),
 
     /**
@@ -100,42 +76,45 @@ public enum Activation {
      * {@code (0, 1]} and the denominator is strictly positive, producing a valid probability
      * distribution for any finite input.
      */
-    softmax(input -> {
-        double[] output = new double[input.length];
+    softmax((input, output, from, to) -> {
         double latestInputSum = 0, max = Double.NEGATIVE_INFINITY;
-        for (double num : input) max = Math.max(max, num);
-        for (double num : input) latestInputSum += Math.exp(num - max);
-        for (int i = 0; i < input.length; i++) output[i] = Math.exp(input[i] - max) / latestInputSum;
-        return output;
-    }, (input, gradient) -> {
-        double[] output = new double[input.length];
-        double[] softmaxOutput = new double[input.length];
+        for (int i = from; i < to; i++) max = Math.max(max, input[i]);
+        for (int i = from; i < to; i++) latestInputSum += Math.exp(input[i] - max);
+        for (int i = from; i < to; i++) output[i] = Math.exp(input[i] - max) / latestInputSum;
+    }, (input, gradient, output, from, to) -> {
         double latestInputSum = 0, max = Double.NEGATIVE_INFINITY;
-        for (double num : input) max = Math.max(max, num);
-        for (double num : input) latestInputSum += Math.exp(num - max);
-        for (int i = 0; i < input.length; i++) softmaxOutput[i] = Math.exp(input[i] - max) / latestInputSum;
+        for (int i = from; i < to; i++) max = Math.max(max, input[i]);
+        for (int i = from; i < to; i++) latestInputSum += Math.exp(input[i] - max);
 
-        // Compute the gradient using the vectorized form
+        // Compute the gradient using the vectorized form, recomputing each softmax output instead of
+        // buffering them so that output may share its storage with input or gradient
         double dotProduct = 0.0;
-        for (int i = 0; i < softmaxOutput.length; i++) {
-            dotProduct += softmaxOutput[i] * gradient[i];
-        }
-
-        for (int i = 0; i < softmaxOutput.length; i++) {
-            output[i] = softmaxOutput[i] * (gradient[i] - dotProduct);
-        }
+        for (int i = from; i < to; i++)
+            dotProduct += Math.exp(input[i] - max) / latestInputSum * gradient[i];
 
-        return output;
+        for (int i = from; i < to; i++)
+            output[i] = Math.exp(input[i] - max) / latestInputSum * (gradient[i] - dotProduct);
     });
 
+    /** Writes {@code f(input)} over the index range {@code [from, to)} into {@code output}, which may be {@code input} */
+    private interface Forward {
+        void apply(double[] input, double[] output, int from, int to);
+    }
+
+    /** Writes {@code f'(input) * gradient} over the index range {@code [from, to)} into {@code output},
+     * which may be {@code input} or {@code gradient} */
+    private interface Backward {
+        void apply(double[] input, double[] gradient, double[] output, int from, int to);
+    }
+
     private static final Random RANDOM = new Random();
     private static final BiFunction<Integer, Integer, Double> HE_Initialization = (inputSize, outputSize) -> RANDOM.nextGaussian(0, Math.sqrt(2.0 / (inputSize + outputSize)));
     private static final BiFunction<Integer, Integer, Double> XAVIER_Initialization = (inputSize, outputSize) -> RANDOM.nextGaussian(0, Math.sqrt(1 / Math.sqrt(inputSize + outputSize)));
 
-    private final Function<double[], double[]> function;
-    private final BiFunction<double[], double[], double[]> derivativeFunction;
+    private final Forward function;
+    private final Backward derivativeFunction;
 
-    Activation(Function<double[], double[]> function, BiFunction<double[], double[], double[]> derivativeFunction) {
+    Activation(Forward function, Backward derivativeFunction) {
         this.function = function;
         this.derivativeFunction = derivativeFunction;
     }
@@ -147,16 +126,25 @@ public enum Activation {
      * @throws AssertionError if input or output contains non-finite values
      */
     double[] calculate(double[] input) {
-        for (double v : input)
-            if (!Double.isFinite(v))
-                throw new IllegalArgumentException("Attempted to input invalid values into Activation Function " + Arrays.toString(input));
-        double[] output = this.function.apply(input);
-        for (double v : output)
-            if (!Double.isFinite(v))
-                throw new IllegalStateException("Activation Function returning invalid values " + Arrays.toString(input) + "\n" + Arrays.toString(output));
+        double[] output = new double[input.length];
+        calculate(input, output, 0, input.length);
         return output;
     }
 
+    /**
+     * Applies the activation function to {@code input[from, to)}, treated as one vector, writing the result into
+     * the same range of {@code output}. {@code output} may be {@code input} itself.
+     */
+    void calculate(double[] input, double[] output, int from, int to) {
+        for (int i = from; i < to; i++)
+            if (!Double.isFinite(input[i]))
+                throw new IllegalArgumentException("Attempted to input invalid values into Activation Function " + Arrays.toString(Arrays.copyOfRange(input, from, to)));
+        this.function.apply(input, output, from, to);
+        for (int i = from; i < to; i++)
+            if (!Double.isFinite(output[i]))
+                throw new IllegalStateException("Activation Function returning invalid values " + Arrays.toString(Arrays.copyOfRange(output, from, to)));
+    }
+
     /**
      * Computes the derivative of the activation with respect to cost.
      * <p>
@@ -166,16 +154,26 @@ public enum Activation {
      * @return Gradient of pre-activation with respect to cost
      */
     double[] derivative(double[] z, double[] da_dC) {
-        for (double v : da_dC)
-            if (!Double.isFinite(v))
-                throw new IllegalArgumentException("Attempted to input invalid values into Deriv of Activation Function " + Arrays.toString(z) + "  " + Arrays.toString(da_dC));
-        double[] newGradient = this.derivativeFunction.apply(z, da_dC);
-        for (double v : newGradient)
-            if (!Double.isFinite(v))
-                throw new IllegalStateException("Deriv of Activation Function returning invalid values " + Arrays.toString(z) + "  " + Arrays.toString(da_dC) + "\n" + Arrays.toString(newGradient));
+        double[] newGradient = new double[z.length];
+        derivative(z, da_dC, newGradient, 0, z.length);
         return newGradient;
     }
 
+    /**
+     * Computes the derivative of the activation with respect to cost over {@code [from, to)} of {@code z} and
+     * {@code da_dC}, treated as one vector, writing dz/dC into the same range of {@code output}.
+     * {@code output} may be {@code z} or {@code da_dC} itself.
+     */
+    void derivative(double[] z, double[] da_dC, double[] output, int from, int to) {
+        for (int i = from; i < to; i++)
+            if (!Double.isFinite(da_dC[i]))
+                throw new IllegalArgumentException("Attempted to input invalid values into Deriv of Activation Function " + Arrays.toString(Arrays.copyOfRange(z, from, to)) + "  " + Arrays.toString(Arrays.copyOfRange(da_dC, from, to)));
+        this.derivativeFunction.apply(z, da_dC, output, from, to);
+        for (int i = from; i < to; i++)
+            if (!Double.isFinite(output[i]))
+                throw new IllegalStateException("Deriv of Activation Function returning invalid values " + Arrays.toString(Arrays.copyOfRange(output, from, to)));
+    }
+
     /**
      * Returns the recommended weight initialization function for a given activation type.
      * <ul>
@@ -0,0 +1,50 @@
+package Network;
+
+/**
+ * A {@link Dataset} backed by one {@code double[]} per input and expected output, such as the arrays
+ * {@link NN#learn} takes. Rows are neither copied on construction nor when read: {@link #input} and {@link #output}
+ * return the given arrays themselves, so changing them changes the dataset.
+ */
+public final class ArrayDataset implements Dataset {
+
+    private final double[][] inputs, outputs;
+
+    /**
+     * @throws IllegalArgumentException if {@code inputs} and {@code outputs} differ in length, or if their rows don't
+     * all have the same length as the first input and output row respectively
+     */
+    public ArrayDataset(double[][] inputs, double[][] outputs) {
+        if (inputs.length != outputs.length)
+            throw new IllegalArgumentException("inputs and outputs must have the same length");
+        for (int i = 1; i < inputs.length; i++)
+            if (inputs[i].length != inputs[0].length || outputs[i].length != outputs[0].length)
+                throw new IllegalArgumentException("Every input/output pair must have the same dimensions");
+        this.inputs = inputs;
+        this.outputs = outputs;
+    }
+
+    @Override
+    public int size() {
+        return inputs.length;
+    }
+
+    @Override
+    public int inputNum() {
+        return inputs.length == 0 ? 0 : inputs[0].length;
+    }
+
+    @Override
+    public int outputNum() {
+        return outputs.length == 0 ? 0 : outputs[0].length;
+    }
+
+    @Override
+    public double[] input(int index, double[] buffer) {
+        return inputs[index];
+    }
+
+    @Override
+    public double[] output(int index, double[] buffer) {
+        return outputs[index];
+    }
+}
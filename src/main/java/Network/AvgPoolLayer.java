@@ -0,0 +1,64 @@
+package Network;
+
+import java.util.Arrays;
+
+/**
+ * A {@link PoolingLayer} whose every output neuron is the mean of the input neurons in its window.
+ * <br>The backward pass spreads each dz_dC evenly over its window. The layer keeps no per-sample state, so it is
+ * safe to share between training workers.
+ */
+class AvgPoolLayer extends PoolingLayer {
+
+    AvgPoolLayer(int inputWidth, int inputHeight, int inputLength, int poolWidth, int poolHeight,
+                 int strideWidth, int strideHeight) {
+        super(inputWidth, inputHeight, inputLength, poolWidth, poolHeight, strideWidth, strideHeight);
+    }
+
+    @Override
+    void calculateWeightedOutput(double[] batch, int batchSize, double[] output) {
+        if (batch.length != batchSize * inputVolume())
+            throw new IllegalArgumentException("input length must equal input volume");
+        int inputPlane = inputWidth * inputHeight, outputPlane = outputWidth * outputHeight;
+        double scale = 1.0 / (poolWidth * poolHeight);
+        Linalg.parallelFor(batchSize * inputLength, work(batchSize), plane -> {
+            int in = plane * inputPlane, out = plane * outputPlane;
+            for (int y = 0; y < outputHeight; y++)
+                for (int x = 0; x < outputWidth; x++) {
+                    int corner = in + x * strideWidth + y * strideHeight * inputWidth;
+                    double sum = 0;
+                    for (int poolY = 0; poolY < poolHeight; poolY++)
+                        for (int poolX = 0, row = corner + poolY * inputWidth; poolX < poolWidth; poolX++)
+                            sum += batch[row + poolX];
+                    output[out + x + y * outputWidth] = sum * scale;
+                }
+        });
+    }
+
+    @Override
+    void updateGradient(double[] dz_dC, double[] x, int batchSize, double[] da_dC) {
+        if (x.length != batchSize * inputVolume())
+            throw new IllegalArgumentException("input length must equal input volume");
+        int inputPlane = inputWidth * inputHeight, outputPlane = outputWidth * outputHeight;
+        double scale = 1.0 / (poolWidth * poolHeight);
+        Arrays.fill(da_dC, 0, batchSize * inputVolume(), 0);
+        //overlapping windows of one plane add into the same neurons, so every plane is one task
+        Linalg.parallelFor(batchSize * inputLength, work(batchSize), plane -> {
+            int in = plane * inputPlane, out = plane * outputPlane;
+            for (int y = 0; y < outputHeight; y++)
+                for (int x1 = 0; x1 < outputWidth; x1++) {
+                    int corner = in + x1 * strideWidth + y * strideHeight * inputWidth;
+                    double gradient = dz_dC[out + x1 + y * outputWidth] * scale;
+                    for (int poolY = 0; poolY < poolHeight; poolY++)
+                        for (int poolX = 0, row = corner + poolY * inputWidth; poolX < poolWidth; poolX++)
+                            da_dC[row + poolX] += gradient;
+                }
+        });
+    }
+
+    //noinspection CloneDoesNotCallSuperClone,CloneDoesNotThrowCloneNotSupportedException
+    @Override
+    @SuppressWarnings("MethodDoesNotCallSuperMethod")
+    public AvgPoolLayer clone() {
+        return new AvgPoolLayer(inputWidth, inputHeight, inputLength, poolWidth, poolHeight, strideWidth, strideHeight);
+    }
+}
@@ -0,0 +1,197 @@
+package Network;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A fixed-size {@link Dataset} that stores every value in one contiguous array of 8-bit or 16-bit codes, decoding a
+ * sample into the caller's buffer only when it is read. An MNIST image takes 784 bytes as {@link Encoding#UINT8}
+ * instead of the 6272 bytes of a {@code double[784]}, and its {@code 1/255} normalization is applied while decoding.
+ * <br><br>Inputs are normalized: code {@code q} decodes to {@code q * scale + shift}, so {@link #set} encodes an input
+ * value {@code v} as {@code (v - shift) / scale}. Expected outputs, usually one-hot vectors, are stored in the same
+ * encoding without normalization.
+ * <p>
+ * Class Invariants:
+ * <ul>
+ *   <li>Value {@code j} of test case {@code i}'s input lives at {@code inputs[i * inputNum + j]}, and value {@code j}
+ *       of its expected output at {@code outputs[i * outputNum + j]}; both are {@code byte[]} for
+ *       {@link Encoding#UINT8} and {@code short[]} for {@link Encoding#FLOAT16}.</li>
+ *   <li>{@code uint8Inputs[q]} is the decoded input value of code {@code q}, so decoding a uint8 input is a table
+ *       lookup per value.</li>
+ *   <li>Test cases that were never {@link #set} decode to the code 0.</li>
+ * </ul>
+ */
+public final class CompactDataset implements Dataset {
+
+    /**
+     * Enum representing how a {@link CompactDataset} stores each value.
+     * <ul>
+     *     <li><strong>UINT8</strong>: One unsigned byte per value, for integer codes {@code 0 ~ 255} such as pixels.</li>
+     *     <li><strong>FLOAT16</strong>: One IEEE 754 half-precision float per value, about 3 significant digits.</li>
+     * </ul>
+     */
+    public enum Encoding {
+        UINT8,
+        FLOAT16
+    }
+
+    private final int size, inputNum, outputNum;
+    private final Encoding encoding;
+    private final double scale, shift;
+
+    /** The codes of every input and expected output, {@code byte[]} or {@code short[]} depending on {@link #encoding} */
+    private final Object inputs, outputs;
+
+    /** The decoded input value of every uint8 code, or null for {@link Encoding#FLOAT16} */
+    private final double[] uint8Inputs;
+
+    /**
+     * Creates a dataset of {@code size} test cases whose inputs decode as {@code code * scale + shift}.
+     * @throws IllegalArgumentException if a dimension is negative, {@code scale} is zero or not finite, or the
+     * dataset wouldn't fit in a single array
+     */
+    public CompactDataset(int size, int inputNum, int outputNum, Encoding encoding, double scale, double shift) {
+        if (size < 0 || inputNum < 0 || outputNum < 0)
+            throw new IllegalArgumentException("size and dimensions must not be negative");
+        if (scale == 0 || !Double.isFinite(scale) || !Double.isFinite(shift))
+            throw new IllegalArgumentException("scale must be finite and non-zero, and shift must be finite");
+        if ((long) size * inputNum > Integer.MAX_VALUE || (long) size * outputNum > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("dataset must fit in a single array");
+        this.size = size;
+        this.inputNum = inputNum;
+        this.outputNum = outputNum;
+        this.encoding = Objects.requireNonNull(encoding);
+        this.scale = scale;
+        this.shift = shift;
+        if (encoding == Encoding.UINT8) {
+            this.inputs = new byte[size * inputNum];
+            this.outputs = new byte[size * outputNum];
+            this.uint8Inputs = new double[256];
+            for (int q = 0; q < 256; q++) uint8Inputs[q] = q * scale + shift;
+        } else {
+            this.inputs = new short[size * inputNum];
+            this.outputs = new short[size * outputNum];
+            this.uint8Inputs = null;
+        }
+    }
+
+    /** Creates a dataset of {@code size} test cases stored without normalization */
+    public CompactDataset(int size, int inputNum, int outputNum, Encoding encoding) {
+        this(size, inputNum, outputNum, encoding, 1, 0);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int inputNum() {
+        return inputNum;
+    }
+
+    @Override
+    public int outputNum() {
+        return outputNum;
+    }
+
+    public Encoding encoding() {
+        return encoding;
+    }
+
+    /**
+     * Encodes test case {@code index}.
+     * @throws IllegalArgumentException if the input or expected output has the wrong length, or a
+     * {@link Encoding#UINT8} value doesn't round to a code in {@code [0, 255]}
+     */
+    public void set(int index, double[] input, double[] expectedOutput) {
+        Objects.checkIndex(index, size);
+        if (input.length != inputNum || expectedOutput.length != outputNum)
+            throw new IllegalArgumentException("input/output pair must match dataset dimensions");
+        setInput(index, input);
+        if (encoding == Encoding.UINT8) {
+            byte[] out = (byte[]) outputs;
+            for (int j = 0; j < outputNum; j++) out[index * outputNum + j] = toUint8(expectedOutput[j]);
+        } else {
+            short[] out = (short[]) outputs;
+            for (int j = 0; j < outputNum; j++) out[index * outputNum + j] = Float.floatToFloat16((float) expectedOutput[j]);
+        }
+    }
+
+    /**
+     * Sets the expected output of test case {@code index} to the one-hot vector of class {@code label}.
+     * @throws IllegalArgumentException if {@code label} is not in {@code [0, outputNum)}
+     */
+    public void setLabel(int index, int label) {
+        Objects.checkIndex(index, size);
+        if (label < 0 || label >= outputNum)
+            throw new IllegalArgumentException("label " + label + " is not in [0, " + outputNum + ")");
+        int base = index * outputNum;
+        if (encoding == Encoding.UINT8) {
+            byte[] out = (byte[]) outputs;
+            Arrays.fill(out, base, base + outputNum, (byte) 0);
+            out[base + label] = 1;
+        } else {
+            short[] out = (short[]) outputs;
+            Arrays.fill(out, base, base + outputNum, (short) 0);
+            out[base + label] = Float.floatToFloat16(1);
+        }
+    }
+
+    /** Encodes the input of test case {@code index}, which the caller has checked to be {@code inputNum} values long */
+    void setInput(int index, double[] input) {
+        if (encoding == Encoding.UINT8) {
+            byte[] in = (byte[]) inputs;
+            for (int j = 0; j < inputNum; j++) in[index * inputNum + j] = toUint8((input[j] - shift) / scale);
+        } else {
+            short[] in = (short[]) inputs;
+            for (int j = 0; j < inputNum; j++) in[index * inputNum + j] = Float.floatToFloat16((float) ((input[j] - shift) / scale));
+        }
+    }
+
+    /**
+     * Copies the uint8 codes of {@code samples} consecutive inputs, starting with test case {@code index}, from
+     * {@code codes[offset ...]}. Only valid for {@link Encoding#UINT8}.
+     */
+    void setInputCodes(int index, byte[] codes, int offset, int samples) {
+        if (encoding != Encoding.UINT8)
+            throw new IllegalStateException("only uint8 datasets store byte codes");
+        System.arraycopy(codes, offset, (byte[]) inputs, index * inputNum, samples * inputNum);
+    }
+
+    /** Rounds {@code value} to the nearest uint8 code */
+    static byte toUint8(double value) {
+        long code = Math.round(value);
+        if (code < 0 || code > 255 || Double.isNaN(value))
+            throw new IllegalArgumentException("value " + value + " doesn't fit in an unsigned byte");
+        return (byte) code;
+    }
+
+    @Override
+    public double[] input(int index, double[] buffer) {
+        Objects.checkIndex(index, size);
+        int base = index * inputNum;
+        if (encoding == Encoding.UINT8) {
+            byte[] in = (byte[]) inputs;
+            for (int j = 0; j < inputNum; j++) buffer[j] = uint8Inputs[in[base + j] & 0xFF];
+        } else {
+            short[] in = (short[]) inputs;
+            for (int j = 0; j < inputNum; j++) buffer[j] = Float.float16ToFloat(in[base + j]) * scale + shift;
+        }
+        return buffer;
+    }
+
+    @Override
+    public double[] output(int index, double[] buffer) {
+        Objects.checkIndex(index, size);
+        int base = index * outputNum;
+        if (encoding == Encoding.UINT8) {
+            byte[] out = (byte[]) outputs;
+            for (int j = 0; j < outputNum; j++) buffer[j] = out[base + j] & 0xFF;
+        } else {
+            short[] out = (short[]) outputs;
+            for (int j = 0; j < outputNum; j++) buffer[j] = Float.float16ToFloat(out[base + j]);
+        }
+        return buffer;
+    }
+}
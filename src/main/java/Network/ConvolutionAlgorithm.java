@@ -0,0 +1,68 @@
+package Network;
+
+/**
+ * Enum representing the ways a {@link ConvolutionalLayer} can execute its forward and backward passes.
+ * <p>
+ * Every algorithm computes the same function (up to floating-point rounding), so the choice only affects speed.
+ * <ul>
+ *     <li><strong>DIRECT</strong>: Slides each kernel over the input with nested scalar loops.</li>
+ *     <li><strong>IM2COL</strong>: Lowers the input into a patch matrix and runs the convolution as matrix-matrix products.</li>
+ *     <li><strong>WINOGRAD</strong>: Computes 2x2 output tiles of 3x3, stride-1 kernels with the Winograd F(2x2, 3x3) transforms.</li>
+ *     <li><strong>FFT</strong>: Multiplies the Fourier transforms of the input and the kernels, for large kernels.</li>
+ *     <li><strong>AUTO</strong>: Benchmarks the other algorithms on the layer's shape on first use and runs the fastest.</li>
+ * </ul>
+ */
+public enum ConvolutionAlgorithm {
+    /**
+     * Direct convolution: every output neuron is the sum of one kernel multiplied element-wise with the input
+     * region under it, looked up one weight at a time.
+     * <p>
+     * Needs no extra memory, which makes it the cheapest choice for tiny inputs and kernels.
+     */
+    DIRECT,
+
+    /**
+     * im2col convolution: the (channel-summed) input region under every output position is copied into one column
+     * of a {@code [kernelWidth * kernelHeight][outputWidth * outputHeight]} patch matrix, so that
+     * <pre>
+     * {@code output         = kernels   * patches  + bias
+     * kernelsGradient += dz_dC     * patches^T
+     * patchesGradient  = kernels^T * dz_dC}
+     * </pre>
+     * all run on the cache-blocked {@link Linalg#gemm} kernel. {@code patchesGradient} is then scattered back into
+     * da_dC (col2im).
+     * <p>
+     * Layers whose kernels never leave the input (no padding, or 1x1 kernels with stride 1) index the input linearly
+     * instead: the input layers are summed once, 1x1 kernels skip the patch matrix, and stride-1 patch rows are
+     * copied as contiguous runs.
+     */
+    IM2COL,
+
+    /**
+     * Winograd F(2x2, 3x3) convolution: the (channel-summed) input is cut into overlapping 4x4 tiles, and every 2x2
+     * output tile is one element-wise product of a transformed tile and a transformed kernel (see {@link Winograd}),
+     * needing 16 multiplications instead of 36. The backward pass runs the transposed transforms.
+     * <p>
+     * Only applies to 3x3 kernels with stride 1; layers of any other shape fall back to {@link #DIRECT}.
+     */
+    WINOGRAD,
+
+    /**
+     * FFT convolution: the (channel-summed) input and every kernel are zero-padded to a power-of-two size and
+     * transformed by {@link FFT}, so that each kernel's output is one element-wise product and one inverse transform,
+     * sampled every stride. This costs {@code O(N log N)} per kernel instead of the {@code O(N * K^2)} of a direct
+     * convolution with a {@code K x K} kernel, which pays off for large kernels.
+     * <p>
+     * The kernel spectra are cached and reused until the kernels change, so a training step transforms every kernel
+     * once for all its forward and backward passes.
+     */
+    FFT,
+
+    /**
+     * Autotuned convolution: on its first pass the layer times every algorithm above that applies to its shape, at
+     * that pass's batch size and number of concurrent workers, and runs the fastest from then on. The decision is
+     * cached on disk by layer shape, batch size, workers and CPU, so later JVM starts skip the benchmark (see
+     * {@link ConvolutionTuner}).
+     */
+    AUTO
+}
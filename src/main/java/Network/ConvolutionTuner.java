@@ -0,0 +1,222 @@
+package Network;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Picks the fastest {@link ConvolutionAlgorithm} for the shape of a {@link ConvolutionalLayer} by timing a batched
+ * forward and backward pass of every candidate, the way a training worker runs them, see
+ * {@link ConvolutionAlgorithm#AUTO}.
+ * <p>
+ * Decisions are keyed by the layer's geometry, the worker's batch size, the number of workers sharing the processors
+ * and the CPU (architecture, model name and core count). They are kept in memory and persisted to a
+ * {@link Properties} file, so later JVM starts on the same machine skip the benchmark. The shared tuner's file is
+ * {@code ~/.ml-optimizers/convolution-algorithms.properties} unless the {@value #CACHE_PROPERTY} system property names
+ * another. A cache file that can't be read or written only costs another benchmark.
+ */
+final class ConvolutionTuner {
+
+    /** The system property naming the decision cache file of {@link #shared()} */
+    static final String CACHE_PROPERTY = "ml.convolution.cache";
+
+    /** The number of untimed passes run before a candidate is timed */
+    private static final int WARMUP_RUNS = 2;
+
+    /** The number of timed passes per candidate, of which the fastest counts */
+    private static final int TIMED_RUNS = 5;
+
+    private static final String CPU = cpu();
+
+    private static ConvolutionTuner shared;
+
+    private final Path cacheFile;
+
+    /** Every decision made or loaded so far, by {@link #key} */
+    private final Properties decisions = new Properties();
+
+    private boolean loaded;
+
+    ConvolutionTuner(Path cacheFile) {
+        this.cacheFile = cacheFile;
+    }
+
+    /** Returns the tuner every {@link ConvolutionAlgorithm#AUTO} layer uses, created on first use */
+    static synchronized ConvolutionTuner shared() {
+        if (shared == null) {
+            String file = System.getProperty(CACHE_PROPERTY);
+            shared = new ConvolutionTuner(file != null ? Path.of(file) :
+                    Path.of(System.getProperty("user.home"), ".ml-optimizers", "convolution-algorithms.properties"));
+        }
+        return shared;
+    }
+
+    /**
+     * Returns the cached decision for {@code layer}'s shape on this CPU, run by one of {@code workers} concurrent
+     * workers on batches of {@code batchSize}, or benchmarks every candidate algorithm on a layer of the same shape
+     * that way, caches the fastest and returns it. Never returns {@link ConvolutionAlgorithm#AUTO}.
+     */
+    synchronized ConvolutionAlgorithm choose(ConvolutionalLayer layer, int batchSize, int workers) {
+        if (!loaded) load();
+        String key = key(layer, batchSize, workers);
+        String decision = decisions.getProperty(key);
+        if (decision != null)
+            for (ConvolutionAlgorithm algorithm : candidates(layer))
+                if (algorithm.name().equals(decision)) return algorithm;
+
+        ConvolutionAlgorithm fastest = null;
+        long fastestTime = Long.MAX_VALUE;
+        for (ConvolutionAlgorithm algorithm : candidates(layer)) {
+            long time = time(layer.withAlgorithm(algorithm), batchSize, workers);
+            if (time < fastestTime) {
+                fastest = algorithm;
+                fastestTime = time;
+            }
+        }
+        decisions.setProperty(key, fastest.name());
+        save();
+        return fastest;
+    }
+
+    /** The cache key of {@code layer}'s shape on this CPU, run by one of {@code workers} workers on batches of {@code batchSize} */
+    static String key(ConvolutionalLayer layer, int batchSize, int workers) {
+        return layer.shape() + ",batch=" + batchSize + ",workers=" + workers + "@" + CPU;
+    }
+
+    /** Every concrete algorithm worth timing for {@code layer}; Winograd only when it doesn't fall back to direct */
+    private static List<ConvolutionAlgorithm> candidates(ConvolutionalLayer layer) {
+        return layer.winogradApplies() ?
+                List.of(ConvolutionAlgorithm.DIRECT, ConvolutionAlgorithm.IM2COL, ConvolutionAlgorithm.WINOGRAD, ConvolutionAlgorithm.FFT) :
+                List.of(ConvolutionAlgorithm.DIRECT, ConvolutionAlgorithm.IM2COL, ConvolutionAlgorithm.FFT);
+    }
+
+    /**
+     * The fastest of {@link #TIMED_RUNS} rounds of batched forward and backward passes of {@code layer} on random
+     * data, in nanoseconds. Every round runs one pass over {@code batchSize} samples on each of {@code workers}
+     * gradient shards at once, each on its own thread and inside a parallel region like a training worker, and
+     * lasts until the slowest finishes. Training changes the kernels after every batch, so every round starts
+     * without the FFT kernel spectra a previous round cached, and the FFT candidate pays for transforming the
+     * kernels like it does in training.
+     */
+    private static long time(ConvolutionalLayer layer, int batchSize, int workers) {
+        Random random = new Random(0);
+        layer.initialize(random::nextGaussian, Optimizer.SGD);
+        double[] x = new double[batchSize * layer.inputVolume()], dz_dC = new double[batchSize * layer.outputLength()];
+        for (int i = 0; i < x.length; i++) x[i] = random.nextGaussian();
+        for (int i = 0; i < dz_dC.length; i++) dz_dC[i] = random.nextGaussian();
+        Layer[] shards = new Layer[workers];
+        double[][] outputs = new double[workers][], da_dC = new double[workers][];
+        for (int worker = 0; worker < workers; worker++) {
+            shards[worker] = worker == 0 ? layer : layer.gradientShard();
+            outputs[worker] = new double[dz_dC.length];
+            da_dC[worker] = new double[x.length];
+        }
+
+        ExecutorService executor = workers > 1 ? Executors.newFixedThreadPool(workers - 1) : null;
+        try {
+            long fastest = Long.MAX_VALUE;
+            for (int run = 0; run < WARMUP_RUNS + TIMED_RUNS; run++) {
+                layer.invalidateKernelSpectra();
+                long start = System.nanoTime();
+                Future<?>[] others = new Future<?>[workers - 1];
+                for (int worker = 1; worker < workers; worker++) {
+                    int index = worker;
+                    others[worker - 1] = executor.submit(() -> Linalg.runInParallelRegion(workers, () ->
+                            pass(shards[index], x, dz_dC, batchSize, outputs[index], da_dC[index])));
+                }
+                if (workers > 1) Linalg.runInParallelRegion(workers, () -> pass(layer, x, dz_dC, batchSize, outputs[0], da_dC[0]));
+                else pass(layer, x, dz_dC, batchSize, outputs[0], da_dC[0]);
+                for (Future<?> other : others) other.get();
+                if (run >= WARMUP_RUNS) fastest = Math.min(fastest, System.nanoTime() - start);
+            }
+            return fastest;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while benchmarking convolution algorithms", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("benchmarking convolution algorithms failed", e.getCause());
+        } finally {
+            if (executor != null) executor.shutdown();
+        }
+    }
+
+    /** One batched forward and backward pass of {@code layer}, as a training worker runs it */
+    private static void pass(Layer layer, double[] x, double[] dz_dC, int batchSize, double[] output, double[] da_dC) {
+        layer.calculateWeightedOutput(x, batchSize, output);
+        layer.updateGradient(dz_dC, x, batchSize, da_dC);
+    }
+
+    private void load() {
+        loaded = true;
+        if (!Files.isRegularFile(cacheFile)) return;
+        try (InputStream in = Files.newInputStream(cacheFile)) {
+            decisions.load(in);
+        } catch (IOException | IllegalArgumentException ignored) {
+            //an unreadable cache is rebuilt one benchmark at a time
+        }
+    }
+
+    /**
+     * Writes every decision to a temporary file first, so a concurrent JVM never reads a half-written cache. The
+     * decisions another JVM saved since this one loaded the file are merged in first, so they aren't lost; where both
+     * decided the same key, this JVM's decision wins.
+     */
+    private void save() {
+        Path temporary = null;
+        try {
+            Path directory = cacheFile.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            Properties merged = new Properties();
+            if (Files.isRegularFile(cacheFile))
+                try (InputStream in = Files.newInputStream(cacheFile)) {
+                    merged.load(in);
+                } catch (IOException | IllegalArgumentException ignored) {
+                    //an unreadable cache is replaced by this JVM's decisions
+                }
+            merged.putAll(decisions);
+            decisions.putAll(merged);
+
+            temporary = Files.createTempFile(directory, "convolution-algorithms", ".tmp");
+            try (OutputStream out = Files.newOutputStream(temporary)) {
+                merged.store(out, "Fastest ConvolutionAlgorithm by layer shape, batch size, workers and CPU");
+            }
+            Files.move(temporary, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | UnsupportedOperationException ignored) {
+            //the decision still holds for this JVM
+        } finally {
+            if (temporary != null)
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException ignored) {
+                    //only leaves a stray temporary file behind
+                }
+        }
+    }
+
+    /** Identifies this machine's CPU by architecture, model name (where the OS reports it) and core count */
+    private static String cpu() {
+        String model = System.getenv("PROCESSOR_IDENTIFIER");
+        Path cpuInfo = Path.of("/proc/cpuinfo");
+        if (model == null && Files.isReadable(cpuInfo))
+            try (Stream<String> lines = Files.lines(cpuInfo)) {
+                model = lines.filter(line -> line.startsWith("model name"))
+                        .map(line -> line.substring(line.indexOf(':') + 1).trim())
+                        .findFirst().orElse(null);
+            } catch (IOException | UncheckedIOException ignored) {
+                //the architecture and core count still tell most machines apart
+            }
+        return System.getProperty("os.arch") + (model != null ? "/" + model : "") + "/" + Runtime.getRuntime().availableProcessors() + "cpu";
+    }
+}
@@ -2,9 +2,7 @@ package Network;
 
 import java.util.Arrays;
 import java.util.Objects;
-import java.util.function.BiConsumer;
 import java.util.function.Supplier;
-import java.util.stream.IntStream;
 
 /** A Collection of Kernels and output neurons specialized in Image Processing.
  * <br><br> A Kernel is a 2D matrix of synapses that slides over the input matrix,
@@ -13,20 +11,22 @@ import java.util.stream.IntStream;
  * to the result of running the kernel on a subsection of the input matrix.
  * <br>When the input matrix is 3D, each layer of the input matrix is processed independently
  * and the 3D output matrix is compressed into 2D matrix through addition.
+ * <br><br>The passes run with the {@link ConvolutionAlgorithm} chosen at construction; every algorithm computes
+ * the same output and gradients.
  * <br><br>Output Dimension: The Output layer will be a 3D matrix, where each kernel creates a layer of its own.
  * The dimension of each kernel layer is:
  * <br> -WIDTH = ceilDiv(inputWidth - kernelWidth + 1, strideWidth)
  * <br> -HEIGHT = ceilDiv(inputHeight - kernelHeight + 1, strideHeight)
+ * <br><br>Inputs and outputs are stored in the {@link TensorLayout} chosen at construction, channel-first by default.
  * <br><br>Requires: {@code inputWidth * inputHeight * inputLength} = {@code input.length} in {@link #calculateWeightedOutput(double[])}
  * <p>
  * Class Invariants:
  * <ul>
- *   <li>{@code kernels} is shaped {@code [numKernels][kernelWidth][kernelHeight]}. In
- *       particular {@code kernels.length == numKernels}, {@code kernels[k].length == kernelWidth},
- *       and {@code kernels[k][x].length == kernelHeight}; do NOT use {@code kernels[0].length}
- *       to obtain {@code kernelHeight} (it gives {@code kernelWidth}).</li>
+ *   <li>{@code kernels} is a {@code [numKernels][kernelWidth][kernelHeight]} tensor stored in one flat array:
+ *       weight {@code (x, y)} of kernel {@code k} lives at {@code kernels[k * kernelWidth * kernelHeight + x * kernelHeight + y]}
+ *       (see {@link #kernelIndex}).</li>
  *   <li>{@code kernelsGradient}, {@code kernelsVelocity} (when non-null) and
- *       {@code kernelsVelocitySquared} (when non-null) share the same shape as {@code kernels}.</li>
+ *       {@code kernelsVelocitySquared} (when non-null) share the same flat layout as {@code kernels}.</li>
  *   <li>RMS_PROP and ADAM normalize the update by {@code sqrt(kernelsVelocitySquared + epsilon)}
  *       -- NOT by the raw {@code kernelsGradient}. {@code kernelsVelocitySquared} is a
  *       non-negative EMA of squared gradients, so the divisor is real and finite for any input
@@ -34,56 +34,158 @@ import java.util.stream.IntStream;
  *   <li>{@link #equals} is reflexive: an instance equals itself and any structurally identical
  *       ConvolutionalLayer. The check requires the {@code instanceof} branch AND
  *       {@code super.equals(obj)} to both succeed before comparing kernel arrays.</li>
- *   <li>{@link #clone} returns a structurally-equal independent copy: each
- *       {@code kernels[i][j]} row of length {@code kernelHeight} is copied element-wise,
- *       preserving the {@code [numKernels][kernelWidth][kernelHeight]} shape regardless of
+ *   <li>{@link #equals} ignores the {@link ConvolutionAlgorithm}, which only decides how the same function is
+ *       computed; {@link #clone} and gradient shards keep it. Gradient shards also keep the algorithm an
+ *       {@code AUTO} layer has already been tuned to.</li>
+ *   <li>Padded position {@code (x, y)} of input layer {@code layer} reads the input at
+ *       {@code layer * inputLayerStride + paddedRowOffsets[y] + paddedColumns[x]} (see {@link #inputIndex}).
+ *       The padding mirrors the input at its borders, which is separable, so two 1D tables describe it; the
+ *       {@link TensorLayout} only changes the strides they are scaled by.</li>
+ *   <li>Output neuron {@code position} of kernel {@code kernel}, and its bias and dz_dC, live at
+ *       {@code kernel * outputKernelStride + position * outputPositionStride} (see {@link #outputIndex}).</li>
+ *   <li>{@code linearInput} holds when the kernels only ever cover the input itself (no padding, or padding that
+ *       adds no cells); both tables are then the identity, and {@link ConvolutionAlgorithm#IM2COL} runs the
+ *       channel-summed fast paths (see {@link #linearWeightedOutput}).</li>
+ *   <li>{@link #clone} returns a structurally-equal independent copy, copying every flat array in one shot
+ *       and preserving the {@code [numKernels][kernelWidth][kernelHeight]} shape regardless of
  *       whether {@code kernelWidth == kernelHeight}.</li>
  * </ul>
  */
 class ConvolutionalLayer extends Layer {
 
     /**
-     * An array of kernels, which each are a 2D matrix of weights
+     * Every kernel's 2D matrix of weights, stored back to back in one flat array (see {@link #kernelIndex})
      * <br>Layers: The kernel at that layer.
      * <br>Rows & Columns: A 2D collection of weights connecting from the previous layer to
      * a single neuron {@code n} in this layer.
      */
-    private final double[][][] kernels;
+    private final double[] kernels;
+
+    /** Every kernel's weights velocities used in SGD with momentum, laid out like {@link #kernels} */
+    private double[] kernelsVelocity;
+
+    /** Every kernel's weights velocities for RMS-Prop, laid out like {@link #kernels} */
+    private double[] kernelsVelocitySquared;
+
+    /** Every kernel's gradients of the loss function with respect to the weights, laid out like {@link #kernels} */
+    private final double[] kernelsGradient;
+
+    private final int inputWidth, inputHeight, inputLength;
+    private final int kernelWidth, kernelHeight, numKernels;
+    private final int outputWidth, outputHeight;
+    private final int strideWidth, strideHeight;
+    private final boolean padding;
+    private final ConvolutionAlgorithm algorithm;
+    private final TensorLayout layout;
+
+    /** The distance between neighbouring input layers, and between neighbouring positions of one input layer */
+    private final int inputLayerStride, inputPositionStride;
+
+    /** The distance between the outputs of neighbouring kernels, and between neighbouring outputs of one kernel */
+    private final int outputKernelStride, outputPositionStride;
+
+    /** The algorithm the passes run with: {@link #algorithm}, or the tuned choice once {@code AUTO} is resolved */
+    private ConvolutionAlgorithm executedAlgorithm;
+
+    /** The input column of every padded column, mirroring the input at its left and right borders */
+    private final int[] paddedColumns;
+
+    /** The offset in an input layer of every padded row, {@code inputWidth} times its mirrored input row */
+    private final int[] paddedRowOffsets;
+
+    /** Whether the covered region lies within the input, so padded positions are input positions */
+    private final boolean linearInput;
+
+    /** Whether the kernels are 1x1, so the channel-summed fast path needs no patch matrix at all */
+    private final boolean oneByOne;
 
     /**
-     * An array of kernel velocities, which each are a 2D matrix of weights velocities used in SGD with momentum
-     * <br>Layers: The kernel at that layer.
-     * <br>Rows & Columns: A 2D collection of weights connecting from the previous layer to
-     * a single neuron {@code n} in this layer.
+     * Scratch buffers of the {@link ConvolutionAlgorithm#IM2COL} passes: the patch matrix, its gradient and the
+     * channel-first copy of a channel-last output or dz_dC. Per worker, since gradient shards of the same layer run on
+     * different workers at once.
      */
-    private double[][][] kernelsVelocity;
+    private static final WorkerLocal<double[][]> PATCHES = WorkerLocal.withInitial(() -> new double[3][0]);
 
     /**
-     * An array of kernel velocities, which each are a 2D matrix of weights velocities for RMS-Prop
-     * <br>Layers: The kernel at that layer.
-     * <br>Rows & Columns: A 2D collection of weights connecting from the previous layer to
-     * a single neuron {@code n} in this layer.
+     * Scratch buffers of the linearly-indexed fast paths: the channel-summed input and its gradient. Per worker, like
+     * {@link #PATCHES}.
      */
-    private double[][][] kernelsVelocitySquared;
+    private static final WorkerLocal<double[][]> PLANES = WorkerLocal.withInitial(() -> new double[2][0]);
 
     /**
-     * An array of kernel gradients, which each are a 2D matrix of gradients of the loss function with respect to the weights
-     * <br>Layers: The kernel at that layer.
-     * <br>Rows & Columns: A 2D collection of weights connecting from the previous layer to
-     * a single neuron {@code n} in this layer.
+     * Scratch buffers of the {@link ConvolutionAlgorithm#WINOGRAD} passes: the transformed kernels, the transformed
+     * input tiles, the channel-summed input (and later its gradient) and the input tile gradients. Per worker, like
+     * {@link #PATCHES}.
      */
-    private final double[][][] kernelsGradient;
+    private static final WorkerLocal<double[][]> WINOGRAD = WorkerLocal.withInitial(() -> new double[4][0]);
 
-    private final int inputWidth, inputHeight, inputLength;
-    private final int kernelWidth, kernelHeight, numKernels;
-    private final int outputWidth, outputHeight;
-    private final int strideWidth, strideHeight;
-    private final boolean padding;
-    private final int[][][] inputVectorToInputMatrix;
+    /**
+     * Scratch tiles of a single Winograd task: the element-wise product or transformed output gradient, the running
+     * sum or untransformed input tile, the 2x2 output tile with room for its 2x4 intermediate, and the 2x2 output
+     * gradient tile. Per worker, so a task reuses them for every tile instead of allocating.
+     */
+    private static final WorkerLocal<double[][]> WINOGRAD_TILES = WorkerLocal.withInitial(() ->
+            new double[][] {new double[Winograd.TILE], new double[Winograd.TILE], new double[8], new double[4]});
+
+    /**
+     * Scratch buffers of the {@link ConvolutionAlgorithm#FFT} passes: the input spectrum (real, imaginary), every
+     * kernel's dz_dC spectrum (real, imaginary), one pair of signals being transformed by a single task (real,
+     * imaginary) and the input gradient spectrum (real, imaginary). Per worker, like {@link #PATCHES}.
+     */
+    private static final WorkerLocal<double[][]> FFT_BUFFERS = WorkerLocal.withInitial(() -> new double[8][0]);
+
+    /**
+     * The kernel spectra of the {@link ConvolutionAlgorithm#FFT} passes, shared by a layer and all of its gradient
+     * shards. Every change to the kernels bumps {@link #version}; the next pass transforms the kernels again into
+     * the same arrays, under this holder's lock, so only one worker of a batch transforms them.
+     */
+    private static final class KernelSpectra {
+        /** The number of times the kernels have changed */
+        private long version;
+
+        /** The {@link #version} of the kernels {@link #re} and {@link #im} hold the spectra of, -1 when none */
+        private long transformed = -1;
+
+        /** The spectra of every kernel, {@code n} values each */
+        private double[] re = new double[0], im = new double[0];
+
+        synchronized void invalidate() {
+            version++;
+        }
+    }
+
+    /** The kernel spectra of the FFT passes, reused by every forward and backward pass until the kernels change */
+    private final KernelSpectra kernelSpectra;
+
+    /**
+     * The number of tasks the direct backward pass aims for when computing da_dC. Each input layer is one task; when
+     * there are fewer input layers than this, the kernels are also split into groups whose partial da_dC are added
+     * together afterward. The grouping depends only on the layer's shape, so the result is bit-for-bit the same
+     * whether the tasks run in parallel or not.
+     */
+    private static final int GRADIENT_TASKS = 8;
+
+    /** Per-worker partial da_dC of every kernel group but the first, see {@link #GRADIENT_TASKS} */
+    private static final WorkerLocal<double[][]> GRADIENT_PARTIALS = WorkerLocal.withInitial(() -> new double[1][0]);
 
     ConvolutionalLayer(int inputWidth, int inputHeight, int inputLength,
                               int kernelWidth, int kernelHeight, int numKernels,
                               int strideWidth, int strideHeight, boolean padding) {
+        this(inputWidth, inputHeight, inputLength, kernelWidth, kernelHeight, numKernels, strideWidth, strideHeight, padding,
+                ConvolutionAlgorithm.IM2COL);
+    }
+
+    ConvolutionalLayer(int inputWidth, int inputHeight, int inputLength,
+                              int kernelWidth, int kernelHeight, int numKernels,
+                              int strideWidth, int strideHeight, boolean padding, ConvolutionAlgorithm algorithm) {
+        this(inputWidth, inputHeight, inputLength, kernelWidth, kernelHeight, numKernels, strideWidth, strideHeight, padding,
+                algorithm, TensorLayout.CHANNEL_FIRST);
+    }
+
+    ConvolutionalLayer(int inputWidth, int inputHeight, int inputLength,
+                              int kernelWidth, int kernelHeight, int numKernels,
+                              int strideWidth, int strideHeight, boolean padding, ConvolutionAlgorithm algorithm,
+                              TensorLayout layout) {
         super(padding ? inputWidth * inputHeight * numKernels :
                 Math.ceilDiv(inputWidth - kernelWidth + 1, strideWidth) *
                         Math.ceilDiv(inputHeight - kernelHeight + 1, strideHeight) *
@@ -99,44 +201,88 @@ class ConvolutionalLayer extends Layer {
         this.outputWidth = Math.ceilDiv(inputWidth - kernelWidth + 1, strideWidth);
         this.outputHeight = Math.ceilDiv(inputHeight - kernelHeight + 1, strideHeight);
         this.padding = padding;
-        final int paddingWidth, paddingHeight;
-        if (padding) {
-            paddingWidth = inputWidth * strideWidth - strideWidth - inputWidth + kernelWidth;
-            paddingHeight = inputHeight * strideHeight - strideHeight - inputHeight + kernelHeight;
-        } else {
-            paddingWidth = outputWidth * strideWidth + kernelWidth - inputWidth;
-            paddingHeight = outputHeight * strideHeight + kernelHeight - inputHeight;
-        }
+        this.algorithm = algorithm;
+        this.executedAlgorithm = algorithm == ConvolutionAlgorithm.AUTO ? null : algorithm;
+        this.oneByOne = kernelWidth == 1 && kernelHeight == 1;
+        this.layout = layout;
+        boolean channelFirst = layout == TensorLayout.CHANNEL_FIRST;
+        this.inputLayerStride = channelFirst ? inputWidth * inputHeight : 1;
+        this.inputPositionStride = channelFirst ? 1 : inputLength;
+        this.outputKernelStride = channelFirst ? outputWidth * outputHeight : 1;
+        this.outputPositionStride = channelFirst ? 1 : numKernels;
 
-        this.kernels = new double[numKernels][kernelWidth][kernelHeight];
-        this.kernelsGradient = new double[numKernels][kernelWidth][kernelHeight];
-
-        //initialize inputVectorToInputMatrix converter and find padding
-        inputVectorToInputMatrix = new int[inputWidth + paddingWidth][inputHeight + paddingHeight][inputLength];
-        int paddingLeft, paddingUp;
-        if (padding) { //preserve original dimension size
-            paddingLeft = Math.ceilDiv(paddingWidth, 2);
-            paddingUp = Math.ceilDiv(paddingHeight, 2);
-        } else { //only pad when stride is too big
-            paddingLeft = paddingWidth;
-            paddingUp = paddingHeight;
+        this.kernels = new double[numKernels * kernelWidth * kernelHeight];
+        this.kernelsGradient = new double[numKernels * kernelWidth * kernelHeight];
+        this.kernelSpectra = new KernelSpectra();
+
+        //without padding the covered region, (outputWidth - 1) * strideWidth + kernelWidth wide, never leaves the input
+        final int paddingWidth = padding ? inputWidth * strideWidth - strideWidth - inputWidth + kernelWidth : 0;
+        final int paddingHeight = padding ? inputHeight * strideHeight - strideHeight - inputHeight + kernelHeight : 0;
+        this.linearInput = paddingWidth == 0 && paddingHeight == 0;
+        this.paddedColumns = mirroredIndices(inputWidth, paddingWidth, inputPositionStride);
+        this.paddedRowOffsets = mirroredIndices(inputHeight, paddingHeight, inputWidth * inputPositionStride);
+    }
+
+    /**
+     * The mirrored input position of every position along one axis of {@code size} input cells padded by
+     * {@code padding} cells, half of them (rounded up) before the input, each times {@code scale}
+     */
+    private static int[] mirroredIndices(int size, int padding, int scale) {
+        int[] indices = new int[size + padding];
+        int before = Math.ceilDiv(padding, 2);
+        for (int x = 0; x < indices.length; x++) {
+            int i;
+            if (x < before) i = before - x;
+            else if (x >= size + before) i = 2 * size + before - x;
+            else i = x - before;
+            indices[x] = i * scale;
         }
+        return indices;
+    }
 
-        //transform 1D input array into 3D input matrix and add padding
-        for (int layer = 0; layer < inputLength; layer++)
-            for (int x = 0; x < inputWidth + paddingWidth; x++) {
-                int i;
-                if (x < paddingLeft) i = paddingLeft - x;
-                else if (x >= inputWidth + paddingLeft) i = 2 * inputWidth + paddingLeft - x;
-                else i = x - paddingLeft;
-                for (int y = 0; y < inputHeight + paddingHeight; y++) {
-                    int j;
-                    if (y < paddingUp) j = paddingUp - y;
-                    else if (y >= inputHeight + paddingUp) j = 2 * inputHeight + paddingUp - y;
-                    else j = y - paddingUp;
-                    inputVectorToInputMatrix[x][y][layer] = inputWidth * inputHeight * layer + inputWidth * j + i;
-                }
-            }
+    /** Creates a gradient shard of {@code parameters}, see {@link Layer#gradientShard} */
+    private ConvolutionalLayer(ConvolutionalLayer parameters) {
+        super(parameters);
+        this.inputWidth = parameters.inputWidth;
+        this.inputHeight = parameters.inputHeight;
+        this.inputLength = parameters.inputLength;
+        this.kernelWidth = parameters.kernelWidth;
+        this.kernelHeight = parameters.kernelHeight;
+        this.numKernels = parameters.numKernels;
+        this.strideWidth = parameters.strideWidth;
+        this.strideHeight = parameters.strideHeight;
+        this.outputWidth = parameters.outputWidth;
+        this.outputHeight = parameters.outputHeight;
+        this.padding = parameters.padding;
+        this.algorithm = parameters.algorithm;
+        this.executedAlgorithm = parameters.executedAlgorithm;
+        this.paddedColumns = parameters.paddedColumns;
+        this.paddedRowOffsets = parameters.paddedRowOffsets;
+        this.linearInput = parameters.linearInput;
+        this.layout = parameters.layout;
+        this.inputLayerStride = parameters.inputLayerStride;
+        this.inputPositionStride = parameters.inputPositionStride;
+        this.outputKernelStride = parameters.outputKernelStride;
+        this.outputPositionStride = parameters.outputPositionStride;
+        this.oneByOne = parameters.oneByOne;
+        this.kernels = parameters.kernels;
+        this.kernelsGradient = new double[kernels.length];
+        this.kernelSpectra = parameters.kernelSpectra;
+    }
+
+    /** The index of weight {@code (x, y)} of kernel {@code kernel} in {@link #kernels} and its gradient and velocities */
+    private int kernelIndex(int kernel, int x, int y) {
+        return (kernel * kernelWidth + x) * kernelHeight + y;
+    }
+
+    /** The index in the input of (padded) position {@code (x, y)} of input layer {@code layer} */
+    private int inputIndex(int x, int y, int layer) {
+        return layer * inputLayerStride + paddedRowOffsets[y] + paddedColumns[x];
+    }
+
+    /** The index of output neuron {@code position} ({@code x + y * outputWidth}) of kernel {@code kernel} */
+    private int outputIndex(int kernel, int position) {
+        return kernel * outputKernelStride + position * outputPositionStride;
     }
 
     @Override
@@ -144,123 +290,788 @@ class ConvolutionalLayer extends Layer {
         super.initialize(initializer, optimizer);
 
         if (optimizer == Optimizer.SGD_MOMENTUM || optimizer == Optimizer.ADAM)
-            this.kernelsVelocity = new double[numKernels][kernelWidth][kernelHeight];
+            this.kernelsVelocity = new double[kernels.length];
         if (optimizer == Optimizer.RMS_PROP || optimizer == Optimizer.ADAM)
-            this.kernelsVelocitySquared = new double[numKernels][kernelWidth][kernelHeight];
+            this.kernelsVelocitySquared = new double[kernels.length];
 
         for (int i = 0; i < kernelWidth; i++)
             for (int j = 0; j < kernelHeight; j++)
                 for (int k = 0; k < numKernels; k++)
-                    kernels[k][i][j] = initializer.get();
+                    kernels[kernelIndex(k, i, j)] = initializer.get();
+        kernelSpectra.invalidate();
+    }
+
+    /**
+     * Settles the algorithm the passes run with when configured {@code AUTO}, benchmarking the candidates on the
+     * first pass at its batch size and at the number of workers sharing the processors with it
+     */
+    private void tune(int batchSize) {
+        if (executedAlgorithm == null)
+            executedAlgorithm = ConvolutionTuner.shared().choose(this, batchSize, Linalg.regionTasks());
+    }
+
+    /** A new, uninitialized layer of the same shape that runs with {@code algorithm} */
+    ConvolutionalLayer withAlgorithm(ConvolutionAlgorithm algorithm) {
+        return new ConvolutionalLayer(inputWidth, inputHeight, inputLength, kernelWidth, kernelHeight, numKernels,
+                strideWidth, strideHeight, padding, algorithm, layout);
+    }
+
+    /** Describes the geometry that decides which {@link ConvolutionAlgorithm} is fastest, see {@link ConvolutionTuner} */
+    String shape() {
+        return "input=" + inputWidth + "x" + inputHeight + "x" + inputLength + ",kernels=" + numKernels + "x" +
+                kernelWidth + "x" + kernelHeight + ",stride=" + strideWidth + "x" + strideHeight + ",padding=" + padding + ",layout=" + layout;
+    }
+
+    /** The number of values in one input sample */
+    int inputVolume() {
+        return inputWidth * inputHeight * inputLength;
+    }
+
+    @Override
+    int outputLength() {
+        return outputWidth * outputHeight * numKernels;
     }
 
     @Override
     double[] calculateWeightedOutput(double[] input) {
         if (inputWidth * inputHeight * inputLength != input.length)
             throw new IllegalArgumentException("input length must equal input volume");
+        double[] output = new double[outputLength()];
+        tune(1);
+        calculateWeightedOutput(input, 0, output, 0);
+        return output;
+    }
 
+    @Override
+    void calculateWeightedOutput(double[] batch, int batchSize, double[] output) {
+        int inputVolume = inputWidth * inputHeight * inputLength;
+        if (batch.length != batchSize * inputVolume)
+            throw new IllegalArgumentException("input length must equal input volume");
+        tune(batchSize);
+        for (int b = 0; b < batchSize; b++)
+            calculateWeightedOutput(batch, b * inputVolume, output, b * outputLength());
+    }
+
+    /** Convolves the sample starting at {@code input[inputOffset]} into the output starting at {@code output[outputOffset]} */
+    private void calculateWeightedOutput(double[] input, int inputOffset, double[] output, int outputOffset) {
+        switch (executedAlgorithm) {
+            case DIRECT -> directWeightedOutput(input, inputOffset, output, outputOffset);
+            case IM2COL -> {
+                if (linearInput) linearWeightedOutput(input, inputOffset, output, outputOffset);
+                else im2colWeightedOutput(input, inputOffset, output, outputOffset);
+            }
+            case WINOGRAD -> {
+                if (winogradApplies()) winogradWeightedOutput(input, inputOffset, output, outputOffset);
+                else directWeightedOutput(input, inputOffset, output, outputOffset);
+            }
+            case FFT -> fftWeightedOutput(input, inputOffset, output, outputOffset);
+        }
+    }
+
+    private void directWeightedOutput(double[] input, int inputOffset, double[] output, int outputOffset) {
         //use kernels to scan through each layer of input matrix, create output matrix
-        double[] output = new double[outputWidth * outputHeight * numKernels];
-        IntStream.range(0, numKernels).parallel().forEach(kernel -> {
-            for (int layer = 0; layer < inputLength; layer++)
-                for (int x = 0; x < outputWidth; x++)
-                    for (int y = 0; y < outputHeight; y++) {
-                        //loop kernel through each kernel-region to completely populate a location in the output
-                        double weightedSum = 0;
-                        for (int scanX = 0; scanX < kernelWidth; scanX++)
-                            for (int scanY = 0; scanY < kernelHeight; scanY++)
-                                weightedSum += kernels[kernel][scanX][scanY] * input[inputVectorToInputMatrix[x * strideWidth + scanX][y * strideHeight + scanY][layer]];
-
-                        int nodeAbsPos = x + y * outputWidth + kernel * outputWidth * outputHeight;
-                        output[nodeAbsPos] = weightedSum + bias[nodeAbsPos];
+        Linalg.parallelFor(numKernels, (long) outputLength() * inputLength * kernelWidth * kernelHeight, kernel -> {
+            for (int x = 0; x < outputWidth; x++)
+                for (int y = 0; y < outputHeight; y++) {
+                    //loop kernel through each kernel-region of every layer to completely populate a location in the output
+                    double weightedSum = 0;
+                    for (int layer = 0; layer < inputLength; layer++)
+                        for (int scanX = 0, k = kernelIndex(kernel, 0, 0); scanX < kernelWidth; scanX++)
+                            for (int scanY = 0; scanY < kernelHeight; scanY++, k++)
+                                weightedSum += kernels[k] * input[inputOffset + inputIndex(x * strideWidth + scanX, y * strideHeight + scanY, layer)];
+
+                    int nodeAbsPos = outputIndex(kernel, x + y * outputWidth);
+                    output[outputOffset + nodeAbsPos] = weightedSum + bias[nodeAbsPos];
+                }
+        });
+    }
+
+    /** {@code output = kernels * patches + bias}, see {@link ConvolutionAlgorithm#IM2COL} */
+    private void im2colWeightedOutput(double[] input, int inputOffset, double[] output, int outputOffset) {
+        int positions = outputWidth * outputHeight;
+        double[] patches = patchBuffer(0);
+        im2col(input, inputOffset, patches);
+        System.arraycopy(bias, 0, output, outputOffset, numKernels * positions);
+        patchesForward(patches, output, outputOffset);
+    }
+
+    /**
+     * {@code output += kernels * patches}. A channel-last output is the transpose of that product, which is computed
+     * channel-first into a scratch buffer and transposed while adding, since the untransposed GEMM runs faster.
+     */
+    private void patchesForward(double[] patches, double[] output, int outputOffset) {
+        int positions = outputWidth * outputHeight, kernelSize = kernelWidth * kernelHeight;
+        if (layout == TensorLayout.CHANNEL_FIRST) {
+            Linalg.gemm(false, false, numKernels, positions, kernelSize, kernels, 0, patches, 0, output, outputOffset);
+            return;
+        }
+        double[] product = patchBuffer(2);
+        Arrays.fill(product, 0, numKernels * positions, 0);
+        Linalg.gemm(false, false, numKernels, positions, kernelSize, kernels, 0, patches, 0, product, 0);
+        for (int position = 0, node = outputOffset; position < positions; position++)
+            for (int kernel = 0; kernel < numKernels; kernel++, node++)
+                output[node] += product[kernel * positions + position];
+    }
+
+    /**
+     * {@code kernelsGradient += dz_dC * patches^T} and {@code patchesGradient = kernels^T * dz_dC}. A channel-last
+     * dz_dC is transposed into channel-first order first, like in {@link #patchesForward}.
+     */
+    private void patchesBackward(double[] dz_dC, int dz_dCOffset, double[] patches, double[] patchesGradient) {
+        int positions = outputWidth * outputHeight, kernelSize = kernelWidth * kernelHeight;
+        if (layout == TensorLayout.CHANNEL_LAST) {
+            double[] transposed = patchBuffer(2);
+            for (int position = 0, node = dz_dCOffset; position < positions; position++)
+                for (int kernel = 0; kernel < numKernels; kernel++, node++)
+                    transposed[kernel * positions + position] = dz_dC[node];
+            dz_dC = transposed;
+            dz_dCOffset = 0;
+        }
+        Linalg.gemm(false, true, numKernels, kernelSize, positions, dz_dC, dz_dCOffset, patches, 0, kernelsGradient, 0);
+        Arrays.fill(patchesGradient, 0, kernelSize * positions, 0);
+        Linalg.gemm(true, false, kernelSize, positions, numKernels, kernels, 0, dz_dC, dz_dCOffset, patchesGradient, 0);
+    }
+
+    /**
+     * Lowers the sample starting at {@code input[inputOffset]} into the row-major
+     * {@code [kernelWidth * kernelHeight][outputWidth * outputHeight]} patch matrix: entry
+     * {@code (scanX * kernelHeight + scanY, x + y * outputWidth)} is the sum over every input layer of the input
+     * under kernel weight {@code (scanX, scanY)} when the kernel sits at output position {@code (x, y)}.
+     */
+    private void im2col(double[] input, int inputOffset, double[] patches) {
+        int positions = outputWidth * outputHeight;
+        for (int scanX = 0, row = 0; scanX < kernelWidth; scanX++)
+            for (int scanY = 0; scanY < kernelHeight; scanY++, row += positions)
+                for (int y = 0; y < outputHeight; y++)
+                    for (int x = 0; x < outputWidth; x++) {
+                        double sum = 0;
+                        for (int layer = 0, in = inputOffset + inputIndex(x * strideWidth + scanX, y * strideHeight + scanY, 0);
+                             layer < inputLength; layer++, in += inputLayerStride)
+                            sum += input[in];
+                        patches[row + x + y * outputWidth] = sum;
                     }
+    }
+
+    /**
+     * Adds the patch-matrix gradient {@code patchesGradient} back into every input layer's da_dC (col2im).
+     * Every input layer owns its slice of da_dC, so the layers are scattered in parallel.
+     */
+    private void col2im(double[] patchesGradient, double[] da_dC, int da_dCOffset) {
+        int positions = outputWidth * outputHeight;
+        Linalg.parallelFor(inputLength, (long) inputLength * kernelWidth * kernelHeight * positions, layer -> {
+            for (int scanX = 0, row = 0; scanX < kernelWidth; scanX++)
+                for (int scanY = 0; scanY < kernelHeight; scanY++, row += positions)
+                    for (int y = 0; y < outputHeight; y++)
+                        for (int x = 0; x < outputWidth; x++)
+                            da_dC[da_dCOffset + inputIndex(x * strideWidth + scanX, y * strideHeight + scanY, layer)] +=
+                                    patchesGradient[row + x + y * outputWidth];
         });
+    }
 
-        return output;
+    /**
+     * The {@link ConvolutionAlgorithm#IM2COL} forward pass of a layer without an index table. Every kernel is shared
+     * by all input layers, so the input layers are summed into one plane first, with linear loops; 1x1 kernels then
+     * scale that plane once per kernel, and larger kernels copy it into the patch matrix row by row for the GEMM.
+     */
+    private void linearWeightedOutput(double[] input, int inputOffset, double[] output, int outputOffset) {
+        int positions = outputWidth * outputHeight;
+        double[] plane = planeBuffer(0);
+        channelSum(input, inputOffset, plane);
+        System.arraycopy(bias, 0, output, outputOffset, numKernels * positions);
+        if (oneByOne) {
+            Linalg.parallelFor(numKernels, (long) numKernels * positions, kernel -> {
+                double weight = kernels[kernel];
+                for (int y = 0, node = outputOffset + outputIndex(kernel, 0); y < outputHeight; y++)
+                    for (int x = 0, in = y * strideHeight * inputWidth; x < outputWidth; x++, node += outputPositionStride, in += strideWidth)
+                        output[node] += weight * plane[in];
+            });
+        } else {
+            double[] patches = patchBuffer(0);
+            planeToPatches(plane, patches);
+            patchesForward(patches, output, outputOffset);
+        }
+    }
+
+    /**
+     * The {@link ConvolutionAlgorithm#IM2COL} backward pass of a layer without an index table, see
+     * {@link #linearWeightedOutput}. The gradient of the channel-summed plane is computed once and added into every
+     * input layer's da_dC.
+     */
+    private void linearGradient(double[] dz_dC, int dz_dCOffset, double[] x, int xOffset, double[] da_dC, int da_dCOffset) {
+        int positions = outputWidth * outputHeight, area = inputWidth * inputHeight;
+        if (!Linalg.isFinite(dz_dC, dz_dCOffset, dz_dCOffset + numKernels * positions))
+            throw new IllegalStateException("dz_dC contains non-finite values");
+        double[] plane = planeBuffer(0), planeGradient = planeBuffer(1);
+        channelSum(x, xOffset, plane);
+        if (!Linalg.isFinite(plane, 0, area))
+            throw new IllegalArgumentException("input contains non-finite values");
+        Arrays.fill(planeGradient, 0, area, 0);
+
+        if (oneByOne) {
+            Linalg.parallelFor(numKernels, (long) numKernels * positions, kernel -> {
+                double sum = 0;
+                for (int y = 0, node = dz_dCOffset + outputIndex(kernel, 0); y < outputHeight; y++)
+                    for (int x1 = 0, in = y * strideHeight * inputWidth; x1 < outputWidth; x1++, node += outputPositionStride, in += strideWidth)
+                        sum += dz_dC[node] * plane[in];
+                kernelsGradient[kernel] += sum;
+            });
+            //1x1 kernels never overlap, so every output row owns the plane cells it writes
+            Linalg.parallelFor(outputHeight, (long) numKernels * positions, y -> {
+                for (int kernel = 0; kernel < numKernels; kernel++) {
+                    double weight = kernels[kernel];
+                    for (int x1 = 0, node = dz_dCOffset + outputIndex(kernel, y * outputWidth), in = y * strideHeight * inputWidth;
+                         x1 < outputWidth; x1++, node += outputPositionStride, in += strideWidth)
+                        planeGradient[in] += weight * dz_dC[node];
+                }
+            });
+        } else {
+            double[] patches = patchBuffer(0), patchesGradient = patchBuffer(1);
+            planeToPatches(plane, patches);
+            patchesBackward(dz_dC, dz_dCOffset, patches, patchesGradient);
+            for (int scanX = 0, row = 0; scanX < kernelWidth; scanX++)
+                for (int scanY = 0; scanY < kernelHeight; scanY++, row += positions)
+                    for (int y = 0; y < outputHeight; y++)
+                        for (int x1 = 0, patch = row + y * outputWidth, in = (y * strideHeight + scanY) * inputWidth + scanX;
+                             x1 < outputWidth; x1++, patch++, in += strideWidth)
+                            planeGradient[in] += patchesGradient[patch];
+        }
+
+        if (layout == TensorLayout.CHANNEL_FIRST)
+            Linalg.parallelFor(inputLength, (long) inputLength * area, layer -> {
+                for (int i = 0, target = da_dCOffset + layer * area; i < area; i++, target++)
+                    da_dC[target] += planeGradient[i];
+            });
+        else
+            Linalg.parallelFor(inputHeight, (long) inputLength * area, y -> {
+                for (int i = y * inputWidth, target = da_dCOffset + i * inputLength; i < (y + 1) * inputWidth; i++)
+                    for (int layer = 0; layer < inputLength; layer++, target++)
+                        da_dC[target] += planeGradient[i];
+            });
+    }
+
+    /** Writes the sum of every input layer of the sample starting at {@code input[inputOffset]} into {@code plane} */
+    private void channelSum(double[] input, int inputOffset, double[] plane) {
+        int area = inputWidth * inputHeight;
+        if (layout == TensorLayout.CHANNEL_FIRST) {
+            System.arraycopy(input, inputOffset, plane, 0, area);
+            for (int layer = 1; layer < inputLength; layer++)
+                for (int i = 0, in = inputOffset + layer * area; i < area; i++, in++)
+                    plane[i] += input[in];
+        } else {
+            for (int i = 0, in = inputOffset; i < area; i++) {
+                double sum = input[in++];
+                for (int layer = 1; layer < inputLength; layer++)
+                    sum += input[in++];
+                plane[i] = sum;
+            }
+        }
+    }
+
+    /**
+     * Lowers the channel-summed {@code plane} into the patch matrix of {@link #im2col}. With stride 1, every row of
+     * a patch matrix row is one contiguous run of the plane.
+     */
+    private void planeToPatches(double[] plane, double[] patches) {
+        int positions = outputWidth * outputHeight;
+        for (int scanX = 0, row = 0; scanX < kernelWidth; scanX++)
+            for (int scanY = 0; scanY < kernelHeight; scanY++, row += positions)
+                for (int y = 0; y < outputHeight; y++) {
+                    int patch = row + y * outputWidth, in = (y * strideHeight + scanY) * inputWidth + scanX;
+                    if (strideWidth == 1) System.arraycopy(plane, in, patches, patch, outputWidth);
+                    else for (int x = 0; x < outputWidth; x++, in += strideWidth) patches[patch + x] = plane[in];
+                }
+    }
+
+    /** Returns this thread's plane buffer {@code index}, grown to hold one input layer */
+    private double[] planeBuffer(int index) {
+        double[][] buffers = PLANES.get();
+        int size = inputWidth * inputHeight;
+        if (buffers[index].length < size) buffers[index] = new double[size];
+        return buffers[index];
+    }
+
+    /** Whether this layer's shape is one {@link Winograd} F(2x2, 3x3) handles: 3x3 kernels with stride 1 */
+    boolean winogradApplies() {
+        return kernelWidth == 3 && kernelHeight == 3 && strideWidth == 1 && strideHeight == 1;
+    }
+
+    /** {@code output = A^T [(G g G^T) ⊙ (B^T d B)] A + bias} for every 2x2 output tile, see {@link Winograd} */
+    private void winogradWeightedOutput(double[] input, int inputOffset, double[] output, int outputOffset) {
+        int tilesHigh = Math.ceilDiv(outputHeight, 2), tiles = Math.ceilDiv(outputWidth, 2) * tilesHigh;
+        double[] filters = winogradFilters(), inputTiles = winogradInputTiles(input, inputOffset, tiles);
+
+        Linalg.parallelFor(numKernels, (long) numKernels * tiles * Winograd.TILE, kernel -> {
+            double[][] scratch = WINOGRAD_TILES.get();
+            double[] product = scratch[0], y = scratch[2];
+            for (int tile = 0; tile < tiles; tile++) {
+                for (int e = 0; e < Winograd.TILE; e++)
+                    product[e] = filters[kernel * Winograd.TILE + e] * inputTiles[tile * Winograd.TILE + e];
+                Winograd.output(product, 0, y);
+                //the last row or column of tiles overhangs the output when its width or height is odd
+                for (int u = 0, x = tile / tilesHigh * 2; u < 2 && x + u < outputWidth; u++)
+                    for (int v = 0, yPos = tile % tilesHigh * 2; v < 2 && yPos + v < outputHeight; v++) {
+                        int nodeAbsPos = outputIndex(kernel, x + u + (yPos + v) * outputWidth);
+                        output[outputOffset + nodeAbsPos] = y[2 * u + v] + bias[nodeAbsPos];
+                    }
+            }
+        });
+    }
+
+    /**
+     * {@code kernelsGradient += G^T (Σ dM ⊙ (B^T d B)) G} per kernel, and {@code da_dC += B (Σ dM ⊙ (G g G^T)) B^T}
+     * per tile, where {@code dM = A dY A^T} is the transformed output gradient, see {@link Winograd}. Every kernel owns
+     * its slice of {@link #kernelsGradient} and every tile its own input tile gradient, which are then added into the
+     * channel-summed input gradient in tile order.
+     */
+    private void winogradGradient(double[] dz_dC, int dz_dCOffset, double[] x, int xOffset, double[] da_dC, int da_dCOffset) {
+        int positions = outputWidth * outputHeight;
+        if (!Linalg.isFinite(dz_dC, dz_dCOffset, dz_dCOffset + numKernels * positions))
+            throw new IllegalStateException("dz_dC contains non-finite values");
+        int tilesHigh = Math.ceilDiv(outputHeight, 2), tiles = Math.ceilDiv(outputWidth, 2) * tilesHigh;
+        double[] filters = winogradFilters(), inputTiles = winogradInputTiles(x, xOffset, tiles);
+        if (!Linalg.isFinite(inputTiles, 0, tiles * Winograd.TILE))
+            throw new IllegalArgumentException("input contains non-finite values");
+        long work = (long) numKernels * tiles * Winograd.TILE;
+
+        Linalg.parallelFor(numKernels, work, kernel -> {
+            double[][] scratch = WINOGRAD_TILES.get();
+            double[] outputGradient = scratch[0], sum = scratch[1], dy = scratch[3];
+            Arrays.fill(sum, 0);
+            for (int tile = 0; tile < tiles; tile++) {
+                winogradOutputGradient(dz_dC, dz_dCOffset + outputIndex(kernel, 0), tile, tilesHigh, dy, outputGradient);
+                for (int e = 0; e < Winograd.TILE; e++)
+                    sum[e] += outputGradient[e] * inputTiles[tile * Winograd.TILE + e];
+            }
+            Winograd.filterGradient(sum, 0, kernelsGradient, kernelIndex(kernel, 0, 0));
+        });
+
+        double[] tileGradients = winogradBuffer(3, tiles * Winograd.TILE);
+        Linalg.parallelFor(tiles, work, tile -> {
+            double[][] scratch = WINOGRAD_TILES.get();
+            double[] outputGradient = scratch[0], sum = scratch[1], dy = scratch[3];
+            Arrays.fill(sum, 0);
+            for (int kernel = 0; kernel < numKernels; kernel++) {
+                winogradOutputGradient(dz_dC, dz_dCOffset + outputIndex(kernel, 0), tile, tilesHigh, dy, outputGradient);
+                for (int e = 0; e < Winograd.TILE; e++)
+                    sum[e] += outputGradient[e] * filters[kernel * Winograd.TILE + e];
+            }
+            Winograd.inputGradient(sum, 0, tileGradients, tile * Winograd.TILE);
+        });
+
+        //neighbouring tiles overlap by two columns and rows, so they are added one after another
+        int width = outputWidth + 2, height = outputHeight + 2;
+        double[] imageGradient = winogradBuffer(2, width * height);
+        Arrays.fill(imageGradient, 0, width * height, 0);
+        for (int tile = 0; tile < tiles; tile++)
+            for (int u = 0, px = tile / tilesHigh * 2; u < 4 && px + u < width; u++)
+                for (int v = 0, py = tile % tilesHigh * 2; v < 4 && py + v < height; v++)
+                    imageGradient[(px + u) * height + py + v] += tileGradients[tile * Winograd.TILE + u * 4 + v];
+        Linalg.parallelFor(inputLength, (long) inputLength * width * height, layer -> {
+            for (int px = 0; px < width; px++)
+                for (int py = 0; py < height; py++)
+                    da_dC[da_dCOffset + inputIndex(px, py, layer)] += imageGradient[px * height + py];
+        });
+    }
+
+    /**
+     * Writes {@code A dY A^T} of the 2x2 output gradient tile {@code tile} of one kernel into {@code out}, gathering
+     * {@code dY} into the caller's scratch {@code dy}
+     */
+    private void winogradOutputGradient(double[] dz_dC, int kernelOffset, int tile, int tilesHigh, double[] dy, double[] out) {
+        Arrays.fill(dy, 0);
+        for (int u = 0, x = tile / tilesHigh * 2; u < 2 && x + u < outputWidth; u++)
+            for (int v = 0, y = tile % tilesHigh * 2; v < 2 && y + v < outputHeight; v++)
+                dy[2 * u + v] = dz_dC[kernelOffset + (x + u + (y + v) * outputWidth) * outputPositionStride];
+        Winograd.outputGradient(dy, out, 0);
+    }
+
+    /** Returns this thread's buffer of every kernel transformed by {@link Winograd#filter}, one tile per kernel */
+    private double[] winogradFilters() {
+        double[] filters = winogradBuffer(0, numKernels * Winograd.TILE);
+        for (int kernel = 0; kernel < numKernels; kernel++)
+            Winograd.filter(kernels, kernelIndex(kernel, 0, 0), filters, kernel * Winograd.TILE);
+        return filters;
+    }
+
+    /**
+     * Sums every input layer of the sample starting at {@code input[inputOffset]}, then returns this thread's buffer
+     * of every 4x4 tile of that sum transformed by {@link Winograd#input}. Tile {@code (a, b)} starts at padded input
+     * position {@code (2a, 2b)} and is stored at index {@code a * tilesHigh + b}; positions past the
+     * {@code (outputWidth + 2) x (outputHeight + 2)} region the kernels cover read as 0.
+     */
+    private double[] winogradInputTiles(double[] input, int inputOffset, int tiles) {
+        int width = outputWidth + 2, height = outputHeight + 2;
+        int tilesHigh = Math.ceilDiv(outputHeight, 2);
+        double[] image = winogradBuffer(2, width * height), inputTiles = winogradBuffer(1, tiles * Winograd.TILE);
+        for (int px = 0; px < width; px++)
+            for (int py = 0; py < height; py++) {
+                double sum = 0;
+                for (int layer = 0; layer < inputLength; layer++)
+                    sum += input[inputOffset + inputIndex(px, py, layer)];
+                image[px * height + py] = sum;
+            }
+        Linalg.parallelFor(tiles, (long) tiles * Winograd.TILE, tile -> {
+            double[] d = WINOGRAD_TILES.get()[1];
+            Arrays.fill(d, 0);
+            for (int u = 0, px = tile / tilesHigh * 2; u < 4 && px + u < width; u++)
+                for (int v = 0, py = tile % tilesHigh * 2; v < 4 && py + v < height; v++)
+                    d[u * 4 + v] = image[(px + u) * height + py + v];
+            Winograd.input(d, 0, inputTiles, tile * Winograd.TILE);
+        });
+        return inputTiles;
+    }
+
+    /** Returns this thread's Winograd scratch buffer {@code index}, grown to at least {@code size} */
+    private static double[] winogradBuffer(int index, int size) {
+        double[][] buffers = WINOGRAD.get();
+        if (buffers[index].length < size) buffers[index] = new double[size];
+        return buffers[index];
+    }
+
+    /** The width of the padded input region the kernels cover, the extent of every signal of the FFT passes */
+    private int coveredWidth() {
+        return (outputWidth - 1) * strideWidth + kernelWidth;
+    }
+
+    /** The height of the padded input region the kernels cover, see {@link #coveredWidth} */
+    private int coveredHeight() {
+        return (outputHeight - 1) * strideHeight + kernelHeight;
+    }
+
+    /**
+     * {@code output = IFFT(FFT(input) * conj(FFT(kernel))) + bias}, sampled every stride, see
+     * {@link ConvolutionAlgorithm#FFT}. Kernels are processed in pairs, one per task.
+     */
+    private void fftWeightedOutput(double[] input, int inputOffset, double[] output, int outputOffset) {
+        int rows = FFT.size(coveredWidth()), columns = FFT.size(coveredHeight()), n = rows * columns;
+        int positions = outputWidth * outputHeight;
+        KernelSpectra spectra = kernelSpectra(rows, columns);
+        double[] imageRe = fftBuffer(0, n), imageIm = fftBuffer(1, n);
+        fftImage(input, inputOffset, imageRe, imageIm, rows, columns);
+
+        Linalg.parallelFor(Math.ceilDiv(numKernels, 2), fftWork(n), pair -> {
+            int first = 2 * pair, second = first + 1 < numKernels ? first + 1 : -1;
+            double[] re = fftBuffer(4, n), im = fftBuffer(5, n);
+            fftCorrelatePair(imageRe, imageIm, spectra.re, spectra.im, first, second, n, re, im);
+            FFT.transform2d(re, im, rows, columns, true);
+            for (int x = 0; x < outputWidth; x++)
+                for (int y = 0; y < outputHeight; y++) {
+                    int position = x + y * outputWidth, sample = x * strideWidth * columns + y * strideHeight;
+                    output[outputOffset + outputIndex(first, position)] = re[sample] + bias[outputIndex(first, position)];
+                    if (second >= 0)
+                        output[outputOffset + outputIndex(second, position)] = im[sample] + bias[outputIndex(second, position)];
+                }
+        });
+    }
+
+    /**
+     * {@code kernelsGradient += IFFT(FFT(input) * conj(FFT(dz_dC)))} per kernel and
+     * {@code da_dC += IFFT(Σ FFT(dz_dC) * FFT(kernel))}, where every dz_dC is spread out by the stride, see
+     * {@link ConvolutionAlgorithm#FFT}. Every kernel pair owns its kernel gradients, and every row of the input
+     * gradient spectrum sums the kernels in order.
+     */
+    private void fftGradient(double[] dz_dC, int dz_dCOffset, double[] x, int xOffset, double[] da_dC, int da_dCOffset) {
+        int positions = outputWidth * outputHeight;
+        if (!Linalg.isFinite(dz_dC, dz_dCOffset, dz_dCOffset + numKernels * positions))
+            throw new IllegalStateException("dz_dC contains non-finite values");
+        int rows = FFT.size(coveredWidth()), columns = FFT.size(coveredHeight()), n = rows * columns;
+        KernelSpectra spectra = kernelSpectra(rows, columns);
+        double[] imageRe = fftBuffer(0, n), imageIm = fftBuffer(1, n);
+        fftImage(x, xOffset, imageRe, imageIm, rows, columns);
+        if (!Linalg.isFinite(imageRe, 0, n))
+            throw new IllegalArgumentException("input contains non-finite values");
+        int pairs = Math.ceilDiv(numKernels, 2);
+
+        double[] dzRe = fftBuffer(2, numKernels * n), dzIm = fftBuffer(3, numKernels * n);
+        Linalg.parallelFor(pairs, fftWork(n), pair -> {
+            int first = 2 * pair, second = first + 1 < numKernels ? first + 1 : -1;
+            double[] re = fftBuffer(4, n), im = fftBuffer(5, n);
+            Arrays.fill(re, 0, n, 0);
+            Arrays.fill(im, 0, n, 0);
+            for (int i = 0; i < outputWidth; i++)
+                for (int j = 0; j < outputHeight; j++) {
+                    int position = i + j * outputWidth, sample = i * strideWidth * columns + j * strideHeight;
+                    re[sample] = dz_dC[dz_dCOffset + outputIndex(first, position)];
+                    if (second >= 0) im[sample] = dz_dC[dz_dCOffset + outputIndex(second, position)];
+                }
+            FFT.transform2d(re, im, rows, columns, false);
+            FFT.splitRealPair(re, im, rows, columns, dzRe, dzIm, first * n, second < 0 ? -1 : second * n);
+        });
+
+        Linalg.parallelFor(pairs, fftWork(n), pair -> {
+            int first = 2 * pair, second = first + 1 < numKernels ? first + 1 : -1;
+            double[] re = fftBuffer(4, n), im = fftBuffer(5, n);
+            fftCorrelatePair(imageRe, imageIm, dzRe, dzIm, first, second, n, re, im);
+            FFT.transform2d(re, im, rows, columns, true);
+            for (int kernelX = 0; kernelX < kernelWidth; kernelX++)
+                for (int kernelY = 0; kernelY < kernelHeight; kernelY++) {
+                    kernelsGradient[kernelIndex(first, kernelX, kernelY)] += re[kernelX * columns + kernelY];
+                    if (second >= 0) kernelsGradient[kernelIndex(second, kernelX, kernelY)] += im[kernelX * columns + kernelY];
+                }
+        });
+
+        double[] gradientRe = fftBuffer(6, n), gradientIm = fftBuffer(7, n);
+        Linalg.parallelFor(rows, (long) numKernels * n, row -> {
+            for (int e = row * columns; e < (row + 1) * columns; e++) {
+                double sumRe = 0, sumIm = 0;
+                for (int kernel = 0, k = e; kernel < numKernels; kernel++, k += n) {
+                    sumRe += dzRe[k] * spectra.re[k] - dzIm[k] * spectra.im[k];
+                    sumIm += dzRe[k] * spectra.im[k] + dzIm[k] * spectra.re[k];
+                }
+                gradientRe[e] = sumRe;
+                gradientIm[e] = sumIm;
+            }
+        });
+        FFT.transform2d(gradientRe, gradientIm, rows, columns, true);
+        int width = coveredWidth(), height = coveredHeight();
+        Linalg.parallelFor(inputLength, (long) inputLength * width * height, layer -> {
+            for (int px = 0; px < width; px++)
+                for (int py = 0; py < height; py++)
+                    da_dC[da_dCOffset + inputIndex(px, py, layer)] += gradientRe[px * columns + py];
+        });
+    }
+
+    /**
+     * Writes {@code X * conj(S_first) + i X * conj(S_second)} into {@code re} and {@code im}, where {@code X} is
+     * the spectrum in {@code xRe, xIm} and {@code S_k} the k-th spectrum of {@code n} values in {@code sRe, sIm}.
+     * Both correlations are real, so the inverse transform holds the first in its real and the second in its
+     * imaginary part. A negative {@code second} leaves the imaginary part of the result for the first alone.
+     */
+    private static void fftCorrelatePair(double[] xRe, double[] xIm, double[] sRe, double[] sIm, int first, int second,
+                                         int n, double[] re, double[] im) {
+        for (int e = 0, a = first * n, b = second * n; e < n; e++, a++, b++) {
+            double aRe = xRe[e] * sRe[a] + xIm[e] * sIm[a], aIm = xIm[e] * sRe[a] - xRe[e] * sIm[a];
+            double bRe = 0, bIm = 0;
+            if (second >= 0) {
+                bRe = xRe[e] * sRe[b] + xIm[e] * sIm[b];
+                bIm = xIm[e] * sRe[b] - xRe[e] * sIm[b];
+            }
+            re[e] = aRe - bIm;
+            im[e] = aIm + bRe;
+        }
+    }
+
+    /**
+     * Sums every input layer of the sample starting at {@code input[inputOffset]} over the covered region, zero-pads
+     * it to {@code rows x columns} and transforms it into {@code re, im}
+     */
+    private void fftImage(double[] input, int inputOffset, double[] re, double[] im, int rows, int columns) {
+        Arrays.fill(re, 0, rows * columns, 0);
+        Arrays.fill(im, 0, rows * columns, 0);
+        for (int px = 0, width = coveredWidth(), height = coveredHeight(); px < width; px++)
+            for (int py = 0; py < height; py++) {
+                double sum = 0;
+                for (int layer = 0; layer < inputLength; layer++)
+                    sum += input[inputOffset + inputIndex(px, py, layer)];
+                re[px * columns + py] = sum;
+            }
+        FFT.transform2d(re, im, rows, columns, false);
+    }
+
+    /**
+     * Drops the cached kernel spectra, so the next FFT pass transforms the kernels again as it would after every
+     * gradient step. Used by {@link ConvolutionTuner} to time the FFT passes as training runs them.
+     */
+    void invalidateKernelSpectra() {
+        kernelSpectra.invalidate();
+    }
+
+    /** Returns the cached spectra of the current kernels, transforming every kernel pair again if they changed */
+    private KernelSpectra kernelSpectra(int rows, int columns) {
+        KernelSpectra spectra = kernelSpectra;
+        int n = rows * columns;
+        synchronized (spectra) {
+            if (spectra.transformed == spectra.version) return spectra;
+
+            if (spectra.re.length != numKernels * n) {
+                spectra.re = new double[numKernels * n];
+                spectra.im = new double[numKernels * n];
+            }
+            double[] re = spectra.re, im = spectra.im;
+            Linalg.parallelFor(Math.ceilDiv(numKernels, 2), fftWork(n), pair -> {
+                int first = 2 * pair, second = first + 1 < numKernels ? first + 1 : -1;
+                double[] zRe = fftBuffer(4, n), zIm = fftBuffer(5, n);
+                Arrays.fill(zRe, 0, n, 0);
+                Arrays.fill(zIm, 0, n, 0);
+                for (int kernelX = 0; kernelX < kernelWidth; kernelX++)
+                    for (int kernelY = 0; kernelY < kernelHeight; kernelY++) {
+                        zRe[kernelX * columns + kernelY] = kernels[kernelIndex(first, kernelX, kernelY)];
+                        if (second >= 0) zIm[kernelX * columns + kernelY] = kernels[kernelIndex(second, kernelX, kernelY)];
+                    }
+                FFT.transform2d(zRe, zIm, rows, columns, false);
+                FFT.splitRealPair(zRe, zIm, rows, columns, re, im, first * n, second < 0 ? -1 : second * n);
+            });
+            spectra.transformed = spectra.version;
+        }
+        return spectra;
+    }
+
+    /** The work of transforming every kernel's signal of {@code n} values, for {@link Linalg#parallelFor} */
+    private long fftWork(int n) {
+        return (long) numKernels * n * Integer.numberOfTrailingZeros(n);
+    }
+
+    /** Returns this thread's FFT scratch buffer {@code index}, grown to at least {@code size} */
+    private static double[] fftBuffer(int index, int size) {
+        double[][] buffers = FFT_BUFFERS.get();
+        if (buffers[index].length < size) buffers[index] = new double[size];
+        return buffers[index];
+    }
+
+    /** Returns this thread's patch scratch buffer {@code index}, grown to hold one patch matrix (or output) of this layer */
+    private double[] patchBuffer(int index) {
+        double[][] buffers = PATCHES.get();
+        int size = (index == 2 ? numKernels : kernelWidth * kernelHeight) * outputWidth * outputHeight;
+        if (buffers[index].length < size) buffers[index] = new double[size];
+        return buffers[index];
     }
 
     @Override
     double[] updateGradient(double[] dz_dC, double[] x) {
         double[] da_dC = new double[inputWidth * inputHeight * inputLength];
-
-        IntStream.range(0, numKernels).parallel().forEach(kernel ->
-                IntStream.range(0, inputLength).parallel().forEach(layer -> {
-                    for (int i = 0; i < outputWidth; i++)
-                        for (int j = 0; j < outputHeight; j++) {
-                            int index = i + j * outputWidth + kernel * outputWidth * outputHeight;
-                            if (!Double.isFinite(dz_dC[index]))
-                                throw new IllegalStateException("dz_dC contains non-finite values");
-                            for (int kernelX = 0; kernelX < kernelWidth; kernelX++)
-                                for (int kernelY = 0; kernelY < kernelHeight; kernelY++) {
-                                    int absXPos = inputVectorToInputMatrix[i * strideWidth + kernelX][j * strideHeight + kernelY][layer];
-                                    if (!Double.isFinite(kernelsGradient[kernel][kernelX][kernelY]))
-                                        throw new IllegalStateException("kernelsGradient contains non-finite values");
-                                    if (!Double.isFinite(x[absXPos]))
-                                        throw new IllegalArgumentException("input contains non-finite values");
-
-                                    kernelsGradient[kernel][kernelX][kernelY] += dz_dC[index] * x[absXPos];
-                                    da_dC[absXPos] += dz_dC[index] * kernels[kernel][kernelX][kernelY];
-                                }
-                        }
-                })
-        );
-
+        tune(1);
+        updateGradient(dz_dC, 0, x, 0, da_dC, 0);
         return da_dC;
     }
 
     @Override
-    void applyGradient(Optimizer optimizer, double adjustedLearningRate, double momentum, double beta,
-                       double epsilon) {
-        IntStream.range(0, numKernels).parallel().forEach(layer -> {
-            BiConsumer<Integer, Integer> updateRule;
-            switch (optimizer) {
-                case SGD ->
-                        updateRule = (x, y) -> kernels[layer][x][y] -= adjustedLearningRate * kernelsGradient[layer][x][y];
-                case SGD_MOMENTUM -> updateRule = (x, y) -> {
-                    kernelsVelocity[layer][x][y] = kernelsVelocity[layer][x][y] * momentum + (1 - momentum) * kernelsGradient[layer][x][y];
-                    kernels[layer][x][y] -= adjustedLearningRate * kernelsVelocity[layer][x][y];
-                };
-                case RMS_PROP -> updateRule = (x, y) -> {
-                    kernelsVelocitySquared[layer][x][y] = beta * kernelsVelocitySquared[layer][x][y] + (1 - beta) * (kernelsGradient[layer][x][y] * kernelsGradient[layer][x][y]);
-                    kernels[layer][x][y] -= adjustedLearningRate * kernelsGradient[layer][x][y] / Math.sqrt(kernelsVelocitySquared[layer][x][y] + epsilon);
-                };
-                case ADAM -> {
-                    double correctionMomentum = 1 - Math.pow(momentum, t);
-                    double correctionBeta = 1 - Math.pow(beta, t);
-                    updateRule = (x, y) -> {
-                        kernelsVelocity[layer][x][y] = momentum * kernelsVelocity[layer][x][y] + (1 - momentum) * kernelsGradient[layer][x][y];
-                        kernelsVelocitySquared[layer][x][y] = beta * kernelsVelocitySquared[layer][x][y] + (1 - beta) * kernelsGradient[layer][x][y] * kernelsGradient[layer][x][y];
-                        double correctedVelocity = kernelsVelocity[layer][x][y] / correctionMomentum;
-                        double correctedVelocitySquared = kernelsVelocitySquared[layer][x][y] / correctionBeta;
-                        kernels[layer][x][y] -= adjustedLearningRate * correctedVelocity / Math.sqrt(correctedVelocitySquared + epsilon);
-                        if (!Double.isFinite(kernels[layer][x][y]))
-                            throw new IllegalStateException("\ncorrectedVelocity: " + correctedVelocity + "\ncorrectedVelocitySquared: " + correctedVelocitySquared + "\nweightsVelocity: " + kernelsVelocity[x][y][layer] + "\nweightsVelocitySquared: " + kernelsVelocitySquared[x][y][layer]);
-                    };
-                }
-                case null, default -> throw new IllegalStateException("Unexpected value: " + optimizer);
+    void updateGradient(double[] dz_dC, double[] x, int batchSize, double[] da_dC) {
+        int inputVolume = inputWidth * inputHeight * inputLength;
+        Arrays.fill(da_dC, 0);
+        tune(batchSize);
+        for (int b = 0; b < batchSize; b++)
+            updateGradient(dz_dC, b * outputLength(), x, b * inputVolume, da_dC, b * inputVolume);
+    }
+
+    /**
+     * Accumulates the kernel gradients of one sample, whose dz_dC and input start at {@code dz_dCOffset} and
+     * {@code xOffset}, and adds its da_dC into {@code da_dC} starting at {@code da_dCOffset}
+     */
+    private void updateGradient(double[] dz_dC, int dz_dCOffset, double[] x, int xOffset, double[] da_dC, int da_dCOffset) {
+        switch (executedAlgorithm) {
+            case DIRECT -> directGradient(dz_dC, dz_dCOffset, x, xOffset, da_dC, da_dCOffset);
+            case IM2COL -> {
+                if (linearInput) linearGradient(dz_dC, dz_dCOffset, x, xOffset, da_dC, da_dCOffset);
+                else im2colGradient(dz_dC, dz_dCOffset, x, xOffset, da_dC, da_dCOffset);
             }
+            case WINOGRAD -> {
+                if (winogradApplies()) winogradGradient(dz_dC, dz_dCOffset, x, xOffset, da_dC, da_dCOffset);
+                else directGradient(dz_dC, dz_dCOffset, x, xOffset, da_dC, da_dCOffset);
+            }
+            case FFT -> fftGradient(dz_dC, dz_dCOffset, x, xOffset, da_dC, da_dCOffset);
+        }
+    }
 
-            for (int x = 0; x < kernelWidth; x++)
-                for (int y = 0; y < kernelHeight; y++) {
-                    if (!Double.isFinite(kernelsGradient[layer][x][y]))
-                        throw new IllegalStateException("kernelsGradient contains non-finite values");
-                    updateRule.accept(x, y);
-                }
+    /**
+     * {@code kernelsGradient += dz_dC * patches^T}, then {@code da_dC += col2im(kernels^T * dz_dC)},
+     * see {@link ConvolutionAlgorithm#IM2COL}
+     */
+    private void im2colGradient(double[] dz_dC, int dz_dCOffset, double[] x, int xOffset, double[] da_dC, int da_dCOffset) {
+        int positions = outputWidth * outputHeight, kernelSize = kernelWidth * kernelHeight;
+        if (!Linalg.isFinite(dz_dC, dz_dCOffset, dz_dCOffset + numKernels * positions))
+            throw new IllegalStateException("dz_dC contains non-finite values");
+        double[] patches = patchBuffer(0), patchesGradient = patchBuffer(1);
+        im2col(x, xOffset, patches);
+        if (!Linalg.isFinite(patches, 0, kernelSize * positions))
+            throw new IllegalArgumentException("input contains non-finite values");
+
+        patchesBackward(dz_dC, dz_dCOffset, patches, patchesGradient);
+        col2im(patchesGradient, da_dC, da_dCOffset);
+    }
+
+    /**
+     * Partitions the direct backward pass so every task owns what it writes: each kernel accumulates its own slice
+     * of {@link #kernelsGradient}, and each input layer (split further into kernel groups, see
+     * {@link #GRADIENT_TASKS}) computes its own slice of da_dC.
+     */
+    private void directGradient(double[] dz_dC, int dz_dCOffset, double[] x, int xOffset, double[] da_dC, int da_dCOffset) {
+        int positions = outputWidth * outputHeight, inputVolume = inputWidth * inputHeight * inputLength;
+        if (!Linalg.isFinite(dz_dC, dz_dCOffset, dz_dCOffset + numKernels * positions))
+            throw new IllegalStateException("dz_dC contains non-finite values");
+        if (!Linalg.isFinite(x, xOffset, xOffset + inputVolume))
+            throw new IllegalArgumentException("input contains non-finite values");
+        long work = (long) numKernels * inputLength * positions * kernelWidth * kernelHeight;
+
+        Linalg.parallelFor(numKernels, work, kernel -> {
+            for (int layer = 0; layer < inputLength; layer++)
+                for (int i = 0; i < outputWidth; i++)
+                    for (int j = 0; j < outputHeight; j++) {
+                        double gradient = dz_dC[dz_dCOffset + outputIndex(kernel, i + j * outputWidth)];
+                        for (int kernelX = 0, k = kernelIndex(kernel, 0, 0); kernelX < kernelWidth; kernelX++)
+                            for (int kernelY = 0; kernelY < kernelHeight; kernelY++, k++)
+                                kernelsGradient[k] += gradient * x[xOffset + inputIndex(i * strideWidth + kernelX, j * strideHeight + kernelY, layer)];
+                    }
         });
 
-        super.applyGradient(optimizer, adjustedLearningRate, momentum, beta, epsilon);
+        //the first kernel group adds straight into da_dC, every other group into its own zeroed partial
+        int groups = inputLength >= GRADIENT_TASKS ? 1 : Math.min(numKernels, Math.ceilDiv(GRADIENT_TASKS, inputLength));
+        int layerVolume = inputWidth * inputHeight;
+        double[] partials = gradientPartials((groups - 1) * inputVolume);
+        Linalg.parallelFor(inputLength * groups, work, task -> {
+            int layer = task % inputLength, group = task / inputLength;
+            double[] target = group == 0 ? da_dC : partials;
+            int targetOffset = group == 0 ? da_dCOffset : (group - 1) * inputVolume;
+            if (group > 0)
+                for (int p = 0, e = targetOffset + layer * inputLayerStride; p < layerVolume; p++, e += inputPositionStride)
+                    partials[e] = 0;
+            for (int kernel = group * numKernels / groups; kernel < (group + 1) * numKernels / groups; kernel++)
+                for (int i = 0; i < outputWidth; i++)
+                    for (int j = 0; j < outputHeight; j++) {
+                        double gradient = dz_dC[dz_dCOffset + outputIndex(kernel, i + j * outputWidth)];
+                        for (int kernelX = 0, k = kernelIndex(kernel, 0, 0); kernelX < kernelWidth; kernelX++)
+                            for (int kernelY = 0; kernelY < kernelHeight; kernelY++, k++)
+                                target[targetOffset + inputIndex(i * strideWidth + kernelX, j * strideHeight + kernelY, layer)] += gradient * kernels[k];
+                    }
+        });
+        //add the partials in group order, so the sum doesn't depend on which task finished first
+        if (groups > 1)
+            Linalg.parallelFor(inputLength, (long) (groups - 1) * inputVolume, layer -> {
+                for (int group = 1; group < groups; group++)
+                    for (int p = 0, e = layer * inputLayerStride, partial = (group - 1) * inputVolume; p < layerVolume; p++, e += inputPositionStride)
+                        da_dC[da_dCOffset + e] += partials[partial + e];
+            });
+    }
+
+    /** Returns this thread's buffer for the partial da_dC of the direct backward pass, grown to at least {@code size} */
+    private static double[] gradientPartials(int size) {
+        double[][] buffer = GRADIENT_PARTIALS.get();
+        if (buffer[0].length < size) buffer[0] = new double[size];
+        return buffer[0];
+    }
+
+    @Override
+    boolean acceptsGradient(Optimizer optimizer, double adjustedLearningRate, double momentum, double beta, double epsilon) {
+        return optimizer.accepts(kernels, kernelsGradient, kernelsVelocity, kernelsVelocitySquared, adjustedLearningRate, momentum, beta, epsilon, t)
+                && super.acceptsGradient(optimizer, adjustedLearningRate, momentum, beta, epsilon);
+    }
+
+    @Override
+    void applyAcceptedGradient(Optimizer optimizer, double adjustedLearningRate, double momentum, double beta, double epsilon) {
+        optimizer.apply(kernels, kernelsGradient, kernelsVelocity, kernelsVelocitySquared, adjustedLearningRate, momentum, beta, epsilon, t);
+        kernelSpectra.invalidate();
+        super.applyAcceptedGradient(optimizer, adjustedLearningRate, momentum, beta, epsilon);
+    }
+
+    @Override
+    Layer gradientShard() {
+        return new ConvolutionalLayer(this);
+    }
+
+    @Override
+    void addGradient(Layer shard) {
+        Linalg.addInPlace(kernelsGradient, ((ConvolutionalLayer) shard).kernelsGradient);
+        super.addGradient(shard);
     }
 
     @Override
     void clearGradient() {
-        for (int i = 0; i < kernels.length; i++)
-            kernelsGradient[i] = new double[kernels[0].length][kernels[0][0].length];
+        Arrays.fill(kernelsGradient, 0);
         Arrays.fill(biasGradient, 0);
     }
 
     @Override
     int getNumParameters() {
-        return kernels.length * kernels[0].length * kernels[0][0].length + super.getNumParameters();
+        return kernels.length + super.getNumParameters();
     }
 
     @Override
@@ -268,7 +1079,7 @@ class ConvolutionalLayer extends Layer {
         StringBuilder sb = new StringBuilder();
         for (int i = 0; i < numKernels; i++) {
             sb.append("Kernel ").append(i).append(":\n");
-            Layer.ArraysDeepToString(kernels[i], sb);
+            Layer.ArraysDeepToString(kernels, kernelIndex(i, 0, 0), kernelWidth, kernelHeight, sb);
             sb.append('\n');
         }
         sb.append("Biases: \n").append(Arrays.toString(bias));
@@ -283,48 +1094,39 @@ class ConvolutionalLayer extends Layer {
                 kernelWidth == o.kernelWidth && kernelHeight == o.kernelHeight && numKernels == o.numKernels &&
                 outputWidth == o.outputWidth && outputHeight == o.outputHeight &&
                 strideWidth == o.strideWidth && strideHeight == o.strideHeight &&
-                padding == o.padding && Arrays.deepEquals(kernels, o.kernels) &&
-                Arrays.deepEquals(kernelsVelocity, o.kernelsVelocity) &&
-                Arrays.deepEquals(kernelsVelocitySquared, o.kernelsVelocitySquared) &&
-                Arrays.deepEquals(kernelsGradient, o.kernelsGradient) &&
-                Arrays.deepEquals(inputVectorToInputMatrix, o.inputVectorToInputMatrix);
+                padding == o.padding && layout == o.layout && Arrays.equals(kernels, o.kernels) &&
+                Arrays.equals(kernelsVelocity, o.kernelsVelocity) &&
+                Arrays.equals(kernelsVelocitySquared, o.kernelsVelocitySquared) &&
+                Arrays.equals(kernelsGradient, o.kernelsGradient) &&
+                Arrays.equals(paddedColumns, o.paddedColumns) && Arrays.equals(paddedRowOffsets, o.paddedRowOffsets);
     }
 
     @Override
     public int hashCode() {
         return Objects.hash(nodes, inputWidth, inputHeight, inputLength, kernelWidth, kernelHeight, numKernels,
-                outputWidth, outputHeight, strideWidth, strideHeight, padding,
+                outputWidth, outputHeight, strideWidth, strideHeight, padding, layout,
                 Arrays.hashCode(bias), Arrays.hashCode(biasVelocity), Arrays.hashCode(biasVelocitySquared), Arrays.hashCode(biasGradient),
-                Arrays.deepHashCode(kernels), Arrays.deepHashCode(kernelsVelocity), Arrays.deepHashCode(kernelsVelocitySquared),
-                Arrays.deepHashCode(kernelsGradient), Arrays.deepHashCode(inputVectorToInputMatrix));
+                Arrays.hashCode(kernels), Arrays.hashCode(kernelsVelocity), Arrays.hashCode(kernelsVelocitySquared),
+                Arrays.hashCode(kernelsGradient), Arrays.hashCode(paddedColumns), Arrays.hashCode(paddedRowOffsets));
     }
 
     //noinspection CloneDoesNotCallSuperClone,CloneDoesNotThrowCloneNotSupportedException
     @Override
     @SuppressWarnings("MethodDoesNotCallSuperMethod")
     public Object clone() {
-        ConvolutionalLayer newLayer = new ConvolutionalLayer(inputWidth, inputHeight, inputLength, kernelWidth, kernelHeight, numKernels, strideWidth, strideHeight, padding);
+        ConvolutionalLayer newLayer = new ConvolutionalLayer(inputWidth, inputHeight, inputLength, kernelWidth, kernelHeight, numKernels, strideWidth, strideHeight, padding, algorithm, layout);
         System.arraycopy(bias, 0, newLayer.bias, 0, nodes);
         if (!Objects.isNull(biasVelocity)) {
-            newLayer.biasVelocity = new double[biasVelocity.length];
-            newLayer.kernelsVelocity = new double[kernelsVelocity.length][kernelsVelocity[0].length][kernelsVelocity[0][0].length];
-            System.arraycopy(biasVelocity, 0, newLayer.biasVelocity, 0, nodes);
+            newLayer.biasVelocity = biasVelocity.clone();
+            newLayer.kernelsVelocity = kernelsVelocity.clone();
         }
         if (!Objects.isNull(biasVelocitySquared)) {
-            newLayer.biasVelocitySquared = new double[biasVelocitySquared.length];
-            newLayer.kernelsVelocitySquared = new double[kernelsVelocitySquared.length][kernelsVelocitySquared[0].length][kernelsVelocitySquared[0][0].length];
-            System.arraycopy(biasVelocitySquared, 0, newLayer.biasVelocitySquared, 0, nodes);
+            newLayer.biasVelocitySquared = biasVelocitySquared.clone();
+            newLayer.kernelsVelocitySquared = kernelsVelocitySquared.clone();
         }
         System.arraycopy(biasGradient, 0, newLayer.biasGradient, 0, nodes);
-        for (int i = 0; i < kernels.length; i++)
-            for (int j = 0; j < kernels[0].length; j++) {
-                System.arraycopy(kernels[i][j], 0, newLayer.kernels[i][j], 0, kernelHeight);
-                if (!Objects.isNull(kernelsVelocity))
-                    System.arraycopy(kernelsVelocity[i][j], 0, newLayer.kernelsVelocity[i][j], 0, kernelHeight);
-                if (!Objects.isNull(kernelsVelocitySquared))
-                    System.arraycopy(kernelsVelocitySquared[i][j], 0, newLayer.kernelsVelocitySquared[i][j], 0, kernelHeight);
-                System.arraycopy(kernelsGradient[i][j], 0, newLayer.kernelsGradient[i][j], 0, kernelHeight);
-            }
+        System.arraycopy(kernels, 0, newLayer.kernels, 0, kernels.length);
+        System.arraycopy(kernelsGradient, 0, newLayer.kernelsGradient, 0, kernelsGradient.length);
 
         return newLayer;
     }
@@ -1,7 +1,5 @@
 package Network;
 
-import java.util.function.BiFunction;
-
 /**
  * Enum representing commonly used loss (cost) functions and their derivatives.
  * <p>
@@ -23,15 +21,11 @@ public enum Cost {
      * <p>
      * Where x is the output, y is the expected output, and n is the number of elements.
      */
-    diffSquared((input, expectedInput) -> {
-        double[] output = new double[input.length];
+    diffSquared((input, expectedInput, output) -> {
         for (int i = 0; i < input.length; i++)
             output[i] = (input[i] - expectedInput[i]) * (input[i] - expectedInput[i]) / input.length;
-        return output;
-    }, (input, expectedInput) -> {
-        double[] output = new double[input.length];
+    }, (input, expectedInput, output) -> {
         for (int i = 0; i < input.length; i++) output[i] = 2 * (input[i] - expectedInput[i]) / input.length;
-        return output;
     }),
 
     /**
@@ -49,26 +43,28 @@ public enum Cost {
      * guards that return a per-element gradient of {@code 0} at those singular points instead
      * of the mathematically-undefined {@code 1/0}.
      */
-    crossEntropy((input, expectedInput) -> {
-        double[] output = new double[input.length];
+    crossEntropy((input, expectedInput, output) -> {
         for (int i = 0; i < input.length; i++) {
             double y = expectedInput[i], x = input[i];
             double termY = (y == 0) ? 0 : y * Math.log(x);
             double term1mY = (y == 1) ? 0 : (1 - y) * Math.log(1 - x);
             output[i] = -(termY + term1mY);
         }
-        return output;
-    }, (input, expectedInput) -> {
-        double[] output = new double[input.length];
+    }, (input, expectedInput, output) -> {
         for (int i = 0; i < input.length; i++)
             output[i] = -((input[i] == 0 ? 0 : expectedInput[i] / input[i]) - (input[i] == 1 ? 0 : (1 - expectedInput[i]) / (1 - input[i])));
-        return output;
     });
 
-    private final BiFunction<double[], double[], double[]> function;
-    private final BiFunction<double[], double[], double[]> derivativeFunction;
+    /** Writes the element-wise result for {@code input} and {@code expectedInput} into {@code output},
+     * which may be {@code input} itself */
+    private interface ElementWise {
+        void apply(double[] input, double[] expectedInput, double[] output);
+    }
+
+    private final ElementWise function;
+    private final ElementWise derivativeFunction;
 
-    Cost(BiFunction<double[], double[], double[]> function, BiFunction<double[], double[], double[]> derivativeFunction) {
+    Cost(ElementWise function, ElementWise derivativeFunction) {
         this.function = function;
         this.derivativeFunction = derivativeFunction;
     }
@@ -83,14 +79,20 @@ public enum Cost {
      * @throws AssertionError if input or output contains non-finite values
      */
     double[] calculate(double[] output, double[] expectedOutput) {
+        double[] costs = new double[output.length];
+        calculate(output, expectedOutput, costs);
+        return costs;
+    }
+
+    /** Same as {@link #calculate(double[], double[])}, writing the cost of each element into {@code costs} */
+    void calculate(double[] output, double[] expectedOutput, double[] costs) {
         for (double v : output)
             if (!Double.isFinite(v))
                 throw new IllegalArgumentException("Attempted to input invalid values into Loss Function");
-        double[] costs = this.function.apply(output, expectedOutput);
+        this.function.apply(output, expectedOutput, costs);
         for (double v : costs)
             if (!Double.isFinite(v))
                 throw new IllegalStateException("Loss Function returning invalid values");
-        return costs;
     }
 
     /**
@@ -103,13 +105,20 @@ public enum Cost {
      * @throws AssertionError if input or output contains non-finite values
      */
     double[] derivative(double[] output, double[] expectedOutput) {
+        double[] gradient = new double[output.length];
+        derivative(output, expectedOutput, gradient);
+        return gradient;
+    }
+
+    /** Same as {@link #derivative(double[], double[])}, writing the gradient into {@code gradient},
+     * which may be {@code output} itself */
+    void derivative(double[] output, double[] expectedOutput, double[] gradient) {
         for (double v : output)
             if (!Double.isFinite(v))
                 throw new IllegalArgumentException("Attempted to input invalid values into Deriv of Loss Function");
-        double[] gradient = this.derivativeFunction.apply(output, expectedOutput);
+        this.derivativeFunction.apply(output, expectedOutput, gradient);
         for (double v : gradient)
             if (!Double.isFinite(v))
                 throw new IllegalStateException("Deriv of Loss Function returning invalid values");
-        return gradient;
     }
 }
@@ -0,0 +1,38 @@
+package Network;
+
+/**
+ * A fixed collection of test cases, each pairing an input of {@link #inputNum()} values with an expected output of
+ * {@link #outputNum()} values, that a {@link Trainer} can read in any order.
+ * <p>
+ * Implementations choose how samples are stored: {@link ArrayDataset} hands out its own rows without copying, while
+ * more compact storage decodes a sample into the caller's buffer. Either way, callers must treat the returned arrays
+ * as read-only and must not keep them past their next call with the same buffer.
+ * <p>
+ * Reading a dataset must not change it, and must be safe from several threads at once: a {@link Trainer} reads
+ * it on a prefetch thread, and {@link NN#evaluate} splits it between workers.
+ */
+public interface Dataset {
+
+    /** The number of test cases in this dataset */
+    int size();
+
+    /** The number of values in every input */
+    int inputNum();
+
+    /** The number of values in every expected output */
+    int outputNum();
+
+    /**
+     * Returns the input of test case {@code index}: either this dataset's own storage of it, or {@code buffer}
+     * after decoding the input into it.
+     * @param buffer an array of {@link #inputNum()} values this dataset may overwrite
+     */
+    double[] input(int index, double[] buffer);
+
+    /**
+     * Returns the expected output of test case {@code index}: either this dataset's own storage of it, or
+     * {@code buffer} after decoding the output into it.
+     * @param buffer an array of {@link #outputNum()} values this dataset may overwrite
+     */
+    double[] output(int index, double[] buffer);
+}
@@ -0,0 +1,413 @@
+package Network;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Loads whole classification datasets from CSV or IDX files into {@link CompactDataset}s, ready for a
+ * {@link Trainer}.
+ * <br><br>A CSV file is memory-mapped and split into chunks of whole lines that are parsed in parallel, straight
+ * from the mapped bytes: there is no {@code readLine}, {@code split} or {@code String} per field. Parsing takes two
+ * passes over the chunks. The first counts every chunk's lines, so the dataset can be allocated at its final size
+ * and every chunk knows the index of its first test case. The second decodes the chunks into the dataset, each
+ * into its own range of test cases.
+ * <br><br>Both formats hold one sample per line or record, a class label followed by raw input values (as in the
+ * MNIST CSV export and IDX files). A sample's input is {@code raw * scale + shift}, and its expected output is the
+ * one-hot vector of its label.
+ */
+public final class DatasetReader {
+
+    /**
+     * The smallest share of a CSV file worth parsing on its own thread
+     */
+    private static final int MIN_CHUNK_BYTES = 1 << 20;
+
+    /**
+     * The largest share of a CSV file {@link #forEachCsvSample} maps at once
+     */
+    static final long CSV_WINDOW_BYTES = 1 << 30;
+
+    /**
+     * The powers of ten that are exact as doubles, see {@link Cursor#number()}
+     */
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+
+    private DatasetReader() {
+    }
+
+    /**
+     * Reads a CSV file of up to 2 GB whose lines hold a class label in {@code [0, classes)} followed by the raw input
+     * values, separated by commas. Blank lines are skipped, and lines may end in {@code \n} or {@code \r\n}.
+     * <br>Numbers are decimal, optionally signed, with an optional fraction and exponent. Numbers of up to 18
+     * significant digits and exponents up to 22 are parsed without allocating; longer ones fall back to
+     * {@link Double#parseDouble}.
+     * @throws IOException if the file can't be read, or a line is malformed or has a different number of values
+     * than the first
+     */
+    public static CompactDataset readCsv(Path csv, int classes, CompactDataset.Encoding encoding, double scale, double shift) throws IOException {
+        MappedByteBuffer bytes;
+        try (FileChannel channel = FileChannel.open(csv, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("CSV files over 2 GB must be converted with MappedDataset.convertCsv");
+            bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        int length = bytes.limit();
+        int inputNum = csvInputNum(bytes);
+
+        int chunks = (int) Math.max(1, Math.min(length / MIN_CHUNK_BYTES, 4L * Runtime.getRuntime().availableProcessors()));
+        int[] starts = new int[chunks + 1];
+        starts[chunks] = length;
+        for (int c = 1; c < chunks; c++)
+            starts[c] = lineStart(bytes, Math.max(starts[c - 1], (int) ((long) c * length / chunks)));
+
+        //pass 1: count the test cases and lines of every chunk
+        int[] rows = new int[chunks + 1], lines = new int[chunks + 1];
+        Linalg.parallelFor(chunks, length, c -> {
+            Cursor cursor = new Cursor(bytes, starts[c], starts[c + 1], 0);
+            while (cursor.hasLine()) {
+                if (!cursor.blankLine()) rows[c + 1]++;
+                cursor.nextLine();
+                lines[c + 1]++;
+            }
+        });
+        for (int c = 0; c < chunks; c++) {
+            rows[c + 1] += rows[c];
+            lines[c + 1] += lines[c];
+        }
+
+        //pass 2: decode every chunk into its own range of test cases
+        CompactDataset dataset = new CompactDataset(rows[chunks], inputNum, classes, encoding, scale, shift);
+        try {
+            Linalg.parallelFor(chunks, length, c -> {
+                Cursor cursor = new Cursor(bytes, starts[c], starts[c + 1], lines[c] + 1);
+                double[] input = new double[inputNum];
+                for (int row = rows[c]; cursor.hasLine(); cursor.nextLine()) {
+                    if (cursor.blankLine()) continue;
+                    int label = cursor.sample(input, scale, shift);
+                    try {
+                        dataset.setLabel(row, label);
+                        dataset.setInput(row, input);
+                    } catch (IllegalArgumentException e) {
+                        throw cursor.error(e.getMessage());
+                    }
+                    row++;
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return dataset;
+    }
+
+    /**
+     * Receives the samples of a CSV file from {@link #forEachCsvSample}, one line at a time
+     */
+    interface CsvSampleConsumer {
+        /**
+         * Accepts the sample on line {@code line}, whose {@code input} buffer is only valid until this returns
+         */
+        void accept(int line, int label, double[] input) throws IOException;
+    }
+
+    /**
+     * Parses a CSV file of any size, in the format of {@link #readCsv}, line by line on the calling thread and hands
+     * every sample of {@code inputNum} input values to {@code consumer} in file order. The file is mapped in windows
+     * of whole lines, at most {@code windowBytes} long.
+     * @throws IOException if the file can't be read, or a line is malformed, longer than a window or doesn't hold
+     * {@code inputNum + 1} values
+     */
+    static void forEachCsvSample(Path csv, int inputNum, double scale, double shift, long windowBytes,
+                                 CsvSampleConsumer consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(csv, StandardOpenOption.READ)) {
+            long length = channel.size();
+            int line = 1;
+            double[] input = new double[inputNum];
+            for (long start = 0; start < length; ) {
+                int window = (int) Math.min(Math.min(windowBytes, Integer.MAX_VALUE), length - start);
+                MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, start, window);
+                int end = window;
+                if (start + window < length) {
+                    while (end > 0 && bytes.get(end - 1) != '\n') end--;
+                    if (end == 0)
+                        throw new IOException("line " + line + " is longer than " + windowBytes + " bytes");
+                }
+                Cursor cursor = new Cursor(bytes, 0, end, line);
+                try {
+                    for (; cursor.hasLine(); cursor.nextLine())
+                        if (!cursor.blankLine())
+                            consumer.accept(cursor.line, cursor.sample(input, scale, shift), input);
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+                line = cursor.line;
+                start += end;
+            }
+        }
+    }
+
+    /**
+     * The number of input values of every sample of a CSV file, see {@link #csvInputNum(MappedByteBuffer)}
+     * @throws IOException if the file can't be read or holds no sample
+     */
+    static int csvInputNum(Path csv) throws IOException {
+        try (FileChannel channel = FileChannel.open(csv, StandardOpenOption.READ)) {
+            return csvInputNum(channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), CSV_WINDOW_BYTES)));
+        }
+    }
+
+    /**
+     * The number of input values on the first non-blank line of {@code bytes}, one less than its comma-separated values
+     * @throws IOException if there is no such line
+     */
+    private static int csvInputNum(MappedByteBuffer bytes) throws IOException {
+        Cursor cursor = new Cursor(bytes, 0, bytes.limit(), 1);
+        while (cursor.hasLine() && cursor.blankLine()) cursor.nextLine();
+        if (!cursor.hasLine())
+            throw new IOException("CSV file is empty");
+        int fields = 1;
+        for (int i = cursor.position; i < bytes.limit() && bytes.get(i) != '\n'; i++)
+            if (bytes.get(i) == ',') fields++;
+        return fields - 1;
+    }
+
+    /** The first index at or after {@code from} that starts a line */
+    private static int lineStart(MappedByteBuffer bytes, int from) {
+        if (from == 0) return 0;
+        int i = from;
+        while (i < bytes.limit() && bytes.get(i - 1) != '\n') i++;
+        return i;
+    }
+
+    /**
+     * Reads an IDX image file (unsigned bytes, any number of dimensions per image) and its IDX label file, such as
+     * MNIST's {@code train-images-idx3-ubyte} and {@code train-labels-idx1-ubyte}. For a
+     * {@link CompactDataset.Encoding#UINT8} dataset, the pixels are already its codes and are copied in whole blocks.
+     * @throws IOException if either file isn't an unsigned-byte IDX file, their sample counts differ, or a label is
+     * not in {@code [0, classes)}
+     */
+    public static CompactDataset readIdx(Path images, Path labels, int classes, CompactDataset.Encoding encoding,
+                                         double scale, double shift) throws IOException {
+        try (DataInputStream imageStream = idxStream(images); DataInputStream labelStream = idxStream(labels)) {
+            int[] dimensions = idxDimensions(imageStream, labelStream);
+            int size = dimensions[0], inputNum = dimensions[1];
+            CompactDataset dataset = new CompactDataset(size, inputNum, classes, encoding, scale, shift);
+
+            int blockSamples = Math.max(1, MIN_CHUNK_BYTES / Math.max(1, inputNum));
+            byte[] block = new byte[Math.min(size, blockSamples) * inputNum];
+            double[] input = new double[inputNum];
+            for (int first = 0; first < size; first += blockSamples) {
+                int samples = Math.min(blockSamples, size - first);
+                imageStream.readFully(block, 0, samples * inputNum);
+                if (encoding == CompactDataset.Encoding.UINT8) dataset.setInputCodes(first, block, 0, samples);
+                else for (int s = 0; s < samples; s++) {
+                    for (int j = 0; j < inputNum; j++) input[j] = (block[s * inputNum + j] & 0xFF) * scale + shift;
+                    dataset.setInput(first + s, input);
+                }
+            }
+            for (int i = 0; i < size; i++) dataset.setLabel(i, idxLabel(labelStream, i, classes));
+            return dataset;
+        }
+    }
+
+    static DataInputStream idxStream(Path path) throws IOException {
+        return new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16));
+    }
+
+    /**
+     * Reads the headers of an IDX image file and its IDX label file, leaving both streams at their first sample.
+     * @return the number of samples, then the number of input values of every sample
+     * @throws IOException if either file isn't an unsigned-byte IDX file, or their sample counts differ
+     */
+    static int[] idxDimensions(DataInputStream images, DataInputStream labels) throws IOException {
+        int[] imageShape = idxShape(images), labelShape = idxShape(labels);
+        if (labelShape.length != 1 || imageShape[0] != labelShape[0])
+            throw new IOException("label file must hold one label per image");
+        int inputNum = 1;
+        for (int i = 1; i < imageShape.length; i++) inputNum = Math.multiplyExact(inputNum, imageShape[i]);
+        return new int[]{imageShape[0], inputNum};
+    }
+
+    /**
+     * Reads the header of an unsigned-byte IDX file: 2 zero bytes, the type {@code 0x08}, the number of dimensions,
+     * then every dimension as a big-endian int.
+     * @return the dimensions, the first being the number of samples
+     */
+    static int[] idxShape(InputStream stream) throws IOException {
+        DataInputStream data = stream instanceof DataInputStream d ? d : new DataInputStream(stream);
+        int magic = data.readInt();
+        if ((magic >>> 16) != 0 || ((magic >>> 8) & 0xFF) != 0x08 || (magic & 0xFF) == 0)
+            throw new IOException("not an unsigned-byte IDX file");
+        int[] shape = new int[magic & 0xFF];
+        for (int i = 0; i < shape.length; i++)
+            if ((shape[i] = data.readInt()) < 0)
+                throw new IOException("negative IDX dimension");
+        return shape;
+    }
+
+    /**
+     * Reads the label of sample {@code sample} from an IDX label file.
+     * @throws IOException if the label is not in {@code [0, classes)}
+     */
+    static int idxLabel(DataInputStream labels, int sample, int classes) throws IOException {
+        int label = labels.readUnsignedByte();
+        if (label >= classes)
+            throw new IOException("sample " + sample + ": label " + label + " is not in [0, " + classes + ")");
+        return label;
+    }
+
+    /**
+     * A read position inside one chunk {@code [position, end)} of a CSV file's bytes, which always starts at the
+     * beginning of a line, tracking the 1-based number of that line for error messages
+     */
+    private static final class Cursor {
+        private final MappedByteBuffer bytes;
+        private final int end;
+        private int position, line;
+
+        Cursor(MappedByteBuffer bytes, int start, int end, int line) {
+            this.bytes = bytes;
+            this.position = start;
+            this.end = end;
+            this.line = line;
+        }
+
+        boolean hasLine() {
+            return position < end;
+        }
+
+        /** Whether the rest of the current line is only whitespace, without moving */
+        boolean blankLine() {
+            for (int i = position; i < end; i++) {
+                byte b = bytes.get(i);
+                if (b == '\n') return true;
+                if (!isSpace(b)) return false;
+            }
+            return true;
+        }
+
+        /** Moves to the start of the next line */
+        void nextLine() {
+            while (position < end && bytes.get(position) != '\n') position++;
+            position++;
+            line++;
+        }
+
+        /** Skips trailing whitespace, returning whether the current line ends here */
+        boolean atLineEnd() {
+            skipSpaces();
+            return position >= end || bytes.get(position) == '\n';
+        }
+
+        void expect(char separator) {
+            if (position >= end || bytes.get(position) != separator)
+                throw error("expected '" + separator + "'");
+            position++;
+        }
+
+        /**
+         * Parses the rest of the current line as a sample: its integral class label, which is returned, then
+         * {@code input.length} comma-separated raw input values, stored as {@code raw * scale + shift}
+         */
+        int sample(double[] input, double scale, double shift) {
+            double label = number();
+            if (label != (int) label)
+                throw error("label " + label + " is not an integer");
+            for (int j = 0; j < input.length; j++) {
+                expect(',');
+                input[j] = number() * scale + shift;
+            }
+            if (!atLineEnd())
+                throw error("expected " + (input.length + 1) + " values");
+            return (int) label;
+        }
+
+        /** Parses the decimal number at the current position, surrounded by optional spaces or tabs */
+        double number() {
+            skipSpaces();
+            int start = position;
+            boolean negative = false;
+            if (position < end && (bytes.get(position) == '-' || bytes.get(position) == '+'))
+                negative = bytes.get(position++) == '-';
+            long mantissa = 0;
+            int exponent = 0, significant = 0;
+            boolean digits = false, truncated = false;
+            for (boolean fraction = false; position < end; position++) {
+                byte b = bytes.get(position);
+                if (b == '.' && !fraction) {
+                    fraction = true;
+                    continue;
+                }
+                if (b < '0' || b > '9') break;
+                digits = true;
+                if (significant < 18) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    if (mantissa != 0) significant++;
+                    if (fraction) exponent--;
+                } else {
+                    truncated = true;
+                    if (!fraction) exponent++;
+                }
+            }
+            if (!digits)
+                throw error("expected a number");
+            if (position < end && (bytes.get(position) == 'e' || bytes.get(position) == 'E')) {
+                position++;
+                boolean negativeExponent = false;
+                if (position < end && (bytes.get(position) == '-' || bytes.get(position) == '+'))
+                    negativeExponent = bytes.get(position++) == '-';
+                int written = 0, digitsStart = position;
+                for (; position < end && bytes.get(position) >= '0' && bytes.get(position) <= '9'; position++)
+                    written = Math.min(written * 10 + (bytes.get(position) - '0'), 100_000);
+                if (position == digitsStart)
+                    throw error("expected an exponent");
+                exponent += negativeExponent ? -written : written;
+            }
+            int numberEnd = position;
+            skipSpaces();
+
+            double value;
+            if (!truncated && Math.abs(exponent) < POWERS_OF_TEN.length)
+                //an 18-digit mantissa is below 2^63, and a mantissa below 2^53 times or over an exact power of ten
+                //rounds once, so is correctly rounded
+                value = mantissa < (1L << 53)
+                        ? (exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent])
+                        : parse(start, numberEnd);
+            else value = parse(start, numberEnd);
+            return negative ? -value : value;
+        }
+
+        /** Parses the unsigned magnitude of the number in {@code [start, end)} the slow way */
+        private double parse(int start, int end) {
+            byte[] ascii = new byte[end - start];
+            bytes.get(start, ascii);
+            return Math.abs(Double.parseDouble(new String(ascii, StandardCharsets.US_ASCII)));
+        }
+
+        private void skipSpaces() {
+            while (position < end && isSpace(bytes.get(position))) position++;
+        }
+
+        private static boolean isSpace(byte b) {
+            return b == ' ' || b == '\t' || b == '\r';
+        }
+
+        /** An exception describing a malformed value on the current line, to be rethrown as its IOException cause */
+        UncheckedIOException error(String message) {
+            return new UncheckedIOException(new IOException("line " + line + ": " + message));
+        }
+    }
+}
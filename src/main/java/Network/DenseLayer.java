@@ -2,7 +2,6 @@ package Network;
 
 import java.util.Arrays;
 import java.util.Objects;
-import java.util.function.BiConsumer;
 import java.util.function.Supplier;
 
 /**
@@ -10,57 +9,54 @@ import java.util.function.Supplier;
  * <p>
  * Class Invariants:
  * <ul>
- *   <li>{@code weights} is shaped {@code [nodesBefore][nodes]} -- rows index the previous
- *       layer's neurons, columns index this layer's neurons. In particular,
- *       {@code weights.length == nodesBefore} and {@code weights[i].length == nodes}; do NOT
- *       use {@code weights[0].length} to obtain {@code nodesBefore}.</li>
+ *   <li>{@code weights} is a single row-major {@code [nodesBefore][nodes]} matrix stored in one flat array of
+ *       length {@code nodesBefore * nodes}: the synapse from neuron {@code i} in the previous layer to neuron
+ *       {@code j} in this layer lives at {@code weights[i * nodes + j]}.</li>
  *   <li>{@code weightsGradient}, {@code weightsVelocity} (when non-null) and
- *       {@code weightsVelocitySquared} (when non-null) all share the same
- *       {@code [nodesBefore][nodes]} shape as {@code weights}.</li>
+ *       {@code weightsVelocitySquared} (when non-null) all share the same flat layout as {@code weights}.</li>
  *   <li>{@link #getNumParameters()} returns {@code nodesBefore * nodes + nodes} and is safe
- *       to call even when {@code nodesBefore == 0} (does not dereference {@code weights[0]}).</li>
+ *       to call even when {@code nodesBefore == 0}.</li>
  *   <li>{@link #equals} is reflexive: an instance equals itself and any structurally identical
  *       DenseLayer. The check requires the {@code instanceof DenseLayer} branch AND
  *       {@code super.equals(obj)} to both succeed before comparing weight arrays.</li>
- *   <li>{@link #clone} returns a structurally-equal independent copy: every {@code weights[i]}
- *       row of length {@code nodes} is copied element-wise, preserving the
- *       {@code [nodesBefore][nodes]} shape regardless of whether {@code nodesBefore == nodes}.</li>
+ *   <li>{@link #clone} returns a structurally-equal independent copy, copying every flat array in one shot
+ *       and preserving the {@code [nodesBefore][nodes]} shape regardless of whether {@code nodesBefore == nodes}.</li>
  * </ul>
  */
 class DenseLayer extends Layer {
 
-    /**
-     * A 2D matrix of weights
-     * <br>Rows: The neuron {@code n} in the previous layer
-     * <br>Columns: Every outgoing synapse from n to this layer's node.
-     */
-    private final double[][] weights;
+    /** The number of Neurons in the previous layer */
+    private final int nodesBefore;
 
     /**
-     * A 2D matrix of weight velocities for SGD with momentum
+     * A row-major {@code [nodesBefore][nodes]} matrix of weights
      * <br>Rows: The neuron {@code n} in the previous layer
      * <br>Columns: Every outgoing synapse from n to this layer's node.
      */
-    private double[][] weightsVelocity;
+    private final double[] weights;
 
-    /**
-     * A 2D matrix of weight velocities for RMS-Prop
-     * <br>Rows: The neuron {@code n} in the previous layer
-     * <br>Columns: Every outgoing synapse from n to this layer's node.
-     */
-    private double[][] weightsVelocitySquared;
+    /** A row-major matrix of weight velocities for SGD with momentum, laid out like {@link #weights} */
+    private double[] weightsVelocity;
 
-    /**
-     * A 2D matrix of gradients of the loss function with respect to the weights
-     * <br>Rows: The neuron {@code n} in the previous layer
-     * <br>Columns: Every outgoing synapse from n to this layer's node.
-     */
-    private final double[][] weightsGradient;
+    /** A row-major matrix of weight velocities for RMS-Prop, laid out like {@link #weights} */
+    private double[] weightsVelocitySquared;
+
+    /** A row-major matrix of gradients of the loss function with respect to the weights, laid out like {@link #weights} */
+    private final double[] weightsGradient;
 
     DenseLayer(int nodesBefore, int nodes) {
         super(nodes);
-        this.weights = new double[nodesBefore][nodes];
-        this.weightsGradient = new double[nodesBefore][nodes];
+        this.nodesBefore = nodesBefore;
+        this.weights = new double[nodesBefore * nodes];
+        this.weightsGradient = new double[nodesBefore * nodes];
+    }
+
+    /** Creates a gradient shard of {@code parameters}, see {@link Layer#gradientShard} */
+    private DenseLayer(DenseLayer parameters) {
+        super(parameters);
+        this.nodesBefore = parameters.nodesBefore;
+        this.weights = parameters.weights;
+        this.weightsGradient = new double[weights.length];
     }
 
     @Override
@@ -68,88 +64,100 @@ class DenseLayer extends Layer {
         super.initialize(initializer, optimizer);
 
         if (optimizer == Optimizer.SGD_MOMENTUM || optimizer == Optimizer.ADAM)
-            this.weightsVelocity = new double[weights.length][nodes];
+            this.weightsVelocity = new double[weights.length];
         if (optimizer == Optimizer.RMS_PROP || optimizer == Optimizer.ADAM)
-            this.weightsVelocitySquared = new double[weights.length][nodes];
+            this.weightsVelocitySquared = new double[weights.length];
 
-        for (double[] weightRow : weights)
-            for (int j = 0; j < nodes; j++)
-                weightRow[j] = initializer.get();
+        for (int i = 0; i < weights.length; i++)
+            weights[i] = initializer.get();
     }
 
+    /** {@code output = weights^T * input + bias}, a single pass over the flat weight matrix */
     @Override
     double[] calculateWeightedOutput(double[] input) {
-        return Linalg.add(Linalg.matrixMultiply(weights, input), bias);
+        if (input.length != nodesBefore)
+            throw new IllegalArgumentException("input length must equal nodesBefore");
+        double[] output = bias.clone();
+        Linalg.gemv(true, nodesBefore, nodes, weights, 0, input, 0, output, 0);
+        return output;
     }
 
     @Override
     double[] updateGradient(double[] dz_dC, double[] x) {
         Linalg.addInPlace(biasGradient, dz_dC);
-        double[] result = new double[weights.length];
-        for (int i = 0; i < weights.length; i++) {
-            Linalg.addInPlace(weightsGradient[i], Linalg.scale(x[i], dz_dC));
-            result[i] = Linalg.dotProduct(weights[i], dz_dC);
-        }
-
+        //weightsGradient += x * dz_dC^T, then da_dC = weights * dz_dC
+        Linalg.gemm(true, false, nodesBefore, nodes, 1, x, 0, dz_dC, 0, weightsGradient, 0);
+        double[] result = new double[nodesBefore];
+        Linalg.gemv(false, nodesBefore, nodes, weights, 0, dz_dC, 0, result, 0);
         return result;
     }
 
+    /**
+     * Processes the whole batch as one matrix-matrix product: {@code output = batch * weights + bias},
+     * where {@code batch} is a row-major {@code [batchSize][nodesBefore]} matrix.
+     */
     @Override
-    void applyGradient(Optimizer optimizer, double adjustedLearningRate, double momentum, double beta, double epsilon) {
-        BiConsumer<Integer, Integer> updateRule;
-        switch (optimizer) {
-            case SGD -> updateRule = (i, j) -> weights[i][j] -= adjustedLearningRate * weightsGradient[i][j];
-            case SGD_MOMENTUM -> updateRule = (i, j) -> {
-                weightsVelocity[i][j] = weightsVelocity[i][j] * momentum + (1 - momentum) * weightsGradient[i][j];
-                weights[i][j] -= adjustedLearningRate * weightsVelocity[i][j];
-            };
-            case RMS_PROP -> updateRule = (i, j) -> {
-                weightsVelocitySquared[i][j] = beta * weightsVelocitySquared[i][j] + (1 - beta) * (weightsGradient[i][j] * weightsGradient[i][j]);
-                weights[i][j] -= adjustedLearningRate * weightsGradient[i][j] / Math.sqrt(weightsVelocitySquared[i][j] + epsilon);
-            };
-            case ADAM -> {
-                double correctionMomentum = 1 - Math.pow(momentum, t);
-                double correctionBeta = 1 - Math.pow(beta, t);
-                updateRule = (i, j) -> {
-                    weightsVelocity[i][j] = momentum * weightsVelocity[i][j] + (1 - momentum) * weightsGradient[i][j];
-                    weightsVelocitySquared[i][j] = beta * weightsVelocitySquared[i][j] + (1 - beta) * weightsGradient[i][j] * weightsGradient[i][j];
-                    double correctedVelocity = weightsVelocity[i][j] / correctionMomentum;
-                    double correctedVelocitySquared = weightsVelocitySquared[i][j] / correctionBeta;
-                    weights[i][j] -= adjustedLearningRate * correctedVelocity / Math.sqrt(correctedVelocitySquared + epsilon);
-                    if (!Double.isFinite(weights[i][j]))
-                        throw new IllegalStateException("\ncorrectedVelocity: " + correctedVelocity + "\ncorrectedVelocitySquared: " + correctedVelocitySquared + "\nweightsVelocity: " + weightsVelocity[i][j] + "\nweightsVelocitySquared: " + weightsVelocitySquared[i][j]);
-                };
-            }
-            case null, default -> throw new IllegalStateException("Unexpected value: " + optimizer);
-        }
+    void calculateWeightedOutput(double[] batch, int batchSize, double[] output) {
+        if (batch.length != batchSize * nodesBefore)
+            throw new IllegalArgumentException("input length must equal nodesBefore");
+        for (int b = 0; b < batchSize; b++)
+            System.arraycopy(bias, 0, output, b * nodes, nodes);
+        Linalg.gemm(false, false, batchSize, nodes, nodesBefore, batch, 0, weights, 0, output, 0);
+    }
 
-        for (int i = 0; i < weights.length; i++) {
-            for (int j = 0; j < nodes; j++) {
-                if (!Double.isFinite(weightsGradient[i][j]))
-                    throw new IllegalStateException("weightsGradient contains non-finite values");
-                updateRule.accept(i, j);
-            }
-        }
+    /**
+     * Processes the whole batch as two matrix-matrix products:
+     * {@code weightsGradient += x^T * dz_dC} and {@code da_dC = dz_dC * weights^T}.
+     */
+    @Override
+    void updateGradient(double[] dz_dC, double[] x, int batchSize, double[] da_dC) {
+        for (int b = 0; b < batchSize; b++)
+            for (int j = 0, row = b * nodes; j < nodes; j++)
+                biasGradient[j] += dz_dC[row + j];
+        Linalg.gemm(true, false, nodesBefore, nodes, batchSize, x, 0, dz_dC, 0, weightsGradient, 0);
+        Arrays.fill(da_dC, 0);
+        Linalg.gemm(false, true, batchSize, nodesBefore, nodes, dz_dC, 0, weights, 0, da_dC, 0);
+    }
+
+    @Override
+    boolean acceptsGradient(Optimizer optimizer, double adjustedLearningRate, double momentum, double beta, double epsilon) {
+        return optimizer.accepts(weights, weightsGradient, weightsVelocity, weightsVelocitySquared, adjustedLearningRate, momentum, beta, epsilon, t)
+                && super.acceptsGradient(optimizer, adjustedLearningRate, momentum, beta, epsilon);
+    }
 
-        super.applyGradient(optimizer, adjustedLearningRate, momentum, beta, epsilon);
+    @Override
+    void applyAcceptedGradient(Optimizer optimizer, double adjustedLearningRate, double momentum, double beta, double epsilon) {
+        optimizer.apply(weights, weightsGradient, weightsVelocity, weightsVelocitySquared, adjustedLearningRate, momentum, beta, epsilon, t);
+        super.applyAcceptedGradient(optimizer, adjustedLearningRate, momentum, beta, epsilon);
+    }
+
+    @Override
+    Layer gradientShard() {
+        return new DenseLayer(this);
+    }
+
+    @Override
+    void addGradient(Layer shard) {
+        Linalg.addInPlace(weightsGradient, ((DenseLayer) shard).weightsGradient);
+        super.addGradient(shard);
     }
 
     @Override
     void clearGradient() {
-        for (int i = 0; i < weightsGradient.length; i++) weightsGradient[i] = new double[weights[0].length];
+        Arrays.fill(weightsGradient, 0);
         Arrays.fill(biasGradient, 0);
     }
 
     @Override
     int getNumParameters() {
-        return weights.length * nodes + super.getNumParameters();
+        return weights.length + super.getNumParameters();
     }
 
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
-        sb.append("Weights: ").append(Arrays.deepToString(weights));
-        Layer.ArraysDeepToString(weights, sb);
+        sb.append("Weights: \n");
+        Layer.ArraysDeepToString(weights, 0, nodesBefore, nodes, sb);
         sb.append("\nBiases: \n").append(Arrays.toString(bias));
         return sb.toString();
     }
@@ -157,45 +165,37 @@ class DenseLayer extends Layer {
     @Override
     public boolean equals(Object obj) {
         if (!(obj instanceof DenseLayer o) || !super.equals(obj)) return false;
-        return Arrays.deepEquals(weights, o.weights) &&
-                Arrays.deepEquals(weightsVelocity, o.weightsVelocity) &&
-                Arrays.deepEquals(weightsVelocitySquared, o.weightsVelocitySquared) &&
-                Arrays.deepEquals(weightsGradient, o.weightsGradient);
+        return nodesBefore == o.nodesBefore &&
+                Arrays.equals(weights, o.weights) &&
+                Arrays.equals(weightsVelocity, o.weightsVelocity) &&
+                Arrays.equals(weightsVelocitySquared, o.weightsVelocitySquared) &&
+                Arrays.equals(weightsGradient, o.weightsGradient);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(nodes,
+        return Objects.hash(nodes, nodesBefore,
                 Arrays.hashCode(bias), Arrays.hashCode(biasVelocity), Arrays.hashCode(biasVelocitySquared), Arrays.hashCode(biasGradient),
-                Arrays.deepHashCode(weights), Arrays.deepHashCode(weightsVelocity), Arrays.deepHashCode(weightsVelocitySquared), Arrays.deepHashCode(weightsGradient));
+                Arrays.hashCode(weights), Arrays.hashCode(weightsVelocity), Arrays.hashCode(weightsVelocitySquared), Arrays.hashCode(weightsGradient));
     }
 
     //noinspection CloneDoesNotCallSuperClone,CloneDoesNotThrowCloneNotSupportedException
     @Override
     @SuppressWarnings("MethodDoesNotCallSuperMethod")
     public Object clone() {
-        int nodesBefore = weights.length;
         DenseLayer newLayer = new DenseLayer(nodesBefore, nodes);
         System.arraycopy(bias, 0, newLayer.bias, 0, nodes);
         if (!Objects.isNull(biasVelocity)) {
-            newLayer.biasVelocity = new double[biasVelocity.length];
-            newLayer.weightsVelocity = new double[weightsVelocity.length][weightsVelocity[0].length];
-            System.arraycopy(biasVelocity, 0, newLayer.biasVelocity, 0, nodes);
+            newLayer.biasVelocity = biasVelocity.clone();
+            newLayer.weightsVelocity = weightsVelocity.clone();
         }
         if (!Objects.isNull(biasVelocitySquared)) {
-            newLayer.biasVelocitySquared = new double[biasVelocitySquared.length];
-            newLayer.weightsVelocitySquared = new double[weightsVelocitySquared.length][weightsVelocitySquared[0].length];
-            System.arraycopy(biasVelocitySquared, 0, newLayer.biasVelocitySquared, 0, nodes);
+            newLayer.biasVelocitySquared = biasVelocitySquared.clone();
+            newLayer.weightsVelocitySquared = weightsVelocitySquared.clone();
         }
         System.arraycopy(biasGradient, 0, newLayer.biasGradient, 0, nodes);
-        for (int i = 0; i < weights.length; i++) {
-            System.arraycopy(weights[i], 0, newLayer.weights[i], 0, nodes);
-            if (!Objects.isNull(weightsVelocity))
-                System.arraycopy(weightsVelocity[i], 0, newLayer.weightsVelocity[i], 0, nodes);
-            if (!Objects.isNull(weightsVelocitySquared))
-                System.arraycopy(weightsVelocitySquared[i], 0, newLayer.weightsVelocitySquared[i], 0, nodes);
-            System.arraycopy(weightsGradient[i], 0, newLayer.weightsGradient[i], 0, nodes);
-        }
+        System.arraycopy(weights, 0, newLayer.weights, 0, weights.length);
+        System.arraycopy(weightsGradient, 0, newLayer.weightsGradient, 0, weightsGradient.length);
         return newLayer;
     }
 }
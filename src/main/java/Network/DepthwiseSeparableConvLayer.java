@@ -0,0 +1,311 @@
+package Network;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * A convolution factored into two cheap steps, as in MobileNet:
+ * <ol>
+ *   <li><strong>Depthwise</strong>: every input layer (channel) {@code c} is convolved with its own 2D kernel into
+ *       an intermediate channel {@code c} of {@code outputWidth x outputHeight} neurons.</li>
+ *   <li><strong>Pointwise</strong>: every output neuron of kernel {@code k} is a weighted sum of the intermediate
+ *       channels at the same position, {@code output[k] = pointwise[k] * depthwise + bias}, a 1x1 convolution run
+ *       as one matrix-matrix product.</li>
+ * </ol>
+ * A full convolution with its own kernel per (input channel, output kernel) pair costs
+ * {@code inputLength * numKernels * kernelWidth * kernelHeight} multiplications per output position; this layer
+ * costs {@code inputLength * (kernelWidth * kernelHeight + numKernels)}, about 8-9x fewer for 3x3 kernels.
+ * <br><br>Input and output share {@link ConvolutionalLayer}'s layout: neuron {@code (x, y)} of channel {@code c}
+ * lives at {@code x + y * width + c * width * height}. No padding is applied.
+ * <br><br>Output Dimension: every kernel creates a layer of its own, of
+ * <br> -WIDTH = ceilDiv(inputWidth - kernelWidth + 1, strideWidth)
+ * <br> -HEIGHT = ceilDiv(inputHeight - kernelHeight + 1, strideHeight)
+ * <p>
+ * Class Invariants:
+ * <ul>
+ *   <li>{@code depthwise} is a {@code [inputLength][kernelWidth][kernelHeight]} tensor in one flat array, weight
+ *       {@code (x, y)} of channel {@code c} at {@code (c * kernelWidth + x) * kernelHeight + y}.</li>
+ *   <li>{@code pointwise} is a row-major {@code [numKernels][inputLength]} matrix.</li>
+ *   <li>Every gradient and velocity array shares the layout of the weights it belongs to.</li>
+ *   <li>The intermediate channels are recomputed by the backward pass rather than kept between passes, so the layer
+ *       holds no per-sample state.</li>
+ * </ul>
+ */
+class DepthwiseSeparableConvLayer extends Layer {
+
+    /** Every input channel's 2D kernel, stored back to back in one flat array */
+    private final double[] depthwise;
+
+    /** The weight of every intermediate channel in every output kernel, a row-major {@code [numKernels][inputLength]} matrix */
+    private final double[] pointwise;
+
+    private double[] depthwiseVelocity, pointwiseVelocity;
+    private double[] depthwiseVelocitySquared, pointwiseVelocitySquared;
+    private final double[] depthwiseGradient, pointwiseGradient;
+
+    private final int inputWidth, inputHeight, inputLength;
+    private final int kernelWidth, kernelHeight, numKernels;
+    private final int strideWidth, strideHeight;
+    private final int outputWidth, outputHeight;
+
+    /**
+     * Per-worker scratch buffers: the intermediate channels of one sample and their gradient.
+     * Per worker, since gradient shards of the same layer run on different workers at once.
+     */
+    private static final WorkerLocal<double[][]> INTERMEDIATE = WorkerLocal.withInitial(() -> new double[2][0]);
+
+    DepthwiseSeparableConvLayer(int inputWidth, int inputHeight, int inputLength,
+                                int kernelWidth, int kernelHeight, int numKernels,
+                                int strideWidth, int strideHeight) {
+        super(Math.ceilDiv(inputWidth - kernelWidth + 1, strideWidth) *
+                Math.ceilDiv(inputHeight - kernelHeight + 1, strideHeight) * numKernels);
+        if (inputLength <= 0 || numKernels <= 0 || kernelWidth <= 0 || kernelHeight <= 0)
+            throw new IllegalArgumentException("channel, kernel and kernel dimension counts must be positive");
+        if (kernelWidth > inputWidth || kernelHeight > inputHeight)
+            throw new IllegalArgumentException("kernel dimensions must not exceed input dimensions");
+        this.inputWidth = inputWidth;
+        this.inputHeight = inputHeight;
+        this.inputLength = inputLength;
+        this.kernelWidth = kernelWidth;
+        this.kernelHeight = kernelHeight;
+        this.numKernels = numKernels;
+        this.strideWidth = strideWidth;
+        this.strideHeight = strideHeight;
+        this.outputWidth = Math.ceilDiv(inputWidth - kernelWidth + 1, strideWidth);
+        this.outputHeight = Math.ceilDiv(inputHeight - kernelHeight + 1, strideHeight);
+        this.depthwise = new double[inputLength * kernelWidth * kernelHeight];
+        this.pointwise = new double[numKernels * inputLength];
+        this.depthwiseGradient = new double[depthwise.length];
+        this.pointwiseGradient = new double[pointwise.length];
+    }
+
+    /** Creates a gradient shard of {@code parameters}, see {@link Layer#gradientShard} */
+    private DepthwiseSeparableConvLayer(DepthwiseSeparableConvLayer parameters) {
+        super(parameters);
+        this.inputWidth = parameters.inputWidth;
+        this.inputHeight = parameters.inputHeight;
+        this.inputLength = parameters.inputLength;
+        this.kernelWidth = parameters.kernelWidth;
+        this.kernelHeight = parameters.kernelHeight;
+        this.numKernels = parameters.numKernels;
+        this.strideWidth = parameters.strideWidth;
+        this.strideHeight = parameters.strideHeight;
+        this.outputWidth = parameters.outputWidth;
+        this.outputHeight = parameters.outputHeight;
+        this.depthwise = parameters.depthwise;
+        this.pointwise = parameters.pointwise;
+        this.depthwiseGradient = new double[depthwise.length];
+        this.pointwiseGradient = new double[pointwise.length];
+    }
+
+    @Override
+    void initialize(Supplier<Double> initializer, Optimizer optimizer) {
+        super.initialize(initializer, optimizer);
+
+        if (optimizer == Optimizer.SGD_MOMENTUM || optimizer == Optimizer.ADAM) {
+            this.depthwiseVelocity = new double[depthwise.length];
+            this.pointwiseVelocity = new double[pointwise.length];
+        }
+        if (optimizer == Optimizer.RMS_PROP || optimizer == Optimizer.ADAM) {
+            this.depthwiseVelocitySquared = new double[depthwise.length];
+            this.pointwiseVelocitySquared = new double[pointwise.length];
+        }
+        for (int i = 0; i < depthwise.length; i++)
+            depthwise[i] = initializer.get();
+        for (int i = 0; i < pointwise.length; i++)
+            pointwise[i] = initializer.get();
+    }
+
+    /** The number of values in one input sample */
+    int inputVolume() {
+        return inputWidth * inputHeight * inputLength;
+    }
+
+    @Override
+    double[] calculateWeightedOutput(double[] input) {
+        if (input.length != inputVolume())
+            throw new IllegalArgumentException("input length must equal input volume");
+        double[] output = new double[nodes];
+        calculateWeightedOutput(input, 1, output);
+        return output;
+    }
+
+    @Override
+    void calculateWeightedOutput(double[] batch, int batchSize, double[] output) {
+        if (batch.length != batchSize * inputVolume())
+            throw new IllegalArgumentException("input length must equal input volume");
+        int positions = outputWidth * outputHeight;
+        double[] intermediate = intermediateBuffer(0);
+        for (int b = 0; b < batchSize; b++) {
+            depthwiseOutput(batch, b * inputVolume(), intermediate);
+            System.arraycopy(bias, 0, output, b * nodes, nodes);
+            Linalg.gemm(false, false, numKernels, positions, inputLength, pointwise, 0, intermediate, 0, output, b * nodes);
+        }
+    }
+
+    /** Convolves every channel of the sample starting at {@code input[inputOffset]} with its own kernel into {@code intermediate} */
+    private void depthwiseOutput(double[] input, int inputOffset, double[] intermediate) {
+        int positions = outputWidth * outputHeight;
+        Linalg.parallelFor(inputLength, (long) inputLength * positions * kernelWidth * kernelHeight, channel -> {
+            int in = inputOffset + channel * inputWidth * inputHeight;
+            for (int y = 0; y < outputHeight; y++)
+                for (int x = 0; x < outputWidth; x++) {
+                    int corner = in + x * strideWidth + y * strideHeight * inputWidth;
+                    double sum = 0;
+                    for (int kernelX = 0, k = channel * kernelWidth * kernelHeight; kernelX < kernelWidth; kernelX++)
+                        for (int kernelY = 0; kernelY < kernelHeight; kernelY++, k++)
+                            sum += depthwise[k] * input[corner + kernelX + kernelY * inputWidth];
+                    intermediate[channel * positions + x + y * outputWidth] = sum;
+                }
+        });
+    }
+
+    @Override
+    double[] updateGradient(double[] dz_dC, double[] x) {
+        if (x.length != inputVolume())
+            throw new IllegalArgumentException("input length must equal input volume");
+        double[] da_dC = new double[inputVolume()];
+        updateGradient(dz_dC, x, 1, da_dC);
+        return da_dC;
+    }
+
+    /**
+     * Per sample: {@code pointwiseGradient += dz_dC * intermediate^T}, then the intermediate gradient
+     * {@code pointwise^T * dz_dC} is pushed back through every channel's kernel, each channel owning its kernel
+     * gradient and its slice of da_dC.
+     */
+    @Override
+    void updateGradient(double[] dz_dC, double[] x, int batchSize, double[] da_dC) {
+        if (x.length != batchSize * inputVolume())
+            throw new IllegalArgumentException("input length must equal input volume");
+        int positions = outputWidth * outputHeight, inputPlane = inputWidth * inputHeight;
+        double[] intermediate = intermediateBuffer(0), intermediateGradient = intermediateBuffer(1);
+        Arrays.fill(da_dC, 0, batchSize * inputVolume(), 0);
+        for (int b = 0; b < batchSize; b++) {
+            int dzOffset = b * nodes, xOffset = b * inputVolume();
+            for (int i = 0; i < nodes; i++)
+                biasGradient[i] += dz_dC[dzOffset + i];
+            depthwiseOutput(x, xOffset, intermediate);
+            Linalg.gemm(false, true, numKernels, inputLength, positions, dz_dC, dzOffset, intermediate, 0, pointwiseGradient, 0);
+            Arrays.fill(intermediateGradient, 0, inputLength * positions, 0);
+            Linalg.gemm(true, false, inputLength, positions, numKernels, pointwise, 0, dz_dC, dzOffset, intermediateGradient, 0);
+
+            Linalg.parallelFor(inputLength, (long) inputLength * positions * kernelWidth * kernelHeight, channel -> {
+                int in = xOffset + channel * inputPlane, kernel = channel * kernelWidth * kernelHeight;
+                for (int y = 0; y < outputHeight; y++)
+                    for (int x1 = 0; x1 < outputWidth; x1++) {
+                        int corner = in + x1 * strideWidth + y * strideHeight * inputWidth;
+                        double gradient = intermediateGradient[channel * positions + x1 + y * outputWidth];
+                        for (int kernelX = 0, k = kernel; kernelX < kernelWidth; kernelX++)
+                            for (int kernelY = 0; kernelY < kernelHeight; kernelY++, k++) {
+                                depthwiseGradient[k] += gradient * x[corner + kernelX + kernelY * inputWidth];
+                                da_dC[corner + kernelX + kernelY * inputWidth] += gradient * depthwise[k];
+                            }
+                    }
+            });
+        }
+    }
+
+    /** Returns this thread's scratch buffer {@code index}, grown to hold the intermediate channels of one sample */
+    private double[] intermediateBuffer(int index) {
+        double[][] buffers = INTERMEDIATE.get();
+        int size = inputLength * outputWidth * outputHeight;
+        if (buffers[index].length < size) buffers[index] = new double[size];
+        return buffers[index];
+    }
+
+    @Override
+    boolean acceptsGradient(Optimizer optimizer, double adjustedLearningRate, double momentum, double beta, double epsilon) {
+        return optimizer.accepts(depthwise, depthwiseGradient, depthwiseVelocity, depthwiseVelocitySquared, adjustedLearningRate, momentum, beta, epsilon, t)
+                && optimizer.accepts(pointwise, pointwiseGradient, pointwiseVelocity, pointwiseVelocitySquared, adjustedLearningRate, momentum, beta, epsilon, t)
+                && super.acceptsGradient(optimizer, adjustedLearningRate, momentum, beta, epsilon);
+    }
+
+    @Override
+    void applyAcceptedGradient(Optimizer optimizer, double adjustedLearningRate, double momentum, double beta, double epsilon) {
+        optimizer.apply(depthwise, depthwiseGradient, depthwiseVelocity, depthwiseVelocitySquared, adjustedLearningRate, momentum, beta, epsilon, t);
+        optimizer.apply(pointwise, pointwiseGradient, pointwiseVelocity, pointwiseVelocitySquared, adjustedLearningRate, momentum, beta, epsilon, t);
+        super.applyAcceptedGradient(optimizer, adjustedLearningRate, momentum, beta, epsilon);
+    }
+
+    @Override
+    Layer gradientShard() {
+        return new DepthwiseSeparableConvLayer(this);
+    }
+
+    @Override
+    void addGradient(Layer shard) {
+        DepthwiseSeparableConvLayer other = (DepthwiseSeparableConvLayer) shard;
+        Linalg.addInPlace(depthwiseGradient, other.depthwiseGradient);
+        Linalg.addInPlace(pointwiseGradient, other.pointwiseGradient);
+        super.addGradient(shard);
+    }
+
+    @Override
+    void clearGradient() {
+        Arrays.fill(depthwiseGradient, 0);
+        Arrays.fill(pointwiseGradient, 0);
+        Arrays.fill(biasGradient, 0);
+    }
+
+    @Override
+    int getNumParameters() {
+        return depthwise.length + pointwise.length + super.getNumParameters();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Depthwise Kernels: \n");
+        Layer.ArraysDeepToString(depthwise, 0, inputLength * kernelWidth, kernelHeight, sb);
+        sb.append("\nPointwise Weights: \n");
+        Layer.ArraysDeepToString(pointwise, 0, numKernels, inputLength, sb);
+        sb.append("\nBiases: \n").append(Arrays.toString(bias));
+        return sb.toString();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof DepthwiseSeparableConvLayer o) || !super.equals(obj)) return false;
+        return inputWidth == o.inputWidth && inputHeight == o.inputHeight && inputLength == o.inputLength &&
+                kernelWidth == o.kernelWidth && kernelHeight == o.kernelHeight && numKernels == o.numKernels &&
+                strideWidth == o.strideWidth && strideHeight == o.strideHeight &&
+                Arrays.equals(depthwise, o.depthwise) && Arrays.equals(pointwise, o.pointwise) &&
+                Arrays.equals(depthwiseVelocity, o.depthwiseVelocity) && Arrays.equals(pointwiseVelocity, o.pointwiseVelocity) &&
+                Arrays.equals(depthwiseVelocitySquared, o.depthwiseVelocitySquared) &&
+                Arrays.equals(pointwiseVelocitySquared, o.pointwiseVelocitySquared) &&
+                Arrays.equals(depthwiseGradient, o.depthwiseGradient) && Arrays.equals(pointwiseGradient, o.pointwiseGradient);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(nodes, inputWidth, inputHeight, inputLength, kernelWidth, kernelHeight, numKernels,
+                strideWidth, strideHeight, Arrays.hashCode(bias), Arrays.hashCode(depthwise), Arrays.hashCode(pointwise));
+    }
+
+    //noinspection CloneDoesNotCallSuperClone,CloneDoesNotThrowCloneNotSupportedException
+    @Override
+    @SuppressWarnings("MethodDoesNotCallSuperMethod")
+    public Object clone() {
+        DepthwiseSeparableConvLayer newLayer = new DepthwiseSeparableConvLayer(inputWidth, inputHeight, inputLength,
+                kernelWidth, kernelHeight, numKernels, strideWidth, strideHeight);
+        System.arraycopy(bias, 0, newLayer.bias, 0, nodes);
+        if (!Objects.isNull(biasVelocity)) {
+            newLayer.biasVelocity = biasVelocity.clone();
+            newLayer.depthwiseVelocity = depthwiseVelocity.clone();
+            newLayer.pointwiseVelocity = pointwiseVelocity.clone();
+        }
+        if (!Objects.isNull(biasVelocitySquared)) {
+            newLayer.biasVelocitySquared = biasVelocitySquared.clone();
+            newLayer.depthwiseVelocitySquared = depthwiseVelocitySquared.clone();
+            newLayer.pointwiseVelocitySquared = pointwiseVelocitySquared.clone();
+        }
+        System.arraycopy(biasGradient, 0, newLayer.biasGradient, 0, nodes);
+        System.arraycopy(depthwise, 0, newLayer.depthwise, 0, depthwise.length);
+        System.arraycopy(pointwise, 0, newLayer.pointwise, 0, pointwise.length);
+        System.arraycopy(depthwiseGradient, 0, newLayer.depthwiseGradient, 0, depthwiseGradient.length);
+        System.arraycopy(pointwiseGradient, 0, newLayer.pointwiseGradient, 0, pointwiseGradient.length);
+        return newLayer;
+    }
+}
@@ -0,0 +1,103 @@
+package Network;
+
+import java.util.Set;
+
+/**
+ * The results of {@link NN#evaluate} over a {@link Dataset}: the requested {@link Metric}s, accumulated over every
+ * test case.
+ * <p>
+ * While evaluating, every worker counts its share of the dataset into its own Evaluation, and the partial counts are
+ * merged at the end. The cost is summed over fixed-size blocks of test cases, and the block sums are added in dataset
+ * order afterward, so none of the results depend on how the dataset was split between workers.
+ */
+public final class Evaluation {
+
+    private final Set<Metric> metrics;
+    private int size, correct;
+    private double cost;
+
+    /** {@code confusion[expected][predicted]}, or null if the confusion matrix wasn't requested */
+    private final int[][] confusion;
+
+    Evaluation(Set<Metric> metrics, int classes) {
+        this.metrics = metrics;
+        this.confusion = metrics.contains(Metric.CONFUSION_MATRIX) ? new int[classes][classes] : null;
+    }
+
+    /** Accounts for one test case of the given cost, expected class and predicted class */
+    void add(double cost, int expected, int predicted) {
+        add(expected, predicted);
+        this.cost += cost;
+    }
+
+    /** Accounts for one test case of the given expected and predicted class, whose cost {@link #addCost} adds */
+    void add(int expected, int predicted) {
+        size++;
+        if (expected == predicted) correct++;
+        if (confusion != null) confusion[expected][predicted]++;
+    }
+
+    /** Adds the summed cost of test cases already counted by {@link #add(int, int)} */
+    void addCost(double cost) {
+        this.cost += cost;
+    }
+
+    /** Accounts for every test case of {@code other}, which was created with the same metrics */
+    void add(Evaluation other) {
+        size += other.size;
+        cost += other.cost;
+        correct += other.correct;
+        if (confusion != null)
+            for (int i = 0; i < confusion.length; i++)
+                for (int j = 0; j < confusion.length; j++)
+                    confusion[i][j] += other.confusion[i][j];
+    }
+
+    /** The number of evaluated test cases */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The mean cost per test case
+     * @throws IllegalStateException if {@link Metric#COST} wasn't evaluated
+     */
+    public double cost() {
+        require(Metric.COST);
+        return cost / size;
+    }
+
+    /**
+     * The fraction of test cases whose predicted class is their expected class
+     * @throws IllegalStateException if {@link Metric#ACCURACY} wasn't evaluated
+     */
+    public double accuracy() {
+        require(Metric.ACCURACY);
+        return (double) correct / size;
+    }
+
+    /**
+     * A copy of the confusion matrix: entry {@code [expected][predicted]} counts the test cases of expected class
+     * {@code expected} that were predicted as class {@code predicted}
+     * @throws IllegalStateException if {@link Metric#CONFUSION_MATRIX} wasn't evaluated
+     */
+    public int[][] confusionMatrix() {
+        require(Metric.CONFUSION_MATRIX);
+        int[][] copy = new int[confusion.length][];
+        for (int i = 0; i < confusion.length; i++) copy[i] = confusion[i].clone();
+        return copy;
+    }
+
+    private void require(Metric metric) {
+        if (!metrics.contains(metric))
+            throw new IllegalStateException(metric + " was not evaluated");
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("Evaluation of ").append(size).append(" test cases");
+        if (metrics.contains(Metric.COST)) sb.append(", cost ").append(cost());
+        if (metrics.contains(Metric.ACCURACY)) sb.append(", accuracy ").append(accuracy());
+        return sb.toString();
+    }
+}
@@ -0,0 +1,107 @@
+package Network;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An iterative radix-2 fast Fourier transform over separate real and imaginary arrays, used by
+ * {@link ConvolutionAlgorithm#FFT}.
+ * <p>
+ * Signals are zero-padded to a power-of-two length by the caller (see {@link #size}). A 2D signal of
+ * {@code rows x columns} values is row-major, so value {@code (r, c)} lives at {@code r * columns + c}.
+ * Since every signal a convolution transforms is real, two of them are transformed at once as the real and
+ * imaginary part of one complex signal and then told apart with {@link #splitRealPair}.
+ */
+final class FFT {
+
+    /** {@code cos(2 pi j / n)} and {@code sin(2 pi j / n)} at {@code [2j]} and {@code [2j + 1]} for every {@code j < n / 2}, by n */
+    private static final ConcurrentHashMap<Integer, double[]> TWIDDLES = new ConcurrentHashMap<>();
+
+    private FFT() {
+    }
+
+    /** The smallest power of two that is at least {@code n} */
+    static int size(int n) {
+        return n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+    }
+
+    /**
+     * Transforms the {@code rows x columns} signal in place, rows first and then columns. The inverse transform
+     * divides by {@code rows * columns}, so it undoes the forward one.
+     */
+    static void transform2d(double[] re, double[] im, int rows, int columns, boolean inverse) {
+        for (int r = 0; r < rows; r++)
+            transform(re, im, r * columns, columns, 1, inverse);
+        for (int c = 0; c < columns; c++)
+            transform(re, im, c, rows, columns, inverse);
+        if (inverse) {
+            double scale = 1.0 / (rows * columns);
+            for (int i = 0; i < rows * columns; i++) {
+                re[i] *= scale;
+                im[i] *= scale;
+            }
+        }
+    }
+
+    /**
+     * Transforms the {@code n} values at {@code offset, offset + stride, ...} in place, without scaling:
+     * {@code X[k] = Σ x[j] e^(∓2 pi i jk / n)}, with the minus sign for the forward transform.
+     * <br>Requires: {@code n} is a power of two
+     */
+    static void transform(double[] re, double[] im, int offset, int n, int stride, boolean inverse) {
+        //bit-reversal permutation
+        for (int i = 1, j = 0; i < n; i++) {
+            int bit = n >> 1;
+            for (; (j & bit) != 0; bit >>= 1) j ^= bit;
+            j |= bit;
+            if (i < j) {
+                int a = offset + i * stride, b = offset + j * stride;
+                double t = re[a]; re[a] = re[b]; re[b] = t;
+                t = im[a]; im[a] = im[b]; im[b] = t;
+            }
+        }
+        double[] twiddles = twiddles(n);
+        double sign = inverse ? 1 : -1;
+        for (int length = 2; length <= n; length <<= 1) {
+            int half = length >> 1, step = n / length;
+            for (int start = 0; start < n; start += length)
+                for (int k = 0; k < half; k++) {
+                    double wRe = twiddles[2 * k * step], wIm = sign * twiddles[2 * k * step + 1];
+                    int a = offset + (start + k) * stride, b = a + half * stride;
+                    double tRe = re[b] * wRe - im[b] * wIm, tIm = re[b] * wIm + im[b] * wRe;
+                    re[b] = re[a] - tRe;
+                    im[b] = im[a] - tIm;
+                    re[a] += tRe;
+                    im[a] += tIm;
+                }
+        }
+    }
+
+    /**
+     * Separates the spectrum {@code Z} of the complex signal {@code a + i b} of two real {@code rows x columns}
+     * signals into {@code A[k] = (Z[k] + conj(Z[-k])) / 2} and {@code B[k] = (Z[k] - conj(Z[-k])) / 2i}, written
+     * to {@code re} and {@code im} starting at {@code first} and {@code second}. A negative {@code second} skips B.
+     */
+    static void splitRealPair(double[] zRe, double[] zIm, int rows, int columns, double[] re, double[] im, int first, int second) {
+        for (int r = 0; r < rows; r++)
+            for (int c = 0; c < columns; c++) {
+                int k = r * columns + c, mirror = ((rows - r) % rows) * columns + (columns - c) % columns;
+                re[first + k] = (zRe[k] + zRe[mirror]) * 0.5;
+                im[first + k] = (zIm[k] - zIm[mirror]) * 0.5;
+                if (second >= 0) {
+                    re[second + k] = (zIm[k] + zIm[mirror]) * 0.5;
+                    im[second + k] = (zRe[mirror] - zRe[k]) * 0.5;
+                }
+            }
+    }
+
+    private static double[] twiddles(int n) {
+        return TWIDDLES.computeIfAbsent(n, size -> {
+            double[] twiddles = new double[Math.max(size, 2)];
+            for (int j = 0; j < size / 2; j++) {
+                twiddles[2 * j] = Math.cos(2 * Math.PI * j / size);
+                twiddles[2 * j + 1] = Math.sin(2 * Math.PI * j / size);
+            }
+            return twiddles;
+        });
+    }
+}
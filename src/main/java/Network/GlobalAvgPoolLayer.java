@@ -0,0 +1,21 @@
+package Network;
+
+/**
+ * An {@link AvgPoolLayer} whose single window covers the whole input, reducing every input layer (channel) to its
+ * mean: a {@code width x height x channels} input becomes {@code channels} output neurons.
+ * <br>Placed after a stack of convolutional layers, it replaces a large dense head's input with one neuron per
+ * feature map.
+ */
+class GlobalAvgPoolLayer extends AvgPoolLayer {
+
+    GlobalAvgPoolLayer(int inputWidth, int inputHeight, int inputLength) {
+        super(inputWidth, inputHeight, inputLength, inputWidth, inputHeight, 1, 1);
+    }
+
+    //noinspection CloneDoesNotCallSuperClone,CloneDoesNotThrowCloneNotSupportedException
+    @Override
+    @SuppressWarnings("MethodDoesNotCallSuperMethod")
+    public GlobalAvgPoolLayer clone() {
+        return new GlobalAvgPoolLayer(inputWidth, inputHeight, inputLength);
+    }
+}
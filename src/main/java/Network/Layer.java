@@ -2,7 +2,6 @@ package Network;
 
 import java.util.Arrays;
 import java.util.function.Supplier;
-import java.util.stream.IntStream;
 
 /**
  * Abstract base class representing a learnable layer in a neural network.
@@ -60,6 +59,14 @@ public abstract class Layer {
         this.biasGradient = new double[nodes];
     }
 
+    /** Creates a gradient shard of {@code parameters}: a layer that shares its biases but owns a private,
+     * zeroed bias gradient. Optimizer velocities are never needed by a shard and are left {@code null}. */
+    protected Layer(Layer parameters) {
+        this.nodes = parameters.nodes;
+        this.bias = parameters.bias;
+        this.biasGradient = new double[nodes];
+    }
+
     /** Initializes the parameters of this Layer */
     void initialize(Supplier<Double> initializer, Optimizer optimizer) {
         if (optimizer == Optimizer.SGD_MOMENTUM || optimizer == Optimizer.ADAM)
@@ -81,6 +88,79 @@ public abstract class Layer {
      */
     abstract double[] updateGradient(double[] dz_dC, double[] x);
 
+    /** Returns the length of the array returned by {@link #calculateWeightedOutput(double[])} */
+    int outputLength() {
+        return nodes;
+    }
+
+    /**
+     * Applies the learned parameters of this Layer to every sample of {@code batch}.
+     * Returns a new array with one output row per sample.
+     * <br>Packs the samples into one matrix and calls {@link #calculateWeightedOutput(double[], int, double[])}.
+     */
+    double[][] calculateWeightedOutput(double[][] batch) {
+        if (batch.length == 0) return new double[0][];
+        double[] output = new double[batch.length * outputLength()];
+        calculateWeightedOutput(Linalg.flatten(batch, batch[0].length), batch.length, output);
+        return Linalg.unflatten(output, batch.length, outputLength());
+    }
+
+    /**
+     * Batched form of {@link #updateGradient(double[], double[])}: row {@code i} of {@code dz_dC} and {@code x}
+     * belong to the same sample, and every sample's gradient is accumulated into this layer's gradients.
+     * <br>Packs the samples into matrices and calls {@link #updateGradient(double[], double[], int, double[])}.
+     * @return da_dC of every sample, one row per sample
+     */
+    double[][] updateGradient(double[][] dz_dC, double[][] x) {
+        if (dz_dC.length != x.length)
+            throw new IllegalArgumentException("dz_dC and x must have the same number of samples");
+        if (x.length == 0) return new double[0][];
+        int inputLength = x[0].length;
+        double[] da_dC = new double[x.length * inputLength];
+        updateGradient(Linalg.flatten(dz_dC, outputLength()), Linalg.flatten(x, inputLength), x.length, da_dC);
+        return Linalg.unflatten(da_dC, x.length, inputLength);
+    }
+
+    /**
+     * Applies the learned parameters of this Layer to the {@code batchSize} samples stored row-major in
+     * {@code batch}, overwriting the matching rows of {@code output} (each {@link #outputLength()} long).
+     * <br>Loops over {@link #calculateWeightedOutput(double[])} by default. Subclasses override this to process the
+     * whole batch as a single matrix-matrix product without allocating.
+     */
+    void calculateWeightedOutput(double[] batch, int batchSize, double[] output) {
+        int inputLength = batch.length / batchSize, outputLength = output.length / batchSize;
+        for (int b = 0; b < batchSize; b++) {
+            double[] sample = Arrays.copyOfRange(batch, b * inputLength, (b + 1) * inputLength);
+            System.arraycopy(calculateWeightedOutput(sample), 0, output, b * outputLength, outputLength);
+        }
+    }
+
+    /**
+     * The forward pass of a backpropagation: {@link #calculateWeightedOutput(double[], int, double[])} over a batch
+     * that {@link #updateGradient(double[], double[], int, double[])} is called on next, by the same worker. Layers
+     * that keep state for their backward pass record it here only, so that inference on the same layer object, which
+     * may run on other threads while a training step is in progress, never touches it.
+     * <br>Runs the inference pass by default.
+     */
+    void trainingWeightedOutput(double[] batch, int batchSize, double[] output) {
+        calculateWeightedOutput(batch, batchSize, output);
+    }
+
+    /**
+     * Batched form of {@link #updateGradient(double[], double[])} over row-major matrices of {@code batchSize}
+     * samples, overwriting the matching rows of {@code da_dC} with the gradient of each sample's input.
+     * <br>Loops over {@link #updateGradient(double[], double[])} by default. Subclasses override this to process the
+     * whole batch without allocating.
+     */
+    void updateGradient(double[] dz_dC, double[] x, int batchSize, double[] da_dC) {
+        int inputLength = x.length / batchSize, outputLength = dz_dC.length / batchSize;
+        for (int b = 0; b < batchSize; b++) {
+            double[] sample_da_dC = updateGradient(Arrays.copyOfRange(dz_dC, b * outputLength, (b + 1) * outputLength),
+                    Arrays.copyOfRange(x, b * inputLength, (b + 1) * inputLength));
+            System.arraycopy(sample_da_dC, 0, da_dC, b * inputLength, inputLength);
+        }
+    }
+
     /**
      * Applies this layer's gradients to the parameters of this Layer.
      * <br>Updates the respective gradient velocity vectors accordingly as well.
@@ -94,37 +174,47 @@ public abstract class Layer {
      * Precondition (RMS_PROP / ADAM): {@code epsilon > 0}, otherwise zero accumulated squared
      * velocity makes the {@code sqrt(velocitySquared + epsilon)} denominator zero and produces
      * NaN.
+     * @throws IllegalStateException if some gradient is not finite, or the update would make some parameter not
+     * finite; the layer's parameters, velocities and {@code t} are then left unchanged
      */
     void applyGradient(Optimizer optimizer, double adjustedLearningRate, double momentum, double beta, double epsilon) {
-        switch (optimizer) {
-            case SGD -> Linalg.addInPlace(bias, Linalg.scale(-adjustedLearningRate, biasGradient));
-            case SGD_MOMENTUM -> {
-                Linalg.scaleInPlace(momentum, biasVelocity);
-                Linalg.addInPlace(biasVelocity, Linalg.scale(1 - momentum, biasGradient));
-                Linalg.addInPlace(bias, Linalg.scale(-adjustedLearningRate, biasVelocity));
-            }
-            case RMS_PROP -> {
-                Linalg.scaleInPlace(beta, biasVelocitySquared);
-                Linalg.addInPlace(biasVelocitySquared, Linalg.scale(1 - beta, Linalg.multiply(biasGradient, biasGradient)));
-                IntStream.range(0, bias.length).parallel().forEach(i ->
-                        bias[i] -= adjustedLearningRate * biasGradient[i] / Math.sqrt(biasVelocitySquared[i] + epsilon)
-                );
-            }
-            case ADAM -> {
-                double correctionMomentum = 1 - Math.pow(momentum, t);
-                double correctionBeta = 1 - Math.pow(beta, t);
-                Linalg.scaleInPlace(momentum, biasVelocity);
-                Linalg.addInPlace(biasVelocity, Linalg.scale(1 - momentum, biasGradient));
-                Linalg.scaleInPlace(beta, biasVelocitySquared);
-                Linalg.addInPlace(biasVelocitySquared, Linalg.scale(1 - beta, Linalg.multiply(biasGradient, biasGradient)));
-                double[] correctedVelocity = Linalg.scale(1.0 / correctionMomentum, biasVelocity),
-                        correctedVelocitySquared = Linalg.scale(1.0 / correctionBeta, biasVelocitySquared);
-                IntStream.range(0, bias.length).parallel().forEach(i ->
-                        bias[i] -= adjustedLearningRate * correctedVelocity[i] / Math.sqrt(correctedVelocitySquared[i] + epsilon)
-                );
-                t++;
-            }
-        }
+        //every parameter array is checked before any is written, so a rejected step changes nothing
+        if (!acceptsGradient(optimizer, adjustedLearningRate, momentum, beta, epsilon))
+            throw new IllegalStateException("gradient contains non-finite values, or the update would make parameters non-finite");
+        applyAcceptedGradient(optimizer, adjustedLearningRate, momentum, beta, epsilon);
+        if (optimizer == Optimizer.ADAM) t++;
+    }
+
+    /**
+     * Whether {@code optimizer} {@link Optimizer#accepts accepts} the step of every parameter array of this layer,
+     * without writing anything. Subclasses with parameters of their own check those and then call this method.
+     */
+    boolean acceptsGradient(Optimizer optimizer, double adjustedLearningRate, double momentum, double beta, double epsilon) {
+        return optimizer.accepts(bias, biasGradient, biasVelocity, biasVelocitySquared, adjustedLearningRate, momentum, beta, epsilon, t);
+    }
+
+    /**
+     * Applies the step {@link #acceptsGradient} accepted to every parameter array of this layer. Subclasses with
+     * parameters of their own apply it to those and then call this method.
+     */
+    void applyAcceptedGradient(Optimizer optimizer, double adjustedLearningRate, double momentum, double beta, double epsilon) {
+        optimizer.apply(bias, biasGradient, biasVelocity, biasVelocitySquared, adjustedLearningRate, momentum, beta, epsilon, t);
+    }
+
+    /**
+     * Returns a gradient shard of this layer for one training worker: a layer that shares every learnable
+     * parameter with this layer, but accumulates {@link #updateGradient} into its own private gradient arrays.
+     * Shards are combined back into this layer with {@link #addGradient}.
+     * <br>Layers that don't override this method return themselves, so their {@link #updateGradient}
+     * must be safe to call from several threads at once.
+     */
+    Layer gradientShard() {
+        return this;
+    }
+
+    /** Adds the gradients accumulated by {@code shard} (a layer returned by {@link #gradientShard}) into this layer's gradients */
+    void addGradient(Layer shard) {
+        Linalg.addInPlace(biasGradient, shard.biasGradient);
     }
 
     /** Clears this layer's gradient for its parameters with respect to the loss function */
@@ -168,4 +258,21 @@ public abstract class Layer {
             sb.append("\n");
         }
     }
+
+    /** Same as {@link #ArraysDeepToString(double[][], StringBuilder)}, for the row-major {@code [rows][columns]}
+     * matrix stored in {@code array} starting at {@code offset}. */
+    static void ArraysDeepToString(double[] array, int offset, int rows, int columns, StringBuilder sb) {
+        for (int i = 0; i < rows; i++) {
+            sb.append("[");
+            for (int j = 0; j < columns; j++) {
+                sb.append(String.format("%.2f", array[offset + i * columns + j]));
+                if (j < columns - 1)
+                    sb.append(", ");
+            }
+            sb.append("]");
+            if (i < rows - 1)
+                sb.append(",");
+            sb.append("\n");
+        }
+    }
 }
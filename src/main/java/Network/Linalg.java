@@ -1,52 +1,380 @@
 package Network;
 
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntConsumer;
 import java.util.stream.IntStream;
 
 public class Linalg {
+    /**
+     * Whether the {@code jdk.incubator.vector} module was resolved at startup (e.g. with
+     * {@code --add-modules jdk.incubator.vector}). When it is, the element-wise primitives below run on the SIMD
+     * {@link VectorLinalg} backend; otherwise they fall back to plain scalar loops.
+     */
+    static final boolean VECTORIZED = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    /**
+     * The amount of work (elements touched, or multiply-adds) below which forking onto the common pool costs more
+     * than it saves. Smaller operations, such as every array of the Iris or logic-gate networks, always run inline.
+     */
+    static final int PARALLEL_THRESHOLD = 1 << 15;
+
+    /**
+     * The number of tasks of the enclosing parallel region the current thread runs one of, 0 outside any region, see
+     * {@link #runInParallelRegion}
+     */
+    private static final ThreadLocal<Integer> REGION_TASKS = ThreadLocal.withInitial(() -> 0);
+
+    /** Depth of the k-dimension block, sized so a packed MR x KC sliver of A and KC x NR sliver of B stay in L1 */
+    private static final int KC = 256;
+
+    /** Number of rows of A packed per block, sized so a packed MC x KC block of A stays in L2 */
+    private static final int MC = 64;
+
+    /** Number of columns of B packed per block, sized so a packed KC x NC block of B stays in L3 */
+    private static final int NC = 1024;
+
+    /** Rows and columns of the register tile computed by {@link #microKernel} */
+    private static final int MR = 4, NR = 4;
+
+    /** Below this many multiply-adds, packing costs more than it saves and {@link #gemm} runs a plain loop */
+    private static final int BLOCKING_THRESHOLD = 32 * 32 * 32;
+
+    /** Per-worker packing buffers for {@link #gemm}, reused so a steady-state multiply allocates nothing */
+    private static final WorkerLocal<double[]> PACKED_A = WorkerLocal.withInitial(() -> new double[MC * KC]);
+    private static final WorkerLocal<double[]> PACKED_B = WorkerLocal.withInitial(() -> new double[KC * NC]);
+
+    /**
+     * Whether {@code work} units of work should be split between threads: only when it reaches
+     * {@link #PARALLEL_THRESHOLD} and the calling thread isn't already part of a parallel region, so parallel
+     * loops never nest.
+     */
+    static boolean shouldParallelize(long work) {
+        return work >= PARALLEL_THRESHOLD && !ForkJoinTask.inForkJoinPool() && REGION_TASKS.get() == 0;
+    }
+
+    /**
+     * Runs {@code task} as one of the {@code tasks} tasks of an enclosing parallel region, so every Linalg primitive
+     * or layer kernel it calls stays on the current thread instead of forking again. A task already running in a
+     * region stays part of that region.
+     */
+    static void runInParallelRegion(int tasks, Runnable task) {
+        if (REGION_TASKS.get() != 0) {
+            task.run();
+            return;
+        }
+        REGION_TASKS.set(tasks);
+        try {
+            task.run();
+        } finally {
+            REGION_TASKS.set(0);
+        }
+    }
+
+    /**
+     * The number of tasks that share the processors with the current thread's: the size of the enclosing parallel
+     * region, or 1 outside one, where the Linalg primitives may fork onto every processor themselves
+     */
+    static int regionTasks() {
+        return Math.max(1, REGION_TASKS.get());
+    }
+
+    /**
+     * Runs {@code body} for every index in {@code [0, n)}, splitting the indices across the common pool only when
+     * the loop's total {@code work} is large enough (see {@link #shouldParallelize}). Each index must only write
+     * memory no other index writes.
+     */
+    static void parallelFor(int n, long work, IntConsumer body) {
+        if (n > 1 && shouldParallelize(work))
+            IntStream.range(0, n).parallel().forEach(i -> runInParallelRegion(n, () -> body.accept(i)));
+        else
+            for (int i = 0; i < n; i++) body.accept(i);
+    }
+
+    /** A loop over the index range {@code [from, to)} of one or more arrays */
+    interface RangeKernel {
+        void apply(int from, int to);
+    }
+
+    /** A reduction over the index range {@code [from, to)} of one or more arrays */
+    interface RangeReduction {
+        double apply(int from, int to);
+    }
+
+    /** Runs {@code kernel} over {@code [0, length)}, as equal chunks in parallel when the arrays are large enough */
+    static void forEachChunk(int length, RangeKernel kernel) {
+        int chunks = chunkCount(length);
+        if (chunks == 1) kernel.apply(0, length);
+        else parallelFor(chunks, length, chunk ->
+                kernel.apply((int) ((long) chunk * length / chunks), (int) ((long) (chunk + 1) * length / chunks)));
+    }
+
+    /** Sums {@code reduction} over {@code [0, length)}, as equal chunks in parallel when the arrays are large enough */
+    static double reduceChunks(int length, RangeReduction reduction) {
+        int chunks = chunkCount(length);
+        if (chunks == 1) return reduction.apply(0, length);
+        return IntStream.range(0, chunks).parallel().mapToDouble(chunk -> {
+            double[] partial = new double[1];
+            runInParallelRegion(chunks, () -> partial[0] = reduction.apply((int) ((long) chunk * length / chunks), (int) ((long) (chunk + 1) * length / chunks)));
+            return partial[0];
+        }).sum();
+    }
+
+    /** The number of chunks an element-wise operation over {@code length} elements is split into, 1 when it runs inline */
+    private static int chunkCount(int length) {
+        if (!shouldParallelize(length)) return 1;
+        return Math.min(length / (PARALLEL_THRESHOLD / 4), 4 * Runtime.getRuntime().availableProcessors());
+    }
+
     public static double[] matrixMultiply(double[][] matrix, double[] input) {
         if (matrix.length != input.length)
             throw new IllegalArgumentException("matrix rows must match input length");
-//        double[] output = new double[matrix[0].length];
-//        for (int i = 0; i < matrix.length; i++)
-//            output = Linalg.add(output, Linalg.scale(input[i], matrix[i]));
-        return IntStream.range(0, input.length).parallel().mapToObj(i -> Linalg.scale(input[i], matrix[i]))
-                .collect(() -> new double[matrix[0].length], Linalg::addInPlace, Linalg::addInPlace);
+        //accumulate the scaled rows straight into the output instead of allocating one scaled copy per row,
+        //splitting the output columns between threads for large matrices
+        double[] output = new double[matrix[0].length];
+        int columns = output.length, chunks = shouldParallelize((long) input.length * columns) ?
+                Math.min(Math.max(1, columns / 64), 4 * Runtime.getRuntime().availableProcessors()) : 1;
+        parallelFor(chunks, (long) input.length * columns, chunk -> {
+            int from = chunk * columns / chunks, to = (chunk + 1) * columns / chunks;
+            for (int i = 0; i < input.length; i++) {
+                double scale = input[i];
+                double[] row = matrix[i];
+                for (int j = from; j < to; j++)
+                    output[j] += scale * row[j];
+            }
+        });
+        return output;
+    }
+
+    /**
+     * Matrix-vector multiply-accumulate on a contiguous row-major {@code m x n} matrix {@code A}:
+     * {@code y += A * x}, or {@code y += A^T * x} when {@code transpose} is set.
+     * <br>Both forms walk {@code A} row by row, so the matrix is streamed from memory exactly once.
+     */
+    public static void gemv(boolean transpose, int m, int n, double[] a, int aOffset,
+                            double[] x, int xOffset, double[] y, int yOffset) {
+        if (!transpose) {
+            for (int i = 0; i < m; i++) {
+                double sum = 0;
+                for (int j = 0, row = aOffset + i * n; j < n; j++)
+                    sum += a[row + j] * x[xOffset + j];
+                y[yOffset + i] += sum;
+            }
+        } else {
+            for (int i = 0; i < m; i++) {
+                double scale = x[xOffset + i];
+                for (int j = 0, row = aOffset + i * n; j < n; j++)
+                    y[yOffset + j] += scale * a[row + j];
+            }
+        }
+    }
+
+    /**
+     * General matrix multiply-accumulate on contiguous row-major storage: {@code C += op(A) * op(B)}, where
+     * {@code op(A)} is {@code m x k}, {@code op(B)} is {@code k x n} and {@code C} is {@code m x n}.
+     * <br>{@code op(X)} is {@code X} itself, or {@code X^T} when the matching transpose flag is set, in which case
+     * {@code A} is stored as a {@code k x m} matrix (and {@code B} as {@code n x k}).
+     * <p>
+     * Large products are cache-blocked: {@code KC x NC} blocks of {@code B} and {@code MC x KC} blocks of {@code A}
+     * are packed into contiguous per-thread buffers, then multiplied {@code MR x NR} register tile at a time.
+     */
+    public static void gemm(boolean transposeA, boolean transposeB, int m, int n, int k,
+                            double[] a, int aOffset, double[] b, int bOffset, double[] c, int cOffset) {
+        //element (i, p) of op(A) is a[aOffset + i * aRowStride + p * aColStride], likewise for op(B)
+        int aRowStride = transposeA ? 1 : k, aColStride = transposeA ? m : 1;
+        int bRowStride = transposeB ? 1 : n, bColStride = transposeB ? k : 1;
+
+        if ((long) m * n * k < BLOCKING_THRESHOLD) {
+            for (int i = 0; i < m; i++)
+                for (int p = 0; p < k; p++) {
+                    double scale = a[aOffset + i * aRowStride + p * aColStride];
+                    int bRow = bOffset + p * bRowStride, cRow = cOffset + i * n;
+                    for (int j = 0; j < n; j++)
+                        c[cRow + j] += scale * b[bRow + j * bColStride];
+                }
+            return;
+        }
+
+        double[] packedB = PACKED_B.get();
+        for (int jc = 0; jc < n; jc += NC) {
+            int nc = Math.min(NC, n - jc);
+            for (int pc = 0; pc < k; pc += KC) {
+                int kc = Math.min(KC, k - pc), column = jc, depth = pc;
+                packB(b, bOffset + pc * bRowStride + jc * bColStride, bRowStride, bColStride, kc, nc, packedB);
+                //every MC-row block of C is written by exactly one thread, each packing A into its own buffer
+                parallelFor(Math.ceilDiv(m, MC), (long) m * nc * kc, block -> {
+                    double[] packedA = PACKED_A.get();
+                    int ic = block * MC, mc = Math.min(MC, m - ic);
+                    packA(a, aOffset + ic * aRowStride + depth * aColStride, aRowStride, aColStride, mc, kc, packedA);
+                    for (int jr = 0; jr < nc; jr += NR)
+                        for (int ir = 0; ir < mc; ir += MR)
+                            microKernel(kc, packedA, ir * kc, packedB, jr * kc,
+                                    c, cOffset + (ic + ir) * n + column + jr, n,
+                                    Math.min(MR, mc - ir), Math.min(NR, nc - jr));
+                });
+            }
+        }
+    }
+
+    /** Packs an {@code mc x kc} block of A into slivers of {@link #MR} rows, each stored column by column and zero-padded */
+    private static void packA(double[] a, int offset, int rowStride, int colStride, int mc, int kc, double[] packed) {
+        int index = 0;
+        for (int ir = 0; ir < mc; ir += MR)
+            for (int p = 0; p < kc; p++)
+                for (int r = 0; r < MR; r++)
+                    packed[index++] = ir + r < mc ? a[offset + (ir + r) * rowStride + p * colStride] : 0;
+    }
+
+    /** Packs a {@code kc x nc} block of B into slivers of {@link #NR} columns, each stored row by row and zero-padded */
+    private static void packB(double[] b, int offset, int rowStride, int colStride, int kc, int nc, double[] packed) {
+        int index = 0;
+        for (int jr = 0; jr < nc; jr += NR)
+            for (int p = 0; p < kc; p++)
+                for (int c = 0; c < NR; c++)
+                    packed[index++] = jr + c < nc ? b[offset + p * rowStride + (jr + c) * colStride] : 0;
+    }
+
+    /**
+     * Computes one {@link #MR} x {@link #NR} tile of {@code C} from packed slivers of A and B, keeping all sixteen
+     * partial sums in registers, then adds the top-left {@code rows x cols} of the tile into {@code C}
+     */
+    private static void microKernel(int kc, double[] packedA, int aIndex, double[] packedB, int bIndex,
+                                    double[] c, int cIndex, int cRowStride, int rows, int cols) {
+        double c00 = 0, c01 = 0, c02 = 0, c03 = 0;
+        double c10 = 0, c11 = 0, c12 = 0, c13 = 0;
+        double c20 = 0, c21 = 0, c22 = 0, c23 = 0;
+        double c30 = 0, c31 = 0, c32 = 0, c33 = 0;
+        for (int p = 0; p < kc; p++, aIndex += MR, bIndex += NR) {
+            double a0 = packedA[aIndex], a1 = packedA[aIndex + 1], a2 = packedA[aIndex + 2], a3 = packedA[aIndex + 3];
+            double b0 = packedB[bIndex], b1 = packedB[bIndex + 1], b2 = packedB[bIndex + 2], b3 = packedB[bIndex + 3];
+            c00 += a0 * b0; c01 += a0 * b1; c02 += a0 * b2; c03 += a0 * b3;
+            c10 += a1 * b0; c11 += a1 * b1; c12 += a1 * b2; c13 += a1 * b3;
+            c20 += a2 * b0; c21 += a2 * b1; c22 += a2 * b2; c23 += a2 * b3;
+            c30 += a3 * b0; c31 += a3 * b1; c32 += a3 * b2; c33 += a3 * b3;
+        }
+        addRow(c, cIndex, cols, c00, c01, c02, c03);
+        if (rows > 1) addRow(c, cIndex + cRowStride, cols, c10, c11, c12, c13);
+        if (rows > 2) addRow(c, cIndex + 2 * cRowStride, cols, c20, c21, c22, c23);
+        if (rows > 3) addRow(c, cIndex + 3 * cRowStride, cols, c30, c31, c32, c33);
+    }
+
+    /** Adds the first {@code cols} of one register-tile row into {@code c}, starting at {@code index} */
+    private static void addRow(double[] c, int index, int cols, double v0, double v1, double v2, double v3) {
+        c[index] += v0;
+        if (cols > 1) c[index + 1] += v1;
+        if (cols > 2) c[index + 2] += v2;
+        if (cols > 3) c[index + 3] += v3;
+    }
+
+    /**
+     * Packs {@code rows} into one contiguous row-major {@code [rows.length][columns]} matrix, so it can be passed
+     * to {@link #gemm}.
+     * @throws IllegalArgumentException if any row's length isn't {@code columns}
+     */
+    static double[] flatten(double[][] rows, int columns) {
+        double[] matrix = new double[rows.length * columns];
+        for (int i = 0; i < rows.length; i++) {
+            if (rows[i].length != columns)
+                throw new IllegalArgumentException("every row must have " + columns + " columns");
+            System.arraycopy(rows[i], 0, matrix, i * columns, columns);
+        }
+        return matrix;
+    }
+
+    /** Splits the row-major {@code [rows][columns]} {@code matrix} back into one new array per row */
+    static double[][] unflatten(double[] matrix, int rows, int columns) {
+        double[][] output = new double[rows][];
+        for (int i = 0; i < rows; i++)
+            output[i] = Arrays.copyOfRange(matrix, i * columns, (i + 1) * columns);
+        return output;
+    }
+
+    /** Whether every value in {@code array[from, to)} is finite, checked with a single branch at the end */
+    static boolean isFinite(double[] array, int from, int to) {
+        //value * 0 sums to 0 unless some value is NaN or infinite
+        double check = 0;
+        for (int i = from; i < to; i++) check += array[i] * 0;
+        return Double.isFinite(check);
     }
 
     public static double dotProduct(double[] first, double[] second) {
         if (first.length != second.length)
             throw new IllegalArgumentException("array lengths must match");
-        return IntStream.range(0, first.length).mapToDouble(i -> first[i] * second[i]).sum();
+        return reduceChunks(first.length, (from, to) -> {
+            if (VECTORIZED) return VectorLinalg.dotProduct(first, second, from, to);
+            double sum = 0;
+            for (int i = from; i < to; i++) sum += first[i] * second[i];
+            return sum;
+        });
     }
 
     public static double[] multiply(double[] first, double[] second) {
         if (first.length != second.length)
             throw new IllegalArgumentException("array lengths must match");
-        return IntStream.range(0, first.length).mapToDouble(i -> first[i] * second[i]).toArray();
+        double[] output = new double[first.length];
+        forEachChunk(first.length, (from, to) -> {
+            if (VECTORIZED) VectorLinalg.multiply(first, second, output, from, to);
+            else for (int i = from; i < to; i++) output[i] = first[i] * second[i];
+        });
+        return output;
     }
 
     public static double[] scale(double constant, double[] array) {
-        return Arrays.stream(array).parallel().map(v -> constant * v).toArray();
+        double[] output = new double[array.length];
+        scale(constant, array, output);
+        return output;
     }
 
     public static void scaleInPlace(double constant, double[] array) {
-        IntStream.range(0,array.length).parallel().forEach(i -> array[i] *= constant);
+        scale(constant, array, array);
+    }
+
+    /** Writes {@code constant * array} into {@code output}, which may be {@code array} itself */
+    private static void scale(double constant, double[] array, double[] output) {
+        forEachChunk(array.length, (from, to) -> {
+            if (VECTORIZED) VectorLinalg.scale(constant, array, output, from, to);
+            else for (int i = from; i < to; i++) output[i] = constant * array[i];
+        });
+    }
+
+    /** {@code y += alpha * x}, without allocating a scaled copy of {@code x} */
+    public static void axpy(double alpha, double[] x, double[] y) {
+        if (x.length != y.length)
+            throw new IllegalArgumentException("array lengths must match");
+        forEachChunk(x.length, (from, to) -> {
+            if (VECTORIZED) VectorLinalg.axpy(alpha, x, y, from, to);
+            else for (int i = from; i < to; i++) y[i] += alpha * x[i];
+        });
     }
 
     public static double[] add(double[] first, double[] second) {
         if (first.length != second.length)
             throw new IllegalArgumentException("array lengths must match");
-        return IntStream.range(0, first.length).mapToDouble(i -> first[i] + second[i]).toArray();
+        double[] output = new double[first.length];
+        add(first, second, output);
+        return output;
     }
 
     public static void addInPlace(double[] first, double[] second) {
         if (first.length != second.length)
             throw new IllegalArgumentException("array lengths must match");
-        IntStream.range(0, first.length).parallel().forEach(i -> first[i] += second[i]);
+        add(first, second, first);
+    }
+
+    /** Writes {@code first + second} into {@code output}, which may be either operand */
+    private static void add(double[] first, double[] second, double[] output) {
+        forEachChunk(first.length, (from, to) -> {
+            if (VECTORIZED) VectorLinalg.add(first, second, output, from, to);
+            else for (int i = from; i < to; i++) output[i] = first[i] + second[i];
+        });
     }
 
     public static double sum(double[] arr) {
-        return Arrays.stream(arr).sum();
+        return reduceChunks(arr.length, (from, to) -> {
+            if (VECTORIZED) return VectorLinalg.sum(arr, from, to);
+            double sum = 0;
+            for (int i = from; i < to; i++) sum += arr[i];
+            return sum;
+        });
     }
 }
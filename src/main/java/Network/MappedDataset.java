@@ -0,0 +1,341 @@
+package Network;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A read-only {@link Dataset} backed by a binary file that is memory-mapped rather than loaded, so a
+ * {@link Trainer} can stream through datasets larger than the heap (or RAM) while the operating system pages
+ * records in and out. Opening a file costs no parsing: samples are decoded straight from the mapping as they are read.
+ * <br><br>File layout, little-endian:
+ * <ul>
+ *   <li>A 64-byte header: the magic bytes {@code "NNDS"}, the format version, the {@link CompactDataset.Encoding}
+ *       ordinal, {@code inputNum}, {@code outputNum}, 4 unused bytes, {@code size} as a long (-1 until the
+ *       {@link Writer} is closed), then {@code scale} and {@code shift} as doubles.</li>
+ *   <li>{@code size} fixed-length records, one per test case: {@code inputNum} input codes followed by
+ *       {@code outputNum} expected output codes, each 1 byte ({@link CompactDataset.Encoding#UINT8}) or 2 bytes
+ *       ({@link CompactDataset.Encoding#FLOAT16}).</li>
+ * </ul>
+ * Codes mean exactly what they mean in {@link CompactDataset}: inputs decode to {@code code * scale + shift}, and
+ * expected outputs are stored without normalization.
+ * <p>
+ * A single mapping can't exceed 2 GB, so the records are mapped in {@link #segments} of whole records. Reads only
+ * use absolute positions, so one MappedDataset may be read from several threads at once.
+ */
+public final class MappedDataset implements Dataset {
+
+    /** The number of bytes before the first record */
+    static final int HEADER_BYTES = 64;
+
+    private static final byte[] MAGIC = "NNDS".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+
+    private final int size, inputNum, outputNum;
+    private final CompactDataset.Encoding encoding;
+    private final double scale, shift;
+
+    /** The number of bytes of one code, and of one record */
+    private final int codeBytes, recordBytes;
+
+    /** The mapped records, {@link #segmentRecords} per segment except possibly the last */
+    private final MappedByteBuffer[] segments;
+    private final int segmentRecords;
+
+    /** The decoded input value of every uint8 code, or null for {@link CompactDataset.Encoding#FLOAT16} */
+    private final double[] uint8Inputs;
+
+    private MappedDataset(FileChannel channel, long maxSegmentBytes) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        while (header.hasRemaining())
+            if (channel.read(header, header.position()) < 0)
+                throw new IOException("file is too short to be a dataset");
+        header.flip();
+        for (byte b : MAGIC)
+            if (header.get() != b)
+                throw new IOException("file is not a dataset");
+        if (header.getInt() != VERSION)
+            throw new IOException("unsupported dataset version");
+        int encodingOrdinal = header.getInt();
+        if (encodingOrdinal < 0 || encodingOrdinal >= CompactDataset.Encoding.values().length)
+            throw new IOException("unknown encoding " + encodingOrdinal);
+        this.encoding = CompactDataset.Encoding.values()[encodingOrdinal];
+        this.inputNum = header.getInt();
+        this.outputNum = header.getInt();
+        header.getInt();
+        long records = header.getLong();
+        this.scale = header.getDouble();
+        this.shift = header.getDouble();
+        if (records < 0)
+            throw new IOException("dataset was not completely written");
+        if (records > Integer.MAX_VALUE || inputNum < 0 || outputNum < 0)
+            throw new IOException("corrupt dataset header");
+        this.size = (int) records;
+        this.codeBytes = encoding == CompactDataset.Encoding.UINT8 ? 1 : 2;
+        long record = ((long) inputNum + outputNum) * codeBytes;
+        if (record == 0 || record > maxSegmentBytes)
+            throw new IOException("records must be between 1 byte and the maximum mapping size");
+        this.recordBytes = (int) record;
+        if (channel.size() != HEADER_BYTES + records * recordBytes)
+            throw new IOException("file length doesn't match the dataset header");
+
+        this.segmentRecords = (int) Math.min(records, maxSegmentBytes / recordBytes);
+        this.segments = new MappedByteBuffer[segmentRecords == 0 ? 0 : Math.ceilDiv(size, segmentRecords)];
+        for (int i = 0; i < segments.length; i++) {
+            long first = (long) i * segmentRecords, count = Math.min(segmentRecords, records - first);
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + first * recordBytes, count * recordBytes);
+            segments[i].order(ByteOrder.LITTLE_ENDIAN);
+        }
+        if (encoding == CompactDataset.Encoding.UINT8) {
+            this.uint8Inputs = new double[256];
+            for (int q = 0; q < 256; q++) uint8Inputs[q] = q * scale + shift;
+        } else this.uint8Inputs = null;
+    }
+
+    /**
+     * Maps the dataset file at {@code path}. The file must not change while the dataset is in use.
+     * @throws IOException if the file can't be read or isn't a completely written dataset
+     */
+    public static MappedDataset open(Path path) throws IOException {
+        return open(path, Integer.MAX_VALUE);
+    }
+
+    /** {@link #open(Path)} with mappings of at most {@code maxSegmentBytes}, so tests can span several segments */
+    static MappedDataset open(Path path, long maxSegmentBytes) throws IOException {
+        //the mappings stay valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new MappedDataset(channel, maxSegmentBytes);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int inputNum() {
+        return inputNum;
+    }
+
+    @Override
+    public int outputNum() {
+        return outputNum;
+    }
+
+    public CompactDataset.Encoding encoding() {
+        return encoding;
+    }
+
+    @Override
+    public double[] input(int index, double[] buffer) {
+        Objects.checkIndex(index, size);
+        MappedByteBuffer segment = segments[index / segmentRecords];
+        int position = index % segmentRecords * recordBytes;
+        if (encoding == CompactDataset.Encoding.UINT8)
+            for (int j = 0; j < inputNum; j++) buffer[j] = uint8Inputs[segment.get(position + j) & 0xFF];
+        else
+            for (int j = 0; j < inputNum; j++)
+                buffer[j] = Float.float16ToFloat(segment.getShort(position + 2 * j)) * scale + shift;
+        return buffer;
+    }
+
+    @Override
+    public double[] output(int index, double[] buffer) {
+        Objects.checkIndex(index, size);
+        MappedByteBuffer segment = segments[index / segmentRecords];
+        int position = index % segmentRecords * recordBytes + inputNum * codeBytes;
+        if (encoding == CompactDataset.Encoding.UINT8)
+            for (int j = 0; j < outputNum; j++) buffer[j] = segment.get(position + j) & 0xFF;
+        else
+            for (int j = 0; j < outputNum; j++) buffer[j] = Float.float16ToFloat(segment.getShort(position + 2 * j));
+        return buffer;
+    }
+
+    /**
+     * Writes every test case of {@code source} to a new dataset file at {@code path}, one sample at a time.
+     * @throws IllegalArgumentException if a value doesn't fit in {@code encoding}
+     */
+    public static void write(Path path, Dataset source, CompactDataset.Encoding encoding, double scale, double shift) throws IOException {
+        double[] input = new double[source.inputNum()], output = new double[source.outputNum()];
+        boolean complete = false;
+        try (Writer writer = new Writer(path, source.inputNum(), source.outputNum(), encoding, scale, shift)) {
+            for (int i = 0; i < source.size(); i++)
+                writer.append(source.input(i, input), source.output(i, output));
+            complete = true;
+        } finally {
+            if (!complete) Files.deleteIfExists(path);
+        }
+    }
+
+    /**
+     * Converts a CSV file of classification samples to a dataset file at {@code path}, one line at a time. Every
+     * line holds a class label in {@code [0, classes)} followed by the raw input values, as in the MNIST CSV export:
+     * a sample's input is {@code raw * scale + shift}, and its expected output is the one-hot vector of its label.
+     * Lines are parsed exactly like {@link DatasetReader#readCsv}, but the file may be larger than 2 GB.
+     * The dataset file is deleted again if the conversion fails.
+     * @throws IOException if a line is malformed or has a different number of values than the first
+     */
+    public static void convertCsv(Path csv, Path path, int classes, CompactDataset.Encoding encoding, double scale, double shift) throws IOException {
+        convertCsv(csv, path, classes, encoding, scale, shift, DatasetReader.CSV_WINDOW_BYTES);
+    }
+
+    /**
+     * Converts like {@link #convertCsv(Path, Path, int, CompactDataset.Encoding, double, double)}, mapping at most
+     * {@code windowBytes} of the CSV file at once
+     */
+    static void convertCsv(Path csv, Path path, int classes, CompactDataset.Encoding encoding, double scale, double shift,
+                           long windowBytes) throws IOException {
+        int inputNum = DatasetReader.csvInputNum(csv);
+        double[] output = new double[classes];
+        boolean complete = false;
+        try (Writer writer = new Writer(path, inputNum, classes, encoding, scale, shift)) {
+            DatasetReader.forEachCsvSample(csv, inputNum, scale, shift, windowBytes, (line, label, input) -> {
+                try {
+                    oneHot(label, output);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("line " + line + ": " + e.getMessage(), e);
+                }
+                writer.append(input, output);
+            });
+            complete = true;
+        } finally {
+            if (!complete) Files.deleteIfExists(path);
+        }
+    }
+
+    /**
+     * Converts an IDX image file (unsigned bytes, any number of dimensions per image) and its IDX label file, such
+     * as MNIST's {@code train-images-idx3-ubyte} and {@code train-labels-idx1-ubyte}, to a dataset file at
+     * {@code path}. A sample's input is its raw pixels times {@code scale} plus {@code shift}, and its expected output
+     * is the one-hot vector of its label. The dataset file is deleted again if the conversion fails.
+     * @throws IOException if either file isn't an unsigned-byte IDX file, or their sample counts differ
+     */
+    public static void convertIdx(Path images, Path labels, Path path, int classes, CompactDataset.Encoding encoding,
+                                  double scale, double shift) throws IOException {
+        try (DataInputStream imageStream = DatasetReader.idxStream(images);
+             DataInputStream labelStream = DatasetReader.idxStream(labels)) {
+            int[] dimensions = DatasetReader.idxDimensions(imageStream, labelStream);
+            int size = dimensions[0], inputNum = dimensions[1];
+            byte[] pixels = new byte[inputNum];
+            double[] input = new double[inputNum], output = new double[classes];
+            boolean complete = false;
+            try (Writer writer = new Writer(path, inputNum, classes, encoding, scale, shift)) {
+                for (int i = 0; i < size; i++) {
+                    imageStream.readFully(pixels);
+                    for (int j = 0; j < inputNum; j++) input[j] = (pixels[j] & 0xFF) * scale + shift;
+                    oneHot(DatasetReader.idxLabel(labelStream, i, classes), output);
+                    writer.append(input, output);
+                }
+                complete = true;
+            } finally {
+                if (!complete) Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    /** Fills {@code output} with the one-hot vector of {@code label} */
+    private static void oneHot(int label, double[] output) {
+        if (label < 0 || label >= output.length)
+            throw new IllegalArgumentException("label " + label + " is not in [0, " + output.length + ")");
+        Arrays.fill(output, 0);
+        output[label] = 1;
+    }
+
+    /**
+     * Appends test cases to a new dataset file, encoding them like {@link CompactDataset#set}. The file only becomes
+     * readable once the writer is closed, which records the final number of test cases in the header.
+     */
+    public static final class Writer implements AutoCloseable {
+
+        private final FileChannel channel;
+        private final int inputNum, outputNum;
+        private final CompactDataset.Encoding encoding;
+        private final double scale, shift;
+        private final ByteBuffer pending;
+        private long size;
+
+        /**
+         * Creates (or replaces) the dataset file at {@code path}.
+         * @throws IllegalArgumentException if a dimension is negative, or {@code scale} is zero or not finite
+         */
+        public Writer(Path path, int inputNum, int outputNum, CompactDataset.Encoding encoding, double scale, double shift) throws IOException {
+            if (inputNum < 0 || outputNum < 0 || inputNum + outputNum == 0)
+                throw new IllegalArgumentException("dimensions must not be negative, and records must not be empty");
+            if (scale == 0 || !Double.isFinite(scale) || !Double.isFinite(shift))
+                throw new IllegalArgumentException("scale must be finite and non-zero, and shift must be finite");
+            this.inputNum = inputNum;
+            this.outputNum = outputNum;
+            this.encoding = Objects.requireNonNull(encoding);
+            this.scale = scale;
+            this.shift = shift;
+            int recordBytes = (inputNum + outputNum) * (encoding == CompactDataset.Encoding.UINT8 ? 1 : 2);
+            this.pending = ByteBuffer.allocateDirect(Math.max(1 << 20, recordBytes)).order(ByteOrder.LITTLE_ENDIAN);
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            writeHeader(-1);
+            channel.position(HEADER_BYTES);
+        }
+
+        /**
+         * Encodes one test case at the end of the file.
+         * @throws IllegalArgumentException if the input or expected output has the wrong length, or a
+         * {@link CompactDataset.Encoding#UINT8} value doesn't round to a code in {@code [0, 255]}
+         */
+        public void append(double[] input, double[] expectedOutput) throws IOException {
+            if (input.length != inputNum || expectedOutput.length != outputNum)
+                throw new IllegalArgumentException("input/output pair must match dataset dimensions");
+            int recordBytes = (inputNum + outputNum) * (encoding == CompactDataset.Encoding.UINT8 ? 1 : 2);
+            if (pending.remaining() < recordBytes) flush();
+            //encode the whole record before buffering any of it, so a rejected value leaves the file unchanged
+            int start = pending.position();
+            try {
+                if (encoding == CompactDataset.Encoding.UINT8) {
+                    for (double v : input) pending.put(CompactDataset.toUint8((v - shift) / scale));
+                    for (double v : expectedOutput) pending.put(CompactDataset.toUint8(v));
+                } else {
+                    for (double v : input) pending.putShort(Float.floatToFloat16((float) ((v - shift) / scale)));
+                    for (double v : expectedOutput) pending.putShort(Float.floatToFloat16((float) v));
+                }
+            } catch (IllegalArgumentException e) {
+                pending.position(start);
+                throw e;
+            }
+            size++;
+        }
+
+        private void flush() throws IOException {
+            pending.flip();
+            while (pending.hasRemaining()) channel.write(pending);
+            pending.clear();
+        }
+
+        private void writeHeader(long size) throws IOException {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.put(MAGIC).putInt(VERSION).putInt(encoding.ordinal()).putInt(inputNum).putInt(outputNum).putInt(0)
+                    .putLong(size).putDouble(scale).putDouble(shift);
+            header.clear();
+            while (header.hasRemaining()) channel.write(header, header.position());
+        }
+
+        /** Flushes every appended test case and records their number, making the file readable by {@link #open} */
+        @Override
+        public void close() throws IOException {
+            try (channel) {
+                if (size > Integer.MAX_VALUE)
+                    throw new IOException("a dataset holds at most " + Integer.MAX_VALUE + " test cases");
+                flush();
+                writeHeader(size);
+            }
+        }
+    }
+}
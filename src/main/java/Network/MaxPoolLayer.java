@@ -0,0 +1,115 @@
+package Network;
+
+import java.util.Arrays;
+
+/**
+ * A {@link PoolingLayer} whose every output neuron is the largest input neuron of its window.
+ * <br>The forward pass of a training step ({@link #trainingWeightedOutput}) records which neuron of each window won as
+ * a single byte (its offset {@code x * poolHeight + y} within the window), so the backward pass routes each dz_dC
+ * straight back to that neuron without rescanning the window. Inference records nothing, so it may run on this layer
+ * while a training worker sits between its forward and backward pass. NaN inputs win their window, so they propagate
+ * like in every other layer.
+ * <p>
+ * Class Invariants:
+ * <ul>
+ *   <li>{@code poolWidth * poolHeight <= 256}, so every window offset fits in one unsigned byte.</li>
+ *   <li>When {@code argmaxBatchSize >= 0}, {@code argmax} holds the winners of the last training forward pass over
+ *       {@code argmaxBatchSize} samples, which the next backward pass consumes. A backward pass without them (or over
+ *       another batch size) finds the winners again first.</li>
+ *   <li>Gradient shards own their own {@code argmax}, since the winners are per-worker state.</li>
+ * </ul>
+ */
+class MaxPoolLayer extends PoolingLayer {
+
+    /** The offset of the winning neuron within every output neuron's window, one byte per output of every sample */
+    private byte[] argmax = new byte[0];
+
+    /** The batch size {@link #argmax} was recorded for by the last training forward pass, or -1 once consumed */
+    private int argmaxBatchSize = -1;
+
+    MaxPoolLayer(int inputWidth, int inputHeight, int inputLength, int poolWidth, int poolHeight,
+                 int strideWidth, int strideHeight) {
+        super(inputWidth, inputHeight, inputLength, poolWidth, poolHeight, strideWidth, strideHeight);
+        if (poolWidth * poolHeight > 256)
+            throw new IllegalArgumentException("pool window must hold at most 256 neurons");
+    }
+
+    @Override
+    void calculateWeightedOutput(double[] batch, int batchSize, double[] output) {
+        if (batch.length != batchSize * inputVolume())
+            throw new IllegalArgumentException("input length must equal input volume");
+        findMaxima(batch, batchSize, output, null);
+    }
+
+    @Override
+    void trainingWeightedOutput(double[] batch, int batchSize, double[] output) {
+        if (batch.length != batchSize * inputVolume())
+            throw new IllegalArgumentException("input length must equal input volume");
+        findMaxima(batch, batchSize, output, winners(batchSize));
+        argmaxBatchSize = batchSize;
+    }
+
+    /** Returns {@link #argmax}, grown to hold the winners of {@code batchSize} samples */
+    private byte[] winners(int batchSize) {
+        if (argmax.length < batchSize * nodes) argmax = new byte[batchSize * nodes];
+        return argmax;
+    }
+
+    /** Writes every window's largest neuron into {@code output} and its offset into {@code winners}, when non-null */
+    private void findMaxima(double[] batch, int batchSize, double[] output, byte[] winners) {
+        int inputPlane = inputWidth * inputHeight, outputPlane = outputWidth * outputHeight;
+        //every (sample, channel) plane owns its outputs and winners
+        Linalg.parallelFor(batchSize * inputLength, work(batchSize), plane -> {
+            int in = plane * inputPlane, out = plane * outputPlane;
+            for (int y = 0; y < outputHeight; y++)
+                for (int x = 0; x < outputWidth; x++) {
+                    int corner = in + x * strideWidth + y * strideHeight * inputWidth;
+                    double max = batch[corner];
+                    int winner = 0;
+                    for (int poolX = 0; poolX < poolWidth; poolX++)
+                        for (int poolY = 0; poolY < poolHeight; poolY++) {
+                            double value = batch[corner + poolX + poolY * inputWidth];
+                            if (!(value <= max)) {
+                                max = value;
+                                winner = poolX * poolHeight + poolY;
+                            }
+                        }
+                    int node = out + x + y * outputWidth;
+                    if (winners != null) winners[node] = (byte) winner;
+                    if (output != null) output[node] = max;
+                }
+        });
+    }
+
+    @Override
+    void updateGradient(double[] dz_dC, double[] x, int batchSize, double[] da_dC) {
+        if (x.length != batchSize * inputVolume())
+            throw new IllegalArgumentException("input length must equal input volume");
+        byte[] winners = winners(batchSize);
+        if (batchSize != argmaxBatchSize) findMaxima(x, batchSize, null, winners);
+        argmaxBatchSize = -1;
+        int inputPlane = inputWidth * inputHeight, outputPlane = outputWidth * outputHeight;
+        Arrays.fill(da_dC, 0, batchSize * inputVolume(), 0);
+        //overlapping windows of one plane add into the same neurons, so every plane is one task
+        Linalg.parallelFor(batchSize * inputLength, (long) batchSize * nodes, plane -> {
+            int in = plane * inputPlane, out = plane * outputPlane;
+            for (int y = 0; y < outputHeight; y++)
+                for (int x1 = 0; x1 < outputWidth; x1++) {
+                    int node = out + x1 + y * outputWidth, winner = winners[node] & 0xFF;
+                    da_dC[in + x1 * strideWidth + winner / poolHeight + (y * strideHeight + winner % poolHeight) * inputWidth] += dz_dC[node];
+                }
+        });
+    }
+
+    @Override
+    Layer gradientShard() {
+        return clone();
+    }
+
+    //noinspection CloneDoesNotCallSuperClone,CloneDoesNotThrowCloneNotSupportedException
+    @Override
+    @SuppressWarnings("MethodDoesNotCallSuperMethod")
+    public MaxPoolLayer clone() {
+        return new MaxPoolLayer(inputWidth, inputHeight, inputLength, poolWidth, poolHeight, strideWidth, strideHeight);
+    }
+}
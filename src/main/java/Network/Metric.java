@@ -0,0 +1,17 @@
+package Network;
+
+/**
+ * Enum representing the statistics {@link NN#evaluate} can compute over a {@link Dataset} in its single forward pass.
+ * <ul>
+ *     <li><strong>COST</strong>: The mean cost per test case, as {@link NN#calculateCost} computes it.</li>
+ *     <li><strong>ACCURACY</strong>: The fraction of test cases whose largest output is also their largest expected output.</li>
+ *     <li><strong>CONFUSION_MATRIX</strong>: How often each expected class was predicted as each class.</li>
+ * </ul>
+ * ACCURACY and CONFUSION_MATRIX treat the outputs as class scores and expected outputs as one-hot vectors: the class
+ * of a vector is the index of its largest value.
+ */
+public enum Metric {
+    COST,
+    ACCURACY,
+    CONFUSION_MATRIX
+}
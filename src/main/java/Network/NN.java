@@ -1,8 +1,16 @@
 package Network;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
 
 /**
  * Represents a customizable neural network composed of multiple layers, supporting dense and convolutional
@@ -15,6 +23,29 @@ import java.util.Objects;
  * architecture, activation functions, and cost function.
  */
 public class NN {
+    /**
+     * The number of cores available to this JVM, and the default number of chunks {@link #learn} splits a batch into
+     */
+    private static final int CORES = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The number of test cases each worker of {@link #evaluate} forward-propagates at once. The dataset is split into
+     * blocks of this many test cases in dataset order, whatever the parallelism.
+     */
+    private static final int EVALUATION_BATCH = 64;
+
+    /**
+     * The shared, long-lived pool of platform worker threads used by every Neural Network that wasn't given its own
+     * executor. Threads are daemons so an idle pool never keeps the JVM alive.
+     */
+    private static final ExecutorService DEFAULT_EXECUTOR =
+            Executors.newFixedThreadPool(CORES, Thread.ofPlatform().name("NN-Worker-", 0).daemon().factory());
+
+    /**
+     * The shared executor that runs every task on a fresh virtual thread, used by {@link NetworkBuilder#useVirtualThreads()}
+     */
+    private static final ExecutorService VIRTUAL_EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
     /**
      * The number of Input Neurons in this Neural Network
      */
@@ -55,6 +86,59 @@ public class NN {
      */
     private final Optimizer optimizer;
 
+    /**
+     * The executor that runs the backpropagation chunks of {@link #learn}
+     */
+    private ExecutorService executor;
+
+    /**
+     * The maximum number of chunks {@link #learn} splits each batch into. Each chunk is backpropagated by one worker.
+     */
+    private int parallelism;
+
+    /**
+     * The gradient shards used by {@link #learn}, one set of layers per worker. Created lazily, see {@link #gradientShards}.
+     */
+    private Layer[][] gradientShards;
+
+    /**
+     * The backpropagation buffers of each worker, parallel to {@link #gradientShards}. Created lazily and reused as
+     * long as the worker's share of the batch keeps the same size, see {@link #workspace}.
+     */
+    private Workspace[] workspaces = new Workspace[0];
+
+    /**
+     * The backpropagation buffers of a single test case, kept apart from {@link #workspaces} so that
+     * {@link #backPropagate(double[], double[])} between two calls to {@link #learn} doesn't replace worker 0's
+     * batch workspace. Created lazily.
+     */
+    private Workspace sampleWorkspace;
+
+    /**
+     * The scratch buffers of the {@link Linalg} and layer kernels of each training worker. Only used when the
+     * executor runs tasks on virtual threads, which would otherwise allocate them again for every task, see
+     * {@link WorkerLocal}. Created lazily, see {@link #scratch}.
+     */
+    private WorkerLocal.Values[] trainingScratch = new WorkerLocal.Values[0];
+
+    /**
+     * The buffers of every {@link #evaluate} not currently running, guarded by this network's lock. There are as many
+     * sets as evaluations have run at once so far, each reused by later calls.
+     */
+    private final ArrayDeque<EvaluationBuffers> idleEvaluationBuffers = new ArrayDeque<>();
+
+    /**
+     * The forward-pass buffers of the workers of one {@link #evaluate}, which never touch {@link #learn}'s
+     * workspaces or gradient shards: per worker a {@link Workspace#forwardOnly} workspace of
+     * {@link #EVALUATION_BATCH} test cases and a set of {@link WorkerLocal} scratch buffers, and one more workspace
+     * for the smaller last block of the dataset.
+     */
+    private static final class EvaluationBuffers {
+        private Workspace[] full = new Workspace[0];
+        private Workspace last;
+        private WorkerLocal.Values[] scratch = new WorkerLocal.Values[0];
+    }
+
     /**
      * "Trains" the given Neural Network class using the given batches of input and expected output.
      * <br>Depending on the {@link Optimizer}, this function requires different parameters:
@@ -73,28 +157,117 @@ public class NN {
         for (int i = 0; i < testCaseInputs.length; ++i)
             if (testCaseInputs[i].length != NN.inputNum || testCaseOutputs[i].length != NN.outputNum)
                 throw new IllegalArgumentException("Each input/output pair must match network dimensions");
+        if (testCaseInputs.length == 0)
+            throw new IllegalArgumentException("training batch must not be empty");
         //prevents other threads from calling learn on the same Neural Network
         synchronized (NN) {
+            int batchSize = testCaseInputs.length, chunks = Math.min(NN.parallelism, batchSize);
+            Layer[][] shards = NN.gradientShards(chunks);
+            Workspace[] workspaces = new Workspace[chunks];
+            for (int chunk = 0; chunk < chunks; chunk++)
+                workspaces[chunk] = NN.workspace(chunk, (chunk + 1) * batchSize / chunks - chunk * batchSize / chunks);
             NN.clearGradient();
 
-            Thread[] workerThreads = new Thread[testCaseInputs.length];
-            for (int i = 0; i < testCaseInputs.length; i++) {
-                double[] testCaseInput = testCaseInputs[i];
-                double[] testCaseOutput = testCaseOutputs[i];
-                workerThreads[i] = new Thread(null, () -> NN.backPropagate(testCaseInput, testCaseOutput), "WorkerThread");
-                workerThreads[i].start();
+            NN.trainingScratch = scratch(NN.trainingScratch, chunks);
+
+            //each worker backpropagates one contiguous chunk of the batch into its own gradient shard
+            NN.runInParallel(chunks, NN.trainingScratch, chunk -> {
+                Layer[] shard = shards[chunk];
+                for (int i = 0; i < shard.length; i++)
+                    if (shard[i] != NN.layers[i]) shard[i].clearGradient();
+                int start = chunk * batchSize / chunks, end = (chunk + 1) * batchSize / chunks;
+                NN.backPropagate(shard, workspaces[chunk], testCaseInputs, testCaseOutputs, start, end);
+            });
+
+            //pairwise tree reduction of every shard into shards[0], which is this network's own layers
+            for (int stride = 1; stride < chunks; stride *= 2) {
+                int width = stride;
+                NN.runInParallel(Math.ceilDiv(chunks - width, 2 * width), null, pair -> {
+                    Layer[] into = shards[2 * width * pair], from = shards[2 * width * pair + width];
+                    for (int i = 0; i < into.length; i++)
+                        if (into[i] != from[i]) into[i].addGradient(from[i]);
+                });
             }
 
-            for (Thread worker : workerThreads)
-                try {
-                    worker.join();
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
+            NN.applyGradient(NN.optimizer, learningRate / batchSize, momentum, beta, epsilon);
+        }
+    }
+
+    /**
+     * Returns at least {@code count} sets of gradient shards, one per training worker. The first set is always
+     * {@link #layers} itself, the rest are created lazily with {@link Layer#gradientShard} and reused across calls.
+     */
+    private Layer[][] gradientShards(int count) {
+        if (gradientShards == null || gradientShards.length < count) {
+            Layer[][] grown = new Layer[count][];
+            grown[0] = layers;
+            for (int i = 1; i < count; i++) {
+                if (gradientShards != null && i < gradientShards.length) grown[i] = gradientShards[i];
+                else {
+                    grown[i] = new Layer[layers.length];
+                    for (int j = 0; j < layers.length; j++) grown[i][j] = layers[j].gradientShard();
                 }
+            }
+            gradientShards = grown;
+        }
+        return gradientShards;
+    }
+
+    /**
+     * Returns the buffers of worker {@code index} for a share of {@code batchSize} test cases, replacing the cached
+     * workspace only when its batch size differs.
+     */
+    private Workspace workspace(int index, int batchSize) {
+        if (workspaces.length <= index) workspaces = Arrays.copyOf(workspaces, index + 1);
+        if (workspaces[index] == null || workspaces[index].batchSize != batchSize)
+            workspaces[index] = new Workspace(layers, inputNum, batchSize);
+        return workspaces[index];
+    }
+
+    /** Returns {@code cached}, grown to at least {@code count} sets of scratch buffers */
+    private static WorkerLocal.Values[] scratch(WorkerLocal.Values[] cached, int count) {
+        if (cached.length >= count) return cached;
+        WorkerLocal.Values[] grown = Arrays.copyOf(cached, count);
+        for (int i = cached.length; i < count; i++) grown[i] = new WorkerLocal.Values();
+        return grown;
+    }
+
+    /**
+     * Runs {@code task} once for every index in {@code [0, tasks)} on this Neural Network's executor, running
+     * index {@code 0} on the calling thread. Task {@code i} uses {@code scratch[i]} as its {@link WorkerLocal}
+     * buffers when running on a virtual thread; {@code scratch} may be null for tasks that use none. Returns once
+     * every task has finished.
+     */
+    private void runInParallel(int tasks, WorkerLocal.Values[] scratch, IntConsumer task) {
+        Future<?>[] workers = new Future<?>[Math.max(0, tasks - 1)];
+        for (int i = 1; i < tasks; i++) {
+            int index = i;
+            workers[i - 1] = executor.submit(() -> Linalg.runInParallelRegion(tasks, () ->
+                    WorkerLocal.withValues(scratch == null ? null : scratch[index], () -> task.accept(index))));
+        }
+        try {
+            //the batch is already split between threads, so the Linalg primitives inside each task run sequentially
+            Runnable first = () -> WorkerLocal.withValues(scratch == null ? null : scratch[0], () -> task.accept(0));
+            if (tasks > 1) Linalg.runInParallelRegion(tasks, first);
+            else if (tasks == 1) first.run();
+        } finally {
+            //never return while a worker may still be writing gradients
+            for (Future<?> worker : workers)
+                awaitWorker(worker);
+        }
+    }
 
-            if (testCaseInputs.length == 0)
-                throw new IllegalArgumentException("training batch must not be empty");
-            NN.applyGradient(NN.optimizer, learningRate / testCaseInputs.length, momentum, beta, epsilon);
+    /** Blocks until {@code worker} finishes, rethrowing any exception it threw on the calling thread */
+    static void awaitWorker(Future<?> worker) {
+        try {
+            worker.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            if (e.getCause() instanceof Error cause) throw cause;
+            throw new RuntimeException(e.getCause());
         }
     }
 
@@ -124,11 +297,14 @@ public class NN {
         }
     }
 
-    private NN(Optimizer optimizer, int inputNum, int outputNum, double temperature, Activation hiddenAF, Activation outputAF, Cost costFunction, Layer[] layers) {
+    private NN(Optimizer optimizer, int inputNum, int outputNum, double temperature, Activation hiddenAF, Activation outputAF, Cost costFunction, Layer[] layers,
+               ExecutorService executor, int parallelism) {
         this.inputNum = inputNum;
         this.outputNum = outputNum;
         this.layers = layers;
         this.optimizer = optimizer;
+        this.executor = executor;
+        this.parallelism = parallelism;
 
         this.temperature = temperature;
         this.hiddenAF = hiddenAF;
@@ -138,12 +314,37 @@ public class NN {
         clearGradient();
     }
 
+    /** The number of Input Neurons in this Neural Network */
+    int inputNum() {
+        return inputNum;
+    }
+
+    /** The number of Output Neurons in this Neural Network */
+    int outputNum() {
+        return outputNum;
+    }
+
     /** Sets the temperature (exploration) value of this Neural Network.
      * <br>Only affects the output when {@link #outputAF} is {@link Activation#softmax} */
     public void setTemperature(double temperature) {
         this.temperature = temperature;
     }
 
+    /** Sets the executor that runs the backpropagation chunks of {@link #learn}.
+     * <br>The executor is not shut down by this Neural Network, so it may be shared between networks. */
+    public void setExecutor(ExecutorService executor) {
+        if (executor == null)
+            throw new IllegalArgumentException("executor must not be null");
+        this.executor = executor;
+    }
+
+    /** Sets the maximum number of chunks {@link #learn} splits each batch into. Defaults to the number of cores. */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("parallelism must be positive");
+        this.parallelism = parallelism;
+    }
+
     /**
      * Applies the weights and biases of this Neural Network to transform the {@code input} array to an
      * {@code output} array of predictions
@@ -152,9 +353,20 @@ public class NN {
         if (input.length != inputNum)
             throw new IllegalArgumentException("input length must equal inputNum");
 
-        double[] result = layers[0].calculateWeightedOutput(input);
-        for (int i = 1; i < layers.length; i++) {
-            result = layers[i].calculateWeightedOutput(hiddenAF.calculate(result));
+        double[] z = layers[0].calculateWeightedOutput(input);
+        return calculateOutput(z, 0, z.length, 1);
+    }
+
+    /**
+     * Finishes a forward pass from {@code z[offset, offset + length)}, the weighted output of layer {@code next - 1},
+     * without modifying {@code z}: runs every layer from {@code next} onward, then applies the output activation
+     * function. The activation functions run in place on the copy of that range and on every layer's output.
+     */
+    double[] calculateOutput(double[] z, int offset, int length, int next) {
+        double[] result = Arrays.copyOfRange(z, offset, offset + length);
+        for (int i = next; i < layers.length; i++) {
+            hiddenAF.calculate(result, result, 0, result.length);
+            result = layers[i].calculateWeightedOutput(result);
         }
 
         //exploration vs exploitation. Apply temperature in softmax function for RL algorithms
@@ -162,13 +374,26 @@ public class NN {
             for (int i = 0; i < result.length; i++)
                 result[i] /= temperature;
 
-        result = outputAF.calculate(result);
+        outputAF.calculate(result, result, 0, result.length);
 
         if (result.length != outputNum)
             throw new IllegalStateException("output length must equal outputNum");
         return result;
     }
 
+    /**
+     * Starts a streaming inference session that feeds this network one frame at a time, computing only the newest
+     * frame of its leading {@link TemporalConvLayer}s on every push, see {@link TemporalStream}.
+     * @throws IllegalStateException if this network does not start with a temporal convolutional layer
+     */
+    public TemporalStream stream() {
+        int temporal = 0;
+        while (temporal < layers.length && layers[temporal] instanceof TemporalConvLayer) temporal++;
+        if (temporal == 0)
+            throw new IllegalStateException("streams need a network that starts with a temporal convolutional layer");
+        return new TemporalStream(this, Arrays.copyOf(layers, temporal, TemporalConvLayer[].class), hiddenAF);
+    }
+
     /**
      * Returns the loss of this Neural Network, or how far the expected output differs from the actual output.
      */
@@ -195,33 +420,198 @@ public class NN {
      * backpropagation.
      */
     public void backPropagate(double[] input, double[] expectedOutput) {
+        backPropagate(new double[][]{input}, new double[][]{expectedOutput});
+    }
+
+    /**
+     * Populates each layer's gradient parameters from a whole batch of test cases at once.
+     * <br>Equivalent to calling {@link #backPropagate(double[], double[])} on every test case, but each layer
+     * processes the batch as a matrix (see {@link Layer#calculateWeightedOutput(double[], int, double[])}), so its
+     * parameters are streamed from memory once per batch instead of once per test case.
+     */
+    public void backPropagate(double[][] inputs, double[][] expectedOutputs) {
+        if (inputs.length != expectedOutputs.length)
+            throw new IllegalArgumentException("inputs and expectedOutputs must have the same length");
+        for (int i = 0; i < inputs.length; i++)
+            if (inputs[i].length != inputNum || expectedOutputs[i].length != outputNum)
+                throw new IllegalArgumentException("Each input/output pair must match network dimensions");
+        if (inputs.length == 0) return;
+        //the cached workspaces are shared with learn
+        synchronized (this) {
+            Workspace workspace;
+            if (inputs.length == 1) {
+                if (sampleWorkspace == null) sampleWorkspace = new Workspace(layers, inputNum, 1);
+                workspace = sampleWorkspace;
+            } else workspace = workspace(0, inputs.length);
+            backPropagate(layers, workspace, inputs, expectedOutputs, 0, inputs.length);
+        }
+    }
+
+    /**
+     * Backpropagates test cases {@code [start, end)} through {@code layers}, which are either this Neural Network's
+     * layers or one of its gradient shards, using only the preallocated buffers of {@code workspace}.
+     */
+    private void backPropagate(Layer[] layers, Workspace workspace, double[][] inputs, double[][] expectedOutputs, int start, int end) {
         //z = immediate output of every layer (right before activation function)
         //x = immediate input of every layer (either is input or is right after activation function)
-        double[][] zs = new double[layers.length][];
-        double[][] xs = new double[layers.length][];
-        xs[0] = input;
-        for (int i = 0; i < layers.length - 1; i++) {
-            zs[i] = layers[i].calculateWeightedOutput(xs[i]);
-            xs[i + 1] = hiddenAF.calculate(zs[i]);
-        }
-        zs[layers.length - 1] = layers[layers.length - 1].calculateWeightedOutput(xs[layers.length - 1]);
+        double[][] zs = workspace.zs, xs = workspace.xs, deltas = workspace.deltas;
+        int batchSize = end - start, last = layers.length - 1;
+        for (int b = 0; b < batchSize; b++)
+            System.arraycopy(inputs[start + b], 0, xs[0], b * inputNum, inputNum);
+        forward(layers, workspace, true);
+
+        for (int b = 0; b < batchSize; b++) {
+            System.arraycopy(zs[last], b * outputNum, workspace.outputRow, 0, outputNum);
+            outputLayerGradient(workspace, expectedOutputs[start + b]);
+            System.arraycopy(workspace.gradientRow, 0, deltas[last + 1], b * outputNum, outputNum);
+        }
+        layers[last].updateGradient(deltas[last + 1], xs[last], batchSize, deltas[last]);
+
+        for (int i = last - 1; i >= 0; i--) {
+            int width = zs[i].length / batchSize;
+            for (int b = 0; b < batchSize; b++)
+                hiddenAF.derivative(zs[i], deltas[i + 1], deltas[i + 1], b * width, (b + 1) * width);
+            layers[i].updateGradient(deltas[i + 1], xs[i], batchSize, deltas[i]);
+        }
+    }
+
+    /**
+     * Runs the batch in {@code workspace.xs[0]} through {@code layers}, filling every {@code xs} and {@code zs} of
+     * {@code workspace} up to the weighted output of the last layer. A {@code training} pass is followed by the
+     * backward pass, see {@link Layer#trainingWeightedOutput}.
+     */
+    private void forward(Layer[] layers, Workspace workspace, boolean training) {
+        double[][] zs = workspace.zs, xs = workspace.xs;
+        int batchSize = workspace.batchSize, last = layers.length - 1;
+        for (int i = 0; i < last; i++) {
+            weightedOutput(layers[i], xs[i], batchSize, zs[i], training);
+            int width = zs[i].length / batchSize;
+            for (int b = 0; b < batchSize; b++)
+                hiddenAF.calculate(zs[i], xs[i + 1], b * width, (b + 1) * width);
+        }
+        weightedOutput(layers[last], xs[last], batchSize, zs[last], training);
+    }
+
+    private static void weightedOutput(Layer layer, double[] batch, int batchSize, double[] output, boolean training) {
+        if (training) layer.trainingWeightedOutput(batch, batchSize, output);
+        else layer.calculateWeightedOutput(batch, batchSize, output);
+    }
+
+    /**
+     * Computes the requested {@link Metric}s (all of them if none are given) over every test case of
+     * {@code dataset}, with a single forward pass per test case.
+     * <br>The dataset is split into blocks of {@link #EVALUATION_BATCH} test cases, and every worker
+     * forward-propagates one contiguous run of blocks, a block at a time, into its own {@link Evaluation}. The partial
+     * evaluations and the cost of every block are merged in dataset order at the end.
+     * <br>Evaluation has buffers of its own and only holds this network's lock while taking them, so it may run
+     * alongside other evaluations and alongside {@link #learn}; a training step applied meanwhile is seen by the
+     * test cases evaluated after it.
+     * @throws IllegalArgumentException if {@code dataset} is empty or doesn't match this network's dimensions
+     * @throws IllegalStateException if the network outputs non-finite values
+     */
+    public Evaluation evaluate(Dataset dataset, Metric... metrics) {
+        if (dataset.inputNum() != inputNum || dataset.outputNum() != outputNum)
+            throw new IllegalArgumentException("dataset must match network dimensions");
+        int size = dataset.size();
+        if (size == 0)
+            throw new IllegalArgumentException("dataset must not be empty");
+        Set<Metric> requested = metrics.length == 0 ? EnumSet.allOf(Metric.class) : EnumSet.copyOf(Arrays.asList(metrics));
+        int blocks = Math.ceilDiv(size, EVALUATION_BATCH), chunks = Math.min(parallelism, blocks);
+        int lastBlock = size - (blocks - 1) * EVALUATION_BATCH;
+
+        EvaluationBuffers buffers;
+        synchronized (this) {
+            buffers = idleEvaluationBuffers.poll();
+        }
+        if (buffers == null) buffers = new EvaluationBuffers();
+        try {
+            if (buffers.full.length < chunks) buffers.full = Arrays.copyOf(buffers.full, chunks);
+            for (int chunk = 0; chunk < chunks; chunk++)
+                if (buffers.full[chunk] == null && blocks > 1)
+                    buffers.full[chunk] = Workspace.forwardOnly(layers, inputNum, EVALUATION_BATCH);
+            if (buffers.last == null || buffers.last.batchSize != lastBlock)
+                buffers.last = Workspace.forwardOnly(layers, inputNum, lastBlock);
+            buffers.scratch = scratch(buffers.scratch, chunks);
+
+            Evaluation[] partial = new Evaluation[chunks];
+            for (int chunk = 0; chunk < chunks; chunk++) partial[chunk] = new Evaluation(requested, outputNum);
+            double[] blockCosts = new double[blocks];
+            Workspace[] full = buffers.full;
+            Workspace last = buffers.last;
+            runInParallel(chunks, buffers.scratch, chunk -> {
+                int start = (int) ((long) chunk * blocks / chunks), end = (int) ((long) (chunk + 1) * blocks / chunks);
+                for (int block = start; block < end; block++)
+                    blockCosts[block] = evaluate(block == blocks - 1 ? last : full[chunk], dataset, block * EVALUATION_BATCH, partial[chunk]);
+            });
+
+            for (int chunk = 1; chunk < chunks; chunk++) partial[0].add(partial[chunk]);
+            for (double cost : blockCosts) partial[0].addCost(cost);
+            return partial[0];
+        } finally {
+            synchronized (this) {
+                idleEvaluationBuffers.push(buffers);
+            }
+        }
+    }
+
+    /**
+     * Forward-propagates the {@code workspace.batchSize} test cases of {@code dataset} starting at {@code first},
+     * counting their predicted classes into {@code evaluation}, and returns the sum of their costs in order
+     */
+    private double evaluate(Workspace workspace, Dataset dataset, int first, Evaluation evaluation) {
+        int batchSize = workspace.batchSize;
+        double[] input = workspace.inputRow, expected = workspace.gradientRow, output = workspace.activationRow;
+        for (int b = 0; b < batchSize; b++)
+            System.arraycopy(dataset.input(first + b, input), 0, workspace.xs[0], b * inputNum, inputNum);
+        forward(layers, workspace, false);
+
+        double[] z = workspace.outputRow, zs = workspace.zs[layers.length - 1], costs = workspace.costRow;
+        double blockCost = 0;
+        for (int b = 0; b < batchSize; b++) {
+            System.arraycopy(zs, b * outputNum, z, 0, outputNum);
+            if (outputAF == Activation.softmax)
+                for (int i = 0; i < outputNum; i++)
+                    z[i] /= temperature;
+            outputAF.calculate(z, output, 0, outputNum);
+            for (double v : output)
+                if (!Double.isFinite(v))
+                    throw new IllegalStateException("network output contains non-finite values");
+
+            double[] expectedOutput = dataset.output(first + b, expected);
+            costFunction.calculate(output, expectedOutput, costs);
+            double cost = 0;
+            for (int i = 0; i < outputNum; i++) cost += costs[i];
+            blockCost += cost;
+            evaluation.add(argmax(expectedOutput), argmax(output));
+        }
+        return blockCost;
+    }
+
+    /** The index of the first largest value of {@code values} */
+    private static int argmax(double[] values) {
+        int best = 0;
+        for (int i = 1; i < values.length; i++)
+            if (values[i] > values[best]) best = i;
+        return best;
+    }
+
+    /**
+     * Writes dz_dC of the output layer into {@code workspace.gradientRow}, given its weighted output in
+     * {@code workspace.outputRow}, applying the softmax temperature to that row in place
+     */
+    private void outputLayerGradient(Workspace workspace, double[] expectedOutput) {
+        double[] z = workspace.outputRow, output = workspace.activationRow, gradient = workspace.gradientRow;
         if (outputAF == Activation.softmax)
-            for (int i = 0; i < zs[layers.length - 1].length; i++)
-                zs[layers.length - 1][i] /= temperature;
+            for (int i = 0; i < z.length; i++)
+                z[i] /= temperature;
 
-        double[] output = outputAF.calculate(zs[layers.length - 1]);
+        outputAF.calculate(z, output, 0, z.length);
         if (outputAF == Activation.softmax)
             for (int i = 0; i < output.length; i++)
                 output[i] /= temperature;
 
-        double[] outputLayer_dz_dC = outputAF.derivative(zs[layers.length - 1], costFunction.derivative(output, expectedOutput));
-        double[] nextLayer_da_dC;
-        nextLayer_da_dC = layers[layers.length - 1].updateGradient(outputLayer_dz_dC, xs[layers.length - 1]);
-
-        for (int i = layers.length - 2; i >= 0; i--) {
-            double[] dz_dC = hiddenAF.derivative(zs[i], nextLayer_da_dC);
-            nextLayer_da_dC = layers[i].updateGradient(dz_dC, xs[i]);
-        }
+        costFunction.derivative(output, expectedOutput, gradient);
+        outputAF.derivative(z, gradient, gradient, 0, z.length);
     }
 
     /** Re-initializes the weight and bias gradients, effectively setting all contained values to 0 */
@@ -263,7 +653,7 @@ public class NN {
         }
         Layer[] newLayers = new Layer[layers.length];
         for (int i = 0; i < layers.length; i++) newLayers[i] = (Layer) layers[i].clone();
-        return new NN(optimizer, inputNum, outputNum, temperature, hiddenAF, outputAF, costFunction, newLayers);
+        return new NN(optimizer, inputNum, outputNum, temperature, hiddenAF, outputAF, costFunction, newLayers, executor, parallelism);
     }
 
     @Override
@@ -292,6 +682,9 @@ public class NN {
         private Cost costFunction = null;
         private double temperature = 1;
         private Optimizer optimizer = Optimizer.ADAM;
+        private TensorLayout tensorLayout = TensorLayout.CHANNEL_FIRST;
+        private ExecutorService executor = DEFAULT_EXECUTOR;
+        private int parallelism = CORES;
         private final ArrayList<Layer> layers = new ArrayList<>();
 
         /**
@@ -309,6 +702,25 @@ public class NN {
             return this;
         }
 
+        /**
+         * Sets the order in which the network input and every convolutional layer's output are stored, see
+         * {@link TensorLayout}. Dense layers read the flattened volume in whichever order it comes; pooling and
+         * depthwise-separable layers only support {@link TensorLayout#CHANNEL_FIRST}.
+         * This must be called before any layers are added.
+         *
+         * @param tensorLayout The layout of every 3D volume in the network.
+         * @return This builder instance for chaining.
+         * @throws UnsupportedOperationException If called after layers have already been added.
+         */
+        public NetworkBuilder setTensorLayout(TensorLayout tensorLayout) {
+            if (!layers.isEmpty())
+                throw new UnsupportedOperationException("Attempted to overwrite tensorLayout after adding layers.");
+            if (tensorLayout == null)
+                throw new IllegalArgumentException("tensorLayout must not be null");
+            this.tensorLayout = tensorLayout;
+            return this;
+        }
+
         /**
          * Adds a dense (fully connected) layer to the network with the specified number of nodes.
          *
@@ -358,9 +770,138 @@ public class NN {
         public NetworkBuilder addConvolutionalLayer(int inputWidth, int inputHeight, int inputLength,
                                                     int kernelWidth, int kernelHeight, int numKernels,
                                                     int strideWidth, int strideHeight, boolean padding) {
+            return addConvolutionalLayer(inputWidth, inputHeight, inputLength, kernelWidth, kernelHeight, numKernels, strideWidth, strideHeight, padding,
+                    ConvolutionAlgorithm.IM2COL);
+        }
+
+        /**
+         * Adds a convolutional layer to the network that runs its passes with the given algorithm.
+         * @param inputWidth     Width of the input volume.
+         * @param inputHeight    Height of the input volume.
+         * @param inputLength    Depth of the input volume.
+         * @param kernelWidth    Width of the convolutional kernel.
+         * @param kernelHeight   Height of the convolutional kernel.
+         * @param numKernels     Number of kernels (output depth).
+         * @param strideWidth    Stride in the width direction.
+         * @param strideHeight   Stride in the height direction.
+         * @param padding        Whether to apply padding to keep dimensions.
+         * @param algorithm      How the layer computes its convolutions, see {@link ConvolutionAlgorithm}.
+         * @return This builder instance for chaining.
+         * @throws IllegalArgumentException If the input size does not match the expected flattened dimension.
+         */
+        public NetworkBuilder addConvolutionalLayer(int inputWidth, int inputHeight, int inputLength,
+                                                    int kernelWidth, int kernelHeight, int numKernels,
+                                                    int strideWidth, int strideHeight, boolean padding,
+                                                    ConvolutionAlgorithm algorithm) {
+            if ((layers.isEmpty() ? inputNum : layers.getLast().nodes) != inputWidth * inputHeight * inputLength)
+                throw new IllegalArgumentException("input dimensions do not match previous layer output");
+            if (algorithm == null)
+                throw new IllegalArgumentException("algorithm must not be null");
+            layers.add(new ConvolutionalLayer(inputWidth, inputHeight, inputLength, kernelWidth, kernelHeight, numKernels, strideWidth, strideHeight, padding, algorithm, tensorLayout));
+            outputNum = layers.getLast().nodes;
+            return this;
+        }
+
+        /**
+         * Adds a 1D convolutional layer over time: the input is {@code window} frames of {@code inputChannels}
+         * values, stored frame after frame, and every kernel spans {@code kernelSize} consecutive frames. Networks
+         * that start with these layers can be fed one frame at a time through {@link NN#stream()}.
+         * @param inputChannels  Number of values in every input frame.
+         * @param window         Number of input frames.
+         * @param kernelSize     Number of consecutive frames every kernel spans.
+         * @param numKernels     Number of kernels (values in every output frame).
+         * @return This builder instance for chaining.
+         * @throws IllegalArgumentException If the input size does not match the expected flattened dimension, or
+         * the previous temporal layer does not produce frames of {@code inputChannels} values.
+         */
+        public NetworkBuilder addTemporalConvLayer(int inputChannels, int window, int kernelSize, int numKernels) {
+            if ((layers.isEmpty() ? inputNum : layers.getLast().nodes) != inputChannels * window)
+                throw new IllegalArgumentException("input dimensions do not match previous layer output");
+            if (!layers.isEmpty() && layers.getLast() instanceof TemporalConvLayer previous && previous.numKernels() != inputChannels)
+                throw new IllegalArgumentException("inputChannels must equal the previous temporal layer's numKernels");
+            layers.add(new TemporalConvLayer(inputChannels, window, kernelSize, numKernels));
+            outputNum = layers.getLast().nodes;
+            return this;
+        }
+
+        /**
+         * Adds a depthwise-separable convolutional layer: every input channel is convolved with its own kernel, then
+         * the channels are mixed into {@code numKernels} outputs by a 1x1 convolution. No padding is applied.
+         * @param inputWidth     Width of the input volume.
+         * @param inputHeight    Height of the input volume.
+         * @param inputLength    Depth (number of channels) of the input volume.
+         * @param kernelWidth    Width of every channel's kernel.
+         * @param kernelHeight   Height of every channel's kernel.
+         * @param numKernels     Number of pointwise kernels (output depth).
+         * @param strideWidth    Stride in the width direction.
+         * @param strideHeight   Stride in the height direction.
+         * @return This builder instance for chaining.
+         * @throws IllegalArgumentException If the input size does not match the expected flattened dimension.
+         */
+        public NetworkBuilder addDepthwiseSeparableConvLayer(int inputWidth, int inputHeight, int inputLength,
+                                                             int kernelWidth, int kernelHeight, int numKernels,
+                                                             int strideWidth, int strideHeight) {
             if ((layers.isEmpty() ? inputNum : layers.getLast().nodes) != inputWidth * inputHeight * inputLength)
                 throw new IllegalArgumentException("input dimensions do not match previous layer output");
-            layers.add(new ConvolutionalLayer(inputWidth, inputHeight, inputLength, kernelWidth, kernelHeight, numKernels, strideWidth, strideHeight, padding));
+            if (tensorLayout != TensorLayout.CHANNEL_FIRST)
+                throw new IllegalArgumentException("depthwise-separable layers only support the CHANNEL_FIRST layout");
+            layers.add(new DepthwiseSeparableConvLayer(inputWidth, inputHeight, inputLength, kernelWidth, kernelHeight, numKernels, strideWidth, strideHeight));
+            outputNum = layers.getLast().nodes;
+            return this;
+        }
+
+        /**
+         * Adds a max pooling layer, which keeps the largest neuron of every window of each input channel.
+         * @param inputWidth     Width of the input volume.
+         * @param inputHeight    Height of the input volume.
+         * @param inputLength    Depth (number of channels) of the input volume.
+         * @param poolWidth      Width of the pooling window.
+         * @param poolHeight     Height of the pooling window.
+         * @param strideWidth    Stride in the width direction.
+         * @param strideHeight   Stride in the height direction.
+         * @return This builder instance for chaining.
+         * @throws IllegalArgumentException If the input size does not match the expected flattened dimension.
+         */
+        public NetworkBuilder addMaxPoolLayer(int inputWidth, int inputHeight, int inputLength,
+                                              int poolWidth, int poolHeight, int strideWidth, int strideHeight) {
+            return addPoolingLayer(new MaxPoolLayer(inputWidth, inputHeight, inputLength, poolWidth, poolHeight, strideWidth, strideHeight));
+        }
+
+        /**
+         * Adds an average pooling layer, which keeps the mean of every window of each input channel.
+         * @param inputWidth     Width of the input volume.
+         * @param inputHeight    Height of the input volume.
+         * @param inputLength    Depth (number of channels) of the input volume.
+         * @param poolWidth      Width of the pooling window.
+         * @param poolHeight     Height of the pooling window.
+         * @param strideWidth    Stride in the width direction.
+         * @param strideHeight   Stride in the height direction.
+         * @return This builder instance for chaining.
+         * @throws IllegalArgumentException If the input size does not match the expected flattened dimension.
+         */
+        public NetworkBuilder addAvgPoolLayer(int inputWidth, int inputHeight, int inputLength,
+                                              int poolWidth, int poolHeight, int strideWidth, int strideHeight) {
+            return addPoolingLayer(new AvgPoolLayer(inputWidth, inputHeight, inputLength, poolWidth, poolHeight, strideWidth, strideHeight));
+        }
+
+        /**
+         * Adds a global average pooling layer, which reduces each input channel to its mean.
+         * @param inputWidth     Width of the input volume.
+         * @param inputHeight    Height of the input volume.
+         * @param inputLength    Depth (number of channels) of the input volume, and the number of outputs.
+         * @return This builder instance for chaining.
+         * @throws IllegalArgumentException If the input size does not match the expected flattened dimension.
+         */
+        public NetworkBuilder addGlobalAvgPoolLayer(int inputWidth, int inputHeight, int inputLength) {
+            return addPoolingLayer(new GlobalAvgPoolLayer(inputWidth, inputHeight, inputLength));
+        }
+
+        private NetworkBuilder addPoolingLayer(PoolingLayer layer) {
+            if ((layers.isEmpty() ? inputNum : layers.getLast().nodes) != layer.inputVolume())
+                throw new IllegalArgumentException("input dimensions do not match previous layer output");
+            if (tensorLayout != TensorLayout.CHANNEL_FIRST)
+                throw new IllegalArgumentException("pooling layers only support the CHANNEL_FIRST layout");
+            layers.add(layer);
             outputNum = layers.getLast().nodes;
             return this;
         }
@@ -427,17 +968,49 @@ public class NN {
             return this;
         }
 
+        /**
+         * Sets the executor that runs the per-chunk backpropagation tasks during training.
+         * <br>Defaults to a shared pool with one platform thread per core. The executor is never shut down by the network.
+         * @param executor The executor to train on.
+         * @return This builder instance for chaining.
+         */
+        public NetworkBuilder setExecutor(ExecutorService executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Trains on a shared virtual-thread executor instead of the default platform-thread pool.
+         * @return This builder instance for chaining.
+         */
+        public NetworkBuilder useVirtualThreads() {
+            this.executor = VIRTUAL_EXECUTOR;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of chunks each training batch is split into, one per worker.
+         * @param parallelism The number of chunks, defaults to the number of cores.
+         * @return This builder instance for chaining.
+         */
+        public NetworkBuilder setParallelism(int parallelism) {
+            this.parallelism = parallelism;
+            return this;
+        }
+
         /**
          * Builds the neural network using the configured parameters and layers.
          * @return A fully constructed NN instance ready for training or evaluation.
          * @throws MissingInformationException If any required fields (e.g., activation functions, cost, input/output sizes) are not set.
          */
         public NN build() throws MissingInformationException {
-            if (inputNum == -1 || outputNum == -1 || hiddenAF == null || outputAF == null || costFunction == null || layers.isEmpty() || optimizer == null)
+            if (inputNum == -1 || outputNum == -1 || hiddenAF == null || outputAF == null || costFunction == null || layers.isEmpty() || optimizer == null || executor == null)
                 throw new MissingInformationException();
+            if (parallelism < 1)
+                throw new IllegalArgumentException("parallelism must be positive");
             for (Layer layer : layers)
                 layer.initialize(Activation.getInitializer(hiddenAF, inputNum, outputNum), optimizer);
-            return new NN(optimizer, inputNum, outputNum, temperature, hiddenAF, outputAF, costFunction, layers.toArray(Layer[]::new));
+            return new NN(optimizer, inputNum, outputNum, temperature, hiddenAF, outputAF, costFunction, layers.toArray(Layer[]::new), executor, parallelism);
         }
     }
 
@@ -90,5 +90,117 @@ public enum Optimizer {
      *     <li>{@code m_hat} and {@code v_hat} are bias-corrected estimates of the first and second moments</li>
      * </ul>
      */
-    ADAM
+    ADAM;
+
+    /**
+     * Applies one step of this optimizer to every element of {@code parameters}, or to none of them: the step is
+     * checked with {@link #accepts} first and only then written by {@link #apply}.
+     * @return whether the step was accepted and applied
+     */
+    boolean update(double[] parameters, double[] gradient, double[] velocity, double[] velocitySquared,
+                   double adjustedLearningRate, double momentum, double beta, double epsilon, int t) {
+        if (!accepts(parameters, gradient, velocity, velocitySquared, adjustedLearningRate, momentum, beta, epsilon, t))
+            return false;
+        apply(parameters, gradient, velocity, velocitySquared, adjustedLearningRate, momentum, beta, epsilon, t);
+        return true;
+    }
+
+    /**
+     * Whether one step of this optimizer keeps every element of {@code parameters} finite, without writing anything:
+     * every gradient must be finite, and for ADAM every updated parameter too. A layer checks each of its parameter
+     * arrays this way before it {@link #apply applies} the step to any of them, so a rejected step changes nothing.
+     * <br>This read-only pass reads each gradient (for ADAM also each moment and parameter) a second time, on top of
+     * {@link #apply}; that is the price of never applying half a step. Large arrays are split between threads.
+     * @param t the timestep of ADAM's bias correction, ignored by the other optimizers
+     */
+    boolean accepts(double[] parameters, double[] gradient, double[] velocity, double[] velocitySquared,
+                    double adjustedLearningRate, double momentum, double beta, double epsilon, int t) {
+        if (this != ADAM)
+            return Double.isFinite(Linalg.reduceChunks(gradient.length, (from, to) ->
+                    Linalg.isFinite(gradient, from, to) ? 0 : Double.NaN));
+        double stepSize = adjustedLearningRate / (1 - Math.pow(momentum, t));
+        double correctionBeta = 1 / (1 - Math.pow(beta, t));
+        return Double.isFinite(Linalg.reduceChunks(parameters.length, (from, to) ->
+                adamCheck(parameters, gradient, velocity, velocitySquared, stepSize, momentum, beta, correctionBeta, epsilon, from, to)));
+    }
+
+    /**
+     * Applies one step of this optimizer, already {@link #accepts accepted}, to every element of {@code parameters}
+     * in a single fused pass, which reads each gradient and moment once and writes each moment and parameter once.
+     * Large arrays are split between threads (see {@link Linalg#shouldParallelize}).
+     * <p>
+     * Precondition: {@code velocity} and {@code velocitySquared} are allocated as this optimizer requires,
+     * see {@link Layer#applyGradient}; the unused ones may be {@code null}.
+     * @param t the timestep of ADAM's bias correction, ignored by the other optimizers
+     */
+    void apply(double[] parameters, double[] gradient, double[] velocity, double[] velocitySquared,
+               double adjustedLearningRate, double momentum, double beta, double epsilon, int t) {
+        switch (this) {
+            case SGD -> Linalg.forEachChunk(parameters.length, (from, to) ->
+                    sgd(parameters, gradient, adjustedLearningRate, from, to));
+            case SGD_MOMENTUM -> Linalg.forEachChunk(parameters.length, (from, to) ->
+                    sgdMomentum(parameters, gradient, velocity, adjustedLearningRate, momentum, from, to));
+            case RMS_PROP -> Linalg.forEachChunk(parameters.length, (from, to) ->
+                    rmsProp(parameters, gradient, velocitySquared, adjustedLearningRate, beta, epsilon, from, to));
+            case ADAM -> {
+                double stepSize = adjustedLearningRate / (1 - Math.pow(momentum, t));
+                double correctionBeta = 1 / (1 - Math.pow(beta, t));
+                Linalg.forEachChunk(parameters.length, (from, to) ->
+                        adam(parameters, gradient, velocity, velocitySquared, stepSize, momentum, beta, correctionBeta, epsilon, from, to));
+            }
+        }
+    }
+
+    private static void sgd(double[] parameters, double[] gradient, double learningRate, int from, int to) {
+        for (int i = from; i < to; i++)
+            parameters[i] -= learningRate * gradient[i];
+    }
+
+    private static void sgdMomentum(double[] parameters, double[] gradient, double[] velocity,
+                                    double learningRate, double momentum, int from, int to) {
+        for (int i = from; i < to; i++) {
+            double v = momentum * velocity[i] + (1 - momentum) * gradient[i];
+            velocity[i] = v;
+            parameters[i] -= learningRate * v;
+        }
+    }
+
+    private static void rmsProp(double[] parameters, double[] gradient, double[] velocitySquared,
+                                double learningRate, double beta, double epsilon, int from, int to) {
+        for (int i = from; i < to; i++) {
+            double g = gradient[i];
+            double s = beta * velocitySquared[i] + (1 - beta) * g * g;
+            velocitySquared[i] = s;
+            parameters[i] -= learningRate * g / Math.sqrt(s + epsilon);
+        }
+    }
+
+    /** ADAM with its bias corrections folded into {@code stepSize = learningRate / (1 - momentum^t)}
+     * and {@code correctionBeta = 1 / (1 - beta^t)} */
+    private static void adam(double[] parameters, double[] gradient, double[] velocity, double[] velocitySquared,
+                             double stepSize, double momentum, double beta, double correctionBeta, double epsilon,
+                             int from, int to) {
+        for (int i = from; i < to; i++) {
+            double g = gradient[i];
+            double v = momentum * velocity[i] + (1 - momentum) * g;
+            double s = beta * velocitySquared[i] + (1 - beta) * g * g;
+            velocity[i] = v;
+            velocitySquared[i] = s;
+            parameters[i] -= stepSize * v / Math.sqrt(s * correctionBeta + epsilon);
+        }
+    }
+
+    /** Computes {@link #adam} without writing anything; returns NaN if some updated parameter would not be finite */
+    private static double adamCheck(double[] parameters, double[] gradient, double[] velocity, double[] velocitySquared,
+                                    double stepSize, double momentum, double beta, double correctionBeta, double epsilon,
+                                    int from, int to) {
+        for (int i = from; i < to; i++) {
+            double g = gradient[i];
+            double v = momentum * velocity[i] + (1 - momentum) * g;
+            double s = beta * velocitySquared[i] + (1 - beta) * g * g;
+            if (!Double.isFinite(parameters[i] - stepSize * v / Math.sqrt(s * correctionBeta + epsilon)))
+                return Double.NaN;
+        }
+        return 0;
+    }
 }
@@ -0,0 +1,125 @@
+package Network;
+
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * A layer that shrinks every input layer (channel) of a 3D input on its own, reducing each window of
+ * {@code poolWidth x poolHeight} neurons to a single output neuron. Pooling layers have no learnable parameters:
+ * their biases stay 0, and {@link #applyGradient} and {@link #clearGradient} do nothing.
+ * <br><br>Input and output share {@link ConvolutionalLayer}'s layout: neuron {@code (x, y)} of channel {@code c}
+ * lives at {@code x + y * width + c * width * height}.
+ * <br><br>Output Dimension: every channel becomes a {@code outputWidth x outputHeight} matrix, where
+ * <br> -WIDTH = (inputWidth - poolWidth) / strideWidth + 1
+ * <br> -HEIGHT = (inputHeight - poolHeight) / strideHeight + 1
+ * <p>
+ * Subclasses implement the batched passes; the single-sample passes run them on a batch of one.
+ */
+abstract class PoolingLayer extends Layer {
+
+    protected final int inputWidth, inputHeight, inputLength;
+    protected final int poolWidth, poolHeight;
+    protected final int strideWidth, strideHeight;
+    protected final int outputWidth, outputHeight;
+
+    PoolingLayer(int inputWidth, int inputHeight, int inputLength, int poolWidth, int poolHeight,
+                 int strideWidth, int strideHeight) {
+        super(outputSize(inputWidth, poolWidth, strideWidth) * outputSize(inputHeight, poolHeight, strideHeight) * inputLength);
+        if (inputLength <= 0)
+            throw new IllegalArgumentException("inputLength must be positive");
+        this.inputWidth = inputWidth;
+        this.inputHeight = inputHeight;
+        this.inputLength = inputLength;
+        this.poolWidth = poolWidth;
+        this.poolHeight = poolHeight;
+        this.strideWidth = strideWidth;
+        this.strideHeight = strideHeight;
+        this.outputWidth = outputSize(inputWidth, poolWidth, strideWidth);
+        this.outputHeight = outputSize(inputHeight, poolHeight, strideHeight);
+    }
+
+    /** The number of windows of {@code pool} neurons, {@code stride} apart, that fit in {@code input} neurons */
+    private static int outputSize(int input, int pool, int stride) {
+        if (pool <= 0 || stride <= 0)
+            throw new IllegalArgumentException("pool and stride dimensions must be positive");
+        if (pool > input)
+            throw new IllegalArgumentException("pool dimensions must not exceed input dimensions");
+        return (input - pool) / stride + 1;
+    }
+
+    /** The number of values in one input sample */
+    int inputVolume() {
+        return inputWidth * inputHeight * inputLength;
+    }
+
+    /** Pooling layers have no parameters to initialize, so their biases stay 0 */
+    @Override
+    void initialize(Supplier<Double> initializer, Optimizer optimizer) {
+    }
+
+    @Override
+    double[] calculateWeightedOutput(double[] input) {
+        if (input.length != inputVolume())
+            throw new IllegalArgumentException("input length must equal input volume");
+        double[] output = new double[nodes];
+        calculateWeightedOutput(input, 1, output);
+        return output;
+    }
+
+    @Override
+    double[] updateGradient(double[] dz_dC, double[] x) {
+        if (x.length != inputVolume())
+            throw new IllegalArgumentException("input length must equal input volume");
+        double[] da_dC = new double[inputVolume()];
+        updateGradient(dz_dC, x, 1, da_dC);
+        return da_dC;
+    }
+
+    @Override
+    abstract void calculateWeightedOutput(double[] batch, int batchSize, double[] output);
+
+    @Override
+    abstract void updateGradient(double[] dz_dC, double[] x, int batchSize, double[] da_dC);
+
+    /** The work of one pass over {@code batchSize} samples, for {@link Linalg#parallelFor} */
+    long work(int batchSize) {
+        return (long) batchSize * nodes * poolWidth * poolHeight;
+    }
+
+    @Override
+    void applyGradient(Optimizer optimizer, double adjustedLearningRate, double momentum, double beta, double epsilon) {
+    }
+
+    @Override
+    void addGradient(Layer shard) {
+    }
+
+    @Override
+    void clearGradient() {
+    }
+
+    @Override
+    int getNumParameters() {
+        return 0;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + ": " + poolWidth + "x" + poolHeight + " windows, stride " +
+                strideWidth + "x" + strideHeight + ", " + inputWidth + "x" + inputHeight + "x" + inputLength +
+                " -> " + outputWidth + "x" + outputHeight + "x" + inputLength;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof PoolingLayer o) || o.getClass() != getClass() || !super.equals(obj)) return false;
+        return inputWidth == o.inputWidth && inputHeight == o.inputHeight && inputLength == o.inputLength &&
+                poolWidth == o.poolWidth && poolHeight == o.poolHeight &&
+                strideWidth == o.strideWidth && strideHeight == o.strideHeight;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(getClass(), inputWidth, inputHeight, inputLength, poolWidth, poolHeight, strideWidth, strideHeight);
+    }
+}
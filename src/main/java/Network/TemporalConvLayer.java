@@ -0,0 +1,280 @@
+package Network;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * A 1D convolution over time, for models that slide over sensor streams.
+ * <br><br>The input is a window of {@code window} frames of {@code inputChannels} values each, stored frame after
+ * frame (time-major): value {@code c} of frame {@code t} lives at {@code t * inputChannels + c}. Every kernel spans
+ * {@code kernelSize} consecutive frames and all of their channels, and slides one frame at a time, so the output is
+ * {@code window - kernelSize + 1} frames of {@code numKernels} values, stored the same way.
+ * <br><br>Every kernel has one bias, shared by all of its output frames. Each output frame therefore only depends
+ * on the {@code kernelSize} input frames under it, not on where it sits in the window, which is what lets
+ * {@link TemporalStream} compute just the newest frame when the window shifts by one step.
+ * <p>
+ * Class Invariants:
+ * <ul>
+ *   <li>{@code weights} is a {@code [numKernels][kernelSize][inputChannels]} tensor in one flat array, so the
+ *       weights of kernel {@code k} are one contiguous run of {@code kernelSize * inputChannels} values matching the
+ *       run of input frames under it.</li>
+ *   <li>The per-neuron biases of {@link Layer} stay 0 and are never stepped, so they get no velocities; the
+ *       per-kernel biases live in {@code kernelBias}.</li>
+ * </ul>
+ */
+class TemporalConvLayer extends Layer {
+
+    /** Every kernel's weights, stored back to back in one flat array */
+    private final double[] weights;
+
+    /** The bias of every kernel, shared by all of its output frames */
+    private final double[] kernelBias;
+
+    private double[] weightsVelocity, kernelBiasVelocity;
+    private double[] weightsVelocitySquared, kernelBiasVelocitySquared;
+    private final double[] weightsGradient, kernelBiasGradient;
+
+    private final int inputChannels, window, kernelSize, numKernels;
+
+    /** The number of output frames */
+    private final int outputWindow;
+
+    TemporalConvLayer(int inputChannels, int window, int kernelSize, int numKernels) {
+        super((window - kernelSize + 1) * numKernels);
+        if (inputChannels <= 0 || kernelSize <= 0 || numKernels <= 0)
+            throw new IllegalArgumentException("channel, kernel size and kernel counts must be positive");
+        if (kernelSize > window)
+            throw new IllegalArgumentException("kernelSize must not exceed window");
+        this.inputChannels = inputChannels;
+        this.window = window;
+        this.kernelSize = kernelSize;
+        this.numKernels = numKernels;
+        this.outputWindow = window - kernelSize + 1;
+        this.weights = new double[numKernels * kernelSize * inputChannels];
+        this.kernelBias = new double[numKernels];
+        this.weightsGradient = new double[weights.length];
+        this.kernelBiasGradient = new double[numKernels];
+    }
+
+    /** Creates a gradient shard of {@code parameters}, see {@link Layer#gradientShard} */
+    private TemporalConvLayer(TemporalConvLayer parameters) {
+        super(parameters);
+        this.inputChannels = parameters.inputChannels;
+        this.window = parameters.window;
+        this.kernelSize = parameters.kernelSize;
+        this.numKernels = parameters.numKernels;
+        this.outputWindow = parameters.outputWindow;
+        this.weights = parameters.weights;
+        this.kernelBias = parameters.kernelBias;
+        this.weightsGradient = new double[weights.length];
+        this.kernelBiasGradient = new double[numKernels];
+    }
+
+    /** The number of values in every input frame */
+    int inputChannels() {
+        return inputChannels;
+    }
+
+    /** The number of input frames */
+    int window() {
+        return window;
+    }
+
+    /** The number of input frames every kernel spans */
+    int kernelSize() {
+        return kernelSize;
+    }
+
+    /** The number of values in every output frame */
+    int numKernels() {
+        return numKernels;
+    }
+
+    /** The number of output frames */
+    int outputWindow() {
+        return outputWindow;
+    }
+
+    @Override
+    void initialize(Supplier<Double> initializer, Optimizer optimizer) {
+        if (optimizer == Optimizer.SGD_MOMENTUM || optimizer == Optimizer.ADAM) {
+            this.weightsVelocity = new double[weights.length];
+            this.kernelBiasVelocity = new double[numKernels];
+        }
+        if (optimizer == Optimizer.RMS_PROP || optimizer == Optimizer.ADAM) {
+            this.weightsVelocitySquared = new double[weights.length];
+            this.kernelBiasVelocitySquared = new double[numKernels];
+        }
+        for (int i = 0; i < numKernels; i++)
+            kernelBias[i] = initializer.get();
+        for (int i = 0; i < weights.length; i++)
+            weights[i] = initializer.get();
+    }
+
+    @Override
+    double[] calculateWeightedOutput(double[] input) {
+        if (input.length != window * inputChannels)
+            throw new IllegalArgumentException("input length must equal window * inputChannels");
+        double[] output = new double[nodes];
+        calculateWeightedOutput(input, 1, output);
+        return output;
+    }
+
+    @Override
+    void calculateWeightedOutput(double[] batch, int batchSize, double[] output) {
+        int inputVolume = window * inputChannels;
+        if (batch.length != batchSize * inputVolume)
+            throw new IllegalArgumentException("input length must equal window * inputChannels");
+        Linalg.parallelFor(batchSize * outputWindow, (long) batchSize * nodes * kernelSize * inputChannels, task -> {
+            int b = task / outputWindow, frame = task % outputWindow;
+            outputFrame(batch, b * inputVolume + frame * inputChannels, output, b * nodes + frame * numKernels);
+        });
+    }
+
+    /**
+     * Writes the {@code numKernels} outputs over the {@code kernelSize} consecutive input frames starting at
+     * {@code input[inputOffset]} into {@code output}, starting at {@code outputOffset}
+     */
+    void outputFrame(double[] input, int inputOffset, double[] output, int outputOffset) {
+        int span = kernelSize * inputChannels;
+        for (int kernel = 0; kernel < numKernels; kernel++) {
+            double sum = kernelBias[kernel];
+            for (int i = 0, w = kernel * span, in = inputOffset; i < span; i++, w++, in++)
+                sum += weights[w] * input[in];
+            output[outputOffset + kernel] = sum;
+        }
+    }
+
+    @Override
+    double[] updateGradient(double[] dz_dC, double[] x) {
+        if (x.length != window * inputChannels)
+            throw new IllegalArgumentException("input length must equal window * inputChannels");
+        double[] da_dC = new double[x.length];
+        updateGradient(dz_dC, x, 1, da_dC);
+        return da_dC;
+    }
+
+    /**
+     * Every kernel owns its weight and bias gradients, and every input frame owns its da_dC, summing the output
+     * frames of every kernel over it
+     */
+    @Override
+    void updateGradient(double[] dz_dC, double[] x, int batchSize, double[] da_dC) {
+        int inputVolume = window * inputChannels, span = kernelSize * inputChannels;
+        if (x.length != batchSize * inputVolume)
+            throw new IllegalArgumentException("input length must equal window * inputChannels");
+        if (!Linalg.isFinite(dz_dC, 0, batchSize * nodes))
+            throw new IllegalStateException("dz_dC contains non-finite values");
+        long work = (long) batchSize * nodes * span;
+
+        Linalg.parallelFor(numKernels, work, kernel -> {
+            double biasSum = 0;
+            for (int b = 0; b < batchSize; b++)
+                for (int frame = 0; frame < outputWindow; frame++) {
+                    double gradient = dz_dC[b * nodes + frame * numKernels + kernel];
+                    biasSum += gradient;
+                    for (int i = 0, w = kernel * span, in = b * inputVolume + frame * inputChannels; i < span; i++, w++, in++)
+                        weightsGradient[w] += gradient * x[in];
+                }
+            kernelBiasGradient[kernel] += biasSum;
+        });
+
+        Linalg.parallelFor(batchSize * window, work, task -> {
+            int b = task / window, frame = task % window, out = b * inputVolume + frame * inputChannels;
+            Arrays.fill(da_dC, out, out + inputChannels, 0);
+            //output frame (frame - tap) sees this input frame through tap `tap` of every kernel
+            for (int tap = Math.max(0, frame - outputWindow + 1); tap < kernelSize && tap <= frame; tap++)
+                for (int kernel = 0, node = b * nodes + (frame - tap) * numKernels; kernel < numKernels; kernel++, node++) {
+                    double gradient = dz_dC[node];
+                    for (int c = 0, w = (kernel * kernelSize + tap) * inputChannels; c < inputChannels; c++, w++)
+                        da_dC[out + c] += gradient * weights[w];
+                }
+        });
+    }
+
+    //the per-neuron biases of Layer stay 0, so neither hook calls super to step them
+    @Override
+    boolean acceptsGradient(Optimizer optimizer, double adjustedLearningRate, double momentum, double beta, double epsilon) {
+        return optimizer.accepts(weights, weightsGradient, weightsVelocity, weightsVelocitySquared, adjustedLearningRate, momentum, beta, epsilon, t)
+                && optimizer.accepts(kernelBias, kernelBiasGradient, kernelBiasVelocity, kernelBiasVelocitySquared, adjustedLearningRate, momentum, beta, epsilon, t);
+    }
+
+    @Override
+    void applyAcceptedGradient(Optimizer optimizer, double adjustedLearningRate, double momentum, double beta, double epsilon) {
+        optimizer.apply(weights, weightsGradient, weightsVelocity, weightsVelocitySquared, adjustedLearningRate, momentum, beta, epsilon, t);
+        optimizer.apply(kernelBias, kernelBiasGradient, kernelBiasVelocity, kernelBiasVelocitySquared, adjustedLearningRate, momentum, beta, epsilon, t);
+    }
+
+    @Override
+    Layer gradientShard() {
+        return new TemporalConvLayer(this);
+    }
+
+    @Override
+    void addGradient(Layer shard) {
+        TemporalConvLayer other = (TemporalConvLayer) shard;
+        Linalg.addInPlace(weightsGradient, other.weightsGradient);
+        Linalg.addInPlace(kernelBiasGradient, other.kernelBiasGradient);
+    }
+
+    @Override
+    void clearGradient() {
+        Arrays.fill(weightsGradient, 0);
+        Arrays.fill(kernelBiasGradient, 0);
+    }
+
+    @Override
+    int getNumParameters() {
+        return weights.length + numKernels;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int kernel = 0; kernel < numKernels; kernel++) {
+            sb.append("Kernel ").append(kernel).append(":\n");
+            Layer.ArraysDeepToString(weights, kernel * kernelSize * inputChannels, kernelSize, inputChannels, sb);
+            sb.append('\n');
+        }
+        sb.append("Biases: \n").append(Arrays.toString(kernelBias));
+        return sb.toString();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof TemporalConvLayer o) || !super.equals(obj)) return false;
+        return inputChannels == o.inputChannels && window == o.window && kernelSize == o.kernelSize &&
+                numKernels == o.numKernels && Arrays.equals(weights, o.weights) && Arrays.equals(kernelBias, o.kernelBias) &&
+                Arrays.equals(weightsVelocity, o.weightsVelocity) && Arrays.equals(kernelBiasVelocity, o.kernelBiasVelocity) &&
+                Arrays.equals(weightsVelocitySquared, o.weightsVelocitySquared) &&
+                Arrays.equals(kernelBiasVelocitySquared, o.kernelBiasVelocitySquared) &&
+                Arrays.equals(weightsGradient, o.weightsGradient) && Arrays.equals(kernelBiasGradient, o.kernelBiasGradient);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(nodes, inputChannels, window, kernelSize, numKernels,
+                Arrays.hashCode(weights), Arrays.hashCode(kernelBias));
+    }
+
+    //noinspection CloneDoesNotCallSuperClone,CloneDoesNotThrowCloneNotSupportedException
+    @Override
+    @SuppressWarnings("MethodDoesNotCallSuperMethod")
+    public Object clone() {
+        TemporalConvLayer newLayer = new TemporalConvLayer(inputChannels, window, kernelSize, numKernels);
+        if (!Objects.isNull(weightsVelocity)) {
+            newLayer.weightsVelocity = weightsVelocity.clone();
+            newLayer.kernelBiasVelocity = kernelBiasVelocity.clone();
+        }
+        if (!Objects.isNull(weightsVelocitySquared)) {
+            newLayer.weightsVelocitySquared = weightsVelocitySquared.clone();
+            newLayer.kernelBiasVelocitySquared = kernelBiasVelocitySquared.clone();
+        }
+        System.arraycopy(weights, 0, newLayer.weights, 0, weights.length);
+        System.arraycopy(kernelBias, 0, newLayer.kernelBias, 0, numKernels);
+        System.arraycopy(weightsGradient, 0, newLayer.weightsGradient, 0, weights.length);
+        System.arraycopy(kernelBiasGradient, 0, newLayer.kernelBiasGradient, 0, numKernels);
+        return newLayer;
+    }
+}
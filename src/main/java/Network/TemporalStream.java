@@ -0,0 +1,119 @@
+package Network;
+
+import java.util.Arrays;
+
+/**
+ * A stateful inference session that feeds a network one frame at a time, for models sliding over sensor streams.
+ * <br><br>The network must start with one or more {@link TemporalConvLayer}s, each reading the frames the one before
+ * it produces. Every push shifts the network's input window by one frame. Rather than convolving the whole window
+ * again, every temporal layer keeps a ring buffer of its last {@code kernelSize} input frames and computes only its
+ * newest output frame, so a push costs {@code O(kernelSize * inputChannels * numKernels)} per temporal layer,
+ * independent of the window. The layers after the temporal ones (if any) then run on the last temporal layer's
+ * output window as usual.
+ * <br><br>Once {@code window} frames have been pushed, every push returns exactly what
+ * {@link NN#calculateOutput} returns for the last {@code window} frames.
+ * <p>
+ * Class Invariants:
+ * <ul>
+ *   <li>{@code frames[i]} holds temporal layer {@code i}'s last {@code capacity[i]} input frames twice over, so the
+ *       frames in time order are always one contiguous run: {@code frames[i][head[i] * width ... ]}. Layer
+ *       {@code i + 1}'s input is layer {@code i}'s activated output, and the buffer after the last temporal layer
+ *       holds its whole weighted output window, which the network activates and finishes like any other.</li>
+ *   <li>{@code count[i]} is the number of frames pushed into buffer {@code i}, which is full once it reaches
+ *       {@code capacity[i]}.</li>
+ *   <li>A stream is not thread-safe, and sees the network's current parameters: frames already in its buffers keep
+ *       the values computed with the parameters at the time they were pushed.</li>
+ * </ul>
+ */
+public final class TemporalStream {
+
+    private final NN network;
+    private final TemporalConvLayer[] layers;
+    private final Activation hiddenAF;
+
+    private final double[][] frames;
+    private final int[] capacity, width, head;
+    private final long[] count;
+
+    /** The newest output frame of one temporal layer */
+    private double[] newest;
+
+    TemporalStream(NN network, TemporalConvLayer[] layers, Activation hiddenAF) {
+        if (layers.length == 0)
+            throw new IllegalArgumentException("network must start with a TemporalConvLayer");
+        if (hiddenAF == Activation.softmax && layers.length > 1)
+            throw new IllegalArgumentException("streams need an element-wise hidden activation function");
+        for (int i = 1; i < layers.length; i++)
+            if (layers[i].inputChannels() != layers[i - 1].numKernels())
+                throw new IllegalArgumentException("temporal layer " + i + " must read the frames of the layer before it");
+        this.network = network;
+        this.layers = layers;
+        this.hiddenAF = hiddenAF;
+        this.frames = new double[layers.length + 1][];
+        this.capacity = new int[layers.length + 1];
+        this.width = new int[layers.length + 1];
+        this.head = new int[layers.length + 1];
+        this.count = new long[layers.length + 1];
+        for (int i = 0; i <= layers.length; i++) {
+            TemporalConvLayer last = layers[Math.min(i, layers.length - 1)];
+            capacity[i] = i < layers.length ? layers[i].kernelSize() : last.outputWindow();
+            width[i] = i < layers.length ? layers[i].inputChannels() : last.numKernels();
+            frames[i] = new double[2 * capacity[i] * width[i]];
+        }
+    }
+
+    /** The number of values in every pushed frame */
+    public int frameLength() {
+        return width[0];
+    }
+
+    /** Whether enough frames have been pushed to fill the network's input window */
+    public boolean isReady() {
+        return count[layers.length] >= capacity[layers.length];
+    }
+
+    /**
+     * Shifts the network's input window by {@code frame}, computing only the newest frame of every temporal layer.
+     * @return the network's output for the last {@code window} frames, or null until {@code window} frames have been
+     * pushed
+     * @throws IllegalArgumentException if {@code frame.length != frameLength()}
+     */
+    public double[] push(double[] frame) {
+        if (frame.length != width[0])
+            throw new IllegalArgumentException("frame length must equal frameLength()");
+        append(0, frame);
+        for (int i = 0; i < layers.length; i++) {
+            if (count[i] < capacity[i]) return null;
+            TemporalConvLayer layer = layers[i];
+            if (newest == null || newest.length < layer.numKernels()) newest = new double[layer.numKernels()];
+            layer.outputFrame(frames[i], head[i] * width[i], newest, 0);
+            if (i < layers.length - 1) hiddenAF.calculate(newest, newest, 0, layer.numKernels());
+            append(i + 1, newest);
+        }
+        if (!isReady()) return null;
+
+        int last = layers.length;
+        return network.calculateOutput(frames[last], head[last] * width[last], capacity[last] * width[last], layers.length);
+    }
+
+    /** Forgets every pushed frame, as if the stream had just been created */
+    public void reset() {
+        Arrays.fill(count, 0);
+        Arrays.fill(head, 0);
+    }
+
+    /** Appends the first {@code width[i]} values of {@code frame} to buffer {@code i}, dropping its oldest frame when full */
+    private void append(int i, double[] frame) {
+        int w = width[i], slots = capacity[i];
+        int slot;
+        if (count[i] < slots) slot = (int) count[i];
+        else {
+            slot = head[i];
+            head[i] = (head[i] + 1) % slots;
+        }
+        //every frame is stored at slot and slot + capacity, so the window starting at head never wraps around
+        System.arraycopy(frame, 0, frames[i], slot * w, w);
+        System.arraycopy(frame, 0, frames[i], (slot + slots) * w, w);
+        count[i]++;
+    }
+}
@@ -0,0 +1,27 @@
+package Network;
+
+/**
+ * Enum representing the order in which the neurons of a 3D {@code width x height x channels} volume are stored in
+ * a flat array, for the inputs and outputs of {@link ConvolutionalLayer}.
+ * <ul>
+ *     <li><strong>CHANNEL_FIRST</strong>: Every channel is one contiguous {@code width x height} plane (NCHW).</li>
+ *     <li><strong>CHANNEL_LAST</strong>: Every position holds its channels next to each other (NHWC).</li>
+ * </ul>
+ */
+public enum TensorLayout {
+    /**
+     * Channel-first (planar) layout: neuron {@code (x, y)} of channel {@code c} lives at
+     * {@code x + y * width + c * width * height}.
+     */
+    CHANNEL_FIRST,
+
+    /**
+     * Channel-last (interleaved) layout: neuron {@code (x, y)} of channel {@code c} lives at
+     * {@code c + (x + y * width) * channels}.
+     * <p>
+     * The channels under a kernel position are one contiguous run, so the channel sums of a convolution read memory
+     * sequentially. This is also the order most cameras and image decoders produce pixels in, so frames need no
+     * reordering before they are fed to the network.
+     */
+    CHANNEL_LAST
+}
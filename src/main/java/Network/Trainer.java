@@ -0,0 +1,173 @@
+package Network;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Trains a Neural Network on a whole {@link Dataset} one epoch at a time, calling {@link NN#learn} on consecutive
+ * batches of {@code batchSize} test cases (the last batch of an epoch may be smaller).
+ * <br><br>Every epoch visits the test cases in a fresh random order by shuffling a permutation of their indices,
+ * never the samples themselves, so an {@link ArrayDataset} is trained on without copying a single row. While
+ * {@link NN#learn} trains on one batch, a background thread already assembles the next one, so reading or decoding
+ * samples overlaps with backpropagation instead of stalling it.
+ * <p>
+ * Class Invariants:
+ * <ul>
+ *   <li>The batch being trained on and the batch being assembled always live in different {@link #slots}. A slot is
+ *       only refilled once the batch in it has finished training.</li>
+ *   <li>A Trainer is not thread-safe. Its dataset is read on the prefetch thread, one sample at a time.</li>
+ * </ul>
+ */
+public class Trainer {
+
+    /**
+     * The shared daemon threads that assemble upcoming batches for every Trainer
+     */
+    private static final ExecutorService PREFETCH_EXECUTOR =
+            Executors.newCachedThreadPool(Thread.ofPlatform().name("Trainer-Prefetch-", 0).daemon().factory());
+
+    private final NN network;
+    private final int batchSize;
+    private final double learningRate, momentum, beta, epsilon;
+
+    /**
+     * The two batches that take turns being assembled and trained on
+     */
+    private final Batch[] slots;
+
+    /**
+     * The order of the current epoch's test cases, reused across epochs over datasets of the same size
+     */
+    private int[] order = new int[0];
+
+    private Random random = new Random();
+    private boolean shuffle = true;
+
+    /**
+     * Creates a Trainer that calls {@link NN#learn} on {@code network} with the given hyper-parameters for every batch.
+     * @throws IllegalArgumentException if {@code batchSize} is not positive
+     */
+    public Trainer(NN network, int batchSize, double learningRate, double momentum, double beta, double epsilon) {
+        if (batchSize <= 0)
+            throw new IllegalArgumentException("batchSize must be positive");
+        this.network = network;
+        this.batchSize = batchSize;
+        this.learningRate = learningRate;
+        this.momentum = momentum;
+        this.beta = beta;
+        this.epsilon = epsilon;
+        this.slots = new Batch[]{new Batch(batchSize, network.inputNum(), network.outputNum()),
+                new Batch(batchSize, network.inputNum(), network.outputNum())};
+    }
+
+    /** Sets the source of randomness used to shuffle every epoch, e.g. a seeded {@link Random} for reproducible runs */
+    public Trainer setRandom(Random random) {
+        this.random = random;
+        return this;
+    }
+
+    /** Sets whether every epoch shuffles the test cases (the default), or visits them in dataset order */
+    public Trainer setShuffle(boolean shuffle) {
+        this.shuffle = shuffle;
+        return this;
+    }
+
+    /** Runs {@code epochs} epochs over {@code dataset}, see {@link #epoch} */
+    public void train(Dataset dataset, int epochs) {
+        for (int i = 0; i < epochs; i++) epoch(dataset);
+    }
+
+    /**
+     * Trains the network once on every test case of {@code dataset}, in batches of {@code batchSize}.
+     * @throws IllegalArgumentException if {@code dataset} is empty or doesn't match the network's dimensions
+     */
+    public void epoch(Dataset dataset) {
+        if (dataset.inputNum() != network.inputNum() || dataset.outputNum() != network.outputNum())
+            throw new IllegalArgumentException("dataset must match network dimensions");
+        int size = dataset.size();
+        if (size == 0)
+            throw new IllegalArgumentException("dataset must not be empty");
+        shuffle(size);
+
+        int batches = Math.ceilDiv(size, batchSize);
+        Future<?> next = PREFETCH_EXECUTOR.submit(() -> assemble(dataset, 0, slots[0]));
+        try {
+            for (int b = 0; b < batches; b++) {
+                Future<?> current = next;
+                next = null;
+                NN.awaitWorker(current);
+                if (b + 1 < batches) {
+                    int upcoming = b + 1;
+                    next = PREFETCH_EXECUTOR.submit(() -> assemble(dataset, upcoming, slots[upcoming % 2]));
+                }
+
+                Batch batch = slots[b % 2];
+                int length = Math.min(batchSize, size - b * batchSize);
+                if (length == batchSize) NN.learn(network, learningRate, momentum, beta, epsilon, batch.inputs, batch.outputs);
+                else NN.learn(network, learningRate, momentum, beta, epsilon,
+                        Arrays.copyOf(batch.inputs, length), Arrays.copyOf(batch.outputs, length));
+            }
+        } finally {
+            //never leave the prefetch thread writing into a slot the next epoch will reuse
+            if (next != null) awaitQuietly(next);
+        }
+    }
+
+    /** Refills {@link #order} with the indices of {@code size} test cases, shuffled unless shuffling is disabled */
+    private void shuffle(int size) {
+        if (order.length != size) {
+            order = new int[size];
+            for (int i = 0; i < size; i++) order[i] = i;
+        }
+        if (!shuffle) {
+            for (int i = 0; i < size; i++) order[i] = i;
+            return;
+        }
+        //Fisher-Yates
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1), swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+    }
+
+    /** Points {@code batch} at the test cases of batch number {@code index} of the current epoch */
+    private void assemble(Dataset dataset, int index, Batch batch) {
+        int start = index * batchSize, end = Math.min(start + batchSize, order.length);
+        for (int i = start; i < end; i++) {
+            int row = i - start;
+            batch.inputs[row] = dataset.input(order[i], batch.inputBuffers[row]);
+            batch.outputs[row] = dataset.output(order[i], batch.outputBuffers[row]);
+        }
+    }
+
+    /** Blocks until {@code future} finishes, ignoring its outcome */
+    private static void awaitQuietly(Future<?> future) {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ignored) {
+        }
+    }
+
+    /**
+     * One batch of test cases: {@code inputs} and {@code outputs} point either at a dataset's own rows or at the
+     * slot's buffers, which datasets that decode their samples write into.
+     */
+    private static final class Batch {
+        final double[][] inputs, outputs;
+        final double[][] inputBuffers, outputBuffers;
+
+        Batch(int batchSize, int inputNum, int outputNum) {
+            this.inputs = new double[batchSize][];
+            this.outputs = new double[batchSize][];
+            this.inputBuffers = new double[batchSize][inputNum];
+            this.outputBuffers = new double[batchSize][outputNum];
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package Network;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD implementations of the element-wise {@link Linalg} primitives, written against the JDK Vector API.
+ * <p>
+ * Every loop walks its arrays one full vector ({@link #SPECIES} lanes, 4 doubles on AVX2 and 8 on AVX-512) at a time,
+ * then finishes the remaining elements with a single masked vector operation instead of a scalar tail loop.
+ * <p>
+ * This class is only loaded when the {@code jdk.incubator.vector} module is present (see {@link Linalg#VECTORIZED});
+ * callers are expected to have validated array lengths already. Each method works on the index range
+ * {@code [from, to)}, so callers may split large arrays between threads.
+ */
+final class VectorLinalg {
+
+    /** The widest double vector shape the running CPU supports natively */
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    private VectorLinalg() {
+    }
+
+    static double dotProduct(double[] first, double[] second, int from, int to) {
+        DoubleVector sum = DoubleVector.zero(SPECIES);
+        int i = from, bound = from + SPECIES.loopBound(to - from);
+        for (; i < bound; i += SPECIES.length())
+            sum = DoubleVector.fromArray(SPECIES, first, i).fma(DoubleVector.fromArray(SPECIES, second, i), sum);
+        if (i < to) {
+            VectorMask<Double> tail = SPECIES.indexInRange(i, to);
+            sum = DoubleVector.fromArray(SPECIES, first, i, tail).fma(DoubleVector.fromArray(SPECIES, second, i, tail), sum);
+        }
+        return sum.reduceLanes(VectorOperators.ADD);
+    }
+
+    static void multiply(double[] first, double[] second, double[] output, int from, int to) {
+        int i = from, bound = from + SPECIES.loopBound(to - from);
+        for (; i < bound; i += SPECIES.length())
+            DoubleVector.fromArray(SPECIES, first, i).mul(DoubleVector.fromArray(SPECIES, second, i)).intoArray(output, i);
+        if (i < to) {
+            VectorMask<Double> tail = SPECIES.indexInRange(i, to);
+            DoubleVector.fromArray(SPECIES, first, i, tail).mul(DoubleVector.fromArray(SPECIES, second, i, tail)).intoArray(output, i, tail);
+        }
+    }
+
+    static void add(double[] first, double[] second, double[] output, int from, int to) {
+        int i = from, bound = from + SPECIES.loopBound(to - from);
+        for (; i < bound; i += SPECIES.length())
+            DoubleVector.fromArray(SPECIES, first, i).add(DoubleVector.fromArray(SPECIES, second, i)).intoArray(output, i);
+        if (i < to) {
+            VectorMask<Double> tail = SPECIES.indexInRange(i, to);
+            DoubleVector.fromArray(SPECIES, first, i, tail).add(DoubleVector.fromArray(SPECIES, second, i, tail)).intoArray(output, i, tail);
+        }
+    }
+
+    static void scale(double constant, double[] array, double[] output, int from, int to) {
+        int i = from, bound = from + SPECIES.loopBound(to - from);
+        for (; i < bound; i += SPECIES.length())
+            DoubleVector.fromArray(SPECIES, array, i).mul(constant).intoArray(output, i);
+        if (i < to) {
+            VectorMask<Double> tail = SPECIES.indexInRange(i, to);
+            DoubleVector.fromArray(SPECIES, array, i, tail).mul(constant).intoArray(output, i, tail);
+        }
+    }
+
+    static void axpy(double alpha, double[] x, double[] y, int from, int to) {
+        DoubleVector scale = DoubleVector.broadcast(SPECIES, alpha);
+        int i = from, bound = from + SPECIES.loopBound(to - from);
+        for (; i < bound; i += SPECIES.length())
+            DoubleVector.fromArray(SPECIES, x, i).fma(scale, DoubleVector.fromArray(SPECIES, y, i)).intoArray(y, i);
+        if (i < to) {
+            VectorMask<Double> tail = SPECIES.indexInRange(i, to);
+            DoubleVector.fromArray(SPECIES, x, i, tail).fma(scale, DoubleVector.fromArray(SPECIES, y, i, tail)).intoArray(y, i, tail);
+        }
+    }
+
+    static double sum(double[] array, int from, int to) {
+        DoubleVector sum = DoubleVector.zero(SPECIES);
+        int i = from, bound = from + SPECIES.loopBound(to - from);
+        for (; i < bound; i += SPECIES.length())
+            sum = sum.add(DoubleVector.fromArray(SPECIES, array, i));
+        if (i < to)
+            sum = sum.add(DoubleVector.fromArray(SPECIES, array, i, SPECIES.indexInRange(i, to)));
+        return sum.reduceLanes(VectorOperators.ADD);
+    }
+}
@@ -0,0 +1,134 @@
+package Network;
+
+/**
+ * The transforms of the Winograd minimal filtering algorithm F(2x2, 3x3), used by
+ * {@link ConvolutionAlgorithm#WINOGRAD}. The 2x2 outputs of a 3x3 kernel {@code g} over a 4x4 input tile {@code d}
+ * are {@code Y = A^T [(G g G^T) ⊙ (B^T d B)] A}, where
+ * <pre>
+ * B^T = | 1  0 -1  0 |     G = | 1     0    0   |     A^T = | 1  1  1  0 |
+ *       | 0  1  1  0 |         | 1/2  1/2  1/2  |           | 0  1 -1 -1 |
+ *       | 0 -1  1  0 |         | 1/2 -1/2  1/2  |
+ *       | 0  1  0 -1 |         | 0     0    1   |
+ * </pre>
+ * The transforms only add, subtract and halve, so a tile costs 16 multiplications instead of the 36 of a direct
+ * convolution. The backward pass runs the transposed transforms: {@code dM = A dY A^T}, then
+ * {@code dg = G^T (dM ⊙ (B^T d B)) G} and {@code dd = B (dM ⊙ (G g G^T)) B^T}.
+ * <p>
+ * Every matrix is row-major in a flat array starting at the given offset, so element {@code (u, v)} of a 4x4 tile
+ * lives at {@code offset + u * 4 + v}, and weight {@code (x, y)} of a 3x3 kernel at {@code offset + x * 3 + y}.
+ */
+final class Winograd {
+
+    /** The number of values in one transformed tile */
+    static final int TILE = 16;
+
+    private Winograd() {
+    }
+
+    /** {@code out = G g G^T}, transforming the 3x3 kernel {@code g} into a 4x4 tile */
+    static void filter(double[] g, int gOffset, double[] out, int outOffset) {
+        for (int v = 0; v < 3; v++) {
+            double g0 = g[gOffset + v], g1 = g[gOffset + 3 + v], g2 = g[gOffset + 6 + v];
+            out[outOffset + v] = g0;
+            out[outOffset + 4 + v] = (g0 + g1 + g2) * 0.5;
+            out[outOffset + 8 + v] = (g0 - g1 + g2) * 0.5;
+            out[outOffset + 12 + v] = g2;
+        }
+        for (int u = outOffset; u < outOffset + TILE; u += 4) {
+            double g0 = out[u], g1 = out[u + 1], g2 = out[u + 2];
+            out[u + 1] = (g0 + g1 + g2) * 0.5;
+            out[u + 2] = (g0 - g1 + g2) * 0.5;
+            out[u + 3] = g2;
+        }
+    }
+
+    /** {@code out = B^T d B}, transforming the 4x4 input tile {@code d} */
+    static void input(double[] d, int dOffset, double[] out, int outOffset) {
+        for (int v = 0; v < 4; v++) {
+            double d0 = d[dOffset + v], d1 = d[dOffset + 4 + v], d2 = d[dOffset + 8 + v], d3 = d[dOffset + 12 + v];
+            out[outOffset + v] = d0 - d2;
+            out[outOffset + 4 + v] = d1 + d2;
+            out[outOffset + 8 + v] = d2 - d1;
+            out[outOffset + 12 + v] = d1 - d3;
+        }
+        for (int u = outOffset; u < outOffset + TILE; u += 4) {
+            double d0 = out[u], d1 = out[u + 1], d2 = out[u + 2], d3 = out[u + 3];
+            out[u] = d0 - d2;
+            out[u + 1] = d1 + d2;
+            out[u + 2] = d2 - d1;
+            out[u + 3] = d1 - d3;
+        }
+    }
+
+    /**
+     * {@code y = A^T m A}, transforming the 4x4 product tile {@code m} into the 2x2 output tile
+     * {@code y}, which must hold at least 8 values
+     */
+    static void output(double[] m, int mOffset, double[] y) {
+        for (int v = 0; v < 4; v++) {
+            double m0 = m[mOffset + v], m1 = m[mOffset + 4 + v], m2 = m[mOffset + 8 + v], m3 = m[mOffset + 12 + v];
+            y[v] = m0 + m1 + m2;
+            y[4 + v] = m1 - m2 - m3;
+        }
+        //y doubles as the 2x4 intermediate A^T m before its rows shrink to 2 columns
+        for (int u = 0; u < 2; u++) {
+            double m0 = y[4 * u], m1 = y[4 * u + 1], m2 = y[4 * u + 2], m3 = y[4 * u + 3];
+            y[2 * u] = m0 + m1 + m2;
+            y[2 * u + 1] = m1 - m2 - m3;
+        }
+    }
+
+    /** {@code out = A dY A^T}, transforming the 2x2 output gradient {@code dy} into a 4x4 tile */
+    static void outputGradient(double[] dy, double[] out, int outOffset) {
+        for (int u = 0; u < 2; u++) {
+            double y0 = dy[2 * u], y1 = dy[2 * u + 1];
+            out[outOffset + 4 * u] = y0;
+            out[outOffset + 4 * u + 1] = y0 + y1;
+            out[outOffset + 4 * u + 2] = y0 - y1;
+            out[outOffset + 4 * u + 3] = -y1;
+        }
+        for (int v = outOffset; v < outOffset + 4; v++) {
+            double y0 = out[v], y1 = out[v + 4];
+            out[v + 4] = y0 + y1;
+            out[v + 8] = y0 - y1;
+            out[v + 12] = -y1;
+        }
+    }
+
+    /**
+     * {@code out += G^T w G}, transforming the 4x4 kernel-domain gradient {@code w} back into a 3x3 kernel gradient.
+     * Overwrites {@code w}.
+     */
+    static void filterGradient(double[] w, int wOffset, double[] out, int outOffset) {
+        for (int v = wOffset; v < wOffset + 4; v++) {
+            double w0 = w[v], w1 = w[v + 4], w2 = w[v + 8], w3 = w[v + 12];
+            w[v] = w0 + (w1 + w2) * 0.5;
+            w[v + 4] = (w1 - w2) * 0.5;
+            w[v + 8] = (w1 + w2) * 0.5 + w3;
+        }
+        for (int x = 0; x < 3; x++) {
+            int row = wOffset + 4 * x;
+            double w0 = w[row], w1 = w[row + 1], w2 = w[row + 2], w3 = w[row + 3];
+            out[outOffset + 3 * x] += w0 + (w1 + w2) * 0.5;
+            out[outOffset + 3 * x + 1] += (w1 - w2) * 0.5;
+            out[outOffset + 3 * x + 2] += (w1 + w2) * 0.5 + w3;
+        }
+    }
+
+    /** {@code out = B e B^T}, transforming the 4x4 input-domain gradient {@code e} back into an input tile gradient */
+    static void inputGradient(double[] e, int eOffset, double[] out, int outOffset) {
+        for (int v = 0; v < 4; v++) {
+            double e0 = e[eOffset + v], e1 = e[eOffset + 4 + v], e2 = e[eOffset + 8 + v], e3 = e[eOffset + 12 + v];
+            out[outOffset + v] = e0;
+            out[outOffset + 4 + v] = e1 - e2 + e3;
+            out[outOffset + 8 + v] = e1 + e2 - e0;
+            out[outOffset + 12 + v] = -e3;
+        }
+        for (int u = outOffset; u < outOffset + TILE; u += 4) {
+            double e0 = out[u], e1 = out[u + 1], e2 = out[u + 2], e3 = out[u + 3];
+            out[u + 1] = e1 - e2 + e3;
+            out[u + 2] = e1 + e2 - e0;
+            out[u + 3] = -e3;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package Network;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * A per-worker variable holding the scratch buffers of {@link Linalg} and the layer kernels, used like a
+ * {@link ThreadLocal}.
+ * <br>Every platform thread keeps its own values, exactly like a ThreadLocal. A virtual thread only lives for a single
+ * task, so its values would be allocated again by every task. A Neural Network training on virtual threads therefore
+ * runs every worker's task {@link #withValues with} a set of {@link Values} it keeps per worker, which carries the
+ * buffers from one training step to the next.
+ * <p>
+ * Class Invariants:
+ * <ul>
+ *   <li>Every WorkerLocal owns slot {@code index} of every {@link Values}, which is {@code null} until
+ *       {@link #get} first runs with those values.</li>
+ *   <li>A set of values is used by one thread at a time.</li>
+ * </ul>
+ */
+final class WorkerLocal<T> {
+
+    /** The number of WorkerLocals created so far, and so the number of slots of every {@link Values} */
+    private static final AtomicInteger COUNT = new AtomicInteger();
+
+    /** The values of the current thread, {@code null} until the thread first needs them */
+    private static final ThreadLocal<Values> CURRENT = new ThreadLocal<>();
+
+    private final int index = COUNT.getAndIncrement();
+
+    private final Supplier<? extends T> initial;
+
+    private WorkerLocal(Supplier<? extends T> initial) {
+        this.initial = initial;
+    }
+
+    /** Creates a WorkerLocal whose value is first created by {@code initial}, like {@link ThreadLocal#withInitial} */
+    static <T> WorkerLocal<T> withInitial(Supplier<? extends T> initial) {
+        return new WorkerLocal<>(initial);
+    }
+
+    /** Returns this variable's value in the current worker's values, creating it the first time */
+    @SuppressWarnings("unchecked")
+    T get() {
+        Values values = CURRENT.get();
+        if (values == null) CURRENT.set(values = new Values());
+        if (values.slots.length <= index) values.slots = Arrays.copyOf(values.slots, COUNT.get());
+        Object value = values.slots[index];
+        if (value == null) values.slots[index] = value = initial.get();
+        return (T) value;
+    }
+
+    /**
+     * Runs {@code task} with {@code values} as the current thread's values of every WorkerLocal if the current
+     * thread is virtual. Platform threads keep their own values and simply run {@code task}, as does a null
+     * {@code values}.
+     */
+    static void withValues(Values values, Runnable task) {
+        if (values == null || !Thread.currentThread().isVirtual()) {
+            task.run();
+            return;
+        }
+        Values previous = CURRENT.get();
+        CURRENT.set(values);
+        try {
+            task.run();
+        } finally {
+            if (previous == null) CURRENT.remove();
+            else CURRENT.set(previous);
+        }
+    }
+
+    /** One value of every WorkerLocal, used by one thread at a time */
+    static final class Values {
+        private Object[] slots = new Object[0];
+    }
+}
@@ -0,0 +1,58 @@
+package Network;
+
+/**
+ * The preallocated buffers one training worker needs to backpropagate a fixed number of test cases through a
+ * Neural Network's layers, so that steady-state training doesn't allocate activation or delta arrays.
+ * <p>
+ * Every buffer is a row-major matrix with one row per test case. Writing {@code width(0)} for the network's input
+ * size and {@code width(i + 1)} for {@link Layer#outputLength()} of layer {@code i}:
+ * <ul>
+ *   <li>{@code xs[i]} is the input of layer {@code i}, {@code [batchSize][width(i)]}.</li>
+ *   <li>{@code zs[i]} is the weighted output of layer {@code i} before its activation function,
+ *       {@code [batchSize][width(i + 1)]}.</li>
+ *   <li>{@code deltas[i]} is the gradient of the cost with respect to {@code xs[i]}, later overwritten in place
+ *       by the gradient with respect to {@code zs[i - 1]}; {@code deltas[layers]} holds dz_dC of the output layer.</li>
+ *   <li>{@code outputRow}, {@code activationRow}, {@code gradientRow} and {@code costRow} are single rows of the
+ *       output layer's width, and {@code inputRow} a single row of the input's, used one test case at a time.</li>
+ * </ul>
+ * A {@link #forwardOnly} workspace, as {@link NN#evaluate} uses, has no {@code deltas}.
+ * A workspace is only ever used by one thread at a time.
+ */
+final class Workspace {
+
+    /** The number of test cases these buffers hold */
+    final int batchSize;
+
+    final double[][] xs, zs, deltas;
+
+    final double[] inputRow, outputRow, activationRow, gradientRow, costRow;
+
+    Workspace(Layer[] layers, int inputNum, int batchSize) {
+        this(layers, inputNum, batchSize, true);
+    }
+
+    private Workspace(Layer[] layers, int inputNum, int batchSize, boolean backward) {
+        this.batchSize = batchSize;
+        this.xs = new double[layers.length][];
+        this.zs = new double[layers.length][];
+        this.deltas = backward ? new double[layers.length + 1][] : null;
+        int width = inputNum;
+        for (int i = 0; i < layers.length; i++) {
+            xs[i] = new double[batchSize * width];
+            if (backward) deltas[i] = new double[batchSize * width];
+            width = layers[i].outputLength();
+            zs[i] = new double[batchSize * width];
+        }
+        if (backward) deltas[layers.length] = new double[batchSize * width];
+        this.inputRow = new double[inputNum];
+        this.outputRow = new double[width];
+        this.activationRow = new double[width];
+        this.gradientRow = new double[width];
+        this.costRow = new double[width];
+    }
+
+    /** The buffers of forward passes alone, without the {@code deltas} only backpropagation needs */
+    static Workspace forwardOnly(Layer[] layers, int inputNum, int batchSize) {
+        return new Workspace(layers, inputNum, batchSize, false);
+    }
+}
@@ -2,6 +2,7 @@ package Network;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.Arrays;
 import java.util.function.Supplier;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
@@ -387,4 +388,24 @@ class ActivationTest {
         // not the same constant value across calls and finite
         assertTrue(Double.isFinite(a) && Double.isFinite(b));
     }
+
+    @Test
+    void calculateAndDerivative_inPlaceOverRange_matchAllocatingVersions() {
+        double[] z = {0.3, -1.2, 2.5, 0.0, -0.4};
+        double[] gradient = {1, -0.5, 0.25, 2, -1};
+        for (Activation af : Activation.values()) {
+            double[] expectedA = af.calculate(Arrays.copyOfRange(z, 1, 4));
+            double[] expectedDz = af.derivative(Arrays.copyOfRange(z, 1, 4), Arrays.copyOfRange(gradient, 1, 4));
+
+            double[] a = z.clone();
+            af.calculate(a, a, 1, 4);
+            assertArrayEquals(expectedA, Arrays.copyOfRange(a, 1, 4), DELTA, af.name());
+            assertEquals(z[0], a[0], 0.0, "values outside the range are untouched");
+
+            double[] dz = gradient.clone();
+            af.derivative(z, dz, dz, 1, 4);
+            assertArrayEquals(expectedDz, Arrays.copyOfRange(dz, 1, 4), DELTA, af.name());
+            assertEquals(gradient[4], dz[4], 0.0, "values outside the range are untouched");
+        }
+    }
 }
@@ -0,0 +1,41 @@
+package Network;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link ArrayDataset}, which hands out the given rows themselves.
+ */
+class ArrayDatasetTest {
+
+    @Test
+    void rows_areReturnedWithoutCopying() {
+        double[][] inputs = {{1, 2, 3}, {4, 5, 6}}, outputs = {{1}, {0}};
+        ArrayDataset dataset = new ArrayDataset(inputs, outputs);
+        assertEquals(2, dataset.size());
+        assertEquals(3, dataset.inputNum());
+        assertEquals(1, dataset.outputNum());
+        assertSame(inputs[1], dataset.input(1, new double[3]));
+        assertSame(outputs[0], dataset.output(0, new double[1]));
+    }
+
+    @Test
+    void constructor_mismatchedLengths_throws() {
+        assertThrows(IllegalArgumentException.class, () -> new ArrayDataset(new double[2][3], new double[3][1]));
+    }
+
+    @Test
+    void constructor_raggedRows_throws() {
+        assertThrows(IllegalArgumentException.class, () -> new ArrayDataset(new double[][]{{1, 2}, {3}}, new double[2][1]));
+        assertThrows(IllegalArgumentException.class, () -> new ArrayDataset(new double[2][2], new double[][]{{1}, {2, 3}}));
+    }
+
+    @Test
+    void emptyDataset_hasNoDimensions() {
+        ArrayDataset dataset = new ArrayDataset(new double[0][], new double[0][]);
+        assertEquals(0, dataset.size());
+        assertEquals(0, dataset.inputNum());
+    }
+}
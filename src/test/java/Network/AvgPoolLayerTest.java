@@ -0,0 +1,63 @@
+package Network;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link AvgPoolLayer}.
+ */
+class AvgPoolLayerTest {
+
+    private static final double DELTA = 1e-12;
+
+    @Test
+    void calculateWeightedOutput_averagesEveryWindowOfEveryChannel() {
+        double[] input = {
+                1, 2, 3, 4,
+                5, 6, 7, 8,
+                -1, -1, -1, -1,
+                -1, -1, -1, -1,
+        };
+        assertArrayEquals(new double[]{3.5, 5.5, -1, -1}, new AvgPoolLayer(4, 2, 2, 2, 2, 2, 2).calculateWeightedOutput(input), DELTA);
+    }
+
+    @Test
+    void updateGradient_spreadsGradientEvenlyOverOverlappingWindows() {
+        // 3x1 input, 2x1 windows one apart: the middle neuron sits in both
+        AvgPoolLayer layer = new AvgPoolLayer(3, 1, 1, 2, 1, 1, 1);
+        assertArrayEquals(new double[]{0.5, 1.5, 1}, layer.updateGradient(new double[]{1, 2}, new double[3]), DELTA);
+    }
+
+    @Test
+    void updateGradient_wrongInputLength_throws() {
+        assertThrows(IllegalArgumentException.class, () -> new AvgPoolLayer(4, 4, 1, 2, 2, 2, 2).updateGradient(new double[4], new double[3]));
+    }
+
+    @Test
+    void batchedPasses_matchPerSamplePasses() {
+        AvgPoolLayer layer = new AvgPoolLayer(5, 5, 3, 3, 3, 2, 2);
+        Random random = new Random(3);
+        double[][] x = new double[4][layer.inputVolume()], dz_dC = new double[4][layer.outputLength()];
+        for (double[] row : x) for (int i = 0; i < row.length; i++) row[i] = random.nextGaussian();
+        for (double[] row : dz_dC) for (int i = 0; i < row.length; i++) row[i] = random.nextGaussian();
+
+        double[][] output = layer.calculateWeightedOutput(x), da_dC = layer.updateGradient(dz_dC, x);
+        for (int b = 0; b < x.length; b++) {
+            assertArrayEquals(layer.calculateWeightedOutput(x[b]), output[b], DELTA);
+            assertArrayEquals(layer.updateGradient(dz_dC[b], x[b]), da_dC[b], DELTA);
+        }
+    }
+
+    @Test
+    void gradientShard_isStatelessSoSharesTheLayer() {
+        AvgPoolLayer layer = new AvgPoolLayer(4, 4, 1, 2, 2, 2, 2);
+        assertSame(layer, layer.gradientShard());
+        assertEquals(0, layer.getNumParameters());
+        assertEquals(layer, layer.clone());
+    }
+}
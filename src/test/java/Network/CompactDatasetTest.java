@@ -0,0 +1,90 @@
+package Network;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+/**
+ * Unit tests for {@link CompactDataset}: values must survive an encode/decode round trip up to the precision of
+ * the encoding, with inputs normalized while decoding.
+ */
+class CompactDatasetTest {
+
+    @Test
+    void uint8_decodesNormalizedInputsAndRawOutputs() {
+        CompactDataset dataset = new CompactDataset(2, 3, 2, CompactDataset.Encoding.UINT8, 1 / 255.0, 0);
+        dataset.set(1, new double[]{0, 128 / 255.0, 1}, new double[]{0, 1});
+        double[] buffer = new double[3];
+        assertSame(buffer, dataset.input(1, buffer));
+        assertArrayEquals(new double[]{0, 128 / 255.0, 1}, buffer, 1e-15);
+        assertArrayEquals(new double[]{0, 1}, dataset.output(1, new double[2]));
+        assertArrayEquals(new double[3], dataset.input(0, new double[3]));
+    }
+
+    @Test
+    void uint8_shiftCentersInputs() {
+        CompactDataset dataset = new CompactDataset(1, 2, 1, CompactDataset.Encoding.UINT8, 2 / 255.0, -1);
+        dataset.set(0, new double[]{-1, 1}, new double[]{3});
+        assertArrayEquals(new double[]{-1, 1}, dataset.input(0, new double[2]), 1e-15);
+    }
+
+    @Test
+    void uint8_valueOutOfRange_throws() {
+        CompactDataset dataset = new CompactDataset(1, 1, 1, CompactDataset.Encoding.UINT8);
+        assertThrows(IllegalArgumentException.class, () -> dataset.set(0, new double[]{256}, new double[]{0}));
+        assertThrows(IllegalArgumentException.class, () -> dataset.set(0, new double[]{0}, new double[]{-1}));
+        assertThrows(IllegalArgumentException.class, () -> dataset.set(0, new double[]{Double.NaN}, new double[]{0}));
+    }
+
+    @Test
+    void float16_roundTripsToHalfPrecision() {
+        Random random = new Random(1);
+        double[] input = new double[50];
+        for (int i = 0; i < input.length; i++) input[i] = random.nextGaussian() * 10;
+        CompactDataset dataset = new CompactDataset(3, 50, 1, CompactDataset.Encoding.FLOAT16);
+        dataset.set(2, input, new double[]{0.25});
+        double[] decoded = dataset.input(2, new double[50]);
+        for (int i = 0; i < input.length; i++)
+            assertEquals(input[i], decoded[i], Math.abs(input[i]) / 1024, "value " + i);
+        assertArrayEquals(new double[]{0.25}, dataset.output(2, new double[1]));
+    }
+
+    @Test
+    void set_wrongDimensionsOrIndex_throws() {
+        CompactDataset dataset = new CompactDataset(2, 3, 1, CompactDataset.Encoding.FLOAT16);
+        assertThrows(IllegalArgumentException.class, () -> dataset.set(0, new double[2], new double[1]));
+        assertThrows(IndexOutOfBoundsException.class, () -> dataset.set(2, new double[3], new double[1]));
+    }
+
+    @Test
+    void constructor_invalidArguments_throw() {
+        assertThrows(IllegalArgumentException.class, () -> new CompactDataset(-1, 1, 1, CompactDataset.Encoding.UINT8));
+        assertThrows(IllegalArgumentException.class, () -> new CompactDataset(1, 1, 1, CompactDataset.Encoding.UINT8, 0, 0));
+        assertThrows(IllegalArgumentException.class, () -> new CompactDataset(1 << 16, 1 << 16, 1, CompactDataset.Encoding.UINT8));
+    }
+
+    @Test
+    void trainer_learnsFromCompactStorage() {
+        // y = 1 when the first pixel is brighter than the second
+        Random random = new Random(2);
+        CompactDataset dataset = new CompactDataset(64, 2, 1, CompactDataset.Encoding.UINT8, 1 / 255.0, 0);
+        for (int i = 0; i < 64; i++) {
+            int a = random.nextInt(256), b = random.nextInt(256);
+            dataset.set(i, new double[]{a / 255.0, b / 255.0}, new double[]{a > b ? 1 : 0});
+        }
+        NN network = new NN.NetworkBuilder().setInputNum(2).addDenseLayer(4).addDenseLayer(1)
+                .setHiddenAF(Activation.tanh).setOutputAF(Activation.sigmoid)
+                .setCostFunction(Cost.diffSquared).setOptimizer(Optimizer.ADAM).build();
+        new Trainer(network, 8, 0.05, 0.9, 0.99, 1e-8).setRandom(new Random(3)).train(dataset, 100);
+        int correct = 0;
+        for (int i = 0; i < 64; i++) {
+            double[] output = network.calculateOutput(dataset.input(i, new double[2]));
+            if ((output[0] > 0.5) == (dataset.output(i, new double[1])[0] == 1)) correct++;
+        }
+        assertEquals(64, correct, 6);
+    }
+}
@@ -0,0 +1,143 @@
+package Network;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for {@link ConvolutionTuner}, the benchmark behind {@link ConvolutionAlgorithm#AUTO}, and its
+ * on-disk decision cache.
+ */
+class ConvolutionTunerTest {
+
+    @TempDir
+    Path directory;
+
+    /** The batch size and number of workers most tests tune for: small, but with workers running concurrently */
+    private static final int BATCH = 3, WORKERS = 2;
+
+    private static ConvolutionalLayer layer() {
+        return new ConvolutionalLayer(8, 8, 1, 3, 3, 2, 1, 1, false, ConvolutionAlgorithm.AUTO);
+    }
+
+    private static Properties read(Path file) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        }
+        return properties;
+    }
+
+    private static void write(Path file, String key, String value) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(key, value);
+        try (OutputStream out = Files.newOutputStream(file)) {
+            properties.store(out, null);
+        }
+    }
+
+    @Test
+    void choose_benchmarksAndPersistsTheDecision() throws IOException {
+        Path file = directory.resolve("nested").resolve("cache.properties");
+        ConvolutionAlgorithm chosen = new ConvolutionTuner(file).choose(layer(), BATCH, WORKERS);
+
+        assertNotEquals(ConvolutionAlgorithm.AUTO, chosen);
+        assertEquals(chosen.name(), read(file).getProperty(ConvolutionTuner.key(layer(), BATCH, WORKERS)));
+    }
+
+    @Test
+    void choose_cachedDecision_isReusedByLaterTuners() throws IOException {
+        Path file = directory.resolve("cache.properties");
+        write(file, ConvolutionTuner.key(layer(), BATCH, WORKERS), "FFT");
+        byte[] cache = Files.readAllBytes(file);
+
+        assertEquals(ConvolutionAlgorithm.FFT, new ConvolutionTuner(file).choose(layer(), BATCH, WORKERS));
+        // a benchmark would have rewritten the file with its own header
+        assertArrayEquals(cache, Files.readAllBytes(file));
+    }
+
+    @Test
+    void choose_unknownCachedDecision_benchmarksAgain() throws IOException {
+        Path file = directory.resolve("cache.properties");
+        write(file, ConvolutionTuner.key(layer(), BATCH, WORKERS), "NO_SUCH_ALGORITHM");
+
+        ConvolutionAlgorithm chosen = new ConvolutionTuner(file).choose(layer(), BATCH, WORKERS);
+        assertNotEquals(ConvolutionAlgorithm.AUTO, chosen);
+        assertEquals(chosen.name(), read(file).getProperty(ConvolutionTuner.key(layer(), BATCH, WORKERS)));
+    }
+
+    @Test
+    void choose_winogradOnlyConsideredForThreeByThreeStrideOne() {
+        ConvolutionalLayer strided = new ConvolutionalLayer(9, 9, 1, 3, 3, 2, 2, 2, false, ConvolutionAlgorithm.AUTO);
+        assertNotEquals(ConvolutionAlgorithm.WINOGRAD, new ConvolutionTuner(directory.resolve("cache.properties")).choose(strided, BATCH, WORKERS));
+    }
+
+    @Test
+    void key_differsByShape() {
+        ConvolutionalLayer other = new ConvolutionalLayer(8, 8, 1, 3, 3, 4, 1, 1, false, ConvolutionAlgorithm.AUTO);
+        assertNotEquals(ConvolutionTuner.key(layer(), BATCH, WORKERS), ConvolutionTuner.key(other, BATCH, WORKERS));
+        assertTrue(ConvolutionTuner.key(layer(), BATCH, WORKERS).contains(layer().shape()));
+    }
+
+    @Test
+    void key_differsByBatchSizeAndWorkers() {
+        String key = ConvolutionTuner.key(layer(), BATCH, WORKERS);
+        assertNotEquals(key, ConvolutionTuner.key(layer(), BATCH + 1, WORKERS));
+        assertNotEquals(key, ConvolutionTuner.key(layer(), BATCH, WORKERS + 1));
+    }
+
+    @Test
+    void choose_singleWorker_benchmarksAndPersistsTheDecision() throws IOException {
+        Path file = directory.resolve("cache.properties");
+        ConvolutionAlgorithm chosen = new ConvolutionTuner(file).choose(layer(), 1, 1);
+        assertEquals(chosen.name(), read(file).getProperty(ConvolutionTuner.key(layer(), 1, 1)));
+    }
+
+    @Test
+    void save_keepsDecisionsAnotherTunerSavedSinceLoading() throws IOException {
+        // two tuners on one file stand for two JVMs: the first saves again after the second saved its own decision
+        Path file = directory.resolve("cache.properties");
+        ConvolutionTuner first = new ConvolutionTuner(file), second = new ConvolutionTuner(file);
+        first.choose(layer(), BATCH, WORKERS);
+        second.choose(layer(), BATCH + 1, WORKERS);
+        first.choose(layer(), BATCH, WORKERS + 1);
+
+        Properties saved = read(file);
+        assertNotNull(saved.getProperty(ConvolutionTuner.key(layer(), BATCH, WORKERS)));
+        assertNotNull(saved.getProperty(ConvolutionTuner.key(layer(), BATCH + 1, WORKERS)));
+        assertNotNull(saved.getProperty(ConvolutionTuner.key(layer(), BATCH, WORKERS + 1)));
+    }
+
+    @Test
+    void save_leavesNoTemporaryFileBehind() throws IOException {
+        Path file = directory.resolve("cache.properties");
+        new ConvolutionTuner(file).choose(layer(), BATCH, WORKERS);
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(List.of(file), files.toList());
+        }
+    }
+
+    @Test
+    void save_unwritableCacheFile_leavesNoTemporaryFileBehind() throws IOException {
+        // a directory where the cache file should be makes the final move fail after the temporary file is written
+        Path file = Files.createDirectories(directory.resolve("cache.properties"));
+        Files.writeString(file.resolve("occupied"), "");
+        assertNotEquals(ConvolutionAlgorithm.AUTO, new ConvolutionTuner(file).choose(layer(), BATCH, WORKERS));
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(List.of(file), files.toList());
+        }
+    }
+}
@@ -296,4 +296,240 @@ class ConvolutionalLayerTest {
         copy.applyGradient(Optimizer.SGD, 0.1, 0,0,0);
         assertArrayEquals(orig.calculateWeightedOutput(new double[]{1,1,1,1}), new double[]{0.0}, DELTA);
     }
+
+    @Test
+    void addGradient_mergesShardKernelGradients() {
+        ConvolutionalLayer layer = new ConvolutionalLayer(2, 2, 1, 2, 2, 1, 1, 1, false);
+        ConvolutionalLayer first = (ConvolutionalLayer) layer.gradientShard();
+        ConvolutionalLayer second = (ConvolutionalLayer) layer.gradientShard();
+        first.updateGradient(new double[]{1.0}, new double[]{1, 1, 1, 1});
+        second.updateGradient(new double[]{1.0}, new double[]{1, 1, 1, 1});
+        layer.addGradient(first);
+        layer.addGradient(second);
+        layer.applyGradient(Optimizer.SGD, 0.1, 0, 0, 0);
+        // both shards contributed a gradient of 1.0 per kernel weight: 4 weights * -0.2
+        assertArrayEquals(new double[]{-0.8}, layer.calculateWeightedOutput(new double[]{1, 1, 1, 1}), DELTA);
+    }
+
+    @Test
+    void flatBatchedForwardAndBackward_matchPerSampleResults() {
+        java.util.Random random = new java.util.Random(8);
+        ConvolutionalLayer batched = new ConvolutionalLayer(4, 3, 1, 2, 2, 2, 1, 1, false);
+        ConvolutionalLayer perSample = (ConvolutionalLayer) batched.clone();
+        int inputVolume = 12, outputLength = batched.outputLength(), batchSize = 3;
+        double[] x = new double[batchSize * inputVolume], dz_dC = new double[batchSize * outputLength];
+        for (int i = 0; i < x.length; i++) x[i] = random.nextGaussian();
+        for (int i = 0; i < dz_dC.length; i++) dz_dC[i] = random.nextGaussian();
+
+        double[] output = new double[batchSize * outputLength], da_dC = new double[batchSize * inputVolume];
+        Arrays.fill(da_dC, 99); // stale values must be overwritten, not accumulated
+        batched.calculateWeightedOutput(x, batchSize, output);
+        batched.updateGradient(dz_dC, x, batchSize, da_dC);
+        for (int b = 0; b < batchSize; b++) {
+            double[] sample = Arrays.copyOfRange(x, b * inputVolume, (b + 1) * inputVolume);
+            assertArrayEquals(perSample.calculateWeightedOutput(sample), Arrays.copyOfRange(output, b * outputLength, (b + 1) * outputLength), DELTA);
+            assertArrayEquals(perSample.updateGradient(Arrays.copyOfRange(dz_dC, b * outputLength, (b + 1) * outputLength), sample),
+                    Arrays.copyOfRange(da_dC, b * inputVolume, (b + 1) * inputVolume), DELTA);
+        }
+
+        // both layers accumulated the same kernel gradients, so one SGD step keeps them equal
+        batched.applyGradient(Optimizer.SGD, 0.1, 0, 0, 0);
+        perSample.applyGradient(Optimizer.SGD, 0.1, 0, 0, 0);
+        double[] sample = Arrays.copyOf(x, inputVolume);
+        assertArrayEquals(perSample.calculateWeightedOutput(sample), batched.calculateWeightedOutput(sample), 1e-9);
+    }
+
+    // ---- convolution algorithms --------------------------------------------
+
+    /** inputWidth, inputHeight, inputLength, kernelWidth, kernelHeight, numKernels, strideWidth, strideHeight, padding(0/1) */
+    private static final int[][] GEOMETRIES = {
+            {5, 5, 1, 3, 3, 2, 1, 1, 0},
+            {7, 6, 3, 3, 2, 4, 2, 1, 0},
+            {6, 6, 2, 2, 2, 3, 3, 3, 0},
+            {5, 4, 2, 3, 3, 2, 1, 1, 1},
+            {4, 4, 1, 1, 1, 2, 1, 1, 0},
+            {8, 7, 3, 3, 3, 4, 1, 1, 0},
+            {9, 9, 2, 3, 3, 3, 1, 1, 1},
+            {6, 5, 3, 1, 1, 3, 2, 2, 0},
+            {5, 4, 2, 1, 1, 2, 1, 1, 1},
+    };
+
+    private static ConvolutionalLayer layerOf(int[] g, ConvolutionAlgorithm algorithm) {
+        ConvolutionalLayer layer = new ConvolutionalLayer(g[0], g[1], g[2], g[3], g[4], g[5], g[6], g[7], g[8] == 1, algorithm);
+        java.util.Random random = new java.util.Random(11);
+        layer.initialize(random::nextGaussian, Optimizer.SGD);
+        return layer;
+    }
+
+    private static void assertAlgorithmMatchesDirect(ConvolutionAlgorithm algorithm) {
+        java.util.Random random = new java.util.Random(12);
+        for (int[] g : GEOMETRIES) {
+            ConvolutionalLayer direct = layerOf(g, ConvolutionAlgorithm.DIRECT), other = layerOf(g, algorithm);
+            double[] x = new double[g[0] * g[1] * g[2]], dz_dC = new double[direct.outputLength()];
+            for (int i = 0; i < x.length; i++) x[i] = random.nextGaussian();
+            for (int i = 0; i < dz_dC.length; i++) dz_dC[i] = random.nextGaussian();
+            String geometry = Arrays.toString(g);
+
+            assertArrayEquals(direct.calculateWeightedOutput(x), other.calculateWeightedOutput(x), 1e-9, geometry);
+            assertArrayEquals(direct.updateGradient(dz_dC, x), other.updateGradient(dz_dC, x), 1e-9, geometry);
+            // equal kernel gradients give equal kernels after one SGD step
+            direct.applyGradient(Optimizer.SGD, 0.1, 0, 0, 0);
+            other.applyGradient(Optimizer.SGD, 0.1, 0, 0, 0);
+            assertArrayEquals(direct.calculateWeightedOutput(x), other.calculateWeightedOutput(x), 1e-9, geometry);
+        }
+    }
+
+    @Test
+    void im2col_matchesDirectConvolution() {
+        assertAlgorithmMatchesDirect(ConvolutionAlgorithm.IM2COL);
+    }
+
+    @Test
+    void winograd_matchesDirectConvolution() {
+        // covers 3x3 stride-1 layers with odd and even output sizes, and the direct fallback for every other shape
+        assertAlgorithmMatchesDirect(ConvolutionAlgorithm.WINOGRAD);
+    }
+
+    @Test
+    void fft_matchesDirectConvolution() {
+        assertAlgorithmMatchesDirect(ConvolutionAlgorithm.FFT);
+    }
+
+    @Test
+    void auto_matchesDirectConvolution() {
+        assertAlgorithmMatchesDirect(ConvolutionAlgorithm.AUTO);
+    }
+
+    /** Reorders a channel-first {@code width x height x channels} volume into channel-last order */
+    private static double[] channelLast(double[] channelFirst, int area, int channels) {
+        double[] result = new double[channelFirst.length];
+        for (int c = 0; c < channels; c++)
+            for (int p = 0; p < area; p++)
+                result[c + p * channels] = channelFirst[p + c * area];
+        return result;
+    }
+
+    @Test
+    void channelLast_matchesChannelFirstInEveryAlgorithm() {
+        java.util.Random random = new java.util.Random(13);
+        for (ConvolutionAlgorithm algorithm : ConvolutionAlgorithm.values()) {
+            if (algorithm == ConvolutionAlgorithm.AUTO) continue;
+            for (int[] g : GEOMETRIES) {
+                ConvolutionalLayer first = layerOf(g, algorithm);
+                ConvolutionalLayer last = new ConvolutionalLayer(g[0], g[1], g[2], g[3], g[4], g[5], g[6], g[7], g[8] == 1,
+                        algorithm, TensorLayout.CHANNEL_LAST);
+                // the same kernels, and biases in channel-last order
+                double[] bias = new double[first.nodes];
+                java.util.Random parameters = new java.util.Random(11);
+                for (int i = 0; i < bias.length; i++) bias[i] = parameters.nextGaussian();
+                int outputArea = first.outputLength() / g[5];
+                double[] lastBias = Arrays.copyOf(channelLast(Arrays.copyOf(bias, first.outputLength()), outputArea, g[5]), bias.length);
+                // padded layers have more biases than outputs; the unused ones keep their order
+                System.arraycopy(bias, first.outputLength(), lastBias, first.outputLength(), bias.length - first.outputLength());
+                int[] next = {0};
+                last.initialize(() -> next[0] < lastBias.length ? lastBias[next[0]++] : parameters.nextGaussian(), Optimizer.SGD);
+
+                double[] x = new double[g[0] * g[1] * g[2]], dz_dC = new double[first.outputLength()];
+                for (int i = 0; i < x.length; i++) x[i] = random.nextGaussian();
+                for (int i = 0; i < dz_dC.length; i++) dz_dC[i] = random.nextGaussian();
+                String geometry = algorithm + " " + Arrays.toString(g);
+
+                double[] xLast = channelLast(x, g[0] * g[1], g[2]);
+                assertArrayEquals(channelLast(first.calculateWeightedOutput(x), outputArea, g[5]),
+                        last.calculateWeightedOutput(xLast), 1e-9, geometry);
+                assertArrayEquals(channelLast(first.updateGradient(dz_dC, x), g[0] * g[1], g[2]),
+                        last.updateGradient(channelLast(dz_dC, outputArea, g[5]), xLast), 1e-9, geometry);
+                first.applyGradient(Optimizer.SGD, 0.1, 0, 0, 0);
+                last.applyGradient(Optimizer.SGD, 0.1, 0, 0, 0);
+                assertArrayEquals(channelLast(first.calculateWeightedOutput(x), outputArea, g[5]),
+                        last.calculateWeightedOutput(xLast), 1e-9, geometry);
+            }
+        }
+    }
+
+    @Test
+    void calculateWeightedOutput_noPadding_kernelsStartAtFirstColumn() {
+        // 3x1 input, one 2x1 kernel (1, 10): the two output neurons cover columns (0, 1) and (1, 2)
+        for (ConvolutionAlgorithm algorithm : ConvolutionAlgorithm.values()) {
+            if (algorithm == ConvolutionAlgorithm.AUTO) continue;
+            ConvolutionalLayer layer = new ConvolutionalLayer(3, 1, 1, 2, 1, 1, 1, 1, false, algorithm);
+            double[] parameters = {0, 0, 1, 10};
+            int[] next = {0};
+            layer.initialize(() -> parameters[next[0]++], Optimizer.SGD);
+            assertArrayEquals(new double[]{21, 32}, layer.calculateWeightedOutput(new double[]{1, 2, 3}), DELTA, algorithm.name());
+            assertArrayEquals(new double[]{1, 11, 10}, layer.updateGradient(new double[]{1, 1}, new double[]{1, 2, 3}), DELTA, algorithm.name());
+        }
+    }
+
+    @Test
+    void fft_kernelsChangedAfterForwardPass_usesNewKernels() {
+        // the cached kernel spectra must follow every optimizer step
+        int[] g = {9, 9, 1, 7, 7, 3, 1, 1, 0};
+        ConvolutionalLayer direct = layerOf(g, ConvolutionAlgorithm.DIRECT), fft = layerOf(g, ConvolutionAlgorithm.FFT);
+        double[] x = new double[81], dz_dC = new double[direct.outputLength()];
+        Arrays.fill(x, 0.5);
+        Arrays.fill(dz_dC, 1);
+        for (int step = 0; step < 3; step++) {
+            assertArrayEquals(direct.calculateWeightedOutput(x), fft.calculateWeightedOutput(x), 1e-9);
+            assertArrayEquals(direct.updateGradient(dz_dC, x), fft.updateGradient(dz_dC, x), 1e-9);
+            direct.applyGradient(Optimizer.SGD, 0.01, 0, 0, 0);
+            fft.applyGradient(Optimizer.SGD, 0.01, 0, 0, 0);
+            direct.clearGradient();
+            fft.clearGradient();
+        }
+    }
+
+    @Test
+    void fft_shardAfterOwnerStep_usesNewKernels() {
+        // a gradient shard shares its owner's kernels and so its kernel spectra, which the owner's step invalidates
+        int[] g = {9, 9, 1, 7, 7, 3, 1, 1, 0};
+        ConvolutionalLayer direct = layerOf(g, ConvolutionAlgorithm.DIRECT), fft = layerOf(g, ConvolutionAlgorithm.FFT);
+        Layer shard = fft.gradientShard();
+        double[] x = new double[81], dz_dC = new double[direct.outputLength()];
+        Arrays.fill(x, 0.5);
+        Arrays.fill(dz_dC, 1);
+        for (int step = 0; step < 3; step++) {
+            assertArrayEquals(direct.calculateWeightedOutput(x), shard.calculateWeightedOutput(x), 1e-9);
+            assertArrayEquals(direct.updateGradient(dz_dC, x), shard.updateGradient(dz_dC, x), 1e-9);
+            fft.addGradient(shard);
+            direct.applyGradient(Optimizer.SGD, 0.01, 0, 0, 0);
+            fft.applyGradient(Optimizer.SGD, 0.01, 0, 0, 0);
+            direct.clearGradient();
+            fft.clearGradient();
+            shard.clearGradient();
+        }
+    }
+
+    @Test
+    void calculateWeightedOutput_multipleInputLayers_sumsEveryLayer() {
+        for (ConvolutionAlgorithm algorithm : ConvolutionAlgorithm.values()) {
+            ConvolutionalLayer layer = new ConvolutionalLayer(2, 2, 2, 2, 2, 1, 1, 1, false, algorithm);
+            layer.updateGradient(new double[]{1}, new double[]{1, 1, 1, 1, 1, 1, 1, 1});
+            layer.applyGradient(Optimizer.SGD, 0.5, 0, 0, 0);
+            // every kernelsGradient entry is 1 * (1 + 1) = 2, so every kernel weight is -1;
+            // with uniform layers of 2s and 3s the output sums both layers: 4 weights * -1 * (2 + 3)
+            assertArrayEquals(new double[]{-20}, layer.calculateWeightedOutput(new double[]{2, 2, 2, 2, 3, 3, 3, 3}), DELTA, algorithm.name());
+        }
+    }
+
+    @Test
+    void updateGradient_largeLayer_parallelMatchesSequentialExactly() {
+        // big enough for the backward pass to fork; inside a parallel region it runs inline instead
+        int[] g = {40, 40, 2, 5, 5, 16, 1, 1, 0};
+        java.util.Random random = new java.util.Random(13);
+        for (ConvolutionAlgorithm algorithm : ConvolutionAlgorithm.values()) {
+            ConvolutionalLayer parallel = layerOf(g, algorithm), sequential = layerOf(g, algorithm);
+            double[] x = new double[g[0] * g[1] * g[2]], dz_dC = new double[parallel.outputLength()];
+            for (int i = 0; i < x.length; i++) x[i] = random.nextGaussian();
+            for (int i = 0; i < dz_dC.length; i++) dz_dC[i] = random.nextGaussian();
+
+            double[] parallelResult = parallel.updateGradient(dz_dC, x);
+            double[][] sequentialResult = new double[1][];
+            Linalg.runInParallelRegion(2, () -> sequentialResult[0] = sequential.updateGradient(dz_dC, x));
+            assertArrayEquals(sequentialResult[0], parallelResult, 0, algorithm.name());
+            parallel.applyGradient(Optimizer.SGD, 0.1, 0, 0, 0);
+            sequential.applyGradient(Optimizer.SGD, 0.1, 0, 0, 0);
+            assertEquals(sequential, parallel, algorithm.name());
+        }
+    }
 }
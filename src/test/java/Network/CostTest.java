@@ -238,4 +238,16 @@ class CostTest {
         assertThrows(ArrayIndexOutOfBoundsException.class,
                 () -> Cost.diffSquared.calculate(new double[]{1, 2}, new double[]{1}));
     }
+
+    @Test
+    void calculateAndDerivative_intoBuffer_matchAllocatingVersions() {
+        double[] output = {0.2, 0.7, 0.1}, expected = {0, 1, 0};
+        for (Cost cost : Cost.values()) {
+            double[] costs = new double[3], gradient = output.clone();
+            cost.calculate(output, expected, costs);
+            assertArrayEquals(cost.calculate(output, expected), costs, DELTA);
+            cost.derivative(gradient, expected, gradient);
+            assertArrayEquals(cost.derivative(output, expected), gradient, DELTA);
+        }
+    }
 }
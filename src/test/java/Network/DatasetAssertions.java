@@ -0,0 +1,38 @@
+package Network;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Helpers shared by the {@link Dataset} tests: comparing two datasets test case by test case, and building IDX files.
+ */
+final class DatasetAssertions {
+
+    private DatasetAssertions() {
+    }
+
+    /** Asserts that both datasets have the same dimensions and decode every test case to the same values */
+    static void assertSameTestCases(Dataset expected, Dataset actual) {
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.inputNum(), actual.inputNum());
+        assertEquals(expected.outputNum(), actual.outputNum());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.input(i, new double[expected.inputNum()]), actual.input(i, new double[actual.inputNum()]), "input " + i);
+            assertArrayEquals(expected.output(i, new double[expected.outputNum()]), actual.output(i, new double[actual.outputNum()]), "output " + i);
+        }
+    }
+
+    /** An unsigned-byte IDX file of the given shape holding {@code values} */
+    static byte[] idx(int[] shape, byte[] values) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeInt(0x0800 | shape.length);
+        for (int dimension : shape) data.writeInt(dimension);
+        data.write(values);
+        return bytes.toByteArray();
+    }
+}
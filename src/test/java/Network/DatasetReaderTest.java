@@ -0,0 +1,99 @@
+package Network;
+
+import static Network.DatasetAssertions.assertSameTestCases;
+import static Network.DatasetAssertions.idx;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Unit tests for {@link DatasetReader}: the parallel CSV parser must agree with {@link Double#parseDouble} and with
+ * the sequential {@link MappedDataset} converters on every test case.
+ */
+class DatasetReaderTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readCsv_parsesEveryNumberFormat() throws IOException {
+        Path csv = directory.resolve("formats.csv");
+        String[] numbers = {"0", "-1.5", "+2.25", ".5", "3.", "1e3", "-2.5E-2", "0.1", "123456789.123456789",
+                "1234567890123456789012", "0.000000000000000000000000125", " 7 "};
+        Files.writeString(csv, "1," + String.join(",", numbers) + "\r\n");
+        CompactDataset dataset = DatasetReader.readCsv(csv, 2, CompactDataset.Encoding.FLOAT16, 1, 0);
+        double[] decoded = dataset.input(0, new double[numbers.length]);
+        for (int i = 0; i < numbers.length; i++)
+            assertEquals(Float.float16ToFloat(Float.floatToFloat16((float) Double.parseDouble(numbers[i].trim()))), decoded[i], "number " + numbers[i]);
+        assertArrayEquals(new double[]{0, 1}, dataset.output(0, new double[2]));
+    }
+
+    @Test
+    void readCsv_manyChunks_matchesSequentialConversion() throws IOException {
+        // about 4 MB, so the file is split into several chunks
+        Random random = new Random(1);
+        StringBuilder text = new StringBuilder();
+        for (int line = 0; line < 10_000; line++) {
+            text.append(random.nextInt(10));
+            for (int j = 0; j < 100; j++) text.append(',').append(random.nextInt(256));
+            text.append(line % 1000 == 0 ? "\n\n" : "\n");
+        }
+        Path csv = directory.resolve("large.csv"), converted = directory.resolve("large.nnds");
+        Files.writeString(csv, text);
+        CompactDataset dataset = DatasetReader.readCsv(csv, 10, CompactDataset.Encoding.UINT8, 1 / 255.0, 0);
+        MappedDataset.convertCsv(csv, converted, 10, CompactDataset.Encoding.UINT8, 1 / 255.0, 0);
+        assertEquals(10_000, dataset.size());
+        assertSameTestCases(MappedDataset.open(converted), dataset);
+    }
+
+    @Test
+    void readCsv_malformedLine_reportsItsLineNumber() throws IOException {
+        Path csv = directory.resolve("bad.csv");
+        Files.writeString(csv, "0,1,2\n\n1,3,x\n");
+        IOException e = assertThrows(IOException.class, () -> DatasetReader.readCsv(csv, 2, CompactDataset.Encoding.UINT8, 1, 0));
+        assertTrue(e.getMessage().startsWith("line 3"), e.getMessage());
+
+        Files.writeString(csv, "0,1,2\n1,3\n");
+        assertThrows(IOException.class, () -> DatasetReader.readCsv(csv, 2, CompactDataset.Encoding.UINT8, 1, 0));
+        Files.writeString(csv, "0,1,2\n1,3,4,5\n");
+        assertThrows(IOException.class, () -> DatasetReader.readCsv(csv, 2, CompactDataset.Encoding.UINT8, 1, 0));
+        Files.writeString(csv, "2,1,2\n");
+        assertThrows(IOException.class, () -> DatasetReader.readCsv(csv, 2, CompactDataset.Encoding.UINT8, 1, 0));
+        Files.writeString(csv, "0.5,1,2\n");
+        assertThrows(IOException.class, () -> DatasetReader.readCsv(csv, 2, CompactDataset.Encoding.UINT8, 1, 0));
+        Files.writeString(csv, "\n  \n");
+        assertThrows(IOException.class, () -> DatasetReader.readCsv(csv, 2, CompactDataset.Encoding.UINT8, 1, 0));
+    }
+
+    @Test
+    void readIdx_matchesSequentialConversionInEveryEncoding() throws IOException {
+        Random random = new Random(2);
+        byte[] pixels = new byte[300 * 28 * 28], labelBytes = new byte[300];
+        random.nextBytes(pixels);
+        for (int i = 0; i < labelBytes.length; i++) labelBytes[i] = (byte) random.nextInt(10);
+        Path images = directory.resolve("images-idx3-ubyte"), labels = directory.resolve("labels-idx1-ubyte");
+        Files.write(images, idx(new int[]{300, 28, 28}, pixels));
+        Files.write(labels, idx(new int[]{300}, labelBytes));
+        for (CompactDataset.Encoding encoding : CompactDataset.Encoding.values()) {
+            Path converted = directory.resolve(encoding + ".nnds");
+            MappedDataset.convertIdx(images, labels, converted, 10, encoding, 1 / 255.0, -0.5);
+            assertSameTestCases(MappedDataset.open(converted), DatasetReader.readIdx(images, labels, 10, encoding, 1 / 255.0, -0.5));
+        }
+    }
+
+    @Test
+    void readIdx_labelOutOfRange_throws() throws IOException {
+        Path images = directory.resolve("images"), labels = directory.resolve("labels");
+        Files.write(images, idx(new int[]{1, 2}, new byte[]{1, 2}));
+        Files.write(labels, idx(new int[]{1}, new byte[]{4}));
+        assertThrows(IOException.class, () -> DatasetReader.readIdx(images, labels, 4, CompactDataset.Encoding.UINT8, 1, 0));
+    }
+}
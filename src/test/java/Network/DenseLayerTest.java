@@ -123,6 +123,34 @@ class DenseLayerTest {
         }
     }
 
+    @Test
+    void applyGradient_nonFiniteBiasGradient_throwsAndChangesNothing() {
+        for (Optimizer optimizer : Optimizer.values()) {
+            DenseLayer layer = new DenseLayer(1, 1);
+            layer.initialize(() -> 0.0, optimizer);
+            layer.updateGradient(new double[]{3.0}, new double[]{2.0});
+            layer.biasGradient[0] = Double.NaN;
+            assertThrows(IllegalStateException.class, () -> layer.applyGradient(optimizer, 0.1, 0.9, 0.999, 1e-8), optimizer.name());
+            // the finite weight gradient must not have been applied either
+            assertArrayEquals(new double[]{0.0}, layer.calculateWeightedOutput(new double[]{1.0}), DELTA, optimizer.name());
+            assertEquals(1, layer.t, optimizer.name());
+        }
+    }
+
+    @Test
+    void applyGradient_adamOverflowingOneWeight_changesNoWeight() {
+        // weights = [-MAX, -MAX], bias = [0]; the weight gradients are [1, -1], and ADAM's first step of
+        // learningRate / (1 - momentum) = 0.625 * MAX takes the first weight to -Infinity and the second to -0.375 * MAX
+        DenseLayer layer = new DenseLayer(2, 1);
+        layer.initialize(() -> -Double.MAX_VALUE, Optimizer.ADAM);
+        layer.bias[0] = 0;
+        layer.updateGradient(new double[]{1.0}, new double[]{1.0, -1.0});
+        assertThrows(IllegalStateException.class, () -> layer.applyGradient(Optimizer.ADAM, Double.MAX_VALUE / 16, 0.9, 0.999, 1e-8));
+        assertArrayEquals(new double[]{-Double.MAX_VALUE}, layer.calculateWeightedOutput(new double[]{0.0, 1.0}), DELTA);
+        assertArrayEquals(new double[]{0.0}, layer.bias, DELTA);
+        assertEquals(1, layer.t);
+    }
+
     // ---- equals ------------------------------------------------------------
 
     @Test
@@ -176,9 +204,7 @@ class DenseLayerTest {
 
     @Test
     void constructor_zeroNodesBefore_yieldsEmptyWeightsMatrix() {
-        // weights is `new double[0][3]`; getNumParameters returns 0 * 3 weights + 3 biases.
-        // (Calling calculateWeightedOutput would still trip the Linalg.matrixMultiply
-        // empty-supplier bug exercised separately by LinalgTest.)
+        // weights is an empty flat array; getNumParameters returns 0 * 3 weights + 3 biases.
         assertEquals(3, new DenseLayer(0, 3).getNumParameters());
     }
 
@@ -261,4 +287,66 @@ class DenseLayerTest {
         assertArrayEquals(orig.calculateWeightedOutput(new double[]{1.0}),
                 new double[]{0.0}, DELTA);
     }
+
+    @Test
+    void clone_withMomentumState_equalsOriginalAndStepsIdentically() {
+        DenseLayer original = new DenseLayer(2, 3);
+        java.util.Random random = new java.util.Random(5);
+        original.initialize(random::nextGaussian, Optimizer.SGD_MOMENTUM);
+        original.updateGradient(new double[]{1, -2, 0.5}, new double[]{0.3, -0.7});
+        original.applyGradient(Optimizer.SGD_MOMENTUM, 0.1, 0.9, 0, 0);
+
+        DenseLayer copy = (DenseLayer) original.clone();
+        assertEquals(original, copy);
+        assertEquals(original.hashCode(), copy.hashCode());
+        for (DenseLayer layer : new DenseLayer[]{original, copy}) {
+            layer.updateGradient(new double[]{-1, 0.25, 2}, new double[]{1.5, 0.1});
+            layer.applyGradient(Optimizer.SGD_MOMENTUM, 0.1, 0.9, 0, 0);
+        }
+        assertArrayEquals(original.calculateWeightedOutput(new double[]{0.4, -0.9}),
+                copy.calculateWeightedOutput(new double[]{0.4, -0.9}), DELTA);
+    }
+
+    @Test
+    void gradientShard_sharesWeightsButOwnsGradient() {
+        DenseLayer layer = new DenseLayer(1, 1);
+        DenseLayer shard = (DenseLayer) layer.gradientShard();
+        shard.updateGradient(new double[]{3.0}, new double[]{2.0});
+        // the shard's gradient is private, so the original layer's gradient is still zero
+        assertArrayEquals(new double[]{0.0}, layer.biasGradient, DELTA);
+
+        layer.addGradient(shard);
+        layer.applyGradient(Optimizer.SGD, 0.1, 0, 0, 0);
+        // same step as applyGradient_sgd_updatesWeightsAndBiasObservably, observed through the shared weights
+        assertArrayEquals(new double[]{-0.9}, shard.calculateWeightedOutput(new double[]{1.0}), DELTA);
+    }
+
+    @Test
+    void batchedForwardAndBackward_matchPerSampleResults() {
+        DenseLayer batched = new DenseLayer(3, 2), perSample;
+        java.util.Random random = new java.util.Random(7);
+        batched.initialize(() -> random.nextGaussian(), Optimizer.SGD);
+        perSample = (DenseLayer) batched.clone();
+        double[][] x = {{1, 2, 3}, {-1, 0.5, 2}, {0, 0, 1}};
+        double[][] dz = {{0.5, -1}, {2, 1}, {-0.25, 0.75}};
+
+        double[][] output = batched.calculateWeightedOutput(x);
+        double[][] daDC = batched.updateGradient(dz, x);
+        for (int b = 0; b < x.length; b++) {
+            assertArrayEquals(perSample.calculateWeightedOutput(x[b]), output[b], DELTA);
+            assertArrayEquals(perSample.updateGradient(dz[b], x[b]), daDC[b], DELTA);
+        }
+        assertArrayEquals(perSample.biasGradient, batched.biasGradient, DELTA);
+        // the accumulated weight gradients match too, so one SGD step lands on the same weights
+        batched.applyGradient(Optimizer.SGD, 0.1, 0, 0, 0);
+        perSample.applyGradient(Optimizer.SGD, 0.1, 0, 0, 0);
+        assertArrayEquals(perSample.calculateWeightedOutput(x[0]), batched.calculateWeightedOutput(x[0]), DELTA);
+    }
+
+    @Test
+    void batchedCalculateWeightedOutput_wrongInputLength_throws() {
+        DenseLayer layer = new DenseLayer(2, 3);
+        assertThrows(IllegalArgumentException.class,
+                () -> layer.calculateWeightedOutput(new double[][]{{1, 2}, {1, 2, 3}}));
+    }
 }
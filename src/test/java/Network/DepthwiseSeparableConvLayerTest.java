@@ -0,0 +1,152 @@
+package Network;
+
+import static Network.GradientChecks.assertBatchedMatchesSingleSamples;
+import static Network.GradientChecks.assertInputGradient;
+import static Network.GradientChecks.assertSgdStepFollowsGradient;
+import static Network.GradientChecks.random;
+import static Network.GradientChecks.sequence;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link DepthwiseSeparableConvLayer}.
+ * <br>The weights are private, so they are set through {@link Layer#initialize} with a known sequence of values:
+ * the per-neuron biases, then every channel's depthwise kernel, then the pointwise matrix.
+ */
+class DepthwiseSeparableConvLayerTest {
+
+    private static final double DELTA = 1e-12;
+
+    /** 6x5 input of 2 channels, 3x2 kernels sliding 2 columns and 2 rows at a time, 2 pointwise kernels */
+    private static DepthwiseSeparableConvLayer strided(double... parameters) {
+        DepthwiseSeparableConvLayer layer = new DepthwiseSeparableConvLayer(6, 5, 2, 3, 2, 2, 2, 2);
+        layer.initialize(sequence(parameters), Optimizer.SGD);
+        return layer;
+    }
+
+    /** The parameters of {@link #strided}: 8 biases, 2 * 3x2 depthwise weights and 2x2 pointwise weights */
+    private static final int STRIDED_PARAMETERS = 8 + 12 + 4;
+
+    // ---- constructor: output-dimension math --------------------------------
+
+    @Test
+    void outputLength_stridedNonSquareKernel() {
+        // width ceil((6 - 3 + 1) / 2) = 2, height ceil((5 - 2 + 1) / 2) = 2, for each of 2 kernels
+        assertEquals(8, strided().outputLength());
+        assertEquals(STRIDED_PARAMETERS, strided().getNumParameters());
+    }
+
+    @Test
+    void constructor_kernelLargerThanInput_throws() {
+        assertThrows(IllegalArgumentException.class, () -> new DepthwiseSeparableConvLayer(2, 2, 1, 3, 1, 1, 1, 1));
+    }
+
+    // ---- calculateWeightedOutput -------------------------------------------
+
+    @Test
+    void calculateWeightedOutput_depthwiseThenPointwise() {
+        // two 2x2 channels, 1x2 kernels, one pointwise kernel: out = 2 * (ch0 conv) - (ch1 conv) + bias
+        DepthwiseSeparableConvLayer layer = new DepthwiseSeparableConvLayer(2, 2, 2, 1, 2, 1, 1, 1);
+        // biases (2), channel 0 kernel (1, 1), channel 1 kernel (1, -1), pointwise (2, -1)
+        layer.initialize(sequence(0.5, -0.5, 1, 1, 1, -1, 2, -1), Optimizer.SGD);
+        double[] input = {1, 2, 3, 4, 5, 6, 7, 9};
+        // channel 0: (1 + 3, 2 + 4) = (4, 6), channel 1: (5 - 7, 6 - 9) = (-2, -3)
+        assertArrayEquals(new double[]{2 * 4 + 2 + 0.5, 2 * 6 + 3 - 0.5}, layer.calculateWeightedOutput(input), DELTA);
+    }
+
+    @Test
+    void calculateWeightedOutput_strideTwo_skipsEveryOtherColumn() {
+        // 5x1 input, one 2x1 kernel (1, 10) moving 2 columns: the outputs cover columns (0, 1) and (2, 3), never 4
+        DepthwiseSeparableConvLayer layer = new DepthwiseSeparableConvLayer(5, 1, 1, 2, 1, 1, 2, 1);
+        layer.initialize(sequence(0, 0, 1, 10, 1), Optimizer.SGD);
+        assertArrayEquals(new double[]{1 + 20, 3 + 40}, layer.calculateWeightedOutput(new double[]{1, 2, 3, 4, 5}), DELTA);
+    }
+
+    @Test
+    void calculateWeightedOutput_wideKernel_sumsRows() {
+        // 3x3 input 1..9 row by row, one 3x1 kernel (1, 10, 100): one output per row
+        DepthwiseSeparableConvLayer layer = new DepthwiseSeparableConvLayer(3, 3, 1, 3, 1, 1, 1, 1);
+        layer.initialize(sequence(0, 0, 0, 1, 10, 100, 1), Optimizer.SGD);
+        assertArrayEquals(new double[]{321, 654, 987}, layer.calculateWeightedOutput(new double[]{1, 2, 3, 4, 5, 6, 7, 8, 9}), DELTA);
+    }
+
+    @Test
+    void calculateWeightedOutput_tallKernel_sumsColumns() {
+        // the same input and weights with a 1x3 kernel: one output per column
+        DepthwiseSeparableConvLayer layer = new DepthwiseSeparableConvLayer(3, 3, 1, 1, 3, 1, 1, 1);
+        layer.initialize(sequence(0, 0, 0, 1, 10, 100, 1), Optimizer.SGD);
+        assertArrayEquals(new double[]{741, 852, 963}, layer.calculateWeightedOutput(new double[]{1, 2, 3, 4, 5, 6, 7, 8, 9}), DELTA);
+    }
+
+    @Test
+    void calculateWeightedOutput_wrongInputLength_throws() {
+        assertThrows(IllegalArgumentException.class, () -> strided().calculateWeightedOutput(new double[59]));
+    }
+
+    // ---- updateGradient ----------------------------------------------------
+
+    @Test
+    void updateGradient_strideTwo_columnNoKernelCoversGetsNoGradient() {
+        // the layer of calculateWeightedOutput_strideTwo_skipsEveryOtherColumn: column 4 never reaches the output
+        DepthwiseSeparableConvLayer layer = new DepthwiseSeparableConvLayer(5, 1, 1, 2, 1, 1, 2, 1);
+        layer.initialize(sequence(0, 0, 1, 10, 1), Optimizer.SGD);
+        assertArrayEquals(new double[]{1, 10, 1, 10, 0}, layer.updateGradient(new double[]{1, 1}, new double[]{1, 2, 3, 4, 5}), DELTA);
+    }
+
+    @Test
+    void updateGradient_stridedNonSquareKernel_matchesFiniteDifferences() {
+        assertInputGradient(strided(random(STRIDED_PARAMETERS, 21)), random(60, 22), random(8, 23), 1e-6);
+    }
+
+    // ---- applyGradient: both stages and the biases -------------------------
+
+    @Test
+    void applyGradient_strideTwo_stepsEveryStage() {
+        // dz = (1, 1): depthwise gradient (1 + 3, 2 + 4), pointwise gradient 21 + 43, bias gradients 1
+        DepthwiseSeparableConvLayer layer = new DepthwiseSeparableConvLayer(5, 1, 1, 2, 1, 1, 2, 1);
+        layer.initialize(sequence(0, 0, 1, 10, 1), Optimizer.SGD);
+        double[] x = {1, 2, 3, 4, 5};
+        layer.updateGradient(new double[]{1, 1}, x);
+        layer.applyGradient(Optimizer.SGD, 0.01, 0, 0, 0);
+        // depthwise (0.96, 9.94), pointwise 0.36, biases -0.01
+        assertArrayEquals(new double[]{0.36 * (0.96 + 2 * 9.94) - 0.01, 0.36 * (3 * 0.96 + 4 * 9.94) - 0.01},
+                layer.calculateWeightedOutput(x), 1e-12);
+    }
+
+    @Test
+    void applyGradient_stridedNonSquareKernel_stepFollowsFiniteDifferenceGradient() {
+        // the loss is linear in each stage but not in both, so one small step matches the gradient up to O(rate^2)
+        assertSgdStepFollowsGradient(DepthwiseSeparableConvLayerTest::strided, random(STRIDED_PARAMETERS, 24),
+                random(60, 25), random(8, 26), 1e-7, 1e-3);
+    }
+
+    // ---- batched passes and gradient shards --------------------------------
+
+    @Test
+    void batchedPasses_stridedNonSquareKernel_matchSingleSamplePasses() {
+        assertBatchedMatchesSingleSamples(strided(random(STRIDED_PARAMETERS, 27)), random(3 * 60, 28), random(3 * 8, 29), 3);
+    }
+
+    @Test
+    void gradientShard_sharesWeightsAndAddsGradients() {
+        DepthwiseSeparableConvLayer layer = strided(random(STRIDED_PARAMETERS, 30)), reference = (DepthwiseSeparableConvLayer) layer.clone();
+        double[] x = random(60, 31), dz = random(8, 32);
+        Layer shard = layer.gradientShard();
+        shard.updateGradient(dz, x);
+        layer.addGradient(shard);
+        reference.updateGradient(dz, x);
+        assertEquals(reference, layer);
+    }
+
+    // ---- equals / clone ----------------------------------------------------
+
+    @Test
+    void clone_equalsOriginal() {
+        DepthwiseSeparableConvLayer layer = strided(random(STRIDED_PARAMETERS, 33));
+        assertEquals(layer, layer.clone());
+        assertNotEquals(layer, strided(random(STRIDED_PARAMETERS, 34)));
+    }
+}
@@ -0,0 +1,45 @@
+package Network;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumSet;
+
+/**
+ * Unit tests for {@link Evaluation}, the accumulated results of {@link NN#evaluate}.
+ */
+class EvaluationTest {
+
+    @Test
+    void add_mergesPartialEvaluations() {
+        Evaluation first = new Evaluation(EnumSet.allOf(Metric.class), 2), second = new Evaluation(EnumSet.allOf(Metric.class), 2);
+        first.add(1.0, 0, 0);
+        first.add(2.0, 0, 1);
+        second.add(3.0, 1, 1);
+        second.add(6.0, 1, 1);
+        first.add(second);
+        assertEquals(4, first.size());
+        assertEquals(3.0, first.cost());
+        assertEquals(0.75, first.accuracy());
+        assertArrayEquals(new int[][]{{1, 1}, {0, 2}}, first.confusionMatrix());
+    }
+
+    @Test
+    void confusionMatrix_returnsACopy() {
+        Evaluation evaluation = new Evaluation(EnumSet.of(Metric.CONFUSION_MATRIX), 2);
+        evaluation.add(0, 1, 0);
+        evaluation.confusionMatrix()[1][0] = 5;
+        assertEquals(1, evaluation.confusionMatrix()[1][0]);
+    }
+
+    @Test
+    void unrequestedMetric_throws() {
+        Evaluation evaluation = new Evaluation(EnumSet.of(Metric.ACCURACY), 2);
+        evaluation.add(0.5, 1, 1);
+        assertEquals(1.0, evaluation.accuracy());
+        assertThrows(IllegalStateException.class, evaluation::cost);
+        assertThrows(IllegalStateException.class, evaluation::confusionMatrix);
+    }
+}
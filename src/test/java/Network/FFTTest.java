@@ -0,0 +1,81 @@
+package Network;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the radix-2 {@link FFT}, checked against the textbook discrete Fourier transform.
+ */
+class FFTTest {
+
+    private static final double DELTA = 1e-9;
+
+    private static double[] random(Random random, int length) {
+        double[] array = new double[length];
+        for (int i = 0; i < length; i++) array[i] = random.nextGaussian();
+        return array;
+    }
+
+    @Test
+    void size_roundsUpToPowerOfTwo() {
+        assertEquals(1, FFT.size(1));
+        assertEquals(2, FFT.size(2));
+        assertEquals(8, FFT.size(5));
+        assertEquals(16, FFT.size(16));
+        assertEquals(32, FFT.size(17));
+    }
+
+    @Test
+    void transform2d_matchesDiscreteFourierTransform() {
+        int rows = 4, columns = 8;
+        Random random = new Random(1);
+        double[] re = random(random, rows * columns), im = random(random, rows * columns);
+        double[] expectedRe = new double[rows * columns], expectedIm = new double[rows * columns];
+        for (int kr = 0; kr < rows; kr++)
+            for (int kc = 0; kc < columns; kc++)
+                for (int r = 0; r < rows; r++)
+                    for (int c = 0; c < columns; c++) {
+                        double angle = -2 * Math.PI * ((double) kr * r / rows + (double) kc * c / columns);
+                        int k = kr * columns + kc, j = r * columns + c;
+                        expectedRe[k] += re[j] * Math.cos(angle) - im[j] * Math.sin(angle);
+                        expectedIm[k] += re[j] * Math.sin(angle) + im[j] * Math.cos(angle);
+                    }
+
+        FFT.transform2d(re, im, rows, columns, false);
+        assertArrayEquals(expectedRe, re, DELTA);
+        assertArrayEquals(expectedIm, im, DELTA);
+    }
+
+    @Test
+    void transform2d_inverseUndoesForward() {
+        Random random = new Random(2);
+        double[] re = random(random, 64), im = random(random, 64);
+        double[] originalRe = re.clone(), originalIm = im.clone();
+        FFT.transform2d(re, im, 8, 8, false);
+        FFT.transform2d(re, im, 8, 8, true);
+        assertArrayEquals(originalRe, re, DELTA);
+        assertArrayEquals(originalIm, im, DELTA);
+    }
+
+    @Test
+    void splitRealPair_matchesSeparateTransforms() {
+        int rows = 4, columns = 4, n = rows * columns;
+        Random random = new Random(3);
+        double[] a = random(random, n), b = random(random, n);
+        double[] zRe = a.clone(), zIm = b.clone();
+        FFT.transform2d(zRe, zIm, rows, columns, false);
+        double[] re = new double[2 * n], im = new double[2 * n];
+        FFT.splitRealPair(zRe, zIm, rows, columns, re, im, 0, n);
+
+        double[] aRe = a.clone(), aIm = new double[n], bRe = b.clone(), bIm = new double[n];
+        FFT.transform2d(aRe, aIm, rows, columns, false);
+        FFT.transform2d(bRe, bIm, rows, columns, false);
+        assertArrayEquals(aRe, java.util.Arrays.copyOfRange(re, 0, n), DELTA);
+        assertArrayEquals(aIm, java.util.Arrays.copyOfRange(im, 0, n), DELTA);
+        assertArrayEquals(bRe, java.util.Arrays.copyOfRange(re, n, 2 * n), DELTA);
+        assertArrayEquals(bIm, java.util.Arrays.copyOfRange(im, n, 2 * n), DELTA);
+    }
+}
@@ -0,0 +1,35 @@
+package Network;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link GlobalAvgPoolLayer}.
+ */
+class GlobalAvgPoolLayerTest {
+
+    private static final double DELTA = 1e-12;
+
+    @Test
+    void calculateWeightedOutput_oneMeanPerChannel() {
+        GlobalAvgPoolLayer layer = new GlobalAvgPoolLayer(2, 2, 3);
+        assertEquals(3, layer.outputLength());
+        assertArrayEquals(new double[]{2.5, 0, -1},
+                layer.calculateWeightedOutput(new double[]{1, 2, 3, 4, 1, -1, 1, -1, -1, -1, -1, -1}), DELTA);
+    }
+
+    @Test
+    void updateGradient_spreadsEachChannelGradientOverItsChannel() {
+        GlobalAvgPoolLayer layer = new GlobalAvgPoolLayer(2, 1, 2);
+        assertArrayEquals(new double[]{0.5, 0.5, -1, -1}, layer.updateGradient(new double[]{1, -2}, new double[4]), DELTA);
+    }
+
+    @Test
+    void clone_keepsItsClass() {
+        GlobalAvgPoolLayer layer = new GlobalAvgPoolLayer(3, 3, 2);
+        assertEquals(layer, layer.clone());
+        assertNotEquals(layer, new AvgPoolLayer(3, 3, 2, 3, 3, 1, 1));
+    }
+}
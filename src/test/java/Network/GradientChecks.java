@@ -0,0 +1,103 @@
+package Network;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Finite-difference checks shared by the {@link Layer} tests. Every check uses the loss {@code dz_dC . z}, whose
+ * gradient with respect to the layer's weighted output {@code z} is {@code dz_dC} itself, so the gradients a layer
+ * computes can be compared against central differences of its forward pass alone.
+ */
+final class GradientChecks {
+
+    /** The step of every central difference */
+    private static final double H = 1e-6;
+
+    private GradientChecks() {
+    }
+
+    /** Supplies {@code values} in order, then zeros, for setting a layer's parameters through {@link Layer#initialize} */
+    static Supplier<Double> sequence(double... values) {
+        int[] next = {0};
+        return () -> next[0] < values.length ? values[next[0]++] : 0;
+    }
+
+    /** {@code length} standard Gaussian values drawn from {@code seed} */
+    static double[] random(int length, long seed) {
+        Random random = new Random(seed);
+        double[] values = new double[length];
+        for (int i = 0; i < length; i++) values[i] = random.nextGaussian();
+        return values;
+    }
+
+    /** Asserts that the da_dC {@code layer} computes for {@code x} matches the central difference of every input */
+    static void assertInputGradient(Layer layer, double[] x, double[] dz_dC, double tolerance) {
+        double[] da_dC = layer.updateGradient(dz_dC, x);
+        for (int i = 0; i < x.length; i++) {
+            double[] plus = x.clone(), minus = x.clone();
+            plus[i] += H;
+            minus[i] -= H;
+            double expected = (dot(dz_dC, layer.calculateWeightedOutput(plus)) - dot(dz_dC, layer.calculateWeightedOutput(minus))) / (2 * H);
+            assertEquals(expected, da_dC[i], tolerance, "da_dC[" + i + "]");
+        }
+    }
+
+    /**
+     * Asserts that one SGD step of {@code rate} on the layer {@code layerOf} builds from {@code parameters} changes
+     * the loss by {@code -rate * |g|^2}, within {@code tolerance} of it, where {@code g} is the central difference of
+     * the loss with respect to every parameter
+     */
+    static void assertSgdStepFollowsGradient(Function<double[], Layer> layerOf, double[] parameters, double[] x,
+                                             double[] dz_dC, double rate, double tolerance) {
+        double squaredNorm = 0;
+        for (int i = 0; i < parameters.length; i++) {
+            double[] plus = parameters.clone(), minus = parameters.clone();
+            plus[i] += H;
+            minus[i] -= H;
+            double gradient = (dot(dz_dC, layerOf.apply(plus).calculateWeightedOutput(x)) -
+                    dot(dz_dC, layerOf.apply(minus).calculateWeightedOutput(x))) / (2 * H);
+            squaredNorm += gradient * gradient;
+        }
+
+        Layer layer = layerOf.apply(parameters);
+        double before = dot(dz_dC, layer.calculateWeightedOutput(x));
+        layer.updateGradient(dz_dC, x);
+        layer.applyGradient(Optimizer.SGD, rate, 0, 0, 0);
+        double after = dot(dz_dC, layer.calculateWeightedOutput(x));
+        assertEquals(-rate * squaredNorm, after - before, tolerance * rate * squaredNorm);
+    }
+
+    /**
+     * Asserts that the batched passes of {@code layer} over {@code batchSize} samples match the single-sample passes
+     * of a clone, sample by sample, and accumulate the same gradients: an SGD step leaves both with the same output
+     */
+    static void assertBatchedMatchesSingleSamples(Layer layer, double[] x, double[] dz_dC, int batchSize) {
+        Layer single = (Layer) layer.clone();
+        int inputLength = x.length / batchSize, outputLength = dz_dC.length / batchSize;
+        double[] output = new double[dz_dC.length], da_dC = new double[x.length];
+        layer.calculateWeightedOutput(x, batchSize, output);
+        layer.updateGradient(dz_dC, x, batchSize, da_dC);
+        for (int b = 0; b < batchSize; b++) {
+            double[] sample = Arrays.copyOfRange(x, b * inputLength, (b + 1) * inputLength);
+            assertArrayEquals(single.calculateWeightedOutput(sample),
+                    Arrays.copyOfRange(output, b * outputLength, (b + 1) * outputLength), 1e-9, "output of sample " + b);
+            assertArrayEquals(single.updateGradient(Arrays.copyOfRange(dz_dC, b * outputLength, (b + 1) * outputLength), sample),
+                    Arrays.copyOfRange(da_dC, b * inputLength, (b + 1) * inputLength), 1e-9, "da_dC of sample " + b);
+        }
+        layer.applyGradient(Optimizer.SGD, 0.1, 0, 0, 0);
+        single.applyGradient(Optimizer.SGD, 0.1, 0, 0, 0);
+        double[] first = Arrays.copyOf(x, inputLength);
+        assertArrayEquals(single.calculateWeightedOutput(first), layer.calculateWeightedOutput(first), 1e-9, "output after a step");
+    }
+
+    private static double dot(double[] a, double[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) sum += a[i] * b[i];
+        return sum;
+    }
+}
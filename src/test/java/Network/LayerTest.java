@@ -392,4 +392,14 @@ class LayerTest {
         String s = sb.toString();
         assertTrue(s.contains("1.23") && s.contains("4.99"));
     }
+
+    @Test
+    void arraysDeepToString_flatMatrix_matchesNestedRows() {
+        double[][] arr = {{1.2345, 2.3456, 0.5}, {3.0, 4.99, -1}};
+        double[] flat = {9, 1.2345, 2.3456, 0.5, 3.0, 4.99, -1};
+        StringBuilder nested = new StringBuilder(), fromFlat = new StringBuilder();
+        Layer.ArraysDeepToString(arr, nested);
+        Layer.ArraysDeepToString(flat, 1, 2, 3, fromFlat);
+        assertEquals(nested.toString(), fromFlat.toString());
+    }
 }
@@ -52,7 +52,7 @@ class LinalgTest {
 
     @Test
     void matrixMultiply_emptyMatrixAndVector_throwsArrayIndexOutOfBounds() {
-        // the collector's supplier dereferences matrix[0] even when the stream is empty
+        // the output allocation dereferences matrix[0] even when there are no rows
         assertThrows(ArrayIndexOutOfBoundsException.class,
                 () -> Linalg.matrixMultiply(new double[0][], new double[0]));
     }
@@ -420,4 +420,146 @@ class LinalgTest {
     void sum_mixedSignsCancelsToZero() {
         assertEquals(0.0, Linalg.sum(new double[]{1, -1, 2, -2}), DELTA);
     }
+
+    // ---- gemm / gemv -------------------------------------------------------
+
+    /** Reference C += op(A) * op(B) on row-major storage, one multiply-add at a time */
+    private static double[] naiveGemm(boolean transposeA, boolean transposeB, int m, int n, int k, double[] a, double[] b, double[] c) {
+        double[] result = c.clone();
+        for (int i = 0; i < m; i++)
+            for (int j = 0; j < n; j++)
+                for (int p = 0; p < k; p++)
+                    result[i * n + j] += (transposeA ? a[p * m + i] : a[i * k + p]) * (transposeB ? b[j * k + p] : b[p * n + j]);
+        return result;
+    }
+
+    private static double[] randomArray(java.util.Random random, int length) {
+        double[] array = new double[length];
+        for (int i = 0; i < length; i++) array[i] = random.nextGaussian();
+        return array;
+    }
+
+    @Test
+    void gemm_smallProduct_knownResult() {
+        // [[1,2],[3,4]] * [[5,6],[7,8]] = [[19,22],[43,50]], accumulated onto C = 1
+        double[] c = {1, 1, 1, 1};
+        Linalg.gemm(false, false, 2, 2, 2, new double[]{1, 2, 3, 4}, 0, new double[]{5, 6, 7, 8}, 0, c, 0);
+        assertArrayEquals(new double[]{20, 23, 44, 51}, c, DELTA);
+    }
+
+    @Test
+    void gemm_blockedEveryTransposeCombination_matchesNaive() {
+        // sizes straddle the register tile, MC and KC block edges so every partial-tile path runs
+        java.util.Random random = new java.util.Random(1);
+        int m = 67, n = 45, k = 301;
+        for (boolean transposeA : new boolean[]{false, true})
+            for (boolean transposeB : new boolean[]{false, true}) {
+                double[] a = randomArray(random, m * k), b = randomArray(random, k * n), c = randomArray(random, m * n);
+                double[] expected = naiveGemm(transposeA, transposeB, m, n, k, a, b, c);
+                Linalg.gemm(transposeA, transposeB, m, n, k, a, 0, b, 0, c, 0);
+                assertArrayEquals(expected, c, 1e-9, "transposeA=" + transposeA + " transposeB=" + transposeB);
+            }
+    }
+
+    @Test
+    void gemm_respectsOffsets() {
+        double[] a = {9, 1, 2, 3, 4}, b = {9, 9, 5, 6, 7, 8}, c = {9, 0, 0, 0, 0};
+        Linalg.gemm(false, false, 2, 2, 2, a, 1, b, 2, c, 1);
+        assertArrayEquals(new double[]{9, 19, 22, 43, 50}, c, DELTA);
+    }
+
+    @Test
+    void gemv_andTranspose_matchGemm() {
+        java.util.Random random = new java.util.Random(2);
+        int m = 13, n = 9;
+        double[] a = randomArray(random, m * n), x = randomArray(random, Math.max(m, n));
+        double[] y = new double[m], expectedY = naiveGemm(false, false, m, 1, n, a, Arrays.copyOf(x, n), new double[m]);
+        Linalg.gemv(false, m, n, a, 0, x, 0, y, 0);
+        assertArrayEquals(expectedY, y, 1e-12);
+
+        double[] yT = new double[n], expectedYT = naiveGemm(true, false, n, 1, m, a, Arrays.copyOf(x, m), new double[n]);
+        Linalg.gemv(true, m, n, a, 0, x, 0, yT, 0);
+        assertArrayEquals(expectedYT, yT, 1e-12);
+    }
+
+    @Test
+    void largeElementWiseOps_matchSequentialLoops() {
+        java.util.Random random = new java.util.Random(3);
+        int length = 4 * Linalg.PARALLEL_THRESHOLD + 7;
+        double[] first = randomArray(random, length), second = randomArray(random, length);
+        double[] sum = Linalg.add(first, second), product = Linalg.multiply(first, second), scaled = Linalg.scale(2, first);
+        double expectedDot = 0, expectedSum = 0;
+        for (int i = 0; i < length; i++) {
+            assertEquals(first[i] + second[i], sum[i], 1e-12);
+            assertEquals(first[i] * second[i], product[i], 1e-12);
+            assertEquals(2 * first[i], scaled[i], 1e-12);
+            expectedDot += first[i] * second[i];
+            expectedSum += first[i];
+        }
+        assertEquals(expectedDot, Linalg.dotProduct(first, second), 1e-8);
+        assertEquals(expectedSum, Linalg.sum(first), 1e-8);
+    }
+
+    @Test
+    void largeGemm_matchesNaiveProduct() {
+        java.util.Random random = new java.util.Random(4);
+        int m = 150, n = 70, k = 90;
+        double[] a = randomArray(random, m * k), b = randomArray(random, k * n), c = randomArray(random, m * n);
+        double[] expected = naiveGemm(false, true, m, n, k, a, b, c);
+        Linalg.gemm(false, true, m, n, k, a, 0, b, 0, c, 0);
+        assertArrayEquals(expected, c, 1e-9);
+    }
+
+    @Test
+    void shouldParallelize_onlyAboveThresholdAndOutsideParallelRegions() {
+        assertTrue(!Linalg.shouldParallelize(Linalg.PARALLEL_THRESHOLD - 1));
+        assertTrue(Linalg.shouldParallelize(Linalg.PARALLEL_THRESHOLD));
+        Linalg.runInParallelRegion(2, () -> assertTrue(!Linalg.shouldParallelize(Long.MAX_VALUE)));
+        assertTrue(Linalg.shouldParallelize(Linalg.PARALLEL_THRESHOLD), "the region flag must be cleared afterwards");
+    }
+
+    @Test
+    void regionTasks_isTheRegionSizeInsideAndOneOutside() {
+        assertEquals(1, Linalg.regionTasks());
+        Linalg.runInParallelRegion(3, () -> {
+            assertEquals(3, Linalg.regionTasks());
+            // a nested region stays part of the enclosing one
+            Linalg.runInParallelRegion(5, () -> assertEquals(3, Linalg.regionTasks()));
+        });
+        assertEquals(1, Linalg.regionTasks());
+    }
+
+    @Test
+    void parallelFor_visitsEveryIndexOnce() {
+        int n = 1000;
+        java.util.concurrent.atomic.AtomicIntegerArray visits = new java.util.concurrent.atomic.AtomicIntegerArray(n);
+        Linalg.parallelFor(n, Long.MAX_VALUE, visits::incrementAndGet);
+        for (int i = 0; i < n; i++) assertEquals(1, visits.get(i));
+    }
+
+    @Test
+    void flattenAndUnflatten_roundTripRows() {
+        double[][] rows = {{1, 2, 3}, {4, 5, 6}};
+        double[] flat = Linalg.flatten(rows, 3);
+        assertArrayEquals(new double[]{1, 2, 3, 4, 5, 6}, flat, DELTA);
+        double[][] back = Linalg.unflatten(flat, 2, 3);
+        for (int i = 0; i < rows.length; i++) assertArrayEquals(rows[i], back[i], DELTA);
+    }
+
+    @Test
+    void flatten_raggedRows_throws() {
+        assertThrows(IllegalArgumentException.class, () -> Linalg.flatten(new double[][]{{1, 2}, {3}}, 2));
+    }
+
+    @Test
+    void axpy_addsScaledVectorInPlace() {
+        double[] y = {1, 2, 3};
+        Linalg.axpy(-2, new double[]{1, 0.5, -1}, y);
+        assertArrayEquals(new double[]{-1, 1, 5}, y, DELTA);
+    }
+
+    @Test
+    void axpy_lengthMismatch_throws() {
+        assertThrows(IllegalArgumentException.class, () -> Linalg.axpy(1, new double[2], new double[3]));
+    }
 }
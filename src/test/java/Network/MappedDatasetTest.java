@@ -0,0 +1,162 @@
+package Network;
+
+import static Network.DatasetAssertions.assertSameTestCases;
+import static Network.DatasetAssertions.idx;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Unit tests for {@link MappedDataset}: a written or converted file must decode to the same test cases as a
+ * {@link CompactDataset} holding them.
+ */
+class MappedDatasetTest {
+
+    @TempDir
+    Path directory;
+
+    private static CompactDataset randomDataset(CompactDataset.Encoding encoding, int size) {
+        Random random = new Random(size);
+        CompactDataset dataset = new CompactDataset(size, 5, 3, encoding, 1 / 255.0, -0.5);
+        for (int i = 0; i < size; i++) {
+            double[] input = new double[5], output = new double[3];
+            for (int j = 0; j < 5; j++) input[j] = random.nextInt(256) / 255.0 - 0.5;
+            output[random.nextInt(3)] = 1;
+            dataset.set(i, input, output);
+        }
+        return dataset;
+    }
+
+    @Test
+    void write_thenOpen_decodesTheSameTestCases() throws IOException {
+        for (CompactDataset.Encoding encoding : CompactDataset.Encoding.values()) {
+            CompactDataset dataset = randomDataset(encoding, 37);
+            Path file = directory.resolve(encoding + ".nnds");
+            MappedDataset.write(file, dataset, encoding, 1 / 255.0, -0.5);
+            MappedDataset mapped = MappedDataset.open(file);
+            assertEquals(encoding, mapped.encoding());
+            assertSameTestCases(dataset, mapped);
+        }
+    }
+
+    @Test
+    void open_recordsSpanningSeveralSegments_decodeTheSameTestCases() throws IOException {
+        CompactDataset dataset = randomDataset(CompactDataset.Encoding.FLOAT16, 50);
+        Path file = directory.resolve("segments.nnds");
+        MappedDataset.write(file, dataset, CompactDataset.Encoding.FLOAT16, 1 / 255.0, -0.5);
+        // 16-byte records, 3 per 50-byte segment
+        assertSameTestCases(dataset, MappedDataset.open(file, 50));
+    }
+
+    @Test
+    void convertCsv_oneHotLabelsAndNormalizedInputs() throws IOException {
+        Path csv = directory.resolve("digits.csv"), file = directory.resolve("digits.nnds");
+        Files.writeString(csv, "2,0,255,51\n0,255,0,0\n\n1,102,102,102\n");
+        MappedDataset.convertCsv(csv, file, 3, CompactDataset.Encoding.UINT8, 1 / 255.0, 0);
+        MappedDataset mapped = MappedDataset.open(file);
+        assertEquals(3, mapped.size());
+        assertArrayEquals(new double[]{0, 1, 0.2}, mapped.input(0, new double[3]), 1e-15);
+        assertArrayEquals(new double[]{0, 0, 1}, mapped.output(0, new double[3]));
+        assertArrayEquals(new double[]{0.4, 0.4, 0.4}, mapped.input(2, new double[3]), 1e-15);
+        assertArrayEquals(new double[]{0, 1, 0}, mapped.output(2, new double[3]));
+    }
+
+    @Test
+    void convertCsv_malformedLine_throwsAndLeavesNoFile() throws IOException {
+        Path csv = directory.resolve("bad.csv"), file = directory.resolve("bad.nnds");
+        Files.writeString(csv, "0,1,2\n1,3\n");
+        assertThrows(IOException.class, () -> MappedDataset.convertCsv(csv, file, 2, CompactDataset.Encoding.UINT8, 1, 0));
+        Files.writeString(csv, "0,1,2\n5,3,4\n");
+        assertThrows(IOException.class, () -> MappedDataset.convertCsv(csv, file, 2, CompactDataset.Encoding.UINT8, 1, 0));
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    void convertCsv_acceptsTheSameLinesAsReadCsv() throws IOException {
+        Path csv = directory.resolve("formats.csv"), file = directory.resolve("formats.nnds");
+        Files.writeString(csv, "1.0, 2.5e1 ,+3\r\n\n 0,.5,-1E0\n2e0,4.,0\n");
+        MappedDataset.convertCsv(csv, file, 3, CompactDataset.Encoding.FLOAT16, 1, 0);
+        assertSameTestCases(DatasetReader.readCsv(csv, 3, CompactDataset.Encoding.FLOAT16, 1, 0), MappedDataset.open(file));
+    }
+
+    @Test
+    void convertCsv_severalWindows_matchesReadCsv() throws IOException {
+        Random random = new Random(3);
+        StringBuilder text = new StringBuilder();
+        for (int line = 0; line < 200; line++) {
+            text.append(random.nextInt(3));
+            for (int j = 0; j < 5; j++) text.append(',').append(random.nextInt(256));
+            text.append(line % 50 == 0 ? "\n\n" : "\n");
+        }
+        Path csv = directory.resolve("windows.csv"), file = directory.resolve("windows.nnds");
+        Files.writeString(csv, text);
+        // lines are at most 24 bytes, so every 64-byte window ends on a different line
+        MappedDataset.convertCsv(csv, file, 3, CompactDataset.Encoding.UINT8, 1 / 255.0, 0, 64);
+        assertSameTestCases(DatasetReader.readCsv(csv, 3, CompactDataset.Encoding.UINT8, 1 / 255.0, 0), MappedDataset.open(file));
+
+        Files.writeString(csv, "0,1,2\n1,2," + "3".repeat(100) + "\n");
+        IOException e = assertThrows(IOException.class,
+                () -> MappedDataset.convertCsv(csv, file, 3, CompactDataset.Encoding.UINT8, 1, 0, 64));
+        assertTrue(e.getMessage().startsWith("line 2"), e.getMessage());
+    }
+
+    @Test
+    void convertIdx_flattensImagesAndOneHotsLabels() throws IOException {
+        Path images = directory.resolve("images-idx3-ubyte"), labels = directory.resolve("labels-idx1-ubyte");
+        Path file = directory.resolve("idx.nnds");
+        Files.write(images, idx(new int[]{2, 2, 2}, new byte[]{0, (byte) 255, 51, 102, 1, 2, 3, 4}));
+        Files.write(labels, idx(new int[]{2}, new byte[]{3, 0}));
+        MappedDataset.convertIdx(images, labels, file, 4, CompactDataset.Encoding.UINT8, 1 / 255.0, 0);
+        MappedDataset mapped = MappedDataset.open(file);
+        assertEquals(2, mapped.size());
+        assertArrayEquals(new double[]{0, 1, 0.2, 0.4}, mapped.input(0, new double[4]), 1e-15);
+        assertArrayEquals(new double[]{0, 0, 0, 1}, mapped.output(0, new double[4]));
+        assertArrayEquals(new double[]{1 / 255.0, 2 / 255.0, 3 / 255.0, 4 / 255.0}, mapped.input(1, new double[4]), 1e-15);
+        assertArrayEquals(new double[]{1, 0, 0, 0}, mapped.output(1, new double[4]));
+    }
+
+    @Test
+    void convertIdx_mismatchedCounts_throws() throws IOException {
+        Path images = directory.resolve("images"), labels = directory.resolve("labels");
+        Files.write(images, idx(new int[]{2, 1}, new byte[]{1, 2}));
+        Files.write(labels, idx(new int[]{1}, new byte[]{0}));
+        assertThrows(IOException.class, () -> MappedDataset.convertIdx(images, labels, directory.resolve("out"), 2,
+                CompactDataset.Encoding.UINT8, 1, 0));
+    }
+
+    @Test
+    void open_unclosedOrForeignFile_throws() throws IOException {
+        Path unclosed = directory.resolve("unclosed.nnds");
+        MappedDataset.Writer writer = new MappedDataset.Writer(unclosed, 1, 1, CompactDataset.Encoding.UINT8, 1, 0);
+        writer.append(new double[]{1}, new double[]{0});
+        assertThrows(IOException.class, () -> MappedDataset.open(unclosed));
+        writer.close();
+        assertEquals(1, MappedDataset.open(unclosed).size());
+
+        Path foreign = directory.resolve("foreign.nnds");
+        Files.write(foreign, new byte[100]);
+        assertThrows(IOException.class, () -> MappedDataset.open(foreign));
+    }
+
+    @Test
+    void trainer_readsMappedDataset() throws IOException {
+        CompactDataset dataset = randomDataset(CompactDataset.Encoding.UINT8, 20);
+        Path file = directory.resolve("train.nnds");
+        MappedDataset.write(file, dataset, CompactDataset.Encoding.UINT8, 1 / 255.0, -0.5);
+        NN fromMapped = new NN.NetworkBuilder().setInputNum(5).addDenseLayer(3).setHiddenAF(Activation.ReLU)
+                .setOutputAF(Activation.softmax).setCostFunction(Cost.crossEntropy).setOptimizer(Optimizer.SGD).build();
+        NN fromCompact = (NN) fromMapped.clone();
+        new Trainer(fromMapped, 6, 0.1, 0, 0, 0).setShuffle(false).epoch(MappedDataset.open(file));
+        new Trainer(fromCompact, 6, 0.1, 0, 0, 0).setShuffle(false).epoch(dataset);
+        assertEquals(fromCompact, fromMapped);
+    }
+}
@@ -0,0 +1,161 @@
+package Network;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link MaxPoolLayer}, including its recorded winners and the batched passes.
+ */
+class MaxPoolLayerTest {
+
+    private static final double DELTA = 1e-12;
+
+    /** A 4x4 single-channel input whose 2x2 windows peak at different corners */
+    private static final double[] INPUT = {
+            1, 9, 2, 3,
+            4, 5, 8, 1,
+            0, 1, 2, 2,
+            7, 3, 6, 2,
+    };
+
+    @Test
+    void constructor_outputDimensions() {
+        assertEquals(2 * 2 * 3, new MaxPoolLayer(4, 4, 3, 2, 2, 2, 2).outputLength());
+        assertEquals(3 * 2, new MaxPoolLayer(5, 4, 1, 3, 3, 1, 1).outputLength());
+    }
+
+    @Test
+    void constructor_invalidGeometry_throws() {
+        assertThrows(IllegalArgumentException.class, () -> new MaxPoolLayer(2, 2, 1, 3, 3, 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> new MaxPoolLayer(4, 4, 1, 2, 2, 0, 2));
+        assertThrows(IllegalArgumentException.class, () -> new MaxPoolLayer(4, 4, 0, 2, 2, 2, 2));
+        assertThrows(IllegalArgumentException.class, () -> new MaxPoolLayer(20, 20, 1, 17, 17, 1, 1));
+    }
+
+    @Test
+    void calculateWeightedOutput_keepsLargestOfEveryWindow() {
+        assertArrayEquals(new double[]{9, 8, 7, 6}, new MaxPoolLayer(4, 4, 1, 2, 2, 2, 2).calculateWeightedOutput(INPUT), DELTA);
+    }
+
+    @Test
+    void calculateWeightedOutput_wrongInputLength_throws() {
+        assertThrows(IllegalArgumentException.class, () -> new MaxPoolLayer(4, 4, 1, 2, 2, 2, 2).calculateWeightedOutput(new double[15]));
+    }
+
+    @Test
+    void calculateWeightedOutput_nanInput_propagates() {
+        double[] input = INPUT.clone();
+        input[5] = Double.NaN;
+        assertTrue(Double.isNaN(new MaxPoolLayer(4, 4, 1, 2, 2, 2, 2).calculateWeightedOutput(input)[0]));
+    }
+
+    @Test
+    void updateGradient_routesGradientToEveryWinner() {
+        MaxPoolLayer layer = new MaxPoolLayer(4, 4, 1, 2, 2, 2, 2);
+        layer.calculateWeightedOutput(INPUT);
+        double[] expected = new double[16];
+        expected[1] = 1;
+        expected[6] = 2;
+        expected[12] = 3;
+        expected[14] = 4;
+        assertArrayEquals(expected, layer.updateGradient(new double[]{1, 2, 3, 4}, INPUT), DELTA);
+    }
+
+    @Test
+    void updateGradient_inferenceBetweenTrainingPasses_keepsTheTrainingWinners() {
+        MaxPoolLayer layer = new MaxPoolLayer(4, 4, 1, 2, 2, 2, 2);
+        layer.trainingWeightedOutput(INPUT, 1, new double[4]);
+        // an inference call on another thread, with other winners, must not disturb the training step
+        double[] flipped = new double[16];
+        for (int i = 0; i < 16; i++) flipped[i] = -INPUT[i];
+        layer.calculateWeightedOutput(flipped, 1, new double[4]);
+        double[] expected = new double[16];
+        expected[1] = 1;
+        expected[6] = 2;
+        expected[12] = 3;
+        expected[14] = 4;
+        double[] da_dC = new double[16];
+        layer.updateGradient(new double[]{1, 2, 3, 4}, INPUT, 1, da_dC);
+        assertArrayEquals(expected, da_dC, DELTA);
+    }
+
+    @Test
+    void updateGradient_withoutForwardPass_findsWinnersItself() {
+        MaxPoolLayer layer = new MaxPoolLayer(4, 4, 1, 2, 2, 2, 2), reference = new MaxPoolLayer(4, 4, 1, 2, 2, 2, 2);
+        reference.calculateWeightedOutput(INPUT);
+        // the last forward pass ran on another input, so its winners must not be reused
+        layer.calculateWeightedOutput(new double[16]);
+        assertArrayEquals(reference.updateGradient(new double[]{1, 2, 3, 4}, INPUT),
+                layer.updateGradient(new double[]{1, 2, 3, 4}, INPUT), DELTA);
+    }
+
+    @Test
+    void updateGradient_overlappingWindows_matchesFiniteDifferences() {
+        MaxPoolLayer layer = new MaxPoolLayer(5, 4, 2, 3, 2, 1, 2);
+        Random random = new Random(1);
+        double[] x = new double[layer.inputVolume()], dz_dC = new double[layer.outputLength()];
+        for (int i = 0; i < x.length; i++) x[i] = random.nextGaussian();
+        for (int i = 0; i < dz_dC.length; i++) dz_dC[i] = random.nextGaussian();
+        layer.calculateWeightedOutput(x);
+        double[] da_dC = layer.updateGradient(dz_dC, x);
+
+        double h = 1e-6;
+        for (int i = 0; i < x.length; i++) {
+            double[] up = x.clone(), down = x.clone();
+            up[i] += h;
+            down[i] -= h;
+            double[] upOutput = layer.calculateWeightedOutput(up), downOutput = layer.calculateWeightedOutput(down);
+            double numeric = 0;
+            for (int j = 0; j < dz_dC.length; j++) numeric += dz_dC[j] * (upOutput[j] - downOutput[j]) / (2 * h);
+            assertEquals(numeric, da_dC[i], 1e-6);
+        }
+    }
+
+    @Test
+    void batchedPasses_matchPerSamplePasses() {
+        MaxPoolLayer batched = new MaxPoolLayer(4, 4, 2, 2, 2, 1, 1), perSample = new MaxPoolLayer(4, 4, 2, 2, 2, 1, 1);
+        Random random = new Random(2);
+        double[][] x = new double[3][32], dz_dC = new double[3][batched.outputLength()];
+        for (double[] row : x) for (int i = 0; i < row.length; i++) row[i] = random.nextGaussian();
+        for (double[] row : dz_dC) for (int i = 0; i < row.length; i++) row[i] = random.nextGaussian();
+
+        double[][] output = batched.calculateWeightedOutput(x);
+        double[][] da_dC = batched.updateGradient(dz_dC, x);
+        for (int b = 0; b < x.length; b++) {
+            assertArrayEquals(perSample.calculateWeightedOutput(x[b]), output[b], DELTA);
+            assertArrayEquals(perSample.updateGradient(dz_dC[b], x[b]), da_dC[b], DELTA);
+        }
+    }
+
+    @Test
+    void parameters_noneLearnedAndBiasesStayZero() {
+        MaxPoolLayer layer = new MaxPoolLayer(4, 4, 1, 2, 2, 2, 2);
+        layer.initialize(() -> 5.0, Optimizer.ADAM);
+        layer.applyGradient(Optimizer.ADAM, 0.1, 0.9, 0.99, 1e-8);
+        assertEquals(0, layer.getNumParameters());
+        assertArrayEquals(new double[]{9, 8, 7, 6}, layer.calculateWeightedOutput(INPUT), DELTA);
+    }
+
+    @Test
+    void gradientShard_ownsItsWinners() {
+        MaxPoolLayer layer = new MaxPoolLayer(4, 4, 1, 2, 2, 2, 2);
+        Layer shard = layer.gradientShard();
+        assertNotSame(layer, shard);
+        assertEquals(layer, shard);
+    }
+
+    @Test
+    void clone_equalsOriginal_butNotOtherPoolingLayers() {
+        MaxPoolLayer layer = new MaxPoolLayer(4, 4, 1, 2, 2, 2, 2);
+        assertEquals(layer, layer.clone());
+        assertEquals(layer.hashCode(), layer.clone().hashCode());
+        assertTrue(!layer.equals(new AvgPoolLayer(4, 4, 1, 2, 2, 2, 2)));
+        assertTrue(layer.toString().contains("2x2"));
+    }
+}
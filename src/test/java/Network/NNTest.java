@@ -7,8 +7,13 @@ import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 import org.junit.jupiter.api.Test;
 
+import com.sun.management.ThreadMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
 /**
  * Edge-case unit tests for {@link NN} and its {@link NN.NetworkBuilder}.
  *
@@ -115,6 +120,13 @@ class NNTest {
                 .addConvolutionalLayer(3, 3, 1, 2, 2, 1, 1, 1));
     }
 
+    @Test
+    void addConvolutionalLayer_nullAlgorithm_throws() {
+        assertThrows(IllegalArgumentException.class, () -> new NN.NetworkBuilder()
+                .setInputNum(9)
+                .addConvolutionalLayer(3, 3, 1, 2, 2, 1, 1, 1, false, null));
+    }
+
     // ---- calculateOutput ---------------------------------------------------
 
     @Test
@@ -395,4 +407,333 @@ class NNTest {
         String s = n.toString();
         assertTrue(s.contains("parameters") && s.contains("Layer 0"));
     }
+
+    @Test
+    void learn_onVirtualThreads_changesOutput() {
+        NN n = new NN.NetworkBuilder()
+                .setInputNum(1)
+                .addDenseLayer(1)
+                .setHiddenAF(Activation.none)
+                .setOutputAF(Activation.none)
+                .setCostFunction(Cost.diffSquared)
+                .setOptimizer(Optimizer.SGD)
+                .useVirtualThreads()
+                .build();
+        double[] before = n.calculateOutput(new double[]{1});
+        NN.learn(n, 0.1, 0, 0, 0, new double[][]{{1}, {1}, {1}, {1}}, new double[][]{{2}, {2}, {2}, {2}});
+        assertFalse(n.calculateOutput(new double[]{1})[0] == before[0]);
+    }
+
+    @Test
+    void learn_onVirtualThreads_allocatesNoMoreThanOnPlatformThreads() {
+        // 256 -> 256 is large enough for Linalg's blocked gemm, whose packing buffers alone take 2 MB per worker;
+        // virtual threads are new every step, so without per-worker scratch every step would allocate them again
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof ThreadMXBean);
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+        long platform = bytesPerLearnStep(threads, false), virtual = bytesPerLearnStep(threads, true);
+        assertTrue(virtual - platform < 1 << 20, "virtual threads allocated " + virtual + " bytes per step, platform threads " + platform);
+    }
+
+    /** The average number of bytes allocated by one learn step of a 256 -> 256 -> 10 network on 4 workers, once warm */
+    private static long bytesPerLearnStep(ThreadMXBean threads, boolean virtualThreads) {
+        NN.NetworkBuilder builder = new NN.NetworkBuilder()
+                .setInputNum(256)
+                .addDenseLayer(256)
+                .addDenseLayer(10)
+                .setHiddenAF(Activation.ReLU)
+                .setOutputAF(Activation.softmax)
+                .setCostFunction(Cost.crossEntropy)
+                .setOptimizer(Optimizer.SGD)
+                .setParallelism(4);
+        if (virtualThreads) builder.useVirtualThreads();
+        NN n = builder.build();
+        Random random = new Random(7);
+        double[][] inputs = new double[64][256], outputs = new double[64][10];
+        for (int i = 0; i < inputs.length; i++) {
+            for (int j = 0; j < 256; j++) inputs[i][j] = random.nextDouble();
+            outputs[i][i % 10] = 1;
+        }
+        for (int step = 0; step < 5; step++) NN.learn(n, 0.01, 0, 0, 0, inputs, outputs);
+
+        int steps = 20;
+        long before = threads.getTotalThreadAllocatedBytes();
+        for (int step = 0; step < steps; step++) NN.learn(n, 0.01, 0, 0, 0, inputs, outputs);
+        return (threads.getTotalThreadAllocatedBytes() - before) / steps;
+    }
+
+    @Test
+    void setParallelism_nonPositive_throws() {
+        NN n = validNetwork();
+        assertThrows(IllegalArgumentException.class, () -> n.setParallelism(0));
+    }
+    @Test
+    void learn_batchLargerThanParallelism_matchesSingleChunk() {
+        // the same batch split into 3 chunks or run as 1 chunk must produce the same SGD step
+        NN chunked = new NN.NetworkBuilder()
+                .setInputNum(1)
+                .addDenseLayer(1)
+                .setHiddenAF(Activation.none)
+                .setOutputAF(Activation.none)
+                .setCostFunction(Cost.diffSquared)
+                .setOptimizer(Optimizer.SGD)
+                .setParallelism(3)
+                .build();
+        NN sequential = (NN) chunked.clone();
+        sequential.setParallelism(1);
+        double[][] inputs = {{1}, {2}, {3}, {4}, {5}, {6}, {7}};
+        double[][] outputs = {{2}, {4}, {6}, {8}, {10}, {12}, {14}};
+        NN.learn(chunked, 0.01, 0, 0, 0, inputs, outputs);
+        NN.learn(sequential, 0.01, 0, 0, 0, inputs, outputs);
+        assertArrayEquals(sequential.calculateOutput(new double[]{1}), chunked.calculateOutput(new double[]{1}), 1e-12);
+    }
+
+    @Test
+    void backPropagate_batch_matchesPerSampleBackPropagation() {
+        DenseLayer[] batched = {new DenseLayer(3, 4), new DenseLayer(4, 2)};
+        DenseLayer[] perSample = {new DenseLayer(3, 4), new DenseLayer(4, 2)};
+        NN batchedNetwork = networkOf(batched), perSampleNetwork = networkOf(perSample);
+        double[][] inputs = {{1, 0, -1}, {0.5, 2, 0}, {-1, -1, 3}};
+        double[][] outputs = {{1, 0}, {0, 1}, {1, 0}};
+
+        batchedNetwork.backPropagate(inputs, outputs);
+        for (int i = 0; i < inputs.length; i++)
+            perSampleNetwork.backPropagate(inputs[i], outputs[i]);
+        for (int i = 0; i < batched.length; i++) {
+            assertArrayEquals(perSample[i].biasGradient, batched[i].biasGradient, 1e-12);
+            batched[i].applyGradient(Optimizer.SGD, 0.1, 0, 0, 0);
+            perSample[i].applyGradient(Optimizer.SGD, 0.1, 0, 0, 0);
+        }
+        assertArrayEquals(perSampleNetwork.calculateOutput(inputs[0]), batchedNetwork.calculateOutput(inputs[0]), 1e-12);
+    }
+
+    /** Builds a sigmoid/softmax network from {@code layers}, re-initialized from a fixed seed so that
+     * two networks built from structurally identical layers start with identical parameters. */
+    private static NN networkOf(DenseLayer... layers) {
+        NN.NetworkBuilder builder = new NN.NetworkBuilder().setInputNum(3);
+        for (DenseLayer layer : layers) builder.addCustomLayer(layer);
+        NN network = builder.setHiddenAF(Activation.sigmoid).setOutputAF(Activation.softmax)
+                .setCostFunction(Cost.crossEntropy).setOptimizer(Optimizer.SGD).build();
+        java.util.Random random = new java.util.Random(42);
+        for (DenseLayer layer : layers) layer.initialize(random::nextGaussian, Optimizer.SGD);
+        return network;
+    }
+
+    @Test
+    void backPropagate_reusedWorkspace_accumulatesLikeFreshBuffers() {
+        DenseLayer[] reused = {new DenseLayer(3, 4), new DenseLayer(4, 2)};
+        DenseLayer[] batched = {new DenseLayer(3, 4), new DenseLayer(4, 2)};
+        NN reusedNetwork = networkOf(reused), batchedNetwork = networkOf(batched);
+        double[][] inputs = {{1, 0, -1}, {0.5, 2, 0}};
+        double[][] outputs = {{1, 0}, {0, 1}};
+
+        // the same single-sample workspace is reused for every call, so no state may leak between samples
+        for (int repeat = 0; repeat < 2; repeat++)
+            for (int i = 0; i < inputs.length; i++)
+                reusedNetwork.backPropagate(inputs[i], outputs[i]);
+        batchedNetwork.backPropagate(new double[][]{inputs[0], inputs[1], inputs[0], inputs[1]},
+                new double[][]{outputs[0], outputs[1], outputs[0], outputs[1]});
+        for (int i = 0; i < reused.length; i++)
+            assertArrayEquals(batched[i].biasGradient, reused[i].biasGradient, 1e-12);
+    }
+
+    @Test
+    void addPoolingLayers_inputDimsMismatch_throws() {
+        NN.NetworkBuilder builder = new NN.NetworkBuilder().setInputNum(16);
+        assertThrows(IllegalArgumentException.class, () -> builder.addMaxPoolLayer(4, 4, 2, 2, 2, 2, 2));
+        assertThrows(IllegalArgumentException.class, () -> builder.addAvgPoolLayer(3, 3, 1, 2, 2, 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> builder.addGlobalAvgPoolLayer(4, 2, 1));
+    }
+
+    @Test
+    void learn_convolutionWithPoolingHead_reducesCost() {
+        // 6x6 image -> 3x3 conv (4 maps of 4x4) -> 2x2 max pool (4 maps of 2x2) -> global average (4) -> 2
+        NN network = new NN.NetworkBuilder()
+                .setInputNum(36)
+                .addConvolutionalLayer(6, 6, 1, 3, 3, 4, 1, 1)
+                .addMaxPoolLayer(4, 4, 4, 2, 2, 2, 2)
+                .addGlobalAvgPoolLayer(2, 2, 4)
+                .addDenseLayer(2)
+                .setHiddenAF(Activation.ReLU)
+                .setOutputAF(Activation.softmax)
+                .setCostFunction(Cost.crossEntropy)
+                .setOptimizer(Optimizer.ADAM)
+                .setParallelism(2)
+                .build();
+        double[][] inputs = new double[8][36], outputs = new double[8][2];
+        for (int b = 0; b < inputs.length; b++) {
+            // bright left half or bright right half
+            for (int i = 0; i < 36; i++) inputs[b][i] = (i % 6 < 3) == (b % 2 == 0) ? 1 + 0.1 * b : 0;
+            outputs[b][b % 2] = 1;
+        }
+        double before = 0, after = 0;
+        for (int b = 0; b < inputs.length; b++) before += network.calculateCost(inputs[b], outputs[b]);
+        for (int step = 0; step < 100; step++)
+            NN.learn(network, 0.01, 0.9, 0.99, 1e-8, inputs, outputs);
+        for (int b = 0; b < inputs.length; b++) after += network.calculateCost(inputs[b], outputs[b]);
+        assertTrue(after < before, "cost " + before + " -> " + after);
+    }
+
+    @Test
+    void learn_depthwiseSeparableConvolution_reducesCost() {
+        // 6x6x2 image -> 3x3 depthwise + pointwise (4 maps of 4x4) -> global average (4) -> 2
+        NN network = new NN.NetworkBuilder()
+                .setInputNum(72)
+                .addDepthwiseSeparableConvLayer(6, 6, 2, 3, 3, 4, 1, 1)
+                .addGlobalAvgPoolLayer(4, 4, 4)
+                .addDenseLayer(2)
+                .setHiddenAF(Activation.ReLU)
+                .setOutputAF(Activation.softmax)
+                .setCostFunction(Cost.crossEntropy)
+                .setOptimizer(Optimizer.ADAM)
+                .build();
+        assertThrows(IllegalArgumentException.class,
+                () -> new NN.NetworkBuilder().setInputNum(72).addDepthwiseSeparableConvLayer(6, 6, 1, 3, 3, 4, 1, 1));
+        double[][] inputs = new double[8][72], outputs = new double[8][2];
+        for (int b = 0; b < inputs.length; b++) {
+            // only the first channel lit, or only the second
+            for (int i = 0; i < 36; i++) inputs[b][i + (b % 2) * 36] = 1 + 0.1 * b;
+            outputs[b][b % 2] = 1;
+        }
+        double before = 0, after = 0;
+        for (int b = 0; b < inputs.length; b++) before += network.calculateCost(inputs[b], outputs[b]);
+        for (int step = 0; step < 100; step++)
+            NN.learn(network, 0.01, 0.9, 0.99, 1e-8, inputs, outputs);
+        for (int b = 0; b < inputs.length; b++) after += network.calculateCost(inputs[b], outputs[b]);
+        assertTrue(after < before, "cost " + before + " -> " + after);
+    }
+
+    @Test
+    void setTensorLayout_channelLast_configuresConvolutionsAndRejectsPooling() {
+        assertThrows(UnsupportedOperationException.class,
+                () -> new NN.NetworkBuilder().setInputNum(16).addDenseLayer(2).setTensorLayout(TensorLayout.CHANNEL_LAST));
+        NN.NetworkBuilder builder = new NN.NetworkBuilder().setInputNum(32).setTensorLayout(TensorLayout.CHANNEL_LAST)
+                .addConvolutionalLayer(4, 4, 2, 3, 3, 2, 1, 1);
+        assertThrows(IllegalArgumentException.class, () -> builder.addMaxPoolLayer(2, 2, 2, 2, 2, 2, 2));
+        assertThrows(IllegalArgumentException.class, () -> builder.addDepthwiseSeparableConvLayer(2, 2, 2, 1, 1, 2, 1, 1));
+
+        NN network = builder.addDenseLayer(2)
+                .setHiddenAF(Activation.ReLU)
+                .setOutputAF(Activation.softmax)
+                .setCostFunction(Cost.crossEntropy)
+                .build();
+        double[][] inputs = new double[4][32], outputs = new double[4][2];
+        for (int b = 0; b < inputs.length; b++) {
+            // both interleaved channels of the left half lit, or of the right half
+            for (int p = 0; p < 16; p++)
+                if ((p % 4 < 2) == (b % 2 == 0)) inputs[b][2 * p] = inputs[b][2 * p + 1] = 1 + 0.1 * b;
+            outputs[b][b % 2] = 1;
+        }
+        double before = 0, after = 0;
+        for (int b = 0; b < inputs.length; b++) before += network.calculateCost(inputs[b], outputs[b]);
+        for (int step = 0; step < 100; step++)
+            NN.learn(network, 0.01, 0.9, 0.99, 1e-8, inputs, outputs);
+        for (int b = 0; b < inputs.length; b++) after += network.calculateCost(inputs[b], outputs[b]);
+        assertTrue(after < before, "cost " + before + " -> " + after);
+    }
+
+    @Test
+    void evaluate_matchesPerSampleCalculations() {
+        NN network = new NN.NetworkBuilder().setInputNum(4).addDenseLayer(6).addDenseLayer(3)
+                .setHiddenAF(Activation.tanh).setOutputAF(Activation.softmax)
+                .setCostFunction(Cost.crossEntropy).setParallelism(3).build();
+        // 150 test cases: blocks of 64, 64 and 22, one per worker
+        Random random = new Random(1);
+        double[][] inputs = new double[150][4], outputs = new double[150][3];
+        for (int i = 0; i < 150; i++) {
+            for (int j = 0; j < 4; j++) inputs[i][j] = random.nextGaussian();
+            outputs[i][random.nextInt(3)] = 1;
+        }
+
+        double cost = 0;
+        int correct = 0;
+        int[][] confusion = new int[3][3];
+        for (int i = 0; i < 150; i++) {
+            cost += network.calculateCost(inputs[i], outputs[i]);
+            double[] output = network.calculateOutput(inputs[i]);
+            int predicted = 0, expected = 0;
+            for (int j = 1; j < 3; j++) {
+                if (output[j] > output[predicted]) predicted = j;
+                if (outputs[i][j] > outputs[i][expected]) expected = j;
+            }
+            if (predicted == expected) correct++;
+            confusion[expected][predicted]++;
+        }
+
+        Evaluation evaluation = network.evaluate(new ArrayDataset(inputs, outputs));
+        assertEquals(150, evaluation.size());
+        assertEquals(cost / 150, evaluation.cost(), 1e-12);
+        assertEquals(correct / 150.0, evaluation.accuracy());
+        assertArrayEquals(confusion, evaluation.confusionMatrix());
+        // a second call reuses the idle buffers of the first
+        assertEquals(evaluation.cost(), network.evaluate(new ArrayDataset(inputs, outputs)).cost());
+    }
+
+    @Test
+    void evaluate_onlyComputesRequestedMetrics() {
+        NN network = new NN.NetworkBuilder().setInputNum(2).addDenseLayer(2)
+                .setHiddenAF(Activation.ReLU).setOutputAF(Activation.softmax)
+                .setCostFunction(Cost.crossEntropy).build();
+        ArrayDataset dataset = new ArrayDataset(new double[][]{{1, 0}}, new double[][]{{0, 1}});
+        Evaluation evaluation = network.evaluate(dataset, Metric.COST);
+        assertEquals(network.calculateCost(new double[]{1, 0}, new double[]{0, 1}), evaluation.cost(), 1e-12);
+        assertThrows(IllegalStateException.class, evaluation::accuracy);
+        assertThrows(IllegalStateException.class, evaluation::confusionMatrix);
+
+        assertThrows(IllegalArgumentException.class, () -> network.evaluate(new ArrayDataset(new double[0][], new double[0][])));
+        assertThrows(IllegalArgumentException.class,
+                () -> network.evaluate(new ArrayDataset(new double[][]{{1, 0, 0}}, new double[][]{{0, 1}})));
+    }
+
+    /** A 5 -> 8 -> 4 softmax network on the given parallelism */
+    private static NN evaluationNetwork(int parallelism) {
+        return new NN.NetworkBuilder().setInputNum(5).addDenseLayer(8).addDenseLayer(4)
+                .setHiddenAF(Activation.tanh).setOutputAF(Activation.softmax)
+                .setCostFunction(Cost.crossEntropy).setParallelism(parallelism).build();
+    }
+
+    /** {@code size} random test cases of {@link #evaluationNetwork}'s dimensions */
+    private static ArrayDataset evaluationDataset(int size) {
+        Random random = new Random(2);
+        double[][] inputs = new double[size][5], outputs = new double[size][4];
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < 5; j++) inputs[i][j] = random.nextGaussian();
+            outputs[i][random.nextInt(4)] = 1;
+        }
+        return new ArrayDataset(inputs, outputs);
+    }
+
+    @Test
+    void evaluate_costIsTheSameForEveryParallelism() {
+        // 1000 test cases split between 1 to 8 workers; the cost is summed per block in dataset order either way
+        ArrayDataset dataset = evaluationDataset(1000);
+        NN network = evaluationNetwork(1);
+        Evaluation sequential = network.evaluate(dataset);
+        for (int parallelism = 2; parallelism <= 8; parallelism++) {
+            network.setParallelism(parallelism);
+            Evaluation parallel = network.evaluate(dataset);
+            assertEquals(sequential.cost(), parallel.cost(), "parallelism " + parallelism);
+            assertArrayEquals(sequential.confusionMatrix(), parallel.confusionMatrix(), "parallelism " + parallelism);
+        }
+    }
+
+    @Test
+    void evaluate_concurrentCalls_matchASingleCall() throws Exception {
+        // every call takes its own buffers, so evaluations on two threads at once don't share workspaces
+        NN network = evaluationNetwork(2);
+        ArrayDataset dataset = evaluationDataset(500);
+        Evaluation expected = network.evaluate(dataset);
+        java.util.concurrent.ExecutorService executor = java.util.concurrent.Executors.newFixedThreadPool(4);
+        try {
+            java.util.List<java.util.concurrent.Future<Evaluation>> results = new java.util.ArrayList<>();
+            for (int call = 0; call < 16; call++) results.add(executor.submit(() -> network.evaluate(dataset)));
+            for (java.util.concurrent.Future<Evaluation> result : results) {
+                Evaluation evaluation = result.get();
+                assertEquals(expected.cost(), evaluation.cost());
+                assertArrayEquals(expected.confusionMatrix(), evaluation.confusionMatrix());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
 }
@@ -0,0 +1,122 @@
+package Network;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+/**
+ * Unit tests for {@link Optimizer#update}: the read-only {@link Optimizer#accepts} check and the fused
+ * single-pass {@link Optimizer#apply} kernels.
+ *
+ * <p>Every kernel is compared against the textbook update written out element by element, on an array large
+ * enough to be split between threads as well as on a tiny one.
+ */
+class OptimizerTest {
+
+    private static final double DELTA = 1e-12;
+
+    private static final double LR = 0.05, MOMENTUM = 0.9, BETA = 0.99, EPSILON = 1e-8;
+
+    private static double[] randomArray(java.util.Random random, int length) {
+        double[] array = new double[length];
+        for (int i = 0; i < length; i++) array[i] = random.nextGaussian();
+        return array;
+    }
+
+    @Test
+    void everyOptimizer_matchesElementWiseReference() {
+        java.util.Random random = new java.util.Random(9);
+        for (int length : new int[]{3, 2 * Linalg.PARALLEL_THRESHOLD + 5})
+            for (Optimizer optimizer : Optimizer.values()) {
+                double[] parameters = randomArray(random, length), gradient = randomArray(random, length);
+                double[] velocity = randomArray(random, length), velocitySquared = new double[length];
+                for (int i = 0; i < length; i++) velocitySquared[i] = Math.abs(random.nextGaussian());
+
+                double[] expected = parameters.clone(), expectedVelocity = velocity.clone(), expectedSquared = velocitySquared.clone();
+                int t = 3;
+                for (int i = 0; i < length; i++) {
+                    double g = gradient[i];
+                    switch (optimizer) {
+                        case SGD -> expected[i] -= LR * g;
+                        case SGD_MOMENTUM -> {
+                            expectedVelocity[i] = MOMENTUM * expectedVelocity[i] + (1 - MOMENTUM) * g;
+                            expected[i] -= LR * expectedVelocity[i];
+                        }
+                        case RMS_PROP -> {
+                            expectedSquared[i] = BETA * expectedSquared[i] + (1 - BETA) * g * g;
+                            expected[i] -= LR * g / Math.sqrt(expectedSquared[i] + EPSILON);
+                        }
+                        case ADAM -> {
+                            expectedVelocity[i] = MOMENTUM * expectedVelocity[i] + (1 - MOMENTUM) * g;
+                            expectedSquared[i] = BETA * expectedSquared[i] + (1 - BETA) * g * g;
+                            double correctedVelocity = expectedVelocity[i] / (1 - Math.pow(MOMENTUM, t));
+                            double correctedSquared = expectedSquared[i] / (1 - Math.pow(BETA, t));
+                            expected[i] -= LR * correctedVelocity / Math.sqrt(correctedSquared + EPSILON);
+                        }
+                    }
+                }
+
+                assertTrue(optimizer.update(parameters, gradient, velocity, velocitySquared, LR, MOMENTUM, BETA, EPSILON, t));
+                assertArrayEquals(expected, parameters, DELTA, optimizer.name());
+                assertArrayEquals(expectedVelocity, velocity, DELTA, optimizer.name());
+                assertArrayEquals(expectedSquared, velocitySquared, DELTA, optimizer.name());
+            }
+    }
+
+    @Test
+    void nonFiniteGradient_isReported() {
+        for (Optimizer optimizer : Optimizer.values())
+            for (double bad : new double[]{Double.NaN, Double.POSITIVE_INFINITY}) {
+                double[] gradient = {1, bad, 1};
+                double[] parameters = {1, 2, 3}, velocity = {0.1, 0.2, 0.3}, velocitySquared = {0.4, 0.5, 0.6};
+                assertFalse(optimizer.update(parameters, gradient, velocity, velocitySquared, LR, MOMENTUM, BETA, EPSILON, 1),
+                        optimizer + " with " + bad);
+                // a rejected step must not touch any element, not even those with finite gradients
+                assertArrayEquals(new double[]{1, 2, 3}, parameters, optimizer + " parameters");
+                assertArrayEquals(new double[]{0.1, 0.2, 0.3}, velocity, optimizer + " velocity");
+                assertArrayEquals(new double[]{0.4, 0.5, 0.6}, velocitySquared, optimizer + " velocitySquared");
+            }
+    }
+
+    @Test
+    void nonFiniteGradient_inLastChunkOfLargeArray_leavesEveryChunkUnchanged() {
+        // large enough to be split between threads, with the bad gradient in the last chunk
+        int n = Linalg.PARALLEL_THRESHOLD * 4;
+        for (Optimizer optimizer : Optimizer.values()) {
+            double[] parameters = new double[n], gradient = new double[n];
+            Arrays.fill(parameters, 1);
+            Arrays.fill(gradient, 1);
+            gradient[n - 1] = Double.NaN;
+            assertFalse(optimizer.update(parameters, gradient, new double[n], new double[n], LR, MOMENTUM, BETA, EPSILON, 1));
+            double[] ones = new double[n];
+            Arrays.fill(ones, 1);
+            assertArrayEquals(ones, parameters, optimizer.toString());
+        }
+    }
+
+    @Test
+    void adam_overflowingElement_rejectsTheWholeStep() {
+        // ADAM's first step moves every parameter by learningRate / (1 - momentum) = 0.625 * MAX_VALUE against the
+        // sign of its gradient
+        double[] parameters = {-Double.MAX_VALUE, -Double.MAX_VALUE}, velocity = {0, 0}, velocitySquared = {0, 0};
+        double[] gradient = {-1, -1};
+        assertFalse(Optimizer.ADAM.accepts(parameters, new double[]{1, -1}, velocity, velocitySquared, Double.MAX_VALUE / 16, MOMENTUM, BETA, EPSILON, 1));
+        assertFalse(Optimizer.ADAM.update(parameters, new double[]{1, -1}, velocity, velocitySquared, Double.MAX_VALUE / 16, MOMENTUM, BETA, EPSILON, 1));
+        assertArrayEquals(new double[]{-Double.MAX_VALUE, -Double.MAX_VALUE}, parameters);
+        assertArrayEquals(new double[]{0, 0}, velocity);
+        assertArrayEquals(new double[]{0, 0}, velocitySquared);
+
+        assertTrue(Optimizer.ADAM.update(parameters, gradient, velocity, velocitySquared, Double.MAX_VALUE / 16, MOMENTUM, BETA, EPSILON, 1));
+        assertTrue(Double.isFinite(parameters[0]) && Double.isFinite(parameters[1]));
+    }
+
+    @Test
+    void sgd_unusedMomentsMayBeNull() {
+        double[] parameters = {1, 2};
+        assertTrue(Optimizer.SGD.update(parameters, new double[]{1, -1}, null, null, 0.5, 0, 0, 0, 1));
+        assertArrayEquals(new double[]{0.5, 2.5}, parameters, DELTA);
+    }
+}
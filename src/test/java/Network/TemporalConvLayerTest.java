@@ -0,0 +1,176 @@
+package Network;
+
+import static Network.GradientChecks.assertBatchedMatchesSingleSamples;
+import static Network.GradientChecks.assertInputGradient;
+import static Network.GradientChecks.assertSgdStepFollowsGradient;
+import static Network.GradientChecks.random;
+import static Network.GradientChecks.sequence;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link TemporalConvLayer}.
+ * <br>The weights are private, so they are set through {@link Layer#initialize} with a known sequence of values:
+ * the kernel biases first, then the weights, kernel by kernel and frame by frame.
+ */
+class TemporalConvLayerTest {
+
+    private static final double DELTA = 1e-12;
+
+    /** 3 channels, 6 frames, kernels of 2 frames, 2 kernels: 14 parameters, 5 output frames */
+    private static TemporalConvLayer sliding(double... parameters) {
+        TemporalConvLayer layer = new TemporalConvLayer(3, 6, 2, 2);
+        layer.initialize(sequence(parameters), Optimizer.SGD);
+        return layer;
+    }
+
+    /** 2 channels, 4 frames, kernels spanning all 4 frames, 3 kernels: 27 parameters, a single output frame */
+    private static TemporalConvLayer spanning(double... parameters) {
+        TemporalConvLayer layer = new TemporalConvLayer(2, 4, 4, 3);
+        layer.initialize(sequence(parameters), Optimizer.SGD);
+        return layer;
+    }
+
+    // ---- constructor: output-dimension math --------------------------------
+
+    @Test
+    void outputWindow_slidesOneFrameAtATime() {
+        assertEquals(5, sliding().outputWindow());
+        assertEquals(5 * 2, sliding().outputLength());
+        assertEquals(2 * 2 * 3 + 2, sliding().getNumParameters());
+    }
+
+    @Test
+    void outputWindow_kernelSpanningTheWindow_isOneFrame() {
+        assertEquals(1, spanning().outputWindow());
+        assertEquals(3, spanning().outputLength());
+        assertEquals(3 * 4 * 2 + 3, spanning().getNumParameters());
+    }
+
+    @Test
+    void constructor_kernelLongerThanWindow_throws() {
+        assertThrows(IllegalArgumentException.class, () -> new TemporalConvLayer(2, 3, 4, 1));
+    }
+
+    // ---- calculateWeightedOutput -------------------------------------------
+
+    @Test
+    void calculateWeightedOutput_slidesOneFrameAtATime() {
+        // one channel, 4 frames, one kernel (1, -1) with bias 0.5: out[t] = x[t] - x[t + 1] + 0.5
+        TemporalConvLayer layer = new TemporalConvLayer(1, 4, 2, 1);
+        layer.initialize(sequence(0.5, 1, -1), Optimizer.SGD);
+        assertArrayEquals(new double[]{-0.5, -1.5, 3.5}, layer.calculateWeightedOutput(new double[]{1, 2, 4, 1}), DELTA);
+    }
+
+    @Test
+    void calculateWeightedOutput_kernelSpanningTheWindow_weighsEveryFrameOnce() {
+        // one channel, 3 frames, one kernel (1, 10, 100) with bias 1 over the whole window: a single dense neuron
+        TemporalConvLayer layer = new TemporalConvLayer(1, 3, 3, 1);
+        layer.initialize(sequence(1, 1, 10, 100), Optimizer.SGD);
+        assertArrayEquals(new double[]{1 + 1 + 20 + 300}, layer.calculateWeightedOutput(new double[]{1, 2, 3}), DELTA);
+    }
+
+    // ---- updateGradient ----------------------------------------------------
+
+    @Test
+    void updateGradient_kernelSpanningTheWindow_everyFrameSeesOneTap() {
+        // with a single output frame, input frame t only meets tap t of every kernel: da_dC = dz * weights
+        TemporalConvLayer layer = new TemporalConvLayer(1, 3, 3, 1);
+        layer.initialize(sequence(1, 1, 10, 100), Optimizer.SGD);
+        assertArrayEquals(new double[]{2, 20, 200}, layer.updateGradient(new double[]{2}, new double[]{1, 2, 3}), DELTA);
+    }
+
+    @Test
+    void updateGradient_middleFramesSeeEveryTap() {
+        // one channel, 3 frames, kernel (1, 10): frame 0 feeds output 0 through tap 0, frame 2 output 1 through
+        // tap 1, and frame 1 both outputs through both taps
+        TemporalConvLayer layer = new TemporalConvLayer(1, 3, 2, 1);
+        layer.initialize(sequence(0, 1, 10), Optimizer.SGD);
+        assertArrayEquals(new double[]{2, 2 * 10 + 3, 3 * 10}, layer.updateGradient(new double[]{2, 3}, new double[]{1, 1, 1}), DELTA);
+    }
+
+    @Test
+    void updateGradient_slidingKernels_matchFiniteDifferences() {
+        assertInputGradient(sliding(random(14, 41)), random(18, 42), random(10, 43), 1e-6);
+    }
+
+    @Test
+    void updateGradient_kernelSpanningTheWindow_matchesFiniteDifferences() {
+        assertInputGradient(spanning(random(27, 44)), random(8, 45), random(3, 46), 1e-6);
+    }
+
+    // ---- applyGradient: weights and kernel biases --------------------------
+
+    @Test
+    void applyGradient_kernelBiasSumsEveryOutputFrame() {
+        // one channel, 3 frames, kernel (0, 0) with bias 0: the bias gradient is dz summed over both output frames
+        TemporalConvLayer layer = new TemporalConvLayer(1, 3, 2, 1);
+        layer.updateGradient(new double[]{2, 3}, new double[]{0, 0, 0});
+        layer.applyGradient(Optimizer.SGD, 0.1, 0, 0, 0);
+        assertArrayEquals(new double[]{-0.5, -0.5}, layer.calculateWeightedOutput(new double[]{0, 0, 0}), DELTA);
+    }
+
+    @Test
+    void applyGradient_stepMatchesFiniteDifferenceGradient() {
+        // the loss dz . z is linear in the parameters, so one SGD step of rate r changes it by exactly -r * |gradient|^2
+        assertSgdStepFollowsGradient(TemporalConvLayerTest::sliding, random(14, 47), random(18, 48), random(10, 49), 1e-3, 1e-3);
+    }
+
+    @Test
+    void applyGradient_adam_stepsKernelsButLeavesPerNeuronBiasesWithoutVelocities() {
+        TemporalConvLayer layer = new TemporalConvLayer(3, 6, 2, 2);
+        layer.initialize(sequence(random(14, 61)), Optimizer.ADAM);
+        double[] x = random(18, 62), before = layer.calculateWeightedOutput(x);
+        for (int step = 0; step < 2; step++) {
+            layer.updateGradient(random(10, 63 + step), x);
+            layer.applyGradient(Optimizer.ADAM, 0.01, 0.9, 0.99, 1e-8);
+            layer.clearGradient();
+        }
+        assertNull(layer.biasVelocity);
+        assertNull(layer.biasVelocitySquared);
+        assertArrayEquals(new double[layer.nodes], layer.bias);
+        assertEquals(3, layer.t);
+        assertNotEquals(before[0], layer.calculateWeightedOutput(x)[0]);
+        assertEquals(layer, layer.clone());
+    }
+
+    // ---- batched passes and gradient shards --------------------------------
+
+    @Test
+    void batchedPasses_slidingKernels_matchSingleSamplePasses() {
+        assertBatchedMatchesSingleSamples(sliding(random(14, 50)), random(3 * 18, 51), random(3 * 10, 52), 3);
+    }
+
+    @Test
+    void batchedPasses_singleOutputFrame_matchSingleSamplePasses() {
+        // with one output frame per sample, the batched task index is the sample itself
+        assertBatchedMatchesSingleSamples(spanning(random(27, 53)), random(4 * 8, 54), random(4 * 3, 55), 4);
+    }
+
+    @Test
+    void gradientShard_sharesWeightsAndAddsGradients() {
+        TemporalConvLayer layer = sliding(random(14, 56)), reference = (TemporalConvLayer) layer.clone();
+        double[] x = random(18, 57), dz = random(10, 58);
+        Layer shard = layer.gradientShard();
+        shard.updateGradient(dz, x);
+        layer.addGradient(shard);
+        reference.updateGradient(dz, x);
+        layer.applyGradient(Optimizer.SGD, 0.1, 0, 0, 0);
+        reference.applyGradient(Optimizer.SGD, 0.1, 0, 0, 0);
+        assertEquals(reference, layer);
+        assertNotEquals(sliding(random(14, 56)), layer);
+    }
+
+    // ---- equals / clone ----------------------------------------------------
+
+    @Test
+    void clone_equalsOriginal() {
+        TemporalConvLayer layer = spanning(random(27, 59));
+        assertEquals(layer, layer.clone());
+        assertNotEquals(layer, spanning(random(27, 60)));
+    }
+}
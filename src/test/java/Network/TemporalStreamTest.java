@@ -0,0 +1,101 @@
+package Network;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+/**
+ * Unit tests for {@link TemporalStream}: every push must return what {@link NN#calculateOutput} returns for the
+ * last {@code window} frames.
+ */
+class TemporalStreamTest {
+
+    private static final double DELTA = 1e-9;
+
+    /** 2 channels over 10 frames -> 4 kernels over 8 frames -> 3 kernels over 5 frames, then the given head */
+    private static NN.NetworkBuilder temporalStack() {
+        return new NN.NetworkBuilder()
+                .setInputNum(20)
+                .addTemporalConvLayer(2, 10, 3, 4)
+                .addTemporalConvLayer(4, 8, 4, 3)
+                .setHiddenAF(Activation.tanh)
+                .setCostFunction(Cost.diffSquared);
+    }
+
+    /** Pushes 25 random frames, checking every output against recomputing the whole window */
+    private static void assertStreamMatchesRecomputation(NN network) {
+        TemporalStream stream = network.stream();
+        Random random = new Random(3);
+        double[] history = new double[25 * 2];
+        for (int i = 0; i < history.length; i++) history[i] = random.nextGaussian();
+        for (int t = 0; t < 25; t++) {
+            double[] output = stream.push(new double[]{history[2 * t], history[2 * t + 1]});
+            if (t < 9) {
+                assertNull(output);
+                assertFalse(stream.isReady());
+                continue;
+            }
+            assertTrue(stream.isReady());
+            double[] window = java.util.Arrays.copyOfRange(history, 2 * (t - 9), 2 * (t + 1));
+            assertArrayEquals(network.calculateOutput(window), output, DELTA, "frame " + t);
+        }
+    }
+
+    @Test
+    void push_temporalOutputLayer_matchesCalculateOutput() {
+        assertStreamMatchesRecomputation(temporalStack().setOutputAF(Activation.sigmoid).build());
+    }
+
+    @Test
+    void push_denseHead_matchesCalculateOutput() {
+        assertStreamMatchesRecomputation(temporalStack().addDenseLayer(2).setOutputAF(Activation.softmax).build());
+    }
+
+    @Test
+    void push_temperatureOnTheTemporalOutput_leavesBufferedFramesIntact() {
+        // the output activation runs straight on the last temporal layer's frames, which later pushes still read
+        NN network = temporalStack().setOutputAF(Activation.softmax).setTemperature(2).build();
+        assertStreamMatchesRecomputation(network);
+    }
+
+    @Test
+    void reset_forgetsPushedFrames() {
+        NN network = temporalStack().setOutputAF(Activation.none).build();
+        TemporalStream stream = network.stream();
+        for (int t = 0; t < 12; t++) stream.push(new double[]{t, -t});
+        stream.reset();
+        assertFalse(stream.isReady());
+        double[] window = new double[20], output = null;
+        for (int t = 0; t < 10; t++) {
+            window[2 * t] = 0.5 * t;
+            window[2 * t + 1] = 1;
+            output = stream.push(new double[]{0.5 * t, 1});
+        }
+        assertArrayEquals(network.calculateOutput(window), output, DELTA);
+    }
+
+    @Test
+    void push_wrongFrameLength_throws() {
+        TemporalStream stream = temporalStack().setOutputAF(Activation.none).build().stream();
+        assertThrows(IllegalArgumentException.class, () -> stream.push(new double[3]));
+    }
+
+    @Test
+    void stream_networkWithoutTemporalLayers_throws() {
+        NN network = new NN.NetworkBuilder().setInputNum(2).addDenseLayer(2)
+                .setHiddenAF(Activation.ReLU).setOutputAF(Activation.none).setCostFunction(Cost.diffSquared).build();
+        assertThrows(IllegalStateException.class, network::stream);
+    }
+
+    @Test
+    void addTemporalConvLayer_channelsMismatch_throws() {
+        // 4 kernels over 8 frames is also 16 channels over 2 frames, but not frames of 16 values
+        NN.NetworkBuilder builder = new NN.NetworkBuilder().setInputNum(20).addTemporalConvLayer(2, 10, 3, 4);
+        assertThrows(IllegalArgumentException.class, () -> builder.addTemporalConvLayer(16, 2, 1, 1));
+    }
+}
@@ -0,0 +1,146 @@
+package Network;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Unit tests for {@link Trainer}: every epoch must call {@link NN#learn} once per batch, on every test case exactly
+ * once, whichever thread assembled the batch.
+ */
+class TrainerTest {
+
+    private static NN network() {
+        return new NN.NetworkBuilder().setInputNum(2).addDenseLayer(4).addDenseLayer(1)
+                .setHiddenAF(Activation.tanh).setOutputAF(Activation.sigmoid)
+                .setCostFunction(Cost.diffSquared).setOptimizer(Optimizer.SGD).build();
+    }
+
+    /** XOR of 2 bits, repeated 5 times */
+    private static ArrayDataset xor() {
+        double[][] inputs = new double[20][], outputs = new double[20][];
+        for (int i = 0; i < 20; i++) {
+            int a = i & 1, b = (i >> 1) & 1;
+            inputs[i] = new double[]{a, b};
+            outputs[i] = new double[]{a ^ b};
+        }
+        return new ArrayDataset(inputs, outputs);
+    }
+
+    /** A dataset that decodes sample {@code i} as {@code (i, -i) -> (i % 2)} and counts how often it is read */
+    private static class CountingDataset implements Dataset {
+        final int[] reads;
+
+        CountingDataset(int size) {
+            this.reads = new int[size];
+        }
+
+        @Override
+        public int size() {
+            return reads.length;
+        }
+
+        @Override
+        public int inputNum() {
+            return 2;
+        }
+
+        @Override
+        public int outputNum() {
+            return 1;
+        }
+
+        @Override
+        public double[] input(int index, double[] buffer) {
+            reads[index]++;
+            buffer[0] = index;
+            buffer[1] = -index;
+            return buffer;
+        }
+
+        @Override
+        public double[] output(int index, double[] buffer) {
+            buffer[0] = index % 2;
+            return buffer;
+        }
+    }
+
+    @Test
+    void epoch_readsEveryTestCaseOnce() {
+        CountingDataset dataset = new CountingDataset(23);
+        new Trainer(network(), 5, 0.01, 0, 0, 0).setRandom(new Random(1)).epoch(dataset);
+        int[] once = new int[23];
+        Arrays.fill(once, 1);
+        assertArrayEquals(once, dataset.reads);
+    }
+
+    @Test
+    void epoch_withoutShuffle_matchesLearnOnConsecutiveBatches() {
+        NN trained = network(), expected = (NN) trained.clone();
+        CountingDataset dataset = new CountingDataset(10);
+        new Trainer(trained, 4, 0.05, 0, 0, 0).setShuffle(false).epoch(dataset);
+
+        for (int start = 0; start < 10; start += 4) {
+            int length = Math.min(4, 10 - start);
+            double[][] inputs = new double[length][], outputs = new double[length][];
+            for (int i = 0; i < length; i++) {
+                inputs[i] = dataset.input(start + i, new double[2]);
+                outputs[i] = dataset.output(start + i, new double[1]);
+            }
+            NN.learn(expected, 0.05, 0, 0, 0, inputs, outputs);
+        }
+        assertEquals(expected, trained);
+    }
+
+    @Test
+    void epoch_shufflesTheOrder() {
+        NN shuffled = network(), ordered = (NN) shuffled.clone();
+        new Trainer(shuffled, 3, 0.05, 0, 0, 0).setRandom(new Random(2)).epoch(xor());
+        new Trainer(ordered, 3, 0.05, 0, 0, 0).setShuffle(false).epoch(xor());
+        assertNotEquals(ordered, shuffled);
+    }
+
+    @Test
+    void train_reducesCost() {
+        NN network = new NN.NetworkBuilder().setInputNum(2).addDenseLayer(8).addDenseLayer(1)
+                .setHiddenAF(Activation.tanh).setOutputAF(Activation.sigmoid)
+                .setCostFunction(Cost.diffSquared).setOptimizer(Optimizer.ADAM).build();
+        ArrayDataset dataset = xor();
+        double before = 0, after = 0;
+        for (int i = 0; i < 4; i++) before += network.calculateCost(dataset.input(i, null), dataset.output(i, null));
+        new Trainer(network, 4, 0.05, 0.9, 0.99, 1e-8).setRandom(new Random(3)).train(dataset, 200);
+        for (int i = 0; i < 4; i++) after += network.calculateCost(dataset.input(i, null), dataset.output(i, null));
+        assertTrue(after < before / 4, "cost " + before + " -> " + after);
+    }
+
+    @Test
+    void epoch_datasetFailure_isRethrown() {
+        Dataset failing = new CountingDataset(9) {
+            @Override
+            public double[] input(int index, double[] buffer) {
+                if (index == 7) throw new IllegalStateException("corrupt sample");
+                return super.input(index, buffer);
+            }
+        };
+        Trainer trainer = new Trainer(network(), 2, 0.01, 0, 0, 0).setShuffle(false);
+        assertThrows(IllegalStateException.class, () -> trainer.epoch(failing));
+    }
+
+    @Test
+    void epoch_mismatchedOrEmptyDataset_throws() {
+        Trainer trainer = new Trainer(network(), 2, 0.01, 0, 0, 0);
+        assertThrows(IllegalArgumentException.class, () -> trainer.epoch(new ArrayDataset(new double[4][3], new double[4][1])));
+        assertThrows(IllegalArgumentException.class, () -> trainer.epoch(new CountingDataset(0)));
+    }
+
+    @Test
+    void constructor_nonPositiveBatchSize_throws() {
+        assertThrows(IllegalArgumentException.class, () -> new Trainer(network(), 0, 0.01, 0, 0, 0));
+    }
+}
@@ -0,0 +1,72 @@
+package Network;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+/**
+ * Unit tests for {@link VectorLinalg}, the SIMD backend of {@link Linalg}.
+ *
+ * <p>Surefire runs with {@code --add-modules jdk.incubator.vector}, so the backend is active for the whole
+ * suite. Every test uses lengths that are not a multiple of any vector width, so both the full-vector loop
+ * and the masked tail are exercised, and compares against a plain scalar loop.
+ */
+class VectorLinalgTest {
+
+    private static final double DELTA = 1e-9;
+
+    private static final int[] LENGTHS = {0, 1, 3, 7, 13, 1001};
+
+    private static double[] randomArray(Random random, int length) {
+        double[] array = new double[length];
+        for (int i = 0; i < length; i++) array[i] = random.nextGaussian();
+        return array;
+    }
+
+    @Test
+    void backendIsSelectedWhenModuleIsPresent() {
+        assertTrue(Linalg.VECTORIZED);
+    }
+
+    @Test
+    void dotProductAndSum_matchScalarLoop() {
+        Random random = new Random(3);
+        for (int length : LENGTHS) {
+            double[] first = randomArray(random, length), second = randomArray(random, length);
+            double dot = 0, sum = 0;
+            for (int i = 0; i < length; i++) {
+                dot += first[i] * second[i];
+                sum += first[i];
+            }
+            assertEquals(dot, VectorLinalg.dotProduct(first, second, 0, length), DELTA);
+            assertEquals(sum, VectorLinalg.sum(first, 0, length), DELTA);
+        }
+    }
+
+    @Test
+    void elementWiseOperations_matchScalarLoop() {
+        Random random = new Random(4);
+        for (int length : LENGTHS) {
+            double[] first = randomArray(random, length), second = randomArray(random, length);
+            double[] product = new double[length], total = new double[length], scaled = new double[length];
+            VectorLinalg.multiply(first, second, product, 0, length);
+            VectorLinalg.add(first, second, total, 0, length);
+            VectorLinalg.scale(-2.5, first, scaled, 0, length);
+            for (int i = 0; i < length; i++) {
+                assertEquals(first[i] * second[i], product[i], DELTA);
+                assertEquals(first[i] + second[i], total[i], DELTA);
+                assertEquals(-2.5 * first[i], scaled[i], DELTA);
+            }
+        }
+    }
+
+    @Test
+    void subRange_leavesElementsOutsideRangeUntouched() {
+        double[] array = {1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1};
+        VectorLinalg.scale(3, array, array, 2, 9);
+        assertArrayEquals(new double[]{1, 1, 3, 3, 3, 3, 3, 3, 3, 1, 1}, array, 0);
+    }
+}
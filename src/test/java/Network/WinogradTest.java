@@ -0,0 +1,79 @@
+package Network;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the {@link Winograd} F(2x2, 3x3) transforms, checked against the direct correlation of one tile.
+ */
+class WinogradTest {
+
+    private static final double DELTA = 1e-12;
+
+    private static double[] random(Random random, int length) {
+        double[] array = new double[length];
+        for (int i = 0; i < length; i++) array[i] = random.nextGaussian();
+        return array;
+    }
+
+    /** Runs {@code y = A^T [(G g G^T) ⊙ (B^T d B)] A} */
+    private static double[] convolve(double[] g, double[] d) {
+        double[] filter = new double[16], tile = new double[16], y = new double[8];
+        Winograd.filter(g, 0, filter, 0);
+        Winograd.input(d, 0, tile, 0);
+        for (int e = 0; e < 16; e++) tile[e] *= filter[e];
+        Winograd.output(tile, 0, y);
+        return new double[]{y[0], y[1], y[2], y[3]};
+    }
+
+    @Test
+    void transforms_computeTheDirectCorrelation() {
+        Random random = new Random(1);
+        double[] g = random(random, 9), d = random(random, 16), expected = new double[4];
+        for (int u = 0; u < 2; u++)
+            for (int v = 0; v < 2; v++)
+                for (int x = 0; x < 3; x++)
+                    for (int y = 0; y < 3; y++)
+                        expected[2 * u + v] += g[x * 3 + y] * d[(u + x) * 4 + v + y];
+        assertArrayEquals(expected, convolve(g, d), DELTA);
+    }
+
+    @Test
+    void gradientTransforms_areTheAdjointsOfTheForwardPass() {
+        // <dY, f(g, d)> is linear in both g and d, so it must equal <dg, g> and <dd, d>
+        Random random = new Random(2);
+        double[] g = random(random, 9), d = random(random, 16), dy = random(random, 4);
+        double[] y = convolve(g, d);
+        double expected = 0;
+        for (int i = 0; i < 4; i++) expected += dy[i] * y[i];
+
+        double[] outputGradient = new double[16], filter = new double[16], tile = new double[16];
+        Winograd.outputGradient(dy, outputGradient, 0);
+        Winograd.filter(g, 0, filter, 0);
+        Winograd.input(d, 0, tile, 0);
+        double[] filterProduct = new double[16], inputProduct = new double[16];
+        for (int e = 0; e < 16; e++) {
+            filterProduct[e] = outputGradient[e] * tile[e];
+            inputProduct[e] = outputGradient[e] * filter[e];
+        }
+        double[] dg = new double[9], dd = new double[16];
+        Winograd.filterGradient(filterProduct, 0, dg, 0);
+        Winograd.inputGradient(inputProduct, 0, dd, 0);
+
+        double viaKernel = 0, viaInput = 0;
+        for (int i = 0; i < 9; i++) viaKernel += dg[i] * g[i];
+        for (int i = 0; i < 16; i++) viaInput += dd[i] * d[i];
+        assertEquals(expected, viaKernel, DELTA);
+        assertEquals(expected, viaInput, DELTA);
+    }
+
+    @Test
+    void filterGradient_accumulatesIntoItsOutput() {
+        double[] w = new double[16], out = {1, 1, 1, 1, 1, 1, 1, 1, 1};
+        Winograd.filterGradient(w, 0, out, 0);
+        assertArrayEquals(new double[]{1, 1, 1, 1, 1, 1, 1, 1, 1}, out, 0);
+    }
+}
@@ -0,0 +1,53 @@
+package Network;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link Workspace}, the preallocated backpropagation buffers of one training worker.
+ *
+ * <p>Buffers are row-major with one row per test case, so every length is {@code batchSize} times the width of
+ * the layer boundary it belongs to.
+ */
+class WorkspaceTest {
+
+    @Test
+    void buffers_matchLayerBoundaryWidths() {
+        Layer[] layers = {new DenseLayer(3, 5), new DenseLayer(5, 2)};
+        Workspace workspace = new Workspace(layers, 3, 4);
+
+        assertEquals(4, workspace.batchSize);
+        assertEquals(4 * 3, workspace.xs[0].length);
+        assertEquals(4 * 5, workspace.zs[0].length);
+        assertEquals(4 * 5, workspace.xs[1].length);
+        assertEquals(4 * 2, workspace.zs[1].length);
+        assertEquals(4 * 3, workspace.deltas[0].length);
+        assertEquals(4 * 5, workspace.deltas[1].length);
+        assertEquals(4 * 2, workspace.deltas[2].length);
+        assertEquals(2, workspace.outputRow.length);
+        assertEquals(2, workspace.gradientRow.length);
+        assertEquals(2, workspace.costRow.length);
+    }
+
+    @Test
+    void convolutionalLayer_usesOutputLengthRatherThanNodeCount() {
+        // with padding, a convolutional layer has more nodes than outputs
+        ConvolutionalLayer conv = new ConvolutionalLayer(3, 3, 1, 2, 2, 1, 1, 1, true);
+        Workspace workspace = new Workspace(new Layer[]{conv}, 9, 2);
+        assertEquals(2 * conv.outputLength(), workspace.zs[0].length);
+        assertEquals(2 * conv.outputLength(), workspace.deltas[1].length);
+    }
+
+    @Test
+    void forwardOnly_hasForwardBuffersButNoDeltas() {
+        Layer[] layers = {new DenseLayer(3, 5), new DenseLayer(5, 2)};
+        Workspace workspace = Workspace.forwardOnly(layers, 3, 4);
+
+        assertEquals(4 * 3, workspace.xs[0].length);
+        assertEquals(4 * 2, workspace.zs[1].length);
+        assertEquals(3, workspace.inputRow.length);
+        assertEquals(2, workspace.activationRow.length);
+        assertNull(workspace.deltas);
+    }
+}